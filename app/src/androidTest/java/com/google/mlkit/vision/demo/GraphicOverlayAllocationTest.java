@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.view.View.MeasureSpec;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that updating retained graphics and drawing the overlay does not allocate once the
+ * graphics for the tracked results exist.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GraphicOverlayAllocationTest {
+
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 640;
+  private static final int TRACKED_COUNT = 5;
+  private static final int WARM_UP_FRAMES = 20;
+  private static final int MEASURED_FRAMES = 100;
+
+  @Test
+  public void retainedUpdateAndDraw_doNotAllocate() {
+    int[] allocations = new int[1];
+    // Results are delivered on the UI thread, so that is where they are counted.
+    InstrumentationRegistry.getInstrumentation()
+        .runOnMainSync(
+            () -> {
+              GraphicOverlay overlay =
+                  new GraphicOverlay(ApplicationProvider.getApplicationContext(), null);
+              overlay.measure(
+                  MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                  MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+              overlay.layout(0, 0, WIDTH, HEIGHT);
+              overlay.setImageSourceInfo(WIDTH, HEIGHT, /* isFlipped= */ false);
+              Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+              Canvas canvas = new Canvas(bitmap);
+
+              for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+                updateAndDraw(overlay, canvas, frame);
+              }
+              allocations[0] = countAllocations(overlay, canvas);
+            });
+
+    assertEquals(0, allocations[0]);
+  }
+
+  @SuppressWarnings("deprecation") // Allocation counting is meant for tests like this one.
+  private static int countAllocations(GraphicOverlay overlay, Canvas canvas) {
+    Debug.startAllocCounting();
+    Debug.resetThreadAllocCount();
+    try {
+      for (int frame = WARM_UP_FRAMES; frame < WARM_UP_FRAMES + MEASURED_FRAMES; frame++) {
+        updateAndDraw(overlay, canvas, frame);
+      }
+      return Debug.getThreadAllocCount();
+    } finally {
+      Debug.stopAllocCounting();
+    }
+  }
+
+  /** Delivers one frame of results, as a processor's onSuccess does, and draws the scene. */
+  private static void updateAndDraw(GraphicOverlay overlay, Canvas canvas, int frame) {
+    overlay.beginUpdate();
+    for (int id = 0; id < TRACKED_COUNT; id++) {
+      overlay.obtain(BoxGraphic.class, id, BoxGraphic::new).update(frame, id);
+    }
+    overlay.endUpdate();
+    overlay.drawScene(canvas);
+  }
+
+  /** A tracked result drawn as a box, like the detector graphics. */
+  private static final class BoxGraphic extends GraphicOverlay.Graphic {
+    private static final Paint paint = new Paint();
+
+    static {
+      paint.setColor(Color.WHITE);
+      paint.setStyle(Paint.Style.STROKE);
+    }
+
+    private float left;
+    private float top;
+
+    BoxGraphic(GraphicOverlay overlay) {
+      super(overlay);
+    }
+
+    void update(int frame, int id) {
+      left = (frame * 4 + id * 60) % WIDTH;
+      top = id * 100;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+      canvas.drawRect(
+          translateX(left), translateY(top), translateX(left + 50), translateY(top + 50), paint);
+    }
+
+    @Override
+    protected GraphicOverlay.Graphic copyForScene(@Nullable GraphicOverlay.Graphic recycled) {
+      BoxGraphic copy = recycled != null ? (BoxGraphic) recycled : new BoxGraphic(getOverlay());
+      copy.left = left;
+      copy.top = top;
+      return copy;
+    }
+  }
+}
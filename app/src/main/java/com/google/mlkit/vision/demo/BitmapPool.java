@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Bitmap;
+import androidx.annotation.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of mutable bitmaps keyed by size and config, bounded by a total byte budget.
+ *
+ * <p>Live preview produces one background bitmap per processed frame, all of the same size. Once
+ * the overlay is done with a bitmap it is put back here and handed out again for the next frame,
+ * so steady-state preview does not allocate bitmaps at all. When the pool grows past its budget
+ * the least recently returned bitmaps are recycled first.
+ */
+public class BitmapPool {
+
+  private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+  private static final BitmapPool defaultPool = new BitmapPool(DEFAULT_MAX_BYTES);
+
+  private final long maxBytes;
+
+  // Ordered from least to most recently returned.
+  @GuardedBy("this")
+  private final List<Bitmap> bitmaps = new ArrayList<>();
+
+  @GuardedBy("this")
+  private long currentBytes;
+
+  /** Returns the pool shared by the live preview pipeline. */
+  public static BitmapPool getDefault() {
+    return defaultPool;
+  }
+
+  public BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns a mutable bitmap of the requested size and config, reusing a pooled one if possible.
+   * The contents of a reused bitmap are undefined.
+   */
+  public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    // Most recently returned bitmaps are the most likely to still be warm in cache.
+    for (int i = bitmaps.size() - 1; i >= 0; i--) {
+      Bitmap bitmap = bitmaps.get(i);
+      if (bitmap.getWidth() == width
+          && bitmap.getHeight() == height
+          && bitmap.getConfig() == config) {
+        bitmaps.remove(i);
+        currentBytes -= bitmap.getByteCount();
+        return bitmap;
+      }
+    }
+    return Bitmap.createBitmap(width, height, config);
+  }
+
+  /**
+   * Returns a bitmap to the pool. The caller must not use the bitmap afterwards. Bitmaps that are
+   * immutable, already recycled or larger than the whole budget are dropped.
+   */
+  public synchronized void put(Bitmap bitmap) {
+    if (bitmap.isRecycled() || !bitmap.isMutable()) {
+      return;
+    }
+    int byteCount = bitmap.getByteCount();
+    if (byteCount > maxBytes) {
+      bitmap.recycle();
+      return;
+    }
+    bitmaps.add(bitmap);
+    currentBytes += byteCount;
+    trimToSize(maxBytes);
+  }
+
+  /** Recycles every pooled bitmap. */
+  public synchronized void clear() {
+    trimToSize(0);
+  }
+
+  @GuardedBy("this")
+  private void trimToSize(long size) {
+    while (currentBytes > size && !bitmaps.isEmpty()) {
+      Bitmap eldest = bitmaps.remove(0);
+      currentBytes -= eldest.getByteCount();
+      eldest.recycle();
+    }
+  }
+}
@@ -4,10 +4,7 @@ import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
 import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
 import android.net.Uri;
@@ -19,34 +16,84 @@ import android.util.Log;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 import androidx.exifinterface.media.ExifInterface;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 public class BitmapUtils {
   private static final String TAG = "BitmapUtils";
+
+  // Scratch buffers reused across frames by each processing thread.
+  private static final ThreadLocal<int[]> argbScratch = new ThreadLocal<>();
+  private static final ThreadLocal<byte[]> yuv420Scratch = new ThreadLocal<>();
+  private static final ThreadLocal<YuvPlaneUnpacker> planeUnpacker =
+      new ThreadLocal<YuvPlaneUnpacker>() {
+        @Override
+        protected YuvPlaneUnpacker initialValue() {
+          return new YuvPlaneUnpacker();
+        }
+      };
+
+  /**
+   * Converts NV21 format byte buffer to bitmap, applying the rotation in the same pass. The bitmap
+   * is taken from {@link BitmapPool#getDefault()} and may be returned there once no longer used.
+   *
+   * <p>Buffers without an accessible array, such as direct or read-only buffers, are read in place
+   * rather than copied to the heap first.
+   */
   @Nullable
   public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-    data.rewind();
-    byte[] imageInBuffer = new byte[data.limit()];
-    data.get(imageInBuffer, 0, imageInBuffer.length);
+    int width = metadata.getWidth();
+    int height = metadata.getHeight();
+    int rotation = metadata.getRotation();
     try {
-      YuvImage image =
-          new YuvImage(
-              imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
+      long startNanos = System.nanoTime();
+      int[] argb = obtainArgbScratch(width * height);
+      if (data.hasArray()) {
+        YuvConverter.nv21ToArgb(data.array(), data.arrayOffset(), width, height, rotation, argb);
+      } else {
+        ByteBuffer nv21 = data.duplicate();
+        nv21.rewind();
+        YuvConverter.nv21ToArgb(nv21, width, height, rotation, argb);
+      }
+      long convertedNanos = System.nanoTime();
 
-      Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+      int outWidth = YuvConverter.getRotatedWidth(width, height, rotation);
+      int outHeight = YuvConverter.getRotatedHeight(width, height, rotation);
+      Bitmap bitmap =
+          BitmapPool.getDefault().get(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+      bitmap.setPixels(argb, 0, outWidth, 0, 0, outWidth, outHeight);
 
-      stream.close();
-      return rotateBitmap(bmp, metadata.getRotation(), false, false);
+      MetricsRegistry metrics = MetricsRegistry.getInstance();
+      metrics.record(MetricsRegistry.YUV_CONVERSION, convertedNanos - startNanos);
+      metrics.record(MetricsRegistry.BITMAP_CREATION, System.nanoTime() - convertedNanos);
+      return bitmap;
     } catch (Exception e) {
       Log.e("VisionProcessorBase", "Error: " + e.getMessage());
     }
     return null;
   }
+
+  private static int[] obtainArgbScratch(int size) {
+    int[] scratch = argbScratch.get();
+    if (scratch == null || scratch.length < size) {
+      scratch = new int[size];
+      argbScratch.set(scratch);
+    }
+    return scratch;
+  }
+
+  private static byte[] obtainScratch(ThreadLocal<byte[]> holder, int size) {
+    byte[] scratch = holder.get();
+    if (scratch == null || scratch.length < size) {
+      scratch = new byte[size];
+      holder.set(scratch);
+    }
+    return scratch;
+  }
+
   @RequiresApi(VERSION_CODES.KITKAT)
   @Nullable
   @ExperimentalGetImage
@@ -58,9 +105,24 @@ public class BitmapUtils {
             .setRotation(image.getImageInfo().getRotationDegrees())
             .build();
 
+    return getBitmap(getNv21(image), frameMetadata);
+  }
+
+  /**
+   * Converts the YUV_420_888 image to NV21, with rows packed to the image width.
+   *
+   * <p>The returned buffer wraps a per-thread scratch array that is overwritten by the next
+   * conversion on the same thread, so it must be consumed before converting another frame.
+   */
+  @RequiresApi(VERSION_CODES.KITKAT)
+  @ExperimentalGetImage
+  public static ByteBuffer getNv21(ImageProxy image) {
+    long startNanos = System.nanoTime();
     ByteBuffer nv21Buffer =
         yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-    return getBitmap(nv21Buffer, frameMetadata);
+    MetricsRegistry.getInstance()
+        .record(MetricsRegistry.YUV_CONVERSION, System.nanoTime() - startNanos);
+    return nv21Buffer;
   }
 
   private static Bitmap rotateBitmap(
@@ -86,7 +148,96 @@ public class BitmapUtils {
       return null;
     }
     int orientation = getExifOrientationTag(contentResolver, imageUri);
+    return orientBitmap(decodedBitmap, orientation);
+  }
+
+  /**
+   * Decodes the image file into a bitmap that fits {@code maxWidth} x {@code maxHeight} once it is
+   * turned upright according to its EXIF orientation, or returns null if it cannot be decoded.
+   *
+   * <p>The image is subsampled while it is decoded, by the largest power of two that keeps it at
+   * least as large as the fitted size, so it comes out within twice that size without ever being
+   * decoded at full resolution or rescaled afterwards.
+   */
+  @Nullable
+  public static Bitmap decodeSampledBitmap(File file, int maxWidth, int maxHeight) {
+    int orientation = getExifOrientationTag(file);
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(file.getPath(), options);
+    if (!setSampleSize(options, orientation, maxWidth, maxHeight)) {
+      return null;
+    }
+    Bitmap decodedBitmap = BitmapFactory.decodeFile(file.getPath(), options);
+    if (decodedBitmap == null) {
+      return null;
+    }
+    return orientBitmap(decodedBitmap, orientation);
+  }
 
+  /**
+   * Like {@link #decodeSampledBitmap(File, int, int)}, for the image at a content or file URI, e.g.
+   * one picked from the gallery. The image is streamed from {@code resolver} twice, once for its
+   * bounds and once to decode it.
+   */
+  @Nullable
+  public static Bitmap decodeSampledBitmap(
+      ContentResolver resolver, Uri uri, int maxWidth, int maxHeight) throws IOException {
+    int orientation = getExifOrientationTag(resolver, uri);
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    try (InputStream inputStream = openInputStream(resolver, uri)) {
+      BitmapFactory.decodeStream(inputStream, /* outPadding= */ null, options);
+    }
+    if (!setSampleSize(options, orientation, maxWidth, maxHeight)) {
+      return null;
+    }
+    Bitmap decodedBitmap;
+    try (InputStream inputStream = openInputStream(resolver, uri)) {
+      decodedBitmap = BitmapFactory.decodeStream(inputStream, /* outPadding= */ null, options);
+    }
+    if (decodedBitmap == null) {
+      return null;
+    }
+    return orientBitmap(decodedBitmap, orientation);
+  }
+
+  private static InputStream openInputStream(ContentResolver resolver, Uri uri)
+      throws IOException {
+    InputStream inputStream = resolver.openInputStream(uri);
+    if (inputStream == null) {
+      throw new FileNotFoundException("Cannot open " + uri);
+    }
+    return inputStream;
+  }
+
+  /**
+   * Sets up {@code options}, holding the bounds of an image, to decode it subsampled as described
+   * in {@link #decodeSampledBitmap(File, int, int)}. Returns false if the bounds are unknown.
+   */
+  private static boolean setSampleSize(
+      BitmapFactory.Options options, int orientation, int maxWidth, int maxHeight) {
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      return false;
+    }
+    boolean isTransposed =
+        orientation == ExifInterface.ORIENTATION_ROTATE_90
+            || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+            || orientation == ExifInterface.ORIENTATION_ROTATE_270
+            || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    int width = isTransposed ? options.outHeight : options.outWidth;
+    int height = isTransposed ? options.outWidth : options.outHeight;
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= maxWidth || height / (sampleSize * 2) >= maxHeight) {
+      sampleSize *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize;
+    return true;
+  }
+
+  /** Turns the bitmap upright according to an EXIF orientation tag. */
+  private static Bitmap orientBitmap(Bitmap decodedBitmap, int orientation) {
     int rotationDegrees = 0;
     boolean flipX = false;
     boolean flipY = false;
@@ -117,6 +268,7 @@ public class BitmapUtils {
       case ExifInterface.ORIENTATION_UNDEFINED:
       case ExifInterface.ORIENTATION_NORMAL:
       default:
+        return decodedBitmap;
     }
 
     return rotateBitmap(decodedBitmap, rotationDegrees, flipX, flipY);
@@ -142,11 +294,28 @@ public class BitmapUtils {
 
     return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
   }
+
+  private static int getExifOrientationTag(File file) {
+    try {
+      return new ExifInterface(file.getPath())
+          .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    } catch (IOException e) {
+      Log.e(TAG, "failed to open file to read rotation meta data: " + file, e);
+      return 0;
+    }
+  }
+  /**
+   * Converts YUV_420_888 to NV21 bytebuffer.
+   *
+   * <p>The returned buffer wraps a per-thread scratch array that is overwritten by the next call on
+   * the same thread, so it must be consumed before converting another frame.
+   */
   @RequiresApi(VERSION_CODES.KITKAT)
   private static ByteBuffer yuv420ThreePlanesToNV21(
       Plane[] yuv420888planes, int width, int height) {
     int imageSize = width * height;
-    byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
+    int nv21Size = imageSize + 2 * (imageSize / 4);
+    byte[] out = obtainScratch(yuv420Scratch, nv21Size);
 
     if (areUVPlanesNV21(yuv420888planes, width, height)) {
       yuv420888planes[0].getBuffer().get(out, 0, imageSize);
@@ -156,14 +325,15 @@ public class BitmapUtils {
       vBuffer.get(out, imageSize, 1);
       uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
     } else {
-      unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
+      YuvPlaneUnpacker unpacker = planeUnpacker.get();
+      unpackPlane(unpacker, yuv420888planes[0], width, height, out, 0, 1);
       // Unpack U.
-      unpackPlane(yuv420888planes[1], width, height, out, imageSize + 1, 2);
+      unpackPlane(unpacker, yuv420888planes[1], width, height, out, imageSize + 1, 2);
       // Unpack V.
-      unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
+      unpackPlane(unpacker, yuv420888planes[2], width, height, out, imageSize, 2);
     }
 
-    return ByteBuffer.wrap(out);
+    return ByteBuffer.wrap(out, 0, nv21Size);
   }
   @RequiresApi(VERSION_CODES.KITKAT)
   private static boolean areUVPlanesNV21(Plane[] planes, int width, int height) {
@@ -187,25 +357,23 @@ public class BitmapUtils {
   }
   @TargetApi(VERSION_CODES.KITKAT)
   private static void unpackPlane(
-      Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
+      YuvPlaneUnpacker unpacker,
+      Plane plane,
+      int width,
+      int height,
+      byte[] out,
+      int offset,
+      int pixelStride) {
     ByteBuffer buffer = plane.getBuffer();
     buffer.rewind();
-    int numRow = (buffer.limit() + plane.getRowStride() - 1) / plane.getRowStride();
-    if (numRow == 0) {
-      return;
-    }
-    int scaleFactor = height / numRow;
-    int numCol = width / scaleFactor;
-    int outputPos = offset;
-    int rowStart = 0;
-    for (int row = 0; row < numRow; row++) {
-      int inputPos = rowStart;
-      for (int col = 0; col < numCol; col++) {
-        out[outputPos] = buffer.get(inputPos);
-        outputPos += pixelStride;
-        inputPos += plane.getPixelStride();
-      }
-      rowStart += plane.getRowStride();
-    }
+    unpacker.unpackPlane(
+        buffer,
+        plane.getRowStride(),
+        plane.getPixelStride(),
+        width,
+        height,
+        out,
+        offset,
+        pixelStride);
   }
 }
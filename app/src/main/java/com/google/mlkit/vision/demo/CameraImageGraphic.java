@@ -14,24 +14,107 @@
  * limitations under the License.
  */
 
+
 package com.google.mlkit.vision.demo;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Draw camera image to background. */
+/**
+ * Draw camera image to background.
+ *
+ * <p>The overlay's scene copies share the image with the graphic they were copied from, so the
+ * image is reference counted by a holder they share, and goes back to the {@link BitmapPool} once
+ * neither the graphic nor any copy of it shows it.
+ */
 public class CameraImageGraphic extends Graphic {
 
-  private final Bitmap bitmap;
+  @Nullable private SharedBitmap image;
+
+  public CameraImageGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
 
   public CameraImageGraphic(GraphicOverlay overlay, Bitmap bitmap) {
     super(overlay);
-    this.bitmap = bitmap;
+    setBitmap(bitmap);
+  }
+
+  /**
+   * Replaces the image, returning the previous one to the {@link BitmapPool} once no scene shows
+   * it any more. The graphic takes over {@code bitmap}, which must not be shown by another graphic.
+   */
+  public void setBitmap(@Nullable Bitmap bitmap) {
+    if (image != null && image.bitmap == bitmap) {
+      return;
+    }
+    setImage(bitmap != null ? new SharedBitmap(bitmap) : null);
   }
 
   @Override
   public void draw(Canvas canvas) {
-    canvas.drawBitmap(bitmap, getTransformationMatrix(), null);
+    SharedBitmap currentImage = image;
+    if (currentImage != null) {
+      canvas.drawBitmap(currentImage.bitmap, getTransformationMatrix(), null);
+    }
+  }
+
+  @Override
+  protected int getLayer() {
+    return GraphicOverlay.LAYER_BACKGROUND;
+  }
+
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    CameraImageGraphic copy =
+        recycled != null ? (CameraImageGraphic) recycled : new CameraImageGraphic(getOverlay());
+    if (copy.image != image) {
+      if (image != null) {
+        image.acquire();
+      }
+      copy.setImage(image);
+    }
+    return copy;
+  }
+
+  @Override
+  protected void onRemoved() {
+    setImage(null);
+  }
+
+  /** Shows {@code newImage}, whose reference the caller hands over, releasing the current one. */
+  private void setImage(@Nullable SharedBitmap newImage) {
+    SharedBitmap oldImage = image;
+    image = newImage;
+    if (oldImage != null) {
+      oldImage.release();
+    }
+  }
+
+  /**
+   * A pooled image and the number of graphics showing it. A holder that is dropped without being
+   * released only loses the bitmap to the garbage collector, not to a global table.
+   */
+  private static final class SharedBitmap {
+    final Bitmap bitmap;
+    // Starts with the reference of the graphic the image was set on.
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    SharedBitmap(Bitmap bitmap) {
+      this.bitmap = bitmap;
+    }
+
+    void acquire() {
+      references.incrementAndGet();
+    }
+
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        BitmapPool.getDefault().put(bitmap);
+      }
+    }
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.List;
+
+/**
+ * The choices {@link CameraSource} makes among the sizes and frame rate ranges a camera supports.
+ * Sizes are given as width, height pairs and frame rate ranges as minimum, maximum pairs scaled by
+ * 1000, the way the camera API reports them.
+ */
+public final class CameraSizeSelection {
+
+  /** Difference between two aspect ratios below which they count as equal. */
+  public static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+  private CameraSizeSelection() {}
+
+  /**
+   * Returns the index of the first size in {@code sizes} with the same aspect ratio as {@code
+   * width} x {@code height}, or -1 if there is none.
+   */
+  public static int findSameAspectRatio(int width, int height, List<int[]> sizes) {
+    float aspectRatio = (float) width / (float) height;
+    for (int i = 0; i < sizes.size(); i++) {
+      int[] size = sizes.get(i);
+      float sizeAspectRatio = (float) size[0] / (float) size[1];
+      if (Math.abs(aspectRatio - sizeAspectRatio) < ASPECT_RATIO_TOLERANCE) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the size closest to the desired size, or -1 if {@code sizes} is empty.
+   *
+   * <p>The method for selecting the best size is to minimize the sum of the differences between
+   * the desired values and the actual values for width and height. This is certainly not the only
+   * way to select the best size, but it provides a decent tradeoff between using the closest
+   * aspect ratio vs. using the closest pixel area.
+   */
+  public static int selectClosestSize(List<int[]> sizes, int desiredWidth, int desiredHeight) {
+    int selected = -1;
+    int minDiff = Integer.MAX_VALUE;
+    for (int i = 0; i < sizes.size(); i++) {
+      int[] size = sizes.get(i);
+      int diff = Math.abs(size[0] - desiredWidth) + Math.abs(size[1] - desiredHeight);
+      if (diff < minDiff) {
+        selected = i;
+        minDiff = diff;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Returns the index of the frame rate range closest to the desired frame rate, or -1 if {@code
+   * ranges} is empty.
+   *
+   * <p>The method for selecting the best range is to minimize the sum of the differences between
+   * the desired value and the upper and lower bounds of the range. This may select a range that
+   * the desired value is outside of, but this is often preferred. For example, if the desired frame
+   * rate is 29.97, the range (30, 30) is probably more desirable than the range (15, 30).
+   */
+  public static int selectClosestFpsRange(List<int[]> ranges, float desiredFps) {
+    // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
+    // rates.
+    int desiredFpsScaled = (int) (desiredFps * 1000.0f);
+    int selected = -1;
+    int minDiff = Integer.MAX_VALUE;
+    for (int i = 0; i < ranges.size(); i++) {
+      int[] range = ranges.get(i);
+      int diff = Math.abs(desiredFpsScaled - range[0]) + Math.abs(desiredFpsScaled - range[1]);
+      if (diff < minDiff) {
+        selected = i;
+        minDiff = diff;
+      }
+    }
+    return selected;
+  }
+}
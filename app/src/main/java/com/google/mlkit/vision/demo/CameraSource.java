@@ -24,6 +24,7 @@ import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresPermission;
 import android.util.Log;
@@ -31,12 +32,12 @@ import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.WindowManager;
 import com.google.android.gms.common.images.Size;
+import com.google.mlkit.vision.demo.FramePool.Frame;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import java.io.IOException;
 import java.lang.Thread.State;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
 
 /**
@@ -54,6 +55,7 @@ public class CameraSource {
   public static final int IMAGE_FORMAT = ImageFormat.NV21;
   public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH = 480;
   public static final int DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT = 360;
+  public static final int DEFAULT_FRAME_POOL_SIZE = 4;
 
   private static final String TAG = "MIDemoApp:CameraSource";
 
@@ -64,12 +66,6 @@ public class CameraSource {
    */
   private static final int DUMMY_TEXTURE_NAME = 100;
 
-  /**
-   * If the absolute difference between a preview size aspect ratio and a picture size aspect ratio
-   * is less than this tolerance, they are considered to be the same aspect ratio.
-   */
-  private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
-
   protected Activity activity;
 
   private Camera camera;
@@ -98,20 +94,32 @@ public class CameraSource {
   private Thread processingThread;
 
   private final FrameProcessingRunnable processingRunnable;
+  // Guards swapping, stopping and calling the processor, so that a processor never receives a
+  // frame once it has been replaced or stopped. The processing thread only holds it while handing
+  // a frame over, which does not wait for detection.
   private final Object processorLock = new Object();
 
+  @GuardedBy("processorLock")
+  @Nullable
   private VisionImageProcessor frameProcessor;
 
   /**
-   * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-   * We use byte buffers internally because this is a more efficient way to call into native code
-   * later (avoids a potential copy).
-   *
-   * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-   * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-   * identity ('==') check on the keys.
+   * Pool of preview buffers shared with the camera. Frames are leased to the processing thread and
+   * returned to the camera as soon as their last reference is released.
    */
-  private final IdentityHashMap<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+  @Nullable private FramePool framePool;
+
+  private int framePoolSize = DEFAULT_FRAME_POOL_SIZE;
+
+  // Preview size requested at runtime, overriding the preference; 0 if none.
+  private int requestedPreviewWidth;
+  private int requestedPreviewHeight;
+
+  // Decides which frames reach the frame processor; every frame does if null.
+  @Nullable private volatile FrameScheduler frameScheduler;
+
+  // Records the frames handed to the processing thread, if set.
+  @Nullable private volatile FrameLogWriter frameRecorder;
 
   public CameraSource(Activity activity, GraphicOverlay overlay) {
     this.activity = activity;
@@ -126,8 +134,9 @@ public class CameraSource {
 
   /** Stops the camera and releases the resources of the camera and underlying detector. */
   public void release() {
+    // Stopped first, as the processing thread may need the processor lock before it can exit.
+    stop();
     synchronized (processorLock) {
-      stop();
       processingRunnable.release();
       cleanScreen();
 
@@ -206,6 +215,11 @@ public class CameraSource {
       processingThread = null;
     }
 
+    if (framePool != null) {
+      // Frames still held by a consumer must not be handed back to a released camera.
+      framePool.stop();
+    }
+
     if (camera != null) {
       camera.stopPreview();
       camera.setPreviewCallbackWithBuffer(null);
@@ -220,8 +234,11 @@ public class CameraSource {
       camera = null;
     }
 
+    // No more frames can arrive now, so drop any frame left over for the next start.
+    processingRunnable.discardPendingFrame();
+
     // Release the reference to any image buffers, since these will no longer be in use.
-    bytesToByteBuffer.clear();
+    framePool = null;
   }
 
   /** Changes the facing of the camera. */
@@ -232,6 +249,46 @@ public class CameraSource {
     this.facing = facing;
   }
 
+  /**
+   * Requests a preview size, overriding the preview size preference. The closest supported size is
+   * used. Takes effect the next time the camera is started.
+   */
+  public synchronized void setRequestedPreviewSize(int width, int height) {
+    requestedPreviewWidth = width;
+    requestedPreviewHeight = height;
+  }
+
+  /**
+   * Sets the scheduler that picks the frames handed to the frame processor, or processes every
+   * frame if {@code scheduler} is null. Frames left out are returned to the camera right away.
+   */
+  public void setFrameScheduler(@Nullable FrameScheduler scheduler) {
+    frameScheduler = scheduler;
+  }
+
+  /**
+   * Records every frame handed to the processing thread to {@code recorder}, or stops recording if
+   * {@code recorder} is null. The caller closes the recorder once the camera has stopped.
+   */
+  public void setFrameRecorder(@Nullable FrameLogWriter recorder) {
+    frameRecorder = recorder;
+  }
+
+  /**
+   * Sets the number of preview buffers shared between the camera and the frame processor. Takes
+   * effect the next time the camera is started.
+   *
+   * <p>At least three buffers are needed: two for the camera to fill and one for the frame being
+   * processed. Extra buffers let a processor hold on to a frame for longer than one frame interval
+   * without the camera dropping frames.
+   */
+  public synchronized void setFramePoolSize(int framePoolSize) {
+    if (framePoolSize < 3) {
+      throw new IllegalArgumentException("Frame pool size must be at least 3: " + framePoolSize);
+    }
+    this.framePoolSize = framePoolSize;
+  }
+
   /** Returns the preview size that is currently in use by the underlying camera. */
   public Size getPreviewSize() {
     return previewSize;
@@ -258,7 +315,10 @@ public class CameraSource {
     }
     Camera camera = Camera.open(requestedCameraId);
 
-    SizePair sizePair = PreferenceUtils.getCameraPreviewSizePair(activity, requestedCameraId);
+    SizePair sizePair =
+        requestedPreviewWidth > 0
+            ? selectSizePair(camera, requestedPreviewWidth, requestedPreviewHeight)
+            : PreferenceUtils.getCameraPreviewSizePair(activity, requestedCameraId);
     if (sizePair == null) {
       sizePair =
           selectSizePair(
@@ -307,7 +367,7 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
+    // By default four frame buffers are used for working with the camera:
     //
     //   one for the frame that is currently being executed upon in doing detection
     //   one for the next pending frame to process immediately upon completing detection
@@ -317,12 +377,11 @@ public class CameraSource {
     // used in this code, are needed for the camera to work properly.  Perhaps the camera has
     // one thread for acquiring images, and another thread for calling into user code.  If only
     // three buffers are used, then the camera will spew thousands of warning messages when
-    // detection takes a non-trivial amount of time.
+    // detection takes a non-trivial amount of time.  Consumers that retain frames for longer
+    // should raise the pool size with setFramePoolSize(), which the live preview settings expose.
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    framePool = new FramePool(framePoolSize, getPreviewBufferSize(previewSize));
+    framePool.start(camera::addCallbackBuffer);
 
     return camera;
   }
@@ -359,24 +418,13 @@ public class CameraSource {
    */
   public static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
     List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
-
-    // The method for selecting the best size is to minimize the sum of the differences between
-    // the desired values and the actual values for width and height.  This is certainly not the
-    // only way to select the best size, but it provides a decent tradeoff between using the
-    // closest aspect ratio vs. using the closest pixel area.
-    SizePair selectedPair = null;
-    int minDiff = Integer.MAX_VALUE;
+    List<int[]> previewSizes = new ArrayList<>(validPreviewSizes.size());
     for (SizePair sizePair : validPreviewSizes) {
-      Size size = sizePair.preview;
-      int diff =
-          Math.abs(size.getWidth() - desiredWidth) + Math.abs(size.getHeight() - desiredHeight);
-      if (diff < minDiff) {
-        selectedPair = sizePair;
-        minDiff = diff;
-      }
+      previewSizes.add(new int[] {sizePair.preview.getWidth(), sizePair.preview.getHeight()});
     }
-
-    return selectedPair;
+    int selected =
+        CameraSizeSelection.selectClosestSize(previewSizes, desiredWidth, desiredHeight);
+    return selected >= 0 ? validPreviewSizes.get(selected) : null;
   }
 
   /**
@@ -413,19 +461,20 @@ public class CameraSource {
     Camera.Parameters parameters = camera.getParameters();
     List<Camera.Size> supportedPreviewSizes = parameters.getSupportedPreviewSizes();
     List<Camera.Size> supportedPictureSizes = parameters.getSupportedPictureSizes();
+    List<int[]> pictureSizes = new ArrayList<>(supportedPictureSizes.size());
+    for (Camera.Size pictureSize : supportedPictureSizes) {
+      pictureSizes.add(new int[] {pictureSize.width, pictureSize.height});
+    }
     List<SizePair> validPreviewSizes = new ArrayList<>();
     for (Camera.Size previewSize : supportedPreviewSizes) {
-      float previewAspectRatio = (float) previewSize.width / (float) previewSize.height;
-
-      // By looping through the picture sizes in order, we favor the higher resolutions.
+      // By looking through the picture sizes in order, we favor the higher resolutions.
       // We choose the highest resolution in order to support taking the full resolution
       // picture later.
-      for (Camera.Size pictureSize : supportedPictureSizes) {
-        float pictureAspectRatio = (float) pictureSize.width / (float) pictureSize.height;
-        if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
-          validPreviewSizes.add(new SizePair(previewSize, pictureSize));
-          break;
-        }
+      int picture =
+          CameraSizeSelection.findSameAspectRatio(
+              previewSize.width, previewSize.height, pictureSizes);
+      if (picture >= 0) {
+        validPreviewSizes.add(new SizePair(previewSize, supportedPictureSizes.get(picture)));
       }
     }
 
@@ -452,28 +501,12 @@ public class CameraSource {
    */
   @SuppressLint("InlinedApi")
   private static int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
-    // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
-    // rates.
-    int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
-
-    // The method for selecting the best range is to minimize the sum of the differences between
-    // the desired value and the upper and lower bounds of the range.  This may select a range
-    // that the desired value is outside of, but this is often preferred.  For example, if the
-    // desired frame rate is 29.97, the range (30, 30) is probably more desirable than the
-    // range (15, 30).
-    int[] selectedFpsRange = null;
-    int minDiff = Integer.MAX_VALUE;
+    // The ranges are indexed by Camera.Parameters.PREVIEW_FPS_MIN_INDEX and PREVIEW_FPS_MAX_INDEX,
+    // which are 0 and 1.
     List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
-    for (int[] range : previewFpsRangeList) {
-      int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
-      int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
-      int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
-      if (diff < minDiff) {
-        selectedFpsRange = range;
-        minDiff = diff;
-      }
-    }
-    return selectedFpsRange;
+    int selected =
+        CameraSizeSelection.selectClosestFpsRange(previewFpsRangeList, desiredPreviewFps);
+    return selected >= 0 ? previewFpsRangeList.get(selected) : null;
   }
 
   /**
@@ -526,29 +559,14 @@ public class CameraSource {
   }
 
   /**
-   * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-   * camera preview size and the format of the camera image.
-   *
-   * @return a new preview buffer of the appropriate size for the current camera settings
+   * Returns the size of one buffer for the camera preview callback. The size of the buffer is based
+   * off of the camera preview size and the format of the camera image.
    */
   @SuppressLint("InlinedApi")
-  private byte[] createPreviewBuffer(Size previewSize) {
+  private static int getPreviewBufferSize(Size previewSize) {
     int bitsPerPixel = ImageFormat.getBitsPerPixel(IMAGE_FORMAT);
     long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-    int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-    // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-    // should guarantee that there will be an array to work with.
-    byte[] byteArray = new byte[bufferSize];
-    ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-    if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-      // I don't think that this will ever happen.  But if it does, then we wouldn't be
-      // passing the preview content to the underlying detector later.
-      throw new IllegalStateException("Failed to create valid buffer for camera source.");
-    }
-
-    bytesToByteBuffer.put(byteArray, buffer);
-    return byteArray;
+    return (int) Math.ceil(sizeInBits / 8.0d) + 1;
   }
 
   // ==============================================================================================
@@ -582,15 +600,21 @@ public class CameraSource {
    * frames come in, the most recent frame is held onto as pending. As soon as detection and its
    * associated processing is done for the previous frame, detection on the mostly recently received
    * frame will immediately start on the same thread.
+   *
+   * <p>The pending frame lives in a {@link FrameMailbox}. The camera thread puts the new frame in
+   * and releases whatever it replaced, and the processing thread takes it out, so neither side
+   * ever blocks on the other. Replaced frames are counted in {@link
+   * MetricsRegistry#FRAMES_SUPERSEDED} and the time spent waiting for frames in {@link
+   * MetricsRegistry#FRAME_WAIT}.
    */
   private class FrameProcessingRunnable implements Runnable {
 
-    // This lock guards all of the member variables below.
-    private final Object lock = new Object();
-    private boolean active = true;
-
-    // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    // The newest frame awaiting processing. Open while the runnable is active.
+    private final FrameMailbox<Frame> pendingFrame = new FrameMailbox<>();
+    private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private final RateMeter supersededFrameRate =
+        metrics.getRateMeter(MetricsRegistry.FRAMES_SUPERSEDED);
+    private final LatencyHistogram frameWaitTime = metrics.getHistogram(MetricsRegistry.FRAME_WAIT);
 
     FrameProcessingRunnable() {}
 
@@ -605,108 +629,122 @@ public class CameraSource {
 
     /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
     void setActive(boolean active) {
-      synchronized (lock) {
-        this.active = active;
-        lock.notifyAll();
-      }
+      pendingFrame.setOpen(active);
     }
 
     /**
-     * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-     * present) back to the camera, and keeps a pending reference to the frame data for future use.
+     * Sets the frame data received from the camera. This releases the previous unused frame (if
+     * present) back to the pool, and keeps a pending reference to the frame data for future use.
      */
-    @SuppressWarnings("ByteBufferBackingArray")
     void setNextFrame(byte[] data, Camera camera) {
-      synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
-        }
-
-        if (!bytesToByteBuffer.containsKey(data)) {
-          Log.d(
-              TAG,
-              "Skipping frame. Could not find ByteBuffer associated with the image "
-                  + "data from the camera.");
-          return;
-        }
+      FramePool pool = framePool;
+      Frame frame = pool != null ? pool.lease(data) : null;
+      if (frame == null) {
+        Log.d(
+            TAG,
+            "Skipping frame. Could not find pooled frame associated with the image "
+                + "data from the camera.");
+        return;
+      }
 
-        pendingFrameData = bytesToByteBuffer.get(data);
+      // Wakes the processor thread if it is waiting on the next frame (see below).
+      Frame superseded = pendingFrame.put(frame);
+      if (superseded != null) {
+        supersededFrameRate.mark();
+        superseded.release();
+      }
+    }
 
-        // Notify the processor thread if it is waiting on the next frame (see below).
-        lock.notifyAll();
+    /** Releases the pending frame, if any. Only called once the camera has stopped. */
+    void discardPendingFrame() {
+      Frame frame = pendingFrame.clear();
+      if (frame != null) {
+        frame.release();
       }
     }
 
     /**
      * As long as the processing thread is active, this executes detection on frames continuously.
      * The next pending frame is either immediately available or hasn't been received yet. Once it
-     * is available, we transfer the frame info to local variables and run detection on that frame.
-     * It immediately loops back for the next frame without pausing.
+     * is available, we take it out of the mailbox and run detection on that frame. It immediately
+     * loops back for the next frame without pausing.
      *
      * <p>If detection takes longer than the time in between new frames from the camera, this will
      * mean that this loop will run without ever waiting on a frame, avoiding any context switching
      * or frame acquisition time latency.
      *
-     * <p>If you find that this is using more CPU than you'd like, you should probably decrease the
-     * FPS setting above to allow for some idle time in between frames.
+     * <p>If you find that this is using more CPU than you'd like, set a {@link FrameScheduler} to
+     * leave out frames, or decrease the FPS setting above to allow for some idle time in between
+     * frames.
      */
     @SuppressLint("InlinedApi")
-    @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
     @Override
     public void run() {
-      ByteBuffer data;
-
       while (true) {
-        synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
-            try {
-              // Wait for the next frame to be received from the camera, since we
-              // don't have it yet.
-              lock.wait();
-            } catch (InterruptedException e) {
-              Log.d(TAG, "Frame processing loop terminated.", e);
-              return;
-            }
+        // Waits for the next frame to be received from the camera if we don't have it yet. Taking
+        // the frame out of the mailbox ensures that this buffer isn't recycled back to the camera
+        // before we are done using that data.
+        long waitStartNanos = System.nanoTime();
+        Frame frame = pendingFrame.take();
+        if (frame == null) {
+          // The camera source was stopped or released.
+          if (Thread.interrupted()) {
+            Log.d(TAG, "Frame processing loop terminated.");
           }
+          break;
+        }
 
-          if (!active) {
-            // Exit the loop once this camera source is stopped or released.  We check
-            // this here, immediately after the wait() above, to handle the case where
-            // setActive(false) had been called, triggering the termination of this
-            // loop.
-            return;
-          }
+        long timestampNanos = System.nanoTime();
+        frameWaitTime.record(timestampNanos - waitStartNanos);
+        recordFrame(frame, timestampNanos);
 
-          // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-          // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
+        FrameScheduler scheduler = frameScheduler;
+        if (scheduler != null && !scheduler.shouldProcess(timestampNanos)) {
+          frame.release();
+          continue;
         }
 
-        // The code below needs to run outside of synchronization, because this will allow
-        // the camera to add pending frame(s) while we are running detection on the current
-        // frame.
-
         try {
           synchronized (processorLock) {
-            frameProcessor.processByteBuffer(
-                data,
-                new FrameMetadata.Builder()
-                    .setWidth(previewSize.getWidth())
-                    .setHeight(previewSize.getHeight())
-                    .setRotation(rotationDegrees)
-                    .build(),
-                graphicOverlay);
+            if (frameProcessor != null) {
+              frameProcessor.processByteBuffer(
+                  frame.getBuffer(),
+                  new FrameMetadata.Builder()
+                      .setWidth(previewSize.getWidth())
+                      .setHeight(previewSize.getHeight())
+                      .setRotation(rotationDegrees)
+                      .build(),
+                  graphicOverlay);
+            }
           }
         } catch (Exception t) {
           Log.e(TAG, "Exception thrown from receiver.", t);
         } finally {
-          camera.addCallbackBuffer(data.array());
+          frame.release();
         }
       }
     }
+
+    private void recordFrame(Frame frame, long timestampNanos) {
+      FrameLogWriter recorder = frameRecorder;
+      if (recorder == null) {
+        return;
+      }
+      // The processor may have left the position anywhere, so the whole buffer is recorded.
+      ByteBuffer data = frame.getBuffer().duplicate();
+      data.rewind();
+      try {
+        recorder.append(
+            data,
+            previewSize.getWidth(),
+            previewSize.getHeight(),
+            rotationDegrees,
+            timestampNanos);
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to record frame, recording stopped.", e);
+        frameRecorder = null;
+      }
+    }
   }
 
   /** Cleans up graphicOverlay and child classes can do their cleanups as well . */
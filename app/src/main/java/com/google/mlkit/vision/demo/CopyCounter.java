@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many times the data of each frame was copied on its way through a frame processor,
+ * keeping the total and the largest count seen for a single frame.
+ *
+ * <p>Recording is lock-free and never allocates.
+ */
+public final class CopyCounter {
+
+  private final AtomicLong frameCount = new AtomicLong();
+  private final AtomicLong copyCount = new AtomicLong();
+  private final AtomicLong maxCopiesPerFrame = new AtomicLong();
+
+  /** Records a frame that has left the processor after its data was copied {@code copies} times. */
+  public void record(int copies) {
+    frameCount.incrementAndGet();
+    copyCount.addAndGet(copies);
+    long max;
+    while (copies > (max = maxCopiesPerFrame.get())
+        && !maxCopiesPerFrame.compareAndSet(max, copies)) {}
+  }
+
+  /** Returns the number of recorded frames. */
+  public long getFrameCount() {
+    return frameCount.get();
+  }
+
+  /** Returns the number of copies made of all recorded frames. */
+  public long getCopyCount() {
+    return copyCount.get();
+  }
+
+  /** Returns the largest number of copies made of a single frame, or 0 if there are none. */
+  public long getMaxCopiesPerFrame() {
+    return maxCopiesPerFrame.get();
+  }
+
+  /** Clears all counts. */
+  public void reset() {
+    frameCount.set(0);
+    copyCount.set(0);
+    maxCopiesPerFrame.set(0);
+  }
+
+  /** Appends a JSON object with the frame and copy counts. */
+  public void appendJson(StringBuilder out) {
+    out.append("{\"frames\":")
+        .append(getFrameCount())
+        .append(",\"copies\":")
+        .append(getCopyCount())
+        .append(",\"max_per_frame\":")
+        .append(getMaxCopiesPerFrame())
+        .append('}');
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "frames=%d copies=%d max/frame=%d",
+        getFrameCount(),
+        getCopyCount(),
+        getMaxCopiesPerFrame());
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of ML Kit detector clients, keyed by their options.
+ *
+ * <p>Creating a client loads its model, which takes hundreds of milliseconds for the larger ones.
+ * Processors acquire their client here instead of creating it, and release it when they stop. A
+ * client whose reference count drops to zero is kept warm for {@link #IDLE_TIMEOUT_MS} before it
+ * is closed, so switching back to a recently used model, or resuming the activity, reuses the
+ * loaded client.
+ */
+public final class DetectorRegistry {
+
+  private static final String TAG = "DetectorRegistry";
+
+  /** How long an unused client stays open before it is closed. */
+  public static final long IDLE_TIMEOUT_MS = 30_000;
+
+  /**
+   * Creates a detector client on a cache miss.
+   *
+   * @param <D> the client type
+   */
+  public interface Factory<D extends Closeable> {
+    D create();
+  }
+
+  private static final DetectorRegistry instance = new DetectorRegistry();
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  @GuardedBy("this")
+  private final Map<Object, Entry> entries = new HashMap<>();
+
+  public static DetectorRegistry getInstance() {
+    return instance;
+  }
+
+  /**
+   * Returns the client cached for {@code key}, creating it with {@code factory} if there is none.
+   * Every call must be balanced by a call to {@link #release}.
+   *
+   * @param key identifies the client configuration; ML Kit options classes implement {@code
+   *     equals} and can be used directly
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized <D extends Closeable> D acquire(Object key, Factory<D> factory) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(key, factory.create());
+      entries.put(key, entry);
+    } else if (entry.evictTask != null) {
+      handler.removeCallbacks(entry.evictTask);
+      entry.evictTask = null;
+    }
+    entry.refCount++;
+    return (D) entry.detector;
+  }
+
+  /**
+   * Gives back a client obtained from {@link #acquire}. The client is closed once it has not been
+   * acquired again for {@link #IDLE_TIMEOUT_MS}.
+   */
+  public synchronized void release(Closeable detector) {
+    Entry entry = findEntry(detector);
+    if (entry == null || entry.refCount == 0) {
+      Log.w(TAG, "Released a detector that is not acquired: " + detector);
+      return;
+    }
+    entry.refCount--;
+    if (entry.refCount == 0) {
+      final Entry idleEntry = entry;
+      idleEntry.evictTask = () -> evict(idleEntry);
+      handler.postDelayed(idleEntry.evictTask, IDLE_TIMEOUT_MS);
+    }
+  }
+
+  /** Closes every client that is not currently acquired, without waiting for the timeout. */
+  public void evictIdle() {
+    List<Entry> idle = new ArrayList<>();
+    synchronized (this) {
+      for (Entry entry : entries.values()) {
+        if (entry.refCount == 0) {
+          idle.add(entry);
+        }
+      }
+    }
+    for (Entry entry : idle) {
+      evict(entry);
+    }
+  }
+
+  private void evict(Entry entry) {
+    synchronized (this) {
+      // The client may have been acquired again since the eviction was scheduled.
+      if (entry.refCount > 0 || entries.get(entry.key) != entry) {
+        return;
+      }
+      entries.remove(entry.key);
+      if (entry.evictTask != null) {
+        handler.removeCallbacks(entry.evictTask);
+        entry.evictTask = null;
+      }
+    }
+    try {
+      entry.detector.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Exception thrown while trying to close detector: " + entry.key, e);
+    }
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private Entry findEntry(Closeable detector) {
+    for (Entry entry : entries.values()) {
+      if (entry.detector == detector) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private static final class Entry {
+    final Object key;
+    final Closeable detector;
+    int refCount;
+    @Nullable Runnable evictTask;
+
+    Entry(Object key, Closeable detector) {
+      this.key = key;
+      this.detector = detector;
+    }
+  }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Rect;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous structured diagnostics for the frame pipeline.
+ *
+ * <p>Code on the camera, processing and UI threads records events instead of logging directly. An
+ * event is a name plus a few key/value fields, written into a preallocated slot of a lock-free
+ * ring buffer, so recording neither formats strings nor blocks on logcat. A background thread
+ * formats the events and hands them to a {@link Sink}, logcat by default. Events are dropped and
+ * counted when the ring is full.
+ *
+ * <p>Events below the current level are rejected by {@link #obtain} before anything is touched,
+ * so disabled events cost a comparison and allocate nothing:
+ *
+ * <pre>{@code
+ * Diagnostics.Event event = Diagnostics.obtain(Log.VERBOSE, TAG, "face Euler Angle Y: ");
+ * if (event != null) {
+ *   event.append(face.getHeadEulerAngleY()).commit();
+ * }
+ * }</pre>
+ *
+ * <p>Fields added with {@code put} are formatted as {@code key=value} after the name, while values
+ * added with {@code append} follow the name directly, so an event can reproduce an existing log
+ * line word for word.
+ *
+ * <p>Levels are the {@link Log} priorities. Events below {@link #MIN_LEVEL} are compiled out
+ * wherever the check against it is constant. Above that, everything is recorded by default, as
+ * the {@link Log#v} calls this replaces always were; {@link #setLevel} raises the level to make
+ * finer events free.
+ */
+public final class Diagnostics {
+
+  private static final String TAG = "Diagnostics";
+
+  /** The lowest level that can ever be enabled. Raise it to strip finer events from the build. */
+  public static final int MIN_LEVEL = Log.VERBOSE;
+
+  /** Number of events the ring buffer holds. A power of two. */
+  public static final int CAPACITY = 1024;
+
+  /** The most fields one event can carry; further fields are ignored. */
+  public static final int MAX_FIELDS = 8;
+
+  private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  /** Receives formatted events on the diagnostics thread. */
+  public interface Sink {
+    void write(int level, String tag, CharSequence message);
+  }
+
+  /** Writes events to logcat. */
+  public static final Sink LOGCAT =
+      (level, tag, message) -> Log.println(level, tag, message.toString());
+
+  /** Returns a sink that appends events to {@code file}, one per line. */
+  public static Sink fileSink(File file) {
+    return new FileSink(file);
+  }
+
+  private static final Event[] slots = new Event[CAPACITY];
+  // Sequence of the next slot to claim, and of the next slot to drain.
+  private static final AtomicLong writeSequence = new AtomicLong();
+  private static final AtomicLong readSequence = new AtomicLong();
+  private static final AtomicLong droppedEvents = new AtomicLong();
+  private static final AtomicBoolean drainerStarted = new AtomicBoolean();
+
+  private static volatile int level = MIN_LEVEL;
+  private static volatile Sink sink = LOGCAT;
+
+  static {
+    for (int i = 0; i < CAPACITY; i++) {
+      slots[i] = new Event(i - CAPACITY);
+    }
+  }
+
+  /** Returns whether events of {@code level} are currently recorded. */
+  public static boolean isEnabled(int level) {
+    return level >= MIN_LEVEL && level >= Diagnostics.level;
+  }
+
+  /** Sets the lowest level recorded, e.g. {@link Log#VERBOSE} to record everything. */
+  public static void setLevel(int level) {
+    Diagnostics.level = level;
+  }
+
+  /** Replaces the sink that events are written to. */
+  public static void setSink(Sink sink) {
+    Diagnostics.sink = sink;
+  }
+
+  /** Returns the number of events dropped because the ring buffer was full. */
+  public static long getDroppedEventCount() {
+    return droppedEvents.get();
+  }
+
+  /**
+   * Starts recording an event, or returns null if {@code level} is disabled or the ring buffer is
+   * full. A returned event must be {@linkplain Event#commit() committed} promptly, without
+   * anything that can throw in between, as the events behind it are not drained until it is.
+   *
+   * @param name a constant describing the event; it is not copied
+   */
+  @Nullable
+  public static Event obtain(int level, String tag, String name) {
+    if (!isEnabled(level)) {
+      return null;
+    }
+    long sequence;
+    do {
+      sequence = writeSequence.get();
+      if (sequence - readSequence.get() >= CAPACITY) {
+        droppedEvents.incrementAndGet();
+        return null;
+      }
+    } while (!writeSequence.compareAndSet(sequence, sequence + 1));
+    startDrainerIfNeeded();
+
+    Event event = slots[(int) (sequence & (CAPACITY - 1))];
+    event.level = level;
+    event.tag = tag;
+    event.name = name;
+    event.fieldCount = 0;
+    event.claimedSequence = sequence;
+    return event;
+  }
+
+  /** Records an event without fields. */
+  public static void log(int level, String tag, String name) {
+    Event event = obtain(level, tag, name);
+    if (event != null) {
+      event.commit();
+    }
+  }
+
+  private static void startDrainerIfNeeded() {
+    if (drainerStarted.get() || !drainerStarted.compareAndSet(false, true)) {
+      return;
+    }
+    Thread drainer = new Thread(Diagnostics::drainLoop, TAG);
+    drainer.setDaemon(true);
+    drainer.setPriority(Thread.MIN_PRIORITY);
+    drainer.start();
+  }
+
+  private static void drainLoop() {
+    StringBuilder message = new StringBuilder();
+    long dropsReported = 0;
+    while (true) {
+      long sequence = readSequence.get();
+      Event event = slots[(int) (sequence & (CAPACITY - 1))];
+      if (event.publishedSequence != sequence) {
+        long drops = droppedEvents.get();
+        if (drops != dropsReported) {
+          sink.write(Log.WARN, TAG, "Dropped " + (drops - dropsReported) + " events");
+          dropsReported = drops;
+        }
+        LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+        continue;
+      }
+      message.setLength(0);
+      event.format(message);
+      int eventLevel = event.level;
+      String eventTag = event.tag;
+      event.clear();
+      // Frees the slot for producers only once it has been copied out.
+      readSequence.set(sequence + 1);
+      try {
+        sink.write(eventLevel, eventTag, message);
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Diagnostics sink failed", e);
+      }
+    }
+  }
+
+  /** An event being recorded. Only valid between {@link #obtain} and {@link #commit()}. */
+  public static final class Event {
+    private static final byte KIND_LONG = 0;
+    private static final byte KIND_DOUBLE = 1;
+    private static final byte KIND_OBJECT = 2;
+    private static final byte KIND_FLOAT = 3;
+    private static final byte KIND_FIXED_POINT = 4;
+    private static final byte KIND_RECT = 5;
+
+    // Keys of the fields, or null for appended values.
+    private final String[] keys = new String[MAX_FIELDS];
+    private final byte[] kinds = new byte[MAX_FIELDS];
+    private final byte[] fractionDigits = new byte[MAX_FIELDS];
+    private final long[] numbers = new long[MAX_FIELDS];
+    private final Object[] objects = new Object[MAX_FIELDS];
+    private int fieldCount;
+    private int level;
+    private String tag = "";
+    private String name = "";
+    private long claimedSequence;
+    private volatile long publishedSequence;
+
+    private Event(long initialSequence) {
+      publishedSequence = initialSequence;
+    }
+
+    public Event put(String key, long value) {
+      return addNumber(key, KIND_LONG, value);
+    }
+
+    public Event put(String key, float value) {
+      return addNumber(key, KIND_FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public Event put(String key, double value) {
+      return addNumber(key, KIND_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Adds a field whose value is formatted with {@code toString()} on the diagnostics thread, so
+     * it must not be modified afterwards. Arrays are formatted element by element.
+     */
+    public Event put(String key, @Nullable Object value) {
+      return addObject(key, KIND_OBJECT, value);
+    }
+
+    /** Appends {@code value} to the message as it is. */
+    public Event append(long value) {
+      return addNumber(null, KIND_LONG, value);
+    }
+
+    /** Appends {@code value} to the message as {@link Float#toString} formats it. */
+    public Event append(float value) {
+      return addNumber(null, KIND_FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    /** Appends {@code value} to the message with a fixed number of fraction digits. */
+    public Event append(double value, int fractionDigits) {
+      if (fieldCount < MAX_FIELDS) {
+        this.fractionDigits[fieldCount] = (byte) fractionDigits;
+      }
+      return addNumber(null, KIND_FIXED_POINT, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Appends {@code rect} to the message as {@link Rect#flattenToString} formats it, on the
+     * diagnostics thread, so it must not be modified afterwards.
+     */
+    public Event append(@Nullable Rect rect) {
+      return addObject(null, KIND_RECT, rect);
+    }
+
+    /**
+     * Appends {@code value} to the message, formatted on the diagnostics thread as for {@link
+     * #put(String, Object)}. Constant strings can be appended the same way.
+     */
+    public Event append(@Nullable Object value) {
+      return addObject(null, KIND_OBJECT, value);
+    }
+
+    /** Hands the event over to the diagnostics thread. */
+    public void commit() {
+      publishedSequence = claimedSequence;
+    }
+
+    private Event addNumber(@Nullable String key, byte kind, long bits) {
+      if (fieldCount < MAX_FIELDS) {
+        keys[fieldCount] = key;
+        kinds[fieldCount] = kind;
+        numbers[fieldCount++] = bits;
+      }
+      return this;
+    }
+
+    private Event addObject(@Nullable String key, byte kind, @Nullable Object value) {
+      if (fieldCount < MAX_FIELDS) {
+        keys[fieldCount] = key;
+        kinds[fieldCount] = kind;
+        objects[fieldCount++] = value;
+      }
+      return this;
+    }
+
+    private void format(StringBuilder out) {
+      out.append(name);
+      for (int i = 0; i < fieldCount; i++) {
+        if (keys[i] != null) {
+          out.append(' ').append(keys[i]).append('=');
+        }
+        switch (kinds[i]) {
+          case KIND_LONG:
+            out.append(numbers[i]);
+            break;
+          case KIND_FLOAT:
+            out.append(Float.intBitsToFloat((int) numbers[i]));
+            break;
+          case KIND_DOUBLE:
+            out.append(Double.longBitsToDouble(numbers[i]));
+            break;
+          case KIND_FIXED_POINT:
+            FixedPointFormat.append(out, Double.longBitsToDouble(numbers[i]), fractionDigits[i]);
+            break;
+          case KIND_RECT:
+            Rect rect = (Rect) objects[i];
+            out.append(rect == null ? null : rect.flattenToString());
+            break;
+          default:
+            Object value = objects[i];
+            out.append(value instanceof Object[] ? Arrays.toString((Object[]) value) : value);
+        }
+      }
+    }
+
+    private void clear() {
+      Arrays.fill(objects, 0, fieldCount, null);
+      Arrays.fill(keys, 0, fieldCount, null);
+    }
+  }
+
+  private static final class FileSink implements Sink {
+    private final File file;
+    @Nullable private Writer writer;
+
+    FileSink(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public void write(int level, String tag, CharSequence message) {
+      try {
+        if (writer == null) {
+          writer = new FileWriter(file, /* append= */ true);
+        }
+        writer
+            .append(String.valueOf(System.currentTimeMillis()))
+            .append(' ')
+            .append(tag)
+            .append(": ")
+            .append(message)
+            .append('\n');
+        writer.flush();
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to write diagnostics to " + file, e);
+      }
+    }
+  }
+
+  private Diagnostics() {}
+}
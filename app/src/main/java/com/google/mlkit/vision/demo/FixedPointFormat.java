@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo;
+
+/**
+ * Formats decimal numbers with a fixed number of fraction digits into a reused {@link
+ * StringBuilder}, giving the same digits as {@code String.format(Locale.US, "%.2f", value)} for
+ * the values the overlay shows without allocating a {@link java.util.Formatter} and a string per
+ * call.
+ *
+ * <p>Two cases differ from {@code String.format}. A negative value that rounds to zero is written
+ * without a minus sign. A value whose shortest decimal form ends in a 5 exactly at the rounding
+ * digit, e.g. 1.005, is rounded by its binary value, which may lie just below the half.
+ */
+public final class FixedPointFormat {
+
+  private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+  /**
+   * Appends {@code value} rounded half up to {@code fractionDigits} digits after the decimal point.
+   *
+   * @param fractionDigits between 0 and 6
+   */
+  public static StringBuilder append(StringBuilder out, double value, int fractionDigits) {
+    if (fractionDigits < 0 || fractionDigits >= POWERS_OF_TEN.length) {
+      throw new IllegalArgumentException(
+          "Unsupported number of fraction digits: " + fractionDigits);
+    }
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return out.append(value);
+    }
+    long scale = POWERS_OF_TEN[fractionDigits];
+    long scaled = Math.round(Math.abs(value) * scale);
+    if (value < 0 && scaled != 0) {
+      out.append('-');
+    }
+    out.append(scaled / scale);
+    if (fractionDigits > 0) {
+      out.append('.');
+      long fraction = scaled % scale;
+      for (long digit = scale / 10; digit > 0; digit /= 10) {
+        out.append((char) ('0' + fraction / digit % 10));
+      }
+    }
+    return out;
+  }
+
+  private FixedPointFormat() {}
+}
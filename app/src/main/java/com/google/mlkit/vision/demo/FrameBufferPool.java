@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reusable buffers for the copies a frame processor keeps of camera frames, either on the Java
+ * heap or in direct (native) memory.
+ *
+ * <p>Direct buffers are sized in multiples of {@link #ALIGNMENT} bytes, so consecutive frames
+ * never share a cache line. Their native address is left to the runtime, since neither Java 8 nor
+ * the Android API levels this app targets can align a direct buffer to more than 8 bytes.
+ *
+ * <p>Buffers are taken with {@link #acquire} and given back with {@link #release} from any thread.
+ */
+public final class FrameBufferPool {
+
+  /** The granularity of the capacity of direct buffers, the size of a cache line. */
+  public static final int ALIGNMENT = 64;
+
+  private final boolean isDirect;
+  private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+  private volatile boolean isClosed;
+
+  /** @param isDirect whether buffers are allocated in direct memory instead of on the heap */
+  public FrameBufferPool(boolean isDirect) {
+    this.isDirect = isDirect;
+  }
+
+  public boolean isDirect() {
+    return isDirect;
+  }
+
+  /**
+   * Returns a buffer with room for at least {@code size} bytes, positioned at 0 and limited to
+   * {@code size}. Heap buffers are backed by an accessible array starting at offset 0.
+   */
+  public ByteBuffer acquire(int size) {
+    ByteBuffer buffer = buffers.poll();
+    if (buffer == null || buffer.capacity() < size) {
+      // A buffer that is too small is dropped, so the pool settles on the largest frame size.
+      buffer = allocate(size);
+    }
+    buffer.clear();
+    buffer.limit(size);
+    return buffer;
+  }
+
+  /** Returns a buffer obtained from {@link #acquire} to the pool, or drops it once closed. */
+  public void release(ByteBuffer buffer) {
+    if (isClosed) {
+      return;
+    }
+    buffers.offer(buffer);
+    if (isClosed) {
+      // Closed meanwhile, possibly before the buffer went in.
+      buffers.clear();
+    }
+  }
+
+  /**
+   * Drops the pooled buffers and any released afterwards, so that their memory can be reclaimed.
+   * Buffers can still be acquired, but are no longer pooled.
+   */
+  public void close() {
+    isClosed = true;
+    buffers.clear();
+  }
+
+  private ByteBuffer allocate(int size) {
+    if (!isDirect) {
+      return ByteBuffer.allocate(size);
+    }
+    int capacity = (size + ALIGNMENT - 1) & -ALIGNMENT;
+    return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+  }
+}
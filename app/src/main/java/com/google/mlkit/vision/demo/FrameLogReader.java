@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames of a log recorded by {@link FrameLogWriter}, in order.
+ *
+ * <p>The file is memory-mapped in windows of at least {@link #WINDOW_SIZE}, so logs larger than the
+ * address space a single mapping can cover are read without copying. The data of the current frame
+ * is a read-only view of the mapping and stays valid until {@link #next} is called again.
+ */
+public final class FrameLogReader implements Closeable {
+
+  /** {@code MLKF} in ASCII. */
+  static final int MAGIC = 0x4D4C4B46;
+
+  static final int VERSION = 1;
+  static final int FILE_HEADER_SIZE = 8;
+  static final int RECORD_HEADER_SIZE = 24;
+
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long fileSize;
+
+  private MappedByteBuffer window;
+  private long windowStart;
+  // File offset of the next record.
+  private long nextOffset = FILE_HEADER_SIZE;
+
+  private int width;
+  private int height;
+  private int rotation;
+  private long timestampNanos;
+  private ByteBuffer data;
+
+  public FrameLogReader(File file) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.fileSize = channel.size();
+    if (fileSize < FILE_HEADER_SIZE) {
+      close();
+      throw new IOException("Not a frame log: " + file);
+    }
+    mapWindow(0, FILE_HEADER_SIZE);
+    int magic = window.getInt(0);
+    int version = window.getInt(4);
+    if (magic != MAGIC || version != VERSION) {
+      close();
+      throw new IOException("Unsupported frame log " + file + ", version " + version);
+    }
+  }
+
+  /**
+   * Moves to the next frame. Returns false at the end of the log, including the unused tail of a
+   * log whose writer was not closed.
+   */
+  public boolean next() throws IOException {
+    data = null;
+    if (fileSize - nextOffset < RECORD_HEADER_SIZE) {
+      return false;
+    }
+    ensureMapped(nextOffset, RECORD_HEADER_SIZE);
+    int index = (int) (nextOffset - windowStart);
+    int size = window.getInt(index);
+    int frameWidth = window.getInt(index + 4);
+    int frameHeight = window.getInt(index + 8);
+    if (size <= 0 || frameWidth <= 0 || frameHeight <= 0) {
+      return false;
+    }
+    long recordSize = RECORD_HEADER_SIZE + (long) size;
+    if (fileSize - nextOffset < recordSize) {
+      // A record cut short by a crash.
+      return false;
+    }
+    ensureMapped(nextOffset, recordSize);
+    index = (int) (nextOffset - windowStart);
+    width = frameWidth;
+    height = frameHeight;
+    rotation = window.getInt(index + 12);
+    timestampNanos = window.getLong(index + 16);
+
+    ByteBuffer view = window.duplicate();
+    view.position(index + RECORD_HEADER_SIZE);
+    view.limit(index + RECORD_HEADER_SIZE + size);
+    data = view.slice().asReadOnlyBuffer();
+    nextOffset += recordSize;
+    return true;
+  }
+
+  /** Goes back to before the first frame. */
+  public void rewind() {
+    data = null;
+    nextOffset = FILE_HEADER_SIZE;
+  }
+
+  /** Returns the NV21 data of the current frame. */
+  public ByteBuffer getData() {
+    if (data == null) {
+      throw new IllegalStateException("No current frame");
+    }
+    return data;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  /** Returns the capture time of the current frame on the recording device's monotonic clock. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /** Returns the file offset just past the last frame read. */
+  long getEndOffset() {
+    return nextOffset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    data = null;
+    file.close();
+  }
+
+  private void ensureMapped(long offset, long size) throws IOException {
+    if (window != null && offset >= windowStart && offset + size <= windowStart + window.limit()) {
+      return;
+    }
+    mapWindow(offset, size);
+  }
+
+  private void mapWindow(long offset, long minSize) throws IOException {
+    long size = Math.min(Math.max(WINDOW_SIZE, minSize), fileSize - offset);
+    windowStart = offset;
+    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+  }
+}
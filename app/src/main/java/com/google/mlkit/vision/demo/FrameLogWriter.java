@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records camera frames to an append-only frame log, so that a live session can be replayed with
+ * {@link FrameReplayer} or read back with {@link FrameLogReader} on a machine without a camera.
+ *
+ * <p>A log starts with the magic number {@code MLKF} and a format version, both 32-bit ints. Each
+ * frame follows as a record of its data size, width, height and rotation as 32-bit ints, its
+ * timestamp in nanoseconds as a 64-bit long, and the NV21 data. All numbers are big-endian.
+ *
+ * <p>Records are copied into a memory-mapped region of the file, which is extended as the log
+ * grows, so appending a frame costs one copy and no system call. The file is trimmed to its
+ * content when the writer is closed. A log left untrimmed by a crash stays readable, because the
+ * unused part of the last region reads as a zero-sized record, which marks the end of the log.
+ * Opening an existing log appends to it.
+ */
+public final class FrameLogWriter implements Closeable {
+
+  /** Size of the regions the file is mapped and extended in. */
+  private static final int REGION_SIZE = 32 * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+
+  // The mapped region that records are written to, and the file offset it starts at.
+  private MappedByteBuffer region;
+  private long regionStart;
+  private int frameCount;
+  private boolean isClosed;
+
+  public FrameLogWriter(File file) throws IOException {
+    long end;
+    if (file.length() > 0) {
+      try (FrameLogReader reader = new FrameLogReader(file)) {
+        while (reader.next()) {
+          frameCount++;
+        }
+        end = reader.getEndOffset();
+      }
+    } else {
+      end = 0;
+    }
+    this.file = new RandomAccessFile(file, "rw");
+    this.channel = this.file.getChannel();
+    mapRegion(end, 0);
+    if (end == 0) {
+      region.putInt(FrameLogReader.MAGIC);
+      region.putInt(FrameLogReader.VERSION);
+    }
+  }
+
+  /**
+   * Appends a frame to the log.
+   *
+   * @param data the NV21 frame, from its position to its limit; the position is left unchanged
+   * @param timestampNanos the capture time of the frame on a monotonic clock
+   */
+  public synchronized void append(
+      ByteBuffer data, int width, int height, int rotation, long timestampNanos)
+      throws IOException {
+    if (isClosed) {
+      throw new IOException("Frame log is closed");
+    }
+    int size = data.remaining();
+    if (size == 0 || width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Frame is empty");
+    }
+    int recordSize = FrameLogReader.RECORD_HEADER_SIZE + size;
+    if (region.remaining() < recordSize) {
+      mapRegion(regionStart + region.position(), recordSize);
+    }
+    region.putInt(size);
+    region.putInt(width);
+    region.putInt(height);
+    region.putInt(rotation);
+    region.putLong(timestampNanos);
+    region.put(data.duplicate());
+    frameCount++;
+  }
+
+  /** Returns the number of frames in the log, including those it held when it was opened. */
+  public synchronized int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Flushes the log to storage and trims the file to its content. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      region.force();
+      channel.truncate(regionStart + region.position());
+    } finally {
+      file.close();
+    }
+  }
+
+  private void mapRegion(long start, int minSize) throws IOException {
+    if (region != null) {
+      region.force();
+    }
+    regionStart = start;
+    region = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_SIZE, minSize));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the newest frame from a producer thread to a single consumer thread. Holds at most one
+ * frame: a frame put while another is still waiting replaces it, and the replaced frame is handed
+ * back to the producer to release.
+ *
+ * <p>The frame lives in a single-slot atomic reference. The producer swaps the new frame in and the
+ * consumer swaps it out, so neither side ever blocks on the other. The consumer parks while the
+ * mailbox is empty.
+ *
+ * @param <T> the type of the frames
+ */
+public final class FrameMailbox<T> {
+
+  // The newest frame awaiting the consumer, or null.
+  private final AtomicReference<T> pendingFrame = new AtomicReference<>();
+  private volatile boolean open = true;
+  @Nullable private volatile Thread consumerThread;
+
+  /**
+   * Makes {@code frame} the next frame taken, and wakes the consumer if it is waiting.
+   *
+   * @return the frame that was waiting and is now superseded, which the caller releases, or null
+   */
+  @Nullable
+  public T put(T frame) {
+    T superseded = pendingFrame.getAndSet(frame);
+    LockSupport.unpark(consumerThread);
+    return superseded;
+  }
+
+  /**
+   * Takes the newest frame, waiting for one if the mailbox is empty. Must only be called from one
+   * thread at a time.
+   *
+   * @return the frame, or null once the mailbox is closed or the calling thread is interrupted. A
+   *     frame left in a closed mailbox stays there until it is {@link #clear() cleared}.
+   */
+  @Nullable
+  public T take() {
+    consumerThread = Thread.currentThread();
+    while (open) {
+      T frame = pendingFrame.getAndSet(null);
+      if (frame != null) {
+        return frame;
+      }
+      // A frame put before we park leaves an unpark permit, so it is not missed.
+      LockSupport.park(this);
+      if (Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** Removes the waiting frame, if any, and returns it so that the caller can release it. */
+  @Nullable
+  public T clear() {
+    return pendingFrame.getAndSet(null);
+  }
+
+  /**
+   * Opens or closes the mailbox. Closing it makes {@link #take()} return null, including a call
+   * that is already waiting. Frames can still be put into a closed mailbox.
+   */
+  public void setOpen(boolean open) {
+    this.open = open;
+    LockSupport.unpark(consumerThread);
+  }
+}
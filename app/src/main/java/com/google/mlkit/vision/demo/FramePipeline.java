@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs frames through a chain of stages, each on its own thread, so that different frames can be
+ * in different stages at the same time (e.g. frame N+1 is converted while frame N is detected).
+ *
+ * <p>Stages are connected by bounded lock-free queues. When a queue is full its {@link DropPolicy}
+ * decides whether the incoming frame or the oldest queued frame is discarded; discarded frames are
+ * reported to the {@link DropListener} so that their resources can be reclaimed.
+ *
+ * @param <I> the type of the frames submitted to the first stage
+ */
+public final class FramePipeline<I> {
+
+  /** What to do when a frame arrives at a full stage queue. */
+  public enum DropPolicy {
+    /** Discard the oldest queued frame to make room. Keeps latency low for live preview. */
+    DROP_OLDEST,
+    /** Discard the incoming frame. */
+    DROP_NEWEST
+  }
+
+  /**
+   * The work done by one stage.
+   *
+   * @param <I> the input type
+   * @param <O> the output type handed to the next stage
+   */
+  public interface StageFunction<I, O> {
+    /**
+     * Processes one frame. Returning null ends the frame's trip through the pipeline; the stage is
+     * then responsible for any resources the frame holds.
+     */
+    @Nullable
+    O apply(I input) throws Exception;
+  }
+
+  /** Notified of frames that leave the pipeline without being fully processed. */
+  public interface DropListener {
+    /**
+     * Called when {@code frame} is discarded by a full queue, thrown away after {@code stageName}
+     * failed on it, or left over when the pipeline shuts down.
+     *
+     * @param cause the exception thrown by the stage, or null if the frame was simply dropped
+     */
+    void onDropped(String stageName, Object frame, @Nullable Exception cause);
+  }
+
+  private final List<Stage> stages;
+  private final DropListener dropListener;
+  private volatile boolean isShutdown;
+
+  private FramePipeline(String name, List<StageSpec> specs, DropListener dropListener) {
+    this.dropListener = dropListener;
+    stages = new ArrayList<>(specs.size());
+    for (StageSpec spec : specs) {
+      stages.add(new Stage(spec));
+    }
+    for (int i = 0; i < stages.size() - 1; i++) {
+      stages.get(i).next = stages.get(i + 1);
+    }
+    for (Stage stage : stages) {
+      stage.thread = new Thread(stage, name + ":" + stage.spec.name);
+      stage.thread.setDaemon(true);
+      stage.thread.start();
+    }
+  }
+
+  /** Starts a pipeline definition. */
+  public static <I> Builder<I, I> newBuilder(String name) {
+    return new Builder<>(name, new ArrayList<>());
+  }
+
+  /**
+   * Hands a frame to the first stage.
+   *
+   * @return false if the frame was dropped straight away
+   */
+  public boolean submit(I frame) {
+    if (isShutdown) {
+      dropListener.onDropped(stages.get(0).spec.name, frame, null);
+      return false;
+    }
+    return stages.get(0).offer(frame);
+  }
+
+  /**
+   * Stops all stage threads. Frames still queued are reported as dropped. A stage that is in the
+   * middle of processing a frame finishes it, but its output is not passed on.
+   */
+  public void shutdown() {
+    isShutdown = true;
+    for (Stage stage : stages) {
+      LockSupport.unpark(stage.thread);
+    }
+  }
+
+  /** Returns the number of frames the given stage has processed successfully. */
+  public long getProcessedCount(String stageName) {
+    return getStage(stageName).processed.get();
+  }
+
+  /** Returns the number of frames dropped at the given stage, including failures. */
+  public long getDroppedCount(String stageName) {
+    return getStage(stageName).dropped.get();
+  }
+
+  private Stage getStage(String stageName) {
+    for (Stage stage : stages) {
+      if (stage.spec.name.equals(stageName)) {
+        return stage;
+      }
+    }
+    throw new IllegalArgumentException("Unknown stage: " + stageName);
+  }
+
+  /**
+   * Builder of {@link FramePipeline}.
+   *
+   * @param <I> the type of the frames submitted to the pipeline
+   * @param <O> the output type of the last stage added so far
+   */
+  public static final class Builder<I, O> {
+    private final String name;
+    private final List<StageSpec> specs;
+    private DropListener dropListener = (stageName, frame, cause) -> {};
+
+    private Builder(String name, List<StageSpec> specs) {
+      this.name = name;
+      this.specs = specs;
+    }
+
+    /**
+     * Appends a stage.
+     *
+     * @param stageName the name used for the stage thread and the counters
+     * @param capacity the maximum number of frames waiting in front of this stage
+     * @param dropPolicy what to do when a frame arrives and the queue is full
+     * @param function the work done by the stage
+     */
+    @SuppressWarnings("unchecked")
+    public <N> Builder<I, N> addStage(
+        String stageName,
+        int capacity,
+        DropPolicy dropPolicy,
+        StageFunction<? super O, ? extends N> function) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Stage capacity must be positive: " + capacity);
+      }
+      specs.add(
+          new StageSpec(
+              stageName, capacity, dropPolicy, (StageFunction<Object, Object>) function));
+      Builder<I, N> next = new Builder<>(name, specs);
+      next.dropListener = dropListener;
+      return next;
+    }
+
+    public Builder<I, O> setDropListener(DropListener dropListener) {
+      this.dropListener = dropListener;
+      return this;
+    }
+
+    /** Builds the pipeline and starts its stage threads. The last stage's output is discarded. */
+    public FramePipeline<I> build() {
+      if (specs.isEmpty()) {
+        throw new IllegalStateException("A pipeline needs at least one stage.");
+      }
+      return new FramePipeline<>(name, new ArrayList<>(specs), dropListener);
+    }
+  }
+
+  private static final class StageSpec {
+    final String name;
+    final int capacity;
+    final DropPolicy dropPolicy;
+    final StageFunction<Object, Object> function;
+
+    StageSpec(
+        String name,
+        int capacity,
+        DropPolicy dropPolicy,
+        StageFunction<Object, Object> function) {
+      this.name = name;
+      this.capacity = capacity;
+      this.dropPolicy = dropPolicy;
+      this.function = function;
+    }
+  }
+
+  private final class Stage implements Runnable {
+    final StageSpec spec;
+    final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    // Number of frames in the queue. May briefly exceed the capacity by one while a producer and
+    // the consumer race on the last slot, which is harmless.
+    final AtomicInteger size = new AtomicInteger();
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    @Nullable Stage next;
+    Thread thread;
+
+    Stage(StageSpec spec) {
+      this.spec = spec;
+    }
+
+    boolean offer(Object frame) {
+      if (size.incrementAndGet() > spec.capacity) {
+        if (spec.dropPolicy == DropPolicy.DROP_NEWEST) {
+          size.decrementAndGet();
+          drop(frame, null);
+          return false;
+        }
+        Object eldest = queue.poll();
+        if (eldest != null) {
+          size.decrementAndGet();
+          drop(eldest, null);
+        }
+      }
+      queue.offer(frame);
+      LockSupport.unpark(thread);
+      if (isShutdown) {
+        // The stage thread may have drained the queue and exited before the frame went in.
+        dropQueued();
+      }
+      return true;
+    }
+
+    /** Drops every queued frame. Safe to call from any thread, even alongside the stage thread. */
+    void dropQueued() {
+      Object frame;
+      while ((frame = queue.poll()) != null) {
+        size.decrementAndGet();
+        drop(frame, null);
+      }
+    }
+
+    void drop(Object frame, @Nullable Exception cause) {
+      dropped.incrementAndGet();
+      dropListener.onDropped(spec.name, frame, cause);
+    }
+
+    @Override
+    public void run() {
+      while (!isShutdown) {
+        Object frame = queue.poll();
+        if (frame == null) {
+          // A frame offered between the poll and here leaves an unpark permit behind, so this
+          // returns straight away instead of missing it.
+          LockSupport.park(this);
+          continue;
+        }
+        size.decrementAndGet();
+
+        Object output;
+        try {
+          output = spec.function.apply(frame);
+        } catch (Exception e) {
+          drop(frame, e);
+          continue;
+        }
+        processed.incrementAndGet();
+        if (output == null || next == null) {
+          continue;
+        }
+        if (isShutdown) {
+          next.drop(output, null);
+        } else {
+          next.offer(output);
+        }
+      }
+      dropQueued();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed-size pool of preview buffers shared between the camera and the frame processors.
+ *
+ * <p>Each buffer is handed out as a reference-counted {@link Frame}. The camera delivers a buffer
+ * with one reference held by the pool; consumers that need the data beyond the callback call
+ * {@link Frame#retain()} and later {@link Frame#release()}. When the last reference is released
+ * the buffer goes straight back to the {@link Recycler}, typically {@code
+ * Camera#addCallbackBuffer}, so the camera never runs dry while a consumer holds on to a frame.
+ */
+public class FramePool {
+
+  /** Receives buffers whose last reference has been released. */
+  public interface Recycler {
+    void recycle(byte[] data);
+  }
+
+  /** A leased preview buffer. */
+  public static final class Frame {
+    private final FramePool pool;
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private Frame(FramePool pool, byte[] data) {
+      this.pool = pool;
+      this.data = data;
+      this.buffer = ByteBuffer.wrap(data);
+    }
+
+    /** Returns the frame data. Only valid while a reference is held. */
+    public ByteBuffer getBuffer() {
+      return buffer;
+    }
+
+    /** Adds a reference to this frame. */
+    public Frame retain() {
+      if (refCount.getAndIncrement() <= 0) {
+        refCount.getAndDecrement();
+        throw new IllegalStateException("Frame has already been returned to the pool.");
+      }
+      return this;
+    }
+
+    /** Drops a reference, returning the buffer to the pool when none remain. */
+    public void release() {
+      int remaining = refCount.decrementAndGet();
+      if (remaining == 0) {
+        pool.recycle(this);
+      } else if (remaining < 0) {
+        refCount.incrementAndGet();
+        throw new IllegalStateException("Frame released more times than retained.");
+      }
+    }
+  }
+
+  private final Frame[] frames;
+  @Nullable private volatile Recycler recycler;
+
+  /**
+   * Creates a pool of {@code depth} buffers of {@code bufferSize} bytes each.
+   *
+   * @param depth the number of buffers; must be at least one
+   * @param bufferSize the size in bytes of every buffer
+   */
+  public FramePool(int depth, int bufferSize) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Frame pool depth must be positive: " + depth);
+    }
+    frames = new Frame[depth];
+    for (int i = 0; i < depth; i++) {
+      frames[i] = new Frame(this, new byte[bufferSize]);
+    }
+  }
+
+  /** Returns the number of buffers in this pool. */
+  public int getDepth() {
+    return frames.length;
+  }
+
+  /**
+   * Attaches the pool to a recycler and hands it every buffer. Buffers released afterwards are
+   * returned to this recycler.
+   */
+  public void start(Recycler recycler) {
+    this.recycler = recycler;
+    for (Frame frame : frames) {
+      frame.refCount.set(0);
+      recycler.recycle(frame.data);
+    }
+  }
+
+  /**
+   * Detaches the pool from its recycler. Frames released after this call are simply dropped, since
+   * the camera that owned them is gone.
+   */
+  public void stop() {
+    recycler = null;
+  }
+
+  /**
+   * Takes ownership of a buffer delivered by the camera. The returned frame holds one reference
+   * which the caller must release.
+   *
+   * @return the frame wrapping {@code data}, or null if the buffer does not belong to this pool
+   */
+  @Nullable
+  public Frame lease(byte[] data) {
+    // The pool is only a handful of buffers deep, so an identity scan is cheaper than hashing.
+    for (Frame frame : frames) {
+      if (frame.data == data) {
+        frame.refCount.set(1);
+        return frame;
+      }
+    }
+    return null;
+  }
+
+  private void recycle(Frame frame) {
+    Recycler recycler = this.recycler;
+    if (recycler != null) {
+      recycler.recycle(frame.data);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds the frames of a log recorded by {@link FrameLogWriter} into a {@link VisionImageProcessor}
+ * the way {@link CameraSource} feeds camera frames, so that a session can be reproduced on a
+ * device or emulator without a camera. The log is read and paced by a {@link FrameReplayer}.
+ */
+public final class FrameReplaySource implements FrameReplayer.Sink {
+
+  private static final String TAG = "FrameReplaySource";
+
+  private final FrameReplayer replayer;
+  private final VisionImageProcessor processor;
+  private final GraphicOverlay overlay;
+
+  // Upright size of the last frame, which the overlay was told about. Only used on the replay
+  // thread.
+  private int sourceWidth;
+  private int sourceHeight;
+
+  public FrameReplaySource(File log, VisionImageProcessor processor, GraphicOverlay overlay) {
+    this.replayer = new FrameReplayer(log, this);
+    this.processor = processor;
+    this.overlay = overlay;
+  }
+
+  /** See {@link FrameReplayer#setRealTime}. */
+  public void setRealTime(boolean realTime) {
+    replayer.setRealTime(realTime);
+  }
+
+  /** See {@link FrameReplayer#setLooping}. */
+  public void setLooping(boolean looping) {
+    replayer.setLooping(looping);
+  }
+
+  /** Starts replaying on a new thread. Does nothing if a replay is running. */
+  public void start(@Nullable FrameReplayer.Listener listener) {
+    replayer.start(listener);
+  }
+
+  /** Stops the replay and waits for the replay thread to finish. */
+  public void stop() {
+    replayer.stop();
+  }
+
+  @Override
+  public void onFrame(ByteBuffer nv21, int width, int height, int rotation, long timestampNanos) {
+    // The overlay shows the frame upright, as the camera preview does.
+    boolean isRotated = rotation == 90 || rotation == 270;
+    int uprightWidth = isRotated ? height : width;
+    int uprightHeight = isRotated ? width : height;
+    if (uprightWidth != sourceWidth || uprightHeight != sourceHeight) {
+      sourceWidth = uprightWidth;
+      sourceHeight = uprightHeight;
+      overlay.setImageSourceInfo(sourceWidth, sourceHeight, /* isFlipped= */ false);
+    }
+
+    try {
+      processor.processByteBuffer(
+          nv21,
+          new FrameMetadata.Builder()
+              .setWidth(width)
+              .setHeight(height)
+              .setRotation(rotation)
+              .build(),
+          overlay);
+    } catch (Exception e) {
+      Log.e(TAG, "Exception thrown from receiver.", e);
+    }
+  }
+}
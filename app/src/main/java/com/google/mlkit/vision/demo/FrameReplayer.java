@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds the frames of a log recorded by {@link FrameLogWriter} to a {@link Sink} the way a camera
+ * delivers them, so that a session can be reproduced on identical input, e.g. to compare pipeline
+ * changes without a camera. {@link FrameReplaySource} feeds a {@link VisionImageProcessor} with it
+ * on a device or emulator.
+ *
+ * <p>Frames are delivered either at the pace they were recorded at or as fast as the sink takes
+ * them, on a dedicated thread or on the calling thread with {@link #replay()}.
+ */
+public final class FrameReplayer {
+
+  /** Receives the replayed frames on the replay thread. */
+  public interface Sink {
+    /**
+     * Called with each frame of the log. Like camera buffers, {@code nv21} is only valid until the
+     * call returns.
+     */
+    void onFrame(ByteBuffer nv21, int width, int height, int rotation, long timestampNanos);
+  }
+
+  /** Notified on the replay thread once the log has been replayed or the replay failed. */
+  public interface Listener {
+    void onReplayFinished(int framesReplayed, @Nullable IOException error);
+  }
+
+  private final File log;
+  private final Sink sink;
+
+  private volatile boolean isRealTime = true;
+  private volatile boolean isLooping;
+  @Nullable private Thread replayThread;
+
+  public FrameReplayer(File log, Sink sink) {
+    this.log = log;
+    this.sink = sink;
+  }
+
+  /**
+   * Sets whether frames are delivered at the pace they were recorded at, which is the default, or
+   * as fast as the sink takes them.
+   */
+  public void setRealTime(boolean realTime) {
+    isRealTime = realTime;
+  }
+
+  /** Sets whether the replay starts over at the end of the log instead of finishing. */
+  public void setLooping(boolean looping) {
+    isLooping = looping;
+  }
+
+  /** Starts replaying on a new thread. Does nothing if a replay is running. */
+  public synchronized void start(@Nullable Listener listener) {
+    if (replayThread != null && replayThread.isAlive()) {
+      return;
+    }
+    replayThread =
+        new Thread(
+            () -> {
+              int framesReplayed = 0;
+              IOException error = null;
+              try {
+                framesReplayed = replay();
+              } catch (IOException e) {
+                error = e;
+              }
+              if (listener != null) {
+                listener.onReplayFinished(framesReplayed, error);
+              }
+            },
+            "FrameReplayer");
+    replayThread.start();
+  }
+
+  /** Stops the replay and waits for the replay thread to finish. */
+  public void stop() {
+    Thread thread;
+    synchronized (this) {
+      thread = replayThread;
+      replayThread = null;
+    }
+    if (thread == null) {
+      return;
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Replays the log on the calling thread and returns the number of frames delivered. Interrupting
+   * the thread ends the replay early and leaves the thread interrupted; when looping, that is the
+   * only way it ends.
+   */
+  public int replay() throws IOException {
+    int framesReplayed = 0;
+    try (FrameLogReader reader = new FrameLogReader(log)) {
+      do {
+        reader.rewind();
+        long firstTimestampNanos = 0;
+        long startNanos = 0;
+        boolean isFirstFrame = true;
+        while (!Thread.currentThread().isInterrupted() && reader.next()) {
+          if (isFirstFrame) {
+            firstTimestampNanos = reader.getTimestampNanos();
+            startNanos = System.nanoTime();
+            isFirstFrame = false;
+          } else if (isRealTime) {
+            long dueNanos = startNanos + reader.getTimestampNanos() - firstTimestampNanos;
+            try {
+              TimeUnit.NANOSECONDS.sleep(dueNanos - System.nanoTime());
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+          sink.onFrame(
+              reader.getData(),
+              reader.getWidth(),
+              reader.getHeight(),
+              reader.getRotation(),
+              reader.getTimestampNanos());
+          framesReplayed++;
+        }
+      } while (isLooping && framesReplayed > 0 && !Thread.currentThread().isInterrupted());
+    }
+    return framesReplayed;
+  }
+}
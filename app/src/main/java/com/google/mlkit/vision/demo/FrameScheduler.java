@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which live camera frames are handed to the detector, so that a long-running session can
+ * trade detection rate for power and heat instead of detecting as fast as the device allows.
+ *
+ * <p>A scheduler either processes every Nth frame or limits processing to a target frame rate. At
+ * run time, {@link #setSlowdown} stretches the spacing between processed frames further, which is
+ * how {@link ThermalThrottler} backs off while the device is hot. Frames left out are counted in
+ * {@link MetricsRegistry#FRAMES_SKIPPED}.
+ *
+ * <p>{@link #shouldProcess} is called once per frame from a single thread.
+ */
+public abstract class FrameScheduler {
+
+  private final RateMeter framesSkipped =
+      MetricsRegistry.getInstance().getRateMeter(MetricsRegistry.FRAMES_SKIPPED);
+
+  private volatile float slowdown = 1;
+
+  /** Returns a scheduler that processes every frame unless it is slowed down. */
+  public static FrameScheduler everyFrame() {
+    return new EveryNthFrame(1);
+  }
+
+  /** Returns a scheduler that processes the first of every {@code n} frames. */
+  public static FrameScheduler everyNthFrame(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("n must be positive: " + n);
+    }
+    return new EveryNthFrame(n);
+  }
+
+  /** Returns a scheduler that processes at most {@code fps} frames per second. */
+  public static FrameScheduler targetFps(float fps) {
+    if (fps <= 0) {
+      throw new IllegalArgumentException("fps must be positive: " + fps);
+    }
+    return new TargetFps(fps);
+  }
+
+  /**
+   * Returns whether the frame captured at {@code timestampNanos} should be processed. Frames that
+   * are not processed should be released right away.
+   *
+   * @param timestampNanos the capture time of the frame on a monotonic clock
+   */
+  public final boolean shouldProcess(long timestampNanos) {
+    boolean process = accept(timestampNanos, slowdown);
+    if (!process) {
+      framesSkipped.mark();
+    }
+    return process;
+  }
+
+  /**
+   * Multiplies the spacing between processed frames by {@code factor}, e.g. 2 halves the rate at
+   * which frames are processed. Safe to call from any thread.
+   */
+  public void setSlowdown(float factor) {
+    if (factor < 1) {
+      throw new IllegalArgumentException("Slowdown must be at least 1: " + factor);
+    }
+    slowdown = factor;
+  }
+
+  public float getSlowdown() {
+    return slowdown;
+  }
+
+  /** Implements the policy; {@code slowdown} is the current value of {@link #getSlowdown}. */
+  protected abstract boolean accept(long timestampNanos, float slowdown);
+
+  private static final class EveryNthFrame extends FrameScheduler {
+    private final int n;
+    // Starts saturated so the first frame is processed.
+    private int framesSinceProcessed = Integer.MAX_VALUE;
+
+    EveryNthFrame(int n) {
+      this.n = n;
+    }
+
+    @Override
+    protected boolean accept(long timestampNanos, float slowdown) {
+      int interval = Math.max(1, Math.round(n * slowdown));
+      if (framesSinceProcessed >= interval - 1) {
+        framesSinceProcessed = 0;
+        return true;
+      }
+      framesSinceProcessed++;
+      return false;
+    }
+  }
+
+  private static final class TargetFps extends FrameScheduler {
+    private final long intervalNanos;
+    private boolean hasProcessed;
+    private long nextDueNanos;
+
+    TargetFps(float fps) {
+      intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+    }
+
+    @Override
+    protected boolean accept(long timestampNanos, float slowdown) {
+      if (hasProcessed && timestampNanos < nextDueNanos) {
+        return false;
+      }
+      long interval = (long) (intervalNanos * slowdown);
+      // Advancing from the due time rather than the frame time keeps the average rate on target
+      // when frames arrive slightly late. A scheduler that fell a whole interval behind restarts
+      // from this frame instead of bursting to catch up.
+      nextDueNanos =
+          hasProcessed && timestampNanos - nextDueNanos < interval
+              ? nextDueNanos + interval
+              : timestampNanos + interval;
+      hasProcessed = true;
+      return true;
+    }
+  }
+}
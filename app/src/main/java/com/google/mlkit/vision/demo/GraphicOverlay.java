@@ -21,9 +21,14 @@ import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.util.AttributeSet;
 import android.view.View;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -43,26 +48,81 @@ import java.util.List;
  *   <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
  *       coordinate from the image's coordinate system to the view coordinate system.
  * </ol>
+ *
+ * <p>Graphics for a stream of results can be retained between frames: between {@link
+ * #beginUpdate()} and {@link #endUpdate()}, {@link #obtain} returns the graphic kept for a type
+ * and id (e.g. a tracking id) so that it can be updated in place, and graphics that were not
+ * obtained again are removed. Retained graphics must be updated on the UI thread.
+ *
+ * <p>Drawing does not block producers. Changes are made to a back-buffer scene, which is published
+ * to {@link #onDraw} with a single atomic swap once an update is complete. If a newer scene is
+ * published before the previous one was drawn, the previous one is dropped and counted in the
+ * {@link MetricsRegistry#SCENES_DROPPED} rate. Each scene holds its own copies of the graphics, made with {@link
+ * Graphic#copyForScene} when it is published, so a graphic can be updated for the next scene while
+ * the previous one is drawn. Drawing never takes a lock the producers hold.
+ *
+ * <p>By default the overlay draws itself on the UI thread. A {@link TextureOverlayRenderer} can
+ * take over drawing on its own render thread; the graphics and their coordinate helpers work the
+ * same either way.
  */
 public class GraphicOverlay extends View {
+
+  /** Drawn below all other graphics, e.g. the camera image. */
+  public static final int LAYER_BACKGROUND = -1;
+  /** The layer of detection results. */
+  public static final int LAYER_DEFAULT = 0;
+  /** Drawn above all other graphics, e.g. status text. */
+  public static final int LAYER_FOREGROUND = 1;
+
+  /**
+   * Creates a retained graphic the first time it is obtained.
+   *
+   * @param <G> the graphic type
+   */
+  public interface GraphicFactory<G extends Graphic> {
+    G create(GraphicOverlay overlay);
+  }
+
   private final Object lock = new Object();
+
+  // Ordered by layer, then by the time the graphic was added.
+  @GuardedBy("lock")
   private final List<Graphic> graphics = new ArrayList<>();
-  // Matrix for transforming from image coordinates to overlay view coordinates.
+
+  @GuardedBy("lock")
+  private final Map<GraphicKey, Graphic> retainedGraphics = new HashMap<>();
+
+  // Reused for lookups so that obtaining an existing graphic does not allocate.
+  @GuardedBy("lock")
+  private final GraphicKey probeKey = new GraphicKey();
+
+  @GuardedBy("lock")
+  private boolean isUpdating;
+
+  // The scene the producers fill in next.
+  @GuardedBy("lock")
+  private Scene backScene = new Scene();
+
+  // The latest published scene that onDraw has not picked up yet.
+  private final AtomicReference<Scene> pendingScene = new AtomicReference<>();
+  // A scene onDraw is done with, for the producers to reuse.
+  private final AtomicReference<Scene> freeScene = new AtomicReference<>();
+  // Only accessed from drawScene.
+  private Scene frontScene = new Scene();
+  private final RateMeter droppedSceneRate =
+      MetricsRegistry.getInstance().getRateMeter(MetricsRegistry.SCENES_DROPPED);
+
+  @Nullable private volatile TextureOverlayRenderer renderer;
+
+  // Matrix for transforming from image coordinates to overlay view coordinates. Only changed by
+  // the drawing thread.
   private final Matrix transformationMatrix = new Matrix();
 
-  private int imageWidth;
-  private int imageHeight;
-  // The factor of overlay View size to image size. Anything in the image coordinates need to be
-  // scaled by this amount to fit with the area of overlay View.
-  private float scaleFactor = 1.0f;
-  // The number of horizontal pixels needed to be cropped on each side to fit the image with the
-  // area of overlay View after scaling.
-  private float postScaleWidthOffset;
-  // The number of vertical pixels needed to be cropped on each side to fit the image with the
-  // area of overlay View after scaling.
-  private float postScaleHeightOffset;
-  private boolean isImageFlipped;
-  private boolean needUpdateTransformation = true;
+  // The image the results belong to, replaced as a whole whenever it changes.
+  private volatile SourceInfo sourceInfo = SourceInfo.UNSET;
+  // Snapshot of the image-to-view mapping, replaced as a whole whenever it changes.
+  private volatile OverlayTransform transform = OverlayTransform.IDENTITY;
+  private volatile boolean needUpdateTransformation = true;
 
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
@@ -72,6 +132,10 @@ public class GraphicOverlay extends View {
   public abstract static class Graphic {
     private GraphicOverlay overlay;
 
+    // Set for retained graphics only.
+    @Nullable private GraphicKey key;
+    private boolean obtainedInUpdate;
+
     public Graphic(GraphicOverlay overlay) {
       this.overlay = overlay;
     }
@@ -91,9 +155,47 @@ public class GraphicOverlay extends View {
      */
     public abstract void draw(Canvas canvas);
 
+    /**
+     * Returns a copy of the state {@link #draw} needs, for a published scene to draw while this
+     * graphic is updated for the next one. Called with the overlay's lock held, whenever a scene
+     * containing the graphic is published.
+     *
+     * <p>The default returns the graphic itself, which is only right for graphics that do not
+     * change after they are added. Graphics that are updated in place, such as retained graphics,
+     * must override this.
+     *
+     * @param recycled the copy of this graphic that the scene held when it was last published, or
+     *     null. Filling it in instead of creating a new copy keeps publishing free of allocations.
+     */
+    protected Graphic copyForScene(@Nullable Graphic recycled) {
+      return this;
+    }
+
+    /**
+     * Called once the graphic will not be drawn again: for a graphic in the overlay, when it is
+     * removed, and for a copy made by {@link #copyForScene}, when its scene is rebuilt without it.
+     * Subclasses holding pooled resources should return them here. A graphic that does not copy
+     * itself may still be drawn by a scene after it is removed, so it must not release anything
+     * {@link #draw} uses.
+     */
+    protected void onRemoved() {}
+
+    /**
+     * Returns the layer the graphic is drawn in, e.g. {@link GraphicOverlay#LAYER_DEFAULT}.
+     * Graphics in higher layers are drawn on top.
+     */
+    protected int getLayer() {
+      return LAYER_DEFAULT;
+    }
+
+    /** Returns the overlay the graphic belongs to, e.g. to create copies with. */
+    protected GraphicOverlay getOverlay() {
+      return overlay;
+    }
+
     /** Adjusts the supplied value from the image scale to the view scale. */
     public float scale(float imagePixel) {
-      return imagePixel * overlay.scaleFactor;
+      return overlay.transform.scale(imagePixel);
     }
 
     /** Returns the application context of the app. */
@@ -102,25 +204,30 @@ public class GraphicOverlay extends View {
     }
 
     public boolean isImageFlipped() {
-      return overlay.isImageFlipped;
+      return overlay.transform.isFlipped();
     }
 
     /**
      * Adjusts the x coordinate from the image's coordinate system to the view coordinate system.
      */
     public float translateX(float x) {
-      if (overlay.isImageFlipped) {
-        return overlay.getWidth() - (scale(x) - overlay.postScaleWidthOffset);
-      } else {
-        return scale(x) - overlay.postScaleWidthOffset;
-      }
+      return overlay.transform.mapX(x);
     }
 
     /**
      * Adjusts the y coordinate from the image's coordinate system to the view coordinate system.
      */
     public float translateY(float y) {
-      return scale(y) - overlay.postScaleHeightOffset;
+      return overlay.transform.mapY(y);
+    }
+
+    /**
+     * Returns the current image-to-view mapping. Graphics mapping many points should fetch it once
+     * per draw and use {@link OverlayTransform#mapPoints} rather than translating coordinates one
+     * by one.
+     */
+    public OverlayTransform getTransform() {
+      return overlay.transform;
     }
 
     /**
@@ -142,29 +249,157 @@ public class GraphicOverlay extends View {
             needUpdateTransformation = true);
   }
 
-  /** Removes all graphics from the overlay. */
+  /** Removes all graphics from the overlay, including retained ones. */
   public void clear() {
     synchronized (lock) {
+      for (int i = 0; i < graphics.size(); i++) {
+        graphics.get(i).onRemoved();
+      }
       graphics.clear();
+      retainedGraphics.clear();
+      publishIfNotUpdating();
     }
     postInvalidate();
   }
 
-  /** Adds a graphic to the overlay. */
+  /**
+   * Adds a graphic to the overlay. Graphics added this way are removed by the next {@link
+   * #beginUpdate()}.
+   */
   public void add(Graphic graphic) {
     synchronized (lock) {
-      graphics.add(graphic);
+      insertByLayer(graphic);
+      publishIfNotUpdating();
     }
   }
 
   /** Removes a graphic from the overlay. */
   public void remove(Graphic graphic) {
     synchronized (lock) {
-      graphics.remove(graphic);
+      if (graphics.remove(graphic)) {
+        if (graphic.key != null) {
+          retainedGraphics.remove(graphic.key);
+        }
+        graphic.onRemoved();
+        publishIfNotUpdating();
+      }
     }
     postInvalidate();
   }
 
+  /**
+   * Starts replacing the overlay content with a new set of results. Graphics added with {@link
+   * #add} are removed; retained graphics stay until {@link #endUpdate()} unless they are obtained
+   * again. Nothing is published until {@link #endUpdate()}, which must always follow.
+   */
+  public void beginUpdate() {
+    synchronized (lock) {
+      isUpdating = true;
+      for (int i = graphics.size() - 1; i >= 0; i--) {
+        Graphic graphic = graphics.get(i);
+        if (graphic.key == null) {
+          graphics.remove(i);
+          graphic.onRemoved();
+        } else {
+          graphic.obtainedInUpdate = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the retained graphic for the given type and id, creating and adding it if there is
+   * none. Must be called between {@link #beginUpdate()} and {@link #endUpdate()}.
+   *
+   * @param id distinguishes graphics of the same type, e.g. the tracking id of a detected object
+   */
+  @SuppressWarnings("unchecked")
+  public <G extends Graphic> G obtain(Class<G> type, long id, GraphicFactory<G> factory) {
+    synchronized (lock) {
+      probeKey.set(type, id);
+      Graphic graphic = retainedGraphics.get(probeKey);
+      if (graphic == null) {
+        graphic = factory.create(this);
+        graphic.key = new GraphicKey();
+        graphic.key.set(type, id);
+        retainedGraphics.put(graphic.key, graphic);
+        insertByLayer(graphic);
+      }
+      graphic.obtainedInUpdate = true;
+      return (G) graphic;
+    }
+  }
+
+  /**
+   * Removes the retained graphics that were not obtained since {@link #beginUpdate()} and
+   * publishes the new scene.
+   */
+  public void endUpdate() {
+    synchronized (lock) {
+      for (int i = graphics.size() - 1; i >= 0; i--) {
+        Graphic graphic = graphics.get(i);
+        if (graphic.key != null && !graphic.obtainedInUpdate) {
+          graphics.remove(i);
+          retainedGraphics.remove(graphic.key);
+          graphic.onRemoved();
+        }
+      }
+      isUpdating = false;
+      publish();
+    }
+    postInvalidate();
+  }
+
+  /**
+   * Requests a redraw. While a {@link TextureOverlayRenderer} is attached, the request goes to its
+   * render thread and is coalesced with other requests in the same frame.
+   */
+  @Override
+  public void postInvalidate() {
+    TextureOverlayRenderer currentRenderer = renderer;
+    if (currentRenderer != null) {
+      currentRenderer.requestRender();
+    } else {
+      super.postInvalidate();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void publishIfNotUpdating() {
+    if (!isUpdating) {
+      publish();
+    }
+  }
+
+  @GuardedBy("lock")
+  private void publish() {
+    Scene scene = backScene;
+    scene.setGraphics(graphics);
+    Scene next;
+    Scene undrawn = pendingScene.getAndSet(null);
+    if (undrawn != null) {
+      droppedSceneRate.mark();
+      next = undrawn;
+    } else {
+      next = freeScene.getAndSet(null);
+      if (next == null) {
+        next = new Scene();
+      }
+    }
+    pendingScene.set(scene);
+    backScene = next;
+  }
+
+  @GuardedBy("lock")
+  private void insertByLayer(Graphic graphic) {
+    int layer = graphic.getLayer();
+    int index = graphics.size();
+    while (index > 0 && graphics.get(index - 1).getLayer() > layer) {
+      index--;
+    }
+    graphics.add(index, graphic);
+  }
+
   /**
    * Sets the source information of the image being processed by detectors, including size and
    * whether it is flipped, which informs how to transform image coordinates later.
@@ -178,62 +413,240 @@ public class GraphicOverlay extends View {
     Preconditions.checkState(imageWidth > 0, "image width must be positive");
     Preconditions.checkState(imageHeight > 0, "image height must be positive");
     synchronized (lock) {
-      this.imageWidth = imageWidth;
-      this.imageHeight = imageHeight;
-      this.isImageFlipped = isFlipped;
+      SourceInfo info = sourceInfo;
+      if (imageWidth == info.width && imageHeight == info.height && isFlipped == info.isFlipped) {
+        return;
+      }
+      sourceInfo =
+          new SourceInfo(imageWidth, imageHeight, isFlipped, info.offsetX, info.offsetY);
+      needUpdateTransformation = true;
+    }
+    postInvalidate();
+  }
+
+  /**
+   * Sets the position within the source image of the region that results are detected in, so that
+   * result coordinates, which are relative to the region, are drawn at their place in the image.
+   * Pass 0, 0 when detecting in the whole image.
+   */
+  public void setDetectionOffset(int offsetX, int offsetY) {
+    synchronized (lock) {
+      SourceInfo info = sourceInfo;
+      if (offsetX == info.offsetX && offsetY == info.offsetY) {
+        return;
+      }
+      sourceInfo = new SourceInfo(info.width, info.height, info.isFlipped, offsetX, offsetY);
       needUpdateTransformation = true;
     }
     postInvalidate();
   }
 
   public int getImageWidth() {
-    return imageWidth;
+    return sourceInfo.width;
   }
 
   public int getImageHeight() {
-    return imageHeight;
+    return sourceInfo.height;
   }
 
+  /** Only called by the drawing thread. */
   private void updateTransformationIfNeeded() {
-    if (!needUpdateTransformation || imageWidth <= 0 || imageHeight <= 0) {
+    if (!needUpdateTransformation) {
       return;
     }
-    float viewAspectRatio = (float) getWidth() / getHeight();
-    float imageAspectRatio = (float) imageWidth / imageHeight;
-    postScaleWidthOffset = 0;
-    postScaleHeightOffset = 0;
-    if (viewAspectRatio > imageAspectRatio) {
-      // The image needs to be vertically cropped to be displayed in this view.
-      scaleFactor = (float) getWidth() / imageWidth;
-      postScaleHeightOffset = ((float) getWidth() / imageAspectRatio - getHeight()) / 2;
-    } else {
-      // The image needs to be horizontally cropped to be displayed in this view.
-      scaleFactor = (float) getHeight() / imageHeight;
-      postScaleWidthOffset = ((float) getHeight() * imageAspectRatio - getWidth()) / 2;
+    // Cleared before the source info is read, so that a change made meanwhile is not lost.
+    needUpdateTransformation = false;
+    SourceInfo info = sourceInfo;
+    if (info.width <= 0 || info.height <= 0) {
+      return;
     }
+    OverlayTransform newTransform =
+        OverlayTransform.fitImage(
+            info.width,
+            info.height,
+            getWidth(),
+            getHeight(),
+            info.isFlipped,
+            info.offsetX,
+            info.offsetY);
 
+    float scaleFactor = newTransform.scale(1f);
     transformationMatrix.reset();
     transformationMatrix.setScale(scaleFactor, scaleFactor);
-    transformationMatrix.postTranslate(-postScaleWidthOffset, -postScaleHeightOffset);
+    transformationMatrix.postTranslate(
+        -newTransform.getPostScaleWidthOffset(), -newTransform.getPostScaleHeightOffset());
 
-    if (isImageFlipped) {
+    if (info.isFlipped) {
       transformationMatrix.postScale(-1f, 1f, getWidth() / 2f, getHeight() / 2f);
     }
 
-    needUpdateTransformation = false;
+    transform = newTransform;
+  }
+
+  void setRenderer(@Nullable TextureOverlayRenderer renderer) {
+    this.renderer = renderer;
   }
 
-  /** Draws the overlay with its associated graphic objects. */
+  /** Draws the overlay with its associated graphic objects, unless a renderer has taken over. */
   @Override
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
+    if (renderer == null) {
+      drawScene(canvas);
+    }
+  }
 
-    synchronized (lock) {
-      updateTransformationIfNeeded();
+  /**
+   * Draws the latest published scene. Only one thread may draw the overlay at a time. Takes no
+   * locks, so drawing and result delivery never wait for each other.
+   */
+  void drawScene(Canvas canvas) {
+    long startNanos = System.nanoTime();
+    updateTransformationIfNeeded();
+
+    Scene next = pendingScene.getAndSet(null);
+    if (next != null) {
+      Scene retired = frontScene;
+      frontScene = next;
+      // A producer that published while the retired scene was on its way here found no free
+      // scene and made a new one, so there may be one free already. Only one is kept.
+      Scene surplus = freeScene.getAndSet(retired);
+      if (surplus != null) {
+        surplus.release();
+      }
+    }
+
+    // The scene's graphics are copies that only change once the scene is retired and reused.
+    Scene scene = frontScene;
+    for (int i = 0; i < scene.size; i++) {
+      scene.graphics[i].draw(canvas);
+    }
+    MetricsRegistry.getInstance().record(MetricsRegistry.DRAW, System.nanoTime() - startNanos);
+  }
+
+  /** A snapshot of the graphics to draw, in drawing order. */
+  private static final class Scene {
+    // The graphics the scene was built from, and the copies of them that it draws.
+    private Graphic[] sources = new Graphic[0];
+    private Graphic[] graphics = new Graphic[0];
+    private int size;
+    // The arrays of the previous build, kept so that its copies can be recycled. All null between
+    // builds.
+    private Graphic[] previousSources = new Graphic[0];
+    private Graphic[] previousGraphics = new Graphic[0];
+
+    /** Rebuilds the scene from {@code newSources}. Must not be called while the scene is drawn. */
+    void setGraphics(List<Graphic> newSources) {
+      Graphic[] swap = previousSources;
+      previousSources = sources;
+      sources = swap;
+      swap = previousGraphics;
+      previousGraphics = graphics;
+      graphics = swap;
+      int previousSize = size;
+
+      int newSize = newSources.size();
+      if (sources.length < newSize) {
+        int capacity = Math.max(newSize, sources.length * 2);
+        sources = new Graphic[capacity];
+        graphics = new Graphic[capacity];
+      }
+      for (int i = 0; i < newSize; i++) {
+        Graphic source = newSources.get(i);
+        sources[i] = source;
+        graphics[i] = source.copyForScene(takePreviousCopy(source, i, previousSize));
+      }
+      size = newSize;
+
+      // Copies of graphics that are gone. This scene was not being drawn, so nothing draws them.
+      for (int i = 0; i < previousSize; i++) {
+        Graphic copy = previousGraphics[i];
+        if (copy != null && copy != previousSources[i]) {
+          copy.onRemoved();
+        }
+        previousSources[i] = null;
+        previousGraphics[i] = null;
+      }
+    }
+
+    /** Lets go of the copies of a scene that is no longer used. */
+    void release() {
+      for (int i = 0; i < size; i++) {
+        if (graphics[i] != sources[i]) {
+          graphics[i].onRemoved();
+        }
+        sources[i] = null;
+        graphics[i] = null;
+      }
+      size = 0;
+    }
 
-      for (Graphic graphic : graphics) {
-        graphic.draw(canvas);
+    @Nullable
+    private Graphic takePreviousCopy(Graphic source, int index, int previousSize) {
+      // Graphics mostly keep their place between builds, so the same index is tried first.
+      int found = -1;
+      if (index < previousSize && previousSources[index] == source) {
+        found = index;
+      } else {
+        for (int i = 0; i < previousSize; i++) {
+          if (previousSources[i] == source) {
+            found = i;
+            break;
+          }
+        }
+      }
+      if (found < 0) {
+        return null;
       }
+      Graphic copy = previousGraphics[found];
+      previousSources[found] = null;
+      previousGraphics[found] = null;
+      return copy;
+    }
+  }
+
+  /** The size and placement of the image the results belong to. */
+  private static final class SourceInfo {
+    static final SourceInfo UNSET = new SourceInfo(0, 0, false, 0, 0);
+
+    final int width;
+    final int height;
+    final boolean isFlipped;
+    // Position in the image of the region the detector saw, when it did not see the whole image.
+    final int offsetX;
+    final int offsetY;
+
+    SourceInfo(int width, int height, boolean isFlipped, int offsetX, int offsetY) {
+      this.width = width;
+      this.height = height;
+      this.isFlipped = isFlipped;
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+    }
+  }
+
+  /** Identifies a retained graphic by its type and id. */
+  private static final class GraphicKey {
+    private Class<?> type;
+    private long id;
+
+    void set(Class<?> type, long id) {
+      this.type = type;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof GraphicKey)) {
+        return false;
+      }
+      GraphicKey other = (GraphicKey) o;
+      return type == other.type && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * type.hashCode() + (int) (id ^ (id >>> 32));
     }
   }
 }
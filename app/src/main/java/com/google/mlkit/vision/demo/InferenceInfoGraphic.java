@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 
+
 package com.google.mlkit.vision.demo;
 
 import android.graphics.Canvas;
@@ -26,43 +27,83 @@ public class InferenceInfoGraphic extends GraphicOverlay.Graphic {
 
   private static final int TEXT_COLOR = Color.WHITE;
   private static final float TEXT_SIZE = 60.0f;
+  private static final String REUSED_TEXT = "Static scene, showing earlier results";
+
+  private static final Paint textPaint = new Paint();
+
+  static {
+    textPaint.setColor(TEXT_COLOR);
+    textPaint.setTextSize(TEXT_SIZE);
+  }
 
-  private final Paint textPaint;
   private final GraphicOverlay overlay;
-  private final double latency;
+  private String imageSizeText = "";
+  private String latencyText = "";
+  private boolean resultsReused;
 
-  // Only valid when a stream of input images is being processed. Null for single image mode.
-  @Nullable private final Integer framesPerSecond;
+  public InferenceInfoGraphic(GraphicOverlay overlay) {
+    super(overlay);
+    this.overlay = overlay;
+  }
 
   public InferenceInfoGraphic(
       GraphicOverlay overlay, double latency, @Nullable Integer framesPerSecond) {
-    super(overlay);
-    this.overlay = overlay;
-    this.latency = latency;
-    this.framesPerSecond = framesPerSecond;
-    textPaint = new Paint();
-    textPaint.setColor(TEXT_COLOR);
-    textPaint.setTextSize(TEXT_SIZE);
+    this(overlay);
+    update(latency, framesPerSecond);
+  }
+
+  /**
+   * Updates the displayed values.
+   *
+   * @param framesPerSecond only valid when a stream of input images is being processed; null for
+   *     single image mode
+   */
+  public void update(double latency, @Nullable Integer framesPerSecond) {
+    update(latency, framesPerSecond, /* resultsReused= */ false);
+  }
+
+  /**
+   * Updates the displayed values.
+   *
+   * @param resultsReused whether the frame skipped detection and shows the results of an earlier
+   *     frame, with its latency
+   */
+  public void update(double latency, @Nullable Integer framesPerSecond, boolean resultsReused) {
+    this.resultsReused = resultsReused;
+    imageSizeText = "InputImage size: " + overlay.getImageWidth() + "x" + overlay.getImageHeight();
+    if (framesPerSecond != null) {
+      latencyText = "FPS: " + framesPerSecond + ", latency: " + latency + " ms";
+    } else {
+      latencyText = "Latency: " + latency + " ms";
+    }
     postInvalidate();
   }
 
   @Override
-  public synchronized void draw(Canvas canvas) {
+  public void draw(Canvas canvas) {
     float x = TEXT_SIZE * 0.5f;
     float y = TEXT_SIZE * 1.5f;
 
-    canvas.drawText(
-        "InputImage size: " + overlay.getImageWidth() + "x" + overlay.getImageHeight(),
-        x,
-        y,
-        textPaint);
-
+    canvas.drawText(imageSizeText, x, y, textPaint);
     // Draw FPS (if valid) and inference latency
-    if (framesPerSecond != null) {
-      canvas.drawText(
-          "FPS: " + framesPerSecond + ", latency: " + latency + " ms", x, y + TEXT_SIZE, textPaint);
-    } else {
-      canvas.drawText("Latency: " + latency + " ms", x, y + TEXT_SIZE, textPaint);
+    canvas.drawText(latencyText, x, y + TEXT_SIZE, textPaint);
+    if (resultsReused) {
+      canvas.drawText(REUSED_TEXT, x, y + TEXT_SIZE * 2, textPaint);
     }
   }
+
+  @Override
+  protected int getLayer() {
+    return GraphicOverlay.LAYER_FOREGROUND;
+  }
+
+  @Override
+  protected GraphicOverlay.Graphic copyForScene(@Nullable GraphicOverlay.Graphic recycled) {
+    InferenceInfoGraphic copy =
+        recycled != null ? (InferenceInfoGraphic) recycled : new InferenceInfoGraphic(overlay);
+    copy.imageSizeText = imageSizeText;
+    copy.latencyText = latencyText;
+    copy.resultsReused = resultsReused;
+    return copy;
+  }
 }
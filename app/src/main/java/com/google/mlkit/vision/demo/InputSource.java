@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An image of a batch passed to {@link VisionImageProcessor#processBatch}.
+ *
+ * <p>Images are only decoded when a batch worker gets to them, so a batch of thousands of gallery
+ * images holds no more decoded bitmaps than there are workers.
+ */
+public abstract class InputSource {
+
+  /** Returns a source for an image that is already decoded. */
+  public static InputSource fromBitmap(Bitmap bitmap) {
+    return new InputSource() {
+      @Override
+      public Bitmap load() {
+        return bitmap;
+      }
+
+      @Override
+      public String toString() {
+        return "Bitmap " + bitmap.getWidth() + "x" + bitmap.getHeight();
+      }
+    };
+  }
+
+  /**
+   * Returns a source for the image at a content or file URI, e.g. one picked from the gallery, that
+   * is decoded straight to about {@code maxWidth} x {@code maxHeight} like {@link #fromFile}.
+   */
+  public static InputSource fromUri(
+      ContentResolver contentResolver, Uri uri, int maxWidth, int maxHeight) {
+    return new InputSource() {
+      @Override
+      public Bitmap load() throws IOException {
+        Bitmap bitmap =
+            BitmapUtils.decodeSampledBitmap(contentResolver, uri, maxWidth, maxHeight);
+        if (bitmap == null) {
+          throw new IOException("Cannot decode " + uri);
+        }
+        return bitmap;
+      }
+
+      @Override
+      public String toString() {
+        return uri.toString();
+      }
+    };
+  }
+
+  /**
+   * Returns a source for an image file that is decoded straight to about {@code maxWidth} x {@code
+   * maxHeight}, as described in {@link BitmapUtils#decodeSampledBitmap(File, int, int)}. Suits
+   * large images whose full resolution is of no use to the detector.
+   */
+  public static InputSource fromFile(File file, int maxWidth, int maxHeight) {
+    return new InputSource() {
+      @Override
+      public Bitmap load() throws IOException {
+        Bitmap bitmap = BitmapUtils.decodeSampledBitmap(file, maxWidth, maxHeight);
+        if (bitmap == null) {
+          throw new IOException("Cannot decode " + file);
+        }
+        return bitmap;
+      }
+
+      @Override
+      public String toString() {
+        return file.getPath();
+      }
+    };
+  }
+
+  /** Decodes the image. Called on a batch worker thread. */
+  public abstract Bitmap load() throws IOException;
+}
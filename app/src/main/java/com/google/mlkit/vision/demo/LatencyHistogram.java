@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * <p>Values are recorded in nanoseconds and bucketed at microsecond resolution. Every power of two
+ * is split into 32 linear sub-buckets, so any reported percentile is within about 3% of the true
+ * value, from one microsecond up to several hours. Recording is a handful of atomic increments
+ * and never allocates, so it is safe on the frame hot path from any thread.
+ *
+ * <p>Reads are not atomic with respect to concurrent writes; a percentile computed while frames
+ * are being recorded may miss the last few values.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+  // Values at or above 2^MAX_VALUE_BITS microseconds are clamped into the last bucket.
+  private static final int MAX_VALUE_BITS = 40;
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+  private static final long NANOS_PER_MICRO = 1000;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /** Records one latency sample. Negative values are treated as zero. */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(indexOf(nanos / NANOS_PER_MICRO));
+    totalCount.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long min;
+    while (nanos < (min = minNanos.get()) && !minNanos.compareAndSet(min, nanos)) {}
+    long max;
+    while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {}
+  }
+
+  /** Returns the number of recorded samples. */
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /** Returns the mean of all samples in nanoseconds, or 0 if there are none. */
+  public long getMeanNanos() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : totalNanos.get() / count;
+  }
+
+  /** Returns the smallest sample in nanoseconds, or 0 if there are none. */
+  public long getMinNanos() {
+    long min = minNanos.get();
+    return min == Long.MAX_VALUE ? 0 : min;
+  }
+
+  /** Returns the largest sample in nanoseconds. */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Returns the value in nanoseconds at or below which {@code percentile} percent of the samples
+   * fall, or 0 if there are none.
+   *
+   * @param percentile a value between 0 and 100, e.g. 99.9
+   */
+  public long getValueAtPercentile(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestEquivalentMicros(i) * NANOS_PER_MICRO, getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+
+  /** Clears all samples. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalNanos.set(0);
+    minNanos.set(Long.MAX_VALUE);
+    maxNanos.set(0);
+  }
+
+  /**
+   * Appends a JSON object with the sample count and the mean, min, max and p50/p90/p99/p99.9
+   * latencies in milliseconds.
+   */
+  public void appendJson(StringBuilder out) {
+    out.append("{\"count\":").append(getCount());
+    appendMillis(out, "mean_ms", getMeanNanos());
+    appendMillis(out, "min_ms", getMinNanos());
+    appendMillis(out, "p50_ms", getValueAtPercentile(50));
+    appendMillis(out, "p90_ms", getValueAtPercentile(90));
+    appendMillis(out, "p99_ms", getValueAtPercentile(99));
+    appendMillis(out, "p999_ms", getValueAtPercentile(99.9));
+    appendMillis(out, "max_ms", getMaxNanos());
+    out.append('}');
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "count=%d p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+        getCount(),
+        getValueAtPercentile(50) / 1e6,
+        getValueAtPercentile(90) / 1e6,
+        getValueAtPercentile(99) / 1e6,
+        getValueAtPercentile(99.9) / 1e6,
+        getMaxNanos() / 1e6);
+  }
+
+  private static void appendMillis(StringBuilder out, String name, long nanos) {
+    out.append(",\"").append(name).append("\":").append(nanos / 1e6);
+  }
+
+  private static int indexOf(long micros) {
+    if (micros < SUB_BUCKET_COUNT) {
+      return (int) micros;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(micros);
+    if (msb >= MAX_VALUE_BITS) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = msb - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (micros >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+  }
+
+  private static long highestEquivalentMicros(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int offset = index - SUB_BUCKET_COUNT;
+    int shift = offset / SUB_BUCKET_HALF + 1;
+    long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide registry of named {@link LatencyHistogram}s for the stages of the frame pipeline,
+ * of named {@link RateMeter}s for throughput, and of the {@link CopyCounter} of live frame data.
+ *
+ * <p>Lookups and recording are lock-free, so stages record straight from the camera, processing
+ * and UI threads. Measure with {@link System#nanoTime()}. All rate meters share one clock, so
+ * rates reported by different processors are comparable. Each processor logs {@link #toJson()}
+ * when it stops.
+ */
+public final class MetricsRegistry {
+
+  /** Time to take ownership of an incoming camera frame. */
+  public static final String FRAME_ACQUISITION = "frame_acquisition";
+  /** Time the Camera1 processing thread waited for the next camera frame. */
+  public static final String FRAME_WAIT = "frame_wait";
+  /** Time to convert YUV camera data to NV21 or ARGB pixels. */
+  public static final String YUV_CONVERSION = "yuv_conversion";
+  /** Time to copy the region of interest out of a camera frame. */
+  public static final String ROI_CROP = "roi_crop";
+  /** Time to obtain and fill the background bitmap. */
+  public static final String BITMAP_CREATION = "bitmap_creation";
+  /** Time from handing an image to the detector to receiving its results. */
+  public static final String DETECTOR_INFERENCE = "detector_inference";
+  /** Time to replace the overlay graphics with the latest results. */
+  public static final String OVERLAY_BUILD = "overlay_build";
+  /** Time spent drawing the overlay. */
+  public static final String DRAW = "draw";
+  /** Detector latency of the synthetic images run before live frames are accepted. */
+  public static final String WARM_UP = "warm_up";
+
+  /** Frames whose detection results were delivered. */
+  public static final String FRAMES_PROCESSED = "frames_processed";
+  /** Camera1 frames replaced by a newer frame before the processing thread took them. */
+  public static final String FRAMES_SUPERSEDED = "frames_superseded";
+  /** Live frames a {@link FrameScheduler} left out. */
+  public static final String FRAMES_SKIPPED = "frames_skipped";
+  /** Live frames shown with the results of an earlier frame because the scene had not changed. */
+  public static final String FRAMES_REUSED = "frames_reused";
+  /** Overlay scenes that were replaced by a newer one before they could be drawn. */
+  public static final String SCENES_DROPPED = "scenes_dropped";
+  /** Images of a {@link VisionImageProcessor#processBatch batch} whose outcome was delivered. */
+  public static final String BATCH_ITEMS = "batch_items";
+
+  /** Name of the {@link #getFrameCopies() frame copy counter} in {@link #toJson()}. */
+  public static final String FRAME_COPIES = "frame_copies";
+
+  private static final MetricsRegistry instance = new MetricsRegistry();
+
+  private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, RateMeter> rateMeters = new ConcurrentHashMap<>();
+  private final RateMeter.Clock clock = RateMeter.SYSTEM_CLOCK;
+  private final CopyCounter frameCopies = new CopyCounter();
+
+  public static MetricsRegistry getInstance() {
+    return instance;
+  }
+
+  /** Returns the histogram with the given name, creating it if needed. */
+  public LatencyHistogram getHistogram(String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      LatencyHistogram created = new LatencyHistogram();
+      histogram = histograms.putIfAbsent(name, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  }
+
+  /** Returns the rate meter with the given name, creating it if needed. */
+  public RateMeter getRateMeter(String name) {
+    RateMeter meter = rateMeters.get(name);
+    if (meter == null) {
+      RateMeter created = new RateMeter(clock);
+      meter = rateMeters.putIfAbsent(name, created);
+      if (meter == null) {
+        meter = created;
+      }
+    }
+    return meter;
+  }
+
+  /** Returns the counter of the copies made of each live camera frame's data. */
+  public CopyCounter getFrameCopies() {
+    return frameCopies;
+  }
+
+  /** Records a latency sample for the given stage. */
+  public void record(String name, long nanos) {
+    getHistogram(name).record(nanos);
+  }
+
+  /** Returns a snapshot of all histograms, sorted by name. */
+  public Map<String, LatencyHistogram> getHistograms() {
+    return new TreeMap<>(histograms);
+  }
+
+  /** Returns a snapshot of all rate meters, sorted by name. */
+  public Map<String, RateMeter> getRateMeters() {
+    return new TreeMap<>(rateMeters);
+  }
+
+  /** Clears every histogram, rate meter and the frame copy counter. */
+  public void reset() {
+    for (LatencyHistogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+    for (RateMeter meter : rateMeters.values()) {
+      meter.reset();
+    }
+    frameCopies.reset();
+  }
+
+  /**
+   * Dumps every histogram, rate meter and the frame copy counter as one JSON object keyed by name.
+   * Rates are in events per second.
+   */
+  public String toJson() {
+    StringBuilder out = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      out.append('"').append(entry.getKey()).append("\":");
+      entry.getValue().appendJson(out);
+    }
+    for (Map.Entry<String, RateMeter> entry : getRateMeters().entrySet()) {
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      out.append('"').append(entry.getKey()).append("\":");
+      entry.getValue().appendJson(out);
+    }
+    if (!first) {
+      out.append(',');
+    }
+    out.append('"').append(FRAME_COPIES).append("\":");
+    frameCopies.appendJson(out);
+    return out.append('}').toString();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tells whether a camera frame differs enough from the last detected frame to be worth detecting
+ * in, so that a camera watching a static scene does not run the detector on every frame.
+ *
+ * <p>The luma plane is reduced to a {@link #GRID_COLUMNS} x {@link #GRID_ROWS} grid of blocks, each
+ * summing a 4x4 lattice of samples, and compared block by block with the grid of the reference
+ * frame. A frame counts as changed when enough blocks differ by more than a threshold. By default
+ * that takes two blocks, so sensor noise spiking a single block does not register, while even a
+ * small object moving from one block into the next changes both. Unchanged frames are compared
+ * against the same reference rather than their predecessor, so a slow drift eventually registers
+ * too, and the reference is refreshed after a number of unchanged frames regardless.
+ *
+ * <p>Only about 12,000 bytes are read per frame and nothing is allocated.
+ */
+public final class MotionGate {
+
+  public static final int GRID_COLUMNS = 32;
+  public static final int GRID_ROWS = 24;
+
+  /** Mean luma difference of a block, in levels of 0 to 255, above which the block changed. */
+  public static final int DEFAULT_BLOCK_THRESHOLD = 10;
+
+  /** Number of changed blocks that make a frame count as changed. */
+  public static final int DEFAULT_MIN_CHANGED_BLOCKS = 2;
+
+  /** Number of consecutive unchanged frames after which a frame is detected in anyway. */
+  public static final int DEFAULT_MAX_UNCHANGED_FRAMES = 30;
+
+  private static final int SAMPLES_PER_SIDE = 4;
+  private static final int SAMPLES_PER_BLOCK = SAMPLES_PER_SIDE * SAMPLES_PER_SIDE;
+
+  private final int blockSumThreshold;
+  private final int minChangedBlocks;
+  private final int maxUnchangedFrames;
+
+  // Per block sums of the samples; the arrays are swapped when a frame becomes the reference.
+  private int[] referenceGrid = new int[GRID_COLUMNS * GRID_ROWS];
+  private int[] frameGrid = new int[GRID_COLUMNS * GRID_ROWS];
+  private boolean hasReference;
+  private int referenceWidth;
+  private int referenceHeight;
+  private int unchangedFrames;
+
+  public MotionGate() {
+    this(DEFAULT_BLOCK_THRESHOLD, DEFAULT_MIN_CHANGED_BLOCKS, DEFAULT_MAX_UNCHANGED_FRAMES);
+  }
+
+  public MotionGate(int blockThreshold, int minChangedBlocks, int maxUnchangedFrames) {
+    this.blockSumThreshold = blockThreshold * SAMPLES_PER_BLOCK;
+    this.minChangedBlocks = minChangedBlocks;
+    this.maxUnchangedFrames = maxUnchangedFrames;
+  }
+
+  /**
+   * Returns whether the frame should be detected in, i.e. whether it differs from the reference
+   * frame or the reference is due to be refreshed. The frame then becomes the new reference, so
+   * callers that end up not detecting in it should {@link #reset} the gate.
+   *
+   * @param luma the luma plane, starting at the buffer's position; e.g. an NV21 frame, or plane 0
+   *     of a YUV_420_888 image
+   * @param rowStride distance between the starts of two rows, in bytes
+   * @param pixelStride distance between two neighbouring pixels of a row, in bytes
+   */
+  public synchronized boolean hasChanged(
+      ByteBuffer luma, int width, int height, int rowStride, int pixelStride) {
+    if (width < GRID_COLUMNS * SAMPLES_PER_SIDE || height < GRID_ROWS * SAMPLES_PER_SIDE) {
+      return true;
+    }
+    sampleGrid(luma, width, height, rowStride, pixelStride, frameGrid);
+
+    boolean changed =
+        !hasReference
+            || width != referenceWidth
+            || height != referenceHeight
+            || unchangedFrames >= maxUnchangedFrames
+            || countChangedBlocks() >= minChangedBlocks;
+    if (!changed) {
+      unchangedFrames++;
+      return false;
+    }
+    int[] previousReference = referenceGrid;
+    referenceGrid = frameGrid;
+    frameGrid = previousReference;
+    hasReference = true;
+    referenceWidth = width;
+    referenceHeight = height;
+    unchangedFrames = 0;
+    return true;
+  }
+
+  /** Forgets the reference frame, so the next frame counts as changed. */
+  public synchronized void reset() {
+    hasReference = false;
+    unchangedFrames = 0;
+  }
+
+  private int countChangedBlocks() {
+    int changedBlocks = 0;
+    for (int i = 0; i < referenceGrid.length; i++) {
+      if (Math.abs(frameGrid[i] - referenceGrid[i]) > blockSumThreshold) {
+        changedBlocks++;
+        if (changedBlocks >= minChangedBlocks) {
+          break;
+        }
+      }
+    }
+    return changedBlocks;
+  }
+
+  private static void sampleGrid(
+      ByteBuffer luma, int width, int height, int rowStride, int pixelStride, int[] grid) {
+    int base = luma.position();
+    int blockWidth = width / GRID_COLUMNS;
+    int blockHeight = height / GRID_ROWS;
+    // Samples sit at the centres of a 4x4 subdivision of each block.
+    int sampleStepX = blockWidth / SAMPLES_PER_SIDE;
+    int sampleStepY = blockHeight / SAMPLES_PER_SIDE;
+    int firstSampleX = sampleStepX / 2;
+    int firstSampleY = sampleStepY / 2;
+
+    int block = 0;
+    for (int row = 0; row < GRID_ROWS; row++) {
+      int blockTop = row * blockHeight + firstSampleY;
+      for (int column = 0; column < GRID_COLUMNS; column++) {
+        int blockLeft = column * blockWidth + firstSampleX;
+        int sum = 0;
+        for (int sy = 0; sy < SAMPLES_PER_SIDE; sy++) {
+          int rowStart = base + (blockTop + sy * sampleStepY) * rowStride;
+          for (int sx = 0; sx < SAMPLES_PER_SIDE; sx++) {
+            sum += luma.get(rowStart + (blockLeft + sx * sampleStepX) * pixelStride) & 0xFF;
+          }
+        }
+        grid[block++] = sum;
+      }
+    }
+  }
+}
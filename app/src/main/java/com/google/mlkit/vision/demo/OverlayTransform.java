@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+/**
+ * An immutable mapping from image coordinates to {@link GraphicOverlay} view coordinates.
+ *
+ * <p>The image is scaled to fill the view, cropped evenly on the sides that overflow, and mirrored
+ * horizontally if it is flipped. Results of detection on a region of the image are first offset by
+ * the region's position. All of that folds into {@code x' = scaleX * x + translateX} and {@code y'
+ * = scale * y + translateY}, so mapping a point needs no branches.
+ */
+public final class OverlayTransform {
+
+  static final OverlayTransform IDENTITY = new OverlayTransform(1f, 0f, 0f, false, 0, 0, 0);
+
+  private final float scale;
+  private final float scaleX;
+  private final float translateX;
+  private final float translateY;
+  private final float postScaleWidthOffset;
+  private final float postScaleHeightOffset;
+  private final boolean isFlipped;
+
+  /**
+   * Returns the mapping that fits an image into a view.
+   *
+   * @param isFlipped whether the image is mirrored horizontally
+   * @param detectionOffsetX the left edge in the image of the region results refer to
+   * @param detectionOffsetY the top edge in the image of the region results refer to
+   */
+  public static OverlayTransform fitImage(
+      int imageWidth,
+      int imageHeight,
+      int viewWidth,
+      int viewHeight,
+      boolean isFlipped,
+      int detectionOffsetX,
+      int detectionOffsetY) {
+    float viewAspectRatio = (float) viewWidth / viewHeight;
+    float imageAspectRatio = (float) imageWidth / imageHeight;
+    // The factor of overlay View size to image size. Anything in the image coordinates need to be
+    // scaled by this amount to fit with the area of overlay View.
+    float scaleFactor;
+    // The number of pixels needed to be cropped on each side to fit the image with the area of
+    // overlay View after scaling.
+    float postScaleWidthOffset = 0;
+    float postScaleHeightOffset = 0;
+    if (viewAspectRatio > imageAspectRatio) {
+      // The image needs to be vertically cropped to be displayed in this view.
+      scaleFactor = (float) viewWidth / imageWidth;
+      postScaleHeightOffset = ((float) viewWidth / imageAspectRatio - viewHeight) / 2;
+    } else {
+      // The image needs to be horizontally cropped to be displayed in this view.
+      scaleFactor = (float) viewHeight / imageHeight;
+      postScaleWidthOffset = ((float) viewHeight * imageAspectRatio - viewWidth) / 2;
+    }
+    return new OverlayTransform(
+        scaleFactor,
+        postScaleWidthOffset,
+        postScaleHeightOffset,
+        isFlipped,
+        viewWidth,
+        detectionOffsetX,
+        detectionOffsetY);
+  }
+
+  /**
+   * @param scale the factor of view size to image size
+   * @param postScaleWidthOffset the number of view pixels cropped on each horizontal side
+   * @param postScaleHeightOffset the number of view pixels cropped on each vertical side
+   * @param isFlipped whether the image is mirrored horizontally
+   * @param viewWidth the width of the overlay view
+   * @param detectionOffsetX the left edge in the image of the region results refer to
+   * @param detectionOffsetY the top edge in the image of the region results refer to
+   */
+  OverlayTransform(
+      float scale,
+      float postScaleWidthOffset,
+      float postScaleHeightOffset,
+      boolean isFlipped,
+      int viewWidth,
+      int detectionOffsetX,
+      int detectionOffsetY) {
+    this.scale = scale;
+    this.postScaleWidthOffset = postScaleWidthOffset;
+    this.postScaleHeightOffset = postScaleHeightOffset;
+    this.isFlipped = isFlipped;
+    float viewOffsetX;
+    if (isFlipped) {
+      scaleX = -scale;
+      viewOffsetX = viewWidth + postScaleWidthOffset;
+    } else {
+      scaleX = scale;
+      viewOffsetX = -postScaleWidthOffset;
+    }
+    translateX = scaleX * detectionOffsetX + viewOffsetX;
+    translateY = scale * detectionOffsetY - postScaleHeightOffset;
+  }
+
+  /** Adjusts the supplied value from the image scale to the view scale. */
+  public float scale(float imagePixel) {
+    return imagePixel * scale;
+  }
+
+  public float mapX(float x) {
+    return scaleX * x + translateX;
+  }
+
+  public float mapY(float y) {
+    return scale * y + translateY;
+  }
+
+  public boolean isFlipped() {
+    return isFlipped;
+  }
+
+  /** Returns the number of view pixels cropped on each horizontal side of the scaled image. */
+  float getPostScaleWidthOffset() {
+    return postScaleWidthOffset;
+  }
+
+  /** Returns the number of view pixels cropped on each vertical side of the scaled image. */
+  float getPostScaleHeightOffset() {
+    return postScaleHeightOffset;
+  }
+
+  /**
+   * Maps points given as consecutive x, y pairs. {@code src} and {@code dst} may be the same array.
+   */
+  public void mapPoints(float[] src, float[] dst) {
+    mapPoints(src, 0, dst, 0, src.length / 2);
+  }
+
+  /**
+   * Maps {@code pointCount} points given as consecutive x, y pairs, reading from {@code src}
+   * starting at {@code srcIndex} and writing to {@code dst} starting at {@code dstIndex}.
+   */
+  public void mapPoints(float[] src, int srcIndex, float[] dst, int dstIndex, int pointCount) {
+    float scaleX = this.scaleX;
+    float scaleY = this.scale;
+    float translateX = this.translateX;
+    float translateY = this.translateY;
+    int end = srcIndex + pointCount * 2;
+    for (int i = srcIndex, j = dstIndex; i < end; i += 2, j += 2) {
+      dst[j] = scaleX * src[i] + translateX;
+      dst[j + 1] = scaleY * src[i + 1] + translateY;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free sliding-window event rate meter, e.g. for frames per second.
+ *
+ * <p>Events are counted in a ring of 100 ms buckets covering the last minute. Rates are computed
+ * on demand from the buckets, so the meter needs no timer thread. Each bucket packs the index of
+ * the time slot it belongs to together with its count into a single long, which lets a stale
+ * bucket be reset and incremented with one compare-and-set.
+ */
+public final class RateMeter {
+
+  /** Source of monotonic time in nanoseconds. */
+  public interface Clock {
+    long nanoTime();
+  }
+
+  /** The clock shared by all meters unless another one is given. */
+  public static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+  private static final long BUCKET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long MAX_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+  // One extra bucket for the slot that is currently filling up.
+  private static final int BUCKET_COUNT = (int) (MAX_WINDOW_NANOS / BUCKET_NANOS) + 1;
+  private static final int COUNT_BITS = 20;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  private final Clock clock;
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong startNanos = new AtomicLong();
+  private final AtomicLong lastEventNanos = new AtomicLong(-1);
+  private final AtomicLong lastIntervalNanos = new AtomicLong();
+
+  public RateMeter() {
+    this(SYSTEM_CLOCK);
+  }
+
+  public RateMeter(Clock clock) {
+    this.clock = clock;
+    reset();
+  }
+
+  /** Records one event at the current time. */
+  public void mark() {
+    long elapsed = clock.nanoTime() - startNanos.get();
+    long slot = elapsed / BUCKET_NANOS;
+    int index = (int) (slot % BUCKET_COUNT);
+    while (true) {
+      long bucket = buckets.get(index);
+      long updated;
+      if ((bucket >>> COUNT_BITS) == slot) {
+        if ((bucket & COUNT_MASK) == COUNT_MASK) {
+          break;
+        }
+        updated = bucket + 1;
+      } else {
+        updated = (slot << COUNT_BITS) | 1;
+      }
+      if (buckets.compareAndSet(index, bucket, updated)) {
+        break;
+      }
+    }
+
+    long previous = lastEventNanos.getAndSet(elapsed);
+    if (previous >= 0) {
+      lastIntervalNanos.set(elapsed - previous);
+    }
+  }
+
+  /**
+   * Returns the rate implied by the interval between the two most recent events, in events per
+   * second, or 0 if fewer than two events were recorded or the last one is older than a second.
+   */
+  public double getInstantaneousRate() {
+    long interval = lastIntervalNanos.get();
+    long last = lastEventNanos.get();
+    long elapsed = clock.nanoTime() - startNanos.get();
+    if (interval <= 0 || last < 0 || elapsed - last > TimeUnit.SECONDS.toNanos(1)) {
+      return 0;
+    }
+    return (double) TimeUnit.SECONDS.toNanos(1) / interval;
+  }
+
+  /**
+   * Returns the average rate over the given trailing window, in events per second.
+   *
+   * @param window the window length, rounded to 100 ms and capped at 60 seconds
+   */
+  public double getRate(long window, TimeUnit unit) {
+    long windowNanos = Math.min(unit.toNanos(window), MAX_WINDOW_NANOS);
+    long windowBuckets = Math.max(1, windowNanos / BUCKET_NANOS);
+    long elapsed = clock.nanoTime() - startNanos.get();
+    long currentSlot = elapsed / BUCKET_NANOS;
+    long oldestSlot = Math.max(0, currentSlot - windowBuckets);
+
+    long events = 0;
+    for (long slot = oldestSlot; slot <= currentSlot; slot++) {
+      long bucket = buckets.get((int) (slot % BUCKET_COUNT));
+      if ((bucket >>> COUNT_BITS) == slot) {
+        events += bucket & COUNT_MASK;
+      }
+    }
+    // The window covers the complete buckets plus however much of the current one has passed. A
+    // meter that has only just started still counts as one full bucket, so a single early event
+    // does not read as a huge rate.
+    long spanNanos = Math.max(elapsed - oldestSlot * BUCKET_NANOS, BUCKET_NANOS);
+    return events * (double) TimeUnit.SECONDS.toNanos(1) / spanNanos;
+  }
+
+  /** Forgets all recorded events. */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      // Slot 0 of a fresh meter must not match a stale bucket, so clear buckets to an unused slot.
+      buckets.set(i, -1L << COUNT_BITS);
+    }
+    lastEventNanos.set(-1);
+    lastIntervalNanos.set(0);
+    startNanos.set(clock.nanoTime());
+  }
+
+  /** Appends a JSON object with the instantaneous, 1 s, 10 s and 60 s rates. */
+  public void appendJson(StringBuilder out) {
+    out.append("{\"instant\":")
+        .append(getInstantaneousRate())
+        .append(",\"1s\":")
+        .append(getRate(1, TimeUnit.SECONDS))
+        .append(",\"10s\":")
+        .append(getRate(10, TimeUnit.SECONDS))
+        .append(",\"60s\":")
+        .append(getRate(60, TimeUnit.SECONDS))
+        .append('}');
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US,
+        "instant=%.1f 1s=%.1f 10s=%.1f 60s=%.1f",
+        getInstantaneousRate(),
+        getRate(1, TimeUnit.SECONDS),
+        getRate(10, TimeUnit.SECONDS),
+        getRate(60, TimeUnit.SECONDS));
+  }
+}
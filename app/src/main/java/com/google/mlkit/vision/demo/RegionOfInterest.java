@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * A window of the camera frame that detection is restricted to, given as fractions of the upright
+ * frame, i.e. of the frame after it has been rotated for display.
+ *
+ * <p>Detecting in a smaller image is considerably faster, e.g. when scanning barcodes held in front
+ * of a fixed camera. {@link #getCrop} works out which part of the camera buffer to copy for a given
+ * frame size and rotation, and where the window lies in the upright frame, so that results can be
+ * shown at their position in the full frame.
+ */
+public final class RegionOfInterest {
+
+  /** A horizontal band across the middle of the frame, suited to barcodes and lines of text. */
+  public static final RegionOfInterest CENTER_BAND = new RegionOfInterest(0.1f, 0.3f, 0.9f, 0.7f);
+
+  private final float left;
+  private final float top;
+  private final float right;
+  private final float bottom;
+
+  // The crop for the most recent frame geometry; the camera rarely changes it.
+  @Nullable private volatile Crop lastCrop;
+
+  /** Creates a region from fractions of the upright frame's width and height. */
+  public RegionOfInterest(float left, float top, float right, float bottom) {
+    if (!(0 <= left && left < right && right <= 1 && 0 <= top && top < bottom && bottom <= 1)) {
+      throw new IllegalArgumentException(
+          "Invalid region: " + left + ", " + top + ", " + right + ", " + bottom);
+    }
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  /**
+   * Returns the crop of this region for a camera buffer of the given size.
+   *
+   * @param width the width of the camera buffer, as delivered by the camera
+   * @param height the height of the camera buffer
+   * @param rotationDegrees the clockwise rotation that makes the buffer upright
+   */
+  public Crop getCrop(int width, int height, int rotationDegrees) {
+    Crop crop = lastCrop;
+    if (crop == null
+        || crop.frameWidth != width
+        || crop.frameHeight != height
+        || crop.rotationDegrees != rotationDegrees) {
+      crop = computeCrop(width, height, rotationDegrees);
+      lastCrop = crop;
+    }
+    return crop;
+  }
+
+  private Crop computeCrop(int width, int height, int rotationDegrees) {
+    // The region in fractions of the buffer, before rotation.
+    float bufferLeft;
+    float bufferTop;
+    float bufferRight;
+    float bufferBottom;
+    switch (rotationDegrees) {
+      case 90:
+        bufferLeft = top;
+        bufferRight = bottom;
+        bufferTop = 1 - right;
+        bufferBottom = 1 - left;
+        break;
+      case 180:
+        bufferLeft = 1 - right;
+        bufferRight = 1 - left;
+        bufferTop = 1 - bottom;
+        bufferBottom = 1 - top;
+        break;
+      case 270:
+        bufferLeft = 1 - bottom;
+        bufferRight = 1 - top;
+        bufferTop = left;
+        bufferBottom = right;
+        break;
+      default:
+        bufferLeft = left;
+        bufferRight = right;
+        bufferTop = top;
+        bufferBottom = bottom;
+    }
+    // Chroma is subsampled by two in both directions, so the crop is aligned to even pixels.
+    int cropLeft = (int) (bufferLeft * width) & ~1;
+    int cropTop = (int) (bufferTop * height) & ~1;
+    int cropWidth = Math.max(2, ((int) (bufferRight * width) & ~1) - cropLeft);
+    int cropHeight = Math.max(2, ((int) (bufferBottom * height) & ~1) - cropTop);
+    // A crop widened to the minimum at the edge of an odd-sized frame is moved back inside it.
+    cropLeft = Math.min(cropLeft, (width & ~1) - cropWidth);
+    cropTop = Math.min(cropTop, (height & ~1) - cropHeight);
+    return new Crop(width, height, rotationDegrees, cropLeft, cropTop, cropWidth, cropHeight);
+  }
+
+  /** The part of one camera buffer geometry covered by a region. */
+  public static final class Crop {
+    final int frameWidth;
+    final int frameHeight;
+    final int rotationDegrees;
+
+    /** The left edge of the crop in the camera buffer. */
+    public final int left;
+    /** The top edge of the crop in the camera buffer. */
+    public final int top;
+    /** The width of the crop in the camera buffer. */
+    public final int width;
+    /** The height of the crop in the camera buffer. */
+    public final int height;
+    /** The left edge of the crop in the upright frame. */
+    public final int offsetX;
+    /** The top edge of the crop in the upright frame. */
+    public final int offsetY;
+
+    Crop(
+        int frameWidth,
+        int frameHeight,
+        int rotationDegrees,
+        int left,
+        int top,
+        int width,
+        int height) {
+      this.frameWidth = frameWidth;
+      this.frameHeight = frameHeight;
+      this.rotationDegrees = rotationDegrees;
+      this.left = left;
+      this.top = top;
+      this.width = width;
+      this.height = height;
+      switch (rotationDegrees) {
+        case 90:
+          offsetX = frameHeight - (top + height);
+          offsetY = left;
+          break;
+        case 180:
+          offsetX = frameWidth - (left + width);
+          offsetY = frameHeight - (top + height);
+          break;
+        case 270:
+          offsetX = top;
+          offsetY = frameWidth - (left + width);
+          break;
+        default:
+          offsetX = left;
+          offsetY = top;
+      }
+    }
+
+    /** Returns the size in bytes of the cropped frame in NV21 format. */
+    public int getNv21Size() {
+      return width * height + width * height / 2;
+    }
+
+    /**
+     * Copies the cropped part of an NV21 frame of this crop's geometry into {@code out}, which
+     * receives a tightly packed NV21 frame of {@link #width} by {@link #height}.
+     *
+     * <p>Rows are copied with bulk transfers, which works for heap and direct buffers alike.
+     *
+     * @param nv21 the source frame, starting at index 0; its position and limit are left unchanged
+     * @param rowStride the distance in bytes between the starts of two rows of {@code nv21}, in
+     *     both the luma and the interleaved chroma plane
+     * @param out receives the cropped frame from index 0; its position and limit are left unchanged
+     */
+    public void cropNv21(ByteBuffer nv21, int rowStride, ByteBuffer out) {
+      ByteBuffer in = nv21.duplicate();
+      ByteBuffer dst = out.duplicate();
+      in.clear();
+      dst.clear();
+      int inPos = top * rowStride + left;
+      for (int row = 0; row < height; row++) {
+        in.limit(inPos + width).position(inPos);
+        dst.put(in);
+        inPos += rowStride;
+      }
+      // Each chroma row holds interleaved V and U samples for two luma rows.
+      inPos = frameHeight * rowStride + (top / 2) * rowStride + left;
+      for (int row = 0; row < height / 2; row++) {
+        in.limit(inPos + width).position(inPos);
+        dst.put(in);
+        inPos += rowStride;
+      }
+    }
+  }
+}
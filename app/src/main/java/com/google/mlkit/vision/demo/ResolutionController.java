@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import androidx.annotation.GuardedBy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the camera analysis resolution from measured detector latency, so that detection keeps up
+ * with a target frame rate without tuning the resolution per device.
+ *
+ * <p>The controller keeps the latencies of the last {@link #WINDOW_SIZE} frames. Once the window
+ * is full, it steps one resolution down the ladder when the 90th percentile exceeds the frame
+ * budget, and one step up when the 90th percentile, scaled by the pixel count of the larger
+ * resolution, would still leave {@link #STEP_UP_HEADROOM} of the budget unused. The gap between
+ * the two thresholds, a fresh window after every change and a {@link #COOLDOWN_MS} pause keep it
+ * from oscillating between two resolutions.
+ */
+public final class ResolutionController {
+
+  /** Receives resolution changes on the thread that recorded the deciding latency. */
+  public interface Listener {
+    void onResolutionChanged(int width, int height);
+  }
+
+  /** Landscape 4:3 resolutions from largest to smallest. */
+  public static final int[][] DEFAULT_LADDER = {
+    {1280, 960}, {960, 720}, {640, 480}, {480, 360}, {320, 240}
+  };
+
+  /** Number of recent frames the latency percentile is computed over. */
+  public static final int WINDOW_SIZE = 30;
+
+  /** Minimum time between two changes, so frames at the new resolution are measured first. */
+  public static final long COOLDOWN_MS = 3000;
+
+  /** Fraction of the budget that must remain free at the larger resolution to step up. */
+  public static final float STEP_UP_HEADROOM = 0.2f;
+
+  private final int[][] ladder;
+  private final long budgetNanos;
+  private final Listener listener;
+  private final RateMeter.Clock clock;
+
+  @GuardedBy("this")
+  private final long[] samples = new long[WINDOW_SIZE];
+
+  @GuardedBy("this")
+  private final long[] sortedSamples = new long[WINDOW_SIZE];
+
+  @GuardedBy("this")
+  private int sampleCount;
+
+  @GuardedBy("this")
+  private int level;
+
+  @GuardedBy("this")
+  private long lastChangeNanos;
+
+  public ResolutionController(
+      int initialWidth, int initialHeight, float targetFps, Listener listener) {
+    this(DEFAULT_LADDER, initialWidth, initialHeight, targetFps, listener, RateMeter.SYSTEM_CLOCK);
+  }
+
+  /**
+   * @param ladder resolutions as width, height pairs, ordered from largest to smallest
+   * @param initialWidth the width the camera starts with; the controller starts at the largest
+   *     ladder resolution that is not larger than it
+   * @param initialHeight the height the camera starts with
+   * @param targetFps the frame rate detection should sustain
+   */
+  public ResolutionController(
+      int[][] ladder,
+      int initialWidth,
+      int initialHeight,
+      float targetFps,
+      Listener listener,
+      RateMeter.Clock clock) {
+    if (ladder.length == 0 || targetFps <= 0) {
+      throw new IllegalArgumentException("Needs a non-empty ladder and a positive frame rate");
+    }
+    this.ladder = ladder;
+    this.budgetNanos = (long) (TimeUnit.SECONDS.toNanos(1) / targetFps);
+    this.listener = listener;
+    this.clock = clock;
+    long initialPixels = (long) initialWidth * initialHeight;
+    level = ladder.length - 1;
+    for (int i = 0; i < ladder.length; i++) {
+      if (getPixels(i) <= initialPixels) {
+        level = i;
+        break;
+      }
+    }
+    lastChangeNanos = clock.nanoTime();
+  }
+
+  /** Returns the width of the current resolution. */
+  public synchronized int getWidth() {
+    return ladder[level][0];
+  }
+
+  /** Returns the height of the current resolution. */
+  public synchronized int getHeight() {
+    return ladder[level][1];
+  }
+
+  /** Records the detector latency of one frame, possibly changing the resolution. */
+  public void recordLatency(long latencyNanos) {
+    int width;
+    int height;
+    synchronized (this) {
+      samples[sampleCount % WINDOW_SIZE] = latencyNanos;
+      sampleCount++;
+      long now = clock.nanoTime();
+      if (sampleCount < WINDOW_SIZE
+          || now - lastChangeNanos < TimeUnit.MILLISECONDS.toNanos(COOLDOWN_MS)) {
+        return;
+      }
+      long p90 = getWindowPercentile(90);
+      int newLevel = level;
+      if (p90 > budgetNanos && level < ladder.length - 1) {
+        newLevel = level + 1;
+      } else if (level > 0) {
+        // Detection time grows roughly with the number of pixels.
+        double predicted = (double) p90 * getPixels(level - 1) / getPixels(level);
+        if (predicted < budgetNanos * (1 - STEP_UP_HEADROOM)) {
+          newLevel = level - 1;
+        }
+      }
+      if (newLevel == level) {
+        return;
+      }
+      level = newLevel;
+      sampleCount = 0;
+      lastChangeNanos = now;
+      width = ladder[level][0];
+      height = ladder[level][1];
+    }
+    listener.onResolutionChanged(width, height);
+  }
+
+  @GuardedBy("this")
+  private long getWindowPercentile(int percentile) {
+    System.arraycopy(samples, 0, sortedSamples, 0, WINDOW_SIZE);
+    Arrays.sort(sortedSamples);
+    int index = (int) Math.ceil(percentile / 100.0 * WINDOW_SIZE) - 1;
+    return sortedSamples[Math.max(0, index)];
+  }
+
+  private long getPixels(int level) {
+    return (long) ladder[level][0] * ladder[level][1];
+  }
+}
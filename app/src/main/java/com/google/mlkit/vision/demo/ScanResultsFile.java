@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The results of a bulk scan, one line per image, which double as the checkpoint the scan resumes
+ * from.
+ *
+ * <p>Each line holds the path of the image, {@code ok} or {@code error}, and the results or the
+ * error message, separated by tabs. Tabs, line breaks and backslashes in the last field are
+ * escaped as {@code \t}, {@code \n}, {@code \r} and {@code \\}.
+ *
+ * <p>Opening an existing file appends to it, and every image it already holds a line for counts as
+ * done, failed images included. Lines are written out every {@link #FLUSH_INTERVAL} images, so a
+ * scan that is killed loses at most that many results, which are scanned again on resume. A line
+ * torn by the kill is dropped when the file is reopened.
+ */
+public final class ScanResultsFile implements Closeable {
+
+  /** Number of images whose lines are buffered before they are written to the file. */
+  public static final int FLUSH_INTERVAL = 64;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Set<String> donePaths = new HashSet<>();
+  private final Writer writer;
+  private final StringBuilder line = new StringBuilder();
+  private int pendingCount;
+
+  public ScanResultsFile(File file) throws IOException {
+    if (file.length() > 0) {
+      trimTornLine(file);
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+        String existing;
+        while ((existing = reader.readLine()) != null) {
+          int tab = existing.indexOf('\t');
+          if (tab > 0) {
+            donePaths.add(existing.substring(0, tab));
+          }
+        }
+      }
+    }
+    writer = new OutputStreamWriter(new FileOutputStream(file, /* append= */ true), UTF_8);
+  }
+
+  /** Returns whether the file holds a line for the image at {@code path}. */
+  public synchronized boolean isDone(String path) {
+    return donePaths.contains(path);
+  }
+
+  /** Returns the number of images the file holds a line for. */
+  public synchronized int getDoneCount() {
+    return donePaths.size();
+  }
+
+  /** Records the results of the image at {@code path}. */
+  public synchronized void appendResult(String path, CharSequence results) throws IOException {
+    append(path, "ok", results);
+  }
+
+  /** Records that the image at {@code path} could not be loaded or detected in. */
+  public synchronized void appendError(String path, CharSequence message) throws IOException {
+    append(path, "error", message);
+  }
+
+  /** Writes out the buffered lines. */
+  public synchronized void flush() throws IOException {
+    writer.flush();
+    pendingCount = 0;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  private void append(String path, String status, CharSequence details) throws IOException {
+    if (path.indexOf('\t') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+      throw new IllegalArgumentException("Unsupported path: " + path);
+    }
+    line.setLength(0);
+    line.append(path).append('\t').append(status).append('\t');
+    appendEscaped(details, line);
+    line.append('\n');
+    writer.append(line);
+    donePaths.add(path);
+    if (++pendingCount >= FLUSH_INTERVAL) {
+      flush();
+    }
+  }
+
+  private static void appendEscaped(CharSequence text, StringBuilder out) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\t':
+          out.append("\\t");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+
+  /** Cuts the file after its last line break, dropping a line that was only partly written. */
+  private static void trimTornLine(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      long end = randomAccessFile.length();
+      while (end > 0) {
+        randomAccessFile.seek(end - 1);
+        if (randomAccessFile.read() == '\n') {
+          break;
+        }
+        end--;
+      }
+      if (end < randomAccessFile.length()) {
+        randomAccessFile.setLength(end);
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of measured text widths, shared by the overlay graphics.
+ *
+ * <p>Widths are keyed by the text and the paint attributes that affect it (size, horizontal scale
+ * and typeface), not by the paint itself, so paints that only differ in color share entries. The
+ * least recently used entries are evicted beyond {@link #MAX_ENTRIES}. A lookup does not allocate
+ * unless the text is not cached yet, and it accepts a reused {@link StringBuilder} as well as a
+ * {@link String}.
+ */
+public final class TextLayoutCache {
+
+  /** The maximum number of widths kept. */
+  public static final int MAX_ENTRIES = 512;
+
+  private static final TextLayoutCache instance = new TextLayoutCache();
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, Float> widths =
+      new LinkedHashMap<Key, Float>(64, 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  // Reused to look up entries without allocating a key.
+  @GuardedBy("this")
+  private final Key probe = new Key();
+
+  public static TextLayoutCache getInstance() {
+    return instance;
+  }
+
+  /** Returns the width of {@code text} drawn with {@code paint}, like {@link Paint#measureText}. */
+  public synchronized float measureText(Paint paint, CharSequence text) {
+    probe.set(text, paint.getTextSize(), paint.getTextScaleX(), paint.getTypeface());
+    Float width = widths.get(probe);
+    if (width == null) {
+      width = paint.measureText(text, 0, text.length());
+      Key key = new Key();
+      key.set(text.toString(), probe.textSize, probe.textScaleX, probe.typeface);
+      widths.put(key, width);
+    }
+    return width;
+  }
+
+  /** Removes all cached widths. */
+  public synchronized void clear() {
+    widths.clear();
+  }
+
+  private static final class Key {
+    private CharSequence text = "";
+    private float textSize;
+    private float textScaleX;
+    @Nullable private Typeface typeface;
+    private int hash;
+
+    void set(CharSequence text, float textSize, float textScaleX, @Nullable Typeface typeface) {
+      this.text = text;
+      this.textSize = textSize;
+      this.textScaleX = textScaleX;
+      this.typeface = typeface;
+      int h = 0;
+      for (int i = 0; i < text.length(); i++) {
+        h = 31 * h + text.charAt(i);
+      }
+      h = 31 * h + Float.floatToIntBits(textSize);
+      h = 31 * h + Float.floatToIntBits(textScaleX);
+      h = 31 * h + (typeface == null ? 0 : typeface.hashCode());
+      hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      if (hash != other.hash
+          || textSize != other.textSize
+          || textScaleX != other.textScaleX
+          || typeface != other.typeface
+          || text.length() != other.text.length()) {
+        return false;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) != other.text.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+import android.view.TextureView;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders a {@link GraphicOverlay} on a dedicated render thread into a {@link TextureView} laid
+ * out on top of it, instead of on the UI thread in {@link GraphicOverlay#onDraw}.
+ *
+ * <p>While attached, invalidations of the overlay request a render, and any number of requests
+ * made within one frame result in a single draw at the next vsync. The overlay keeps computing
+ * its transformation from its own size, so the texture view must have the same bounds.
+ */
+public final class TextureOverlayRenderer
+    implements TextureView.SurfaceTextureListener, Choreographer.FrameCallback {
+
+  private final GraphicOverlay overlay;
+  private final TextureView textureView;
+  private final AtomicBoolean renderRequested = new AtomicBoolean();
+  private final Object surfaceLock = new Object();
+
+  @Nullable private HandlerThread renderThread;
+  @Nullable private Handler renderHandler;
+  // Only accessed on the render thread.
+  @Nullable private Choreographer choreographer;
+
+  @GuardedBy("surfaceLock")
+  private boolean isSurfaceAvailable;
+
+  public TextureOverlayRenderer(GraphicOverlay overlay, TextureView textureView) {
+    this.overlay = overlay;
+    this.textureView = textureView;
+  }
+
+  /** Starts the render thread and redirects the overlay's drawing to it. Call on the UI thread. */
+  public void start() {
+    if (renderThread != null) {
+      return;
+    }
+    renderThread = new HandlerThread("OverlayRenderer");
+    renderThread.start();
+    renderHandler = new Handler(renderThread.getLooper());
+    renderHandler.post(() -> choreographer = Choreographer.getInstance());
+
+    textureView.setOpaque(false);
+    textureView.setSurfaceTextureListener(this);
+    if (textureView.isAvailable()) {
+      setSurfaceAvailable(true);
+    }
+    overlay.setRenderer(this);
+    requestRender();
+  }
+
+  /** Hands drawing back to the overlay view and stops the render thread. Call on the UI thread. */
+  public void stop() {
+    if (renderThread == null) {
+      return;
+    }
+    overlay.setRenderer(null);
+    textureView.setSurfaceTextureListener(null);
+    setSurfaceAvailable(false);
+    renderThread.quitSafely();
+    renderThread = null;
+    renderHandler = null;
+    renderRequested.set(false);
+    overlay.postInvalidate();
+  }
+
+  /** Schedules a draw at the next vsync unless one is already pending. Safe on any thread. */
+  void requestRender() {
+    Handler handler = renderHandler;
+    if (handler == null || !renderRequested.compareAndSet(false, true)) {
+      return;
+    }
+    handler.post(
+        () -> {
+          if (choreographer != null) {
+            choreographer.postFrameCallback(this);
+          }
+        });
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    // Cleared before drawing so that a change made while drawing schedules another frame.
+    renderRequested.set(false);
+    synchronized (surfaceLock) {
+      if (!isSurfaceAvailable) {
+        return;
+      }
+      Canvas canvas = textureView.lockCanvas();
+      if (canvas == null) {
+        return;
+      }
+      try {
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        overlay.drawScene(canvas);
+      } finally {
+        textureView.unlockCanvasAndPost(canvas);
+      }
+    }
+  }
+
+  @Override
+  public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+    setSurfaceAvailable(true);
+    requestRender();
+  }
+
+  @Override
+  public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+    requestRender();
+  }
+
+  @Override
+  public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+    // Waits for a draw in progress, so the surface is not released under the render thread.
+    setSurfaceAvailable(false);
+    return true;
+  }
+
+  @Override
+  public void onSurfaceTextureUpdated(SurfaceTexture surface) {}
+
+  private void setSurfaceAvailable(boolean available) {
+    synchronized (surfaceLock) {
+      isSurfaceAvailable = available;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import android.content.Context;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.PowerManager;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Slows a {@link FrameScheduler} down while the device is hot, so that a long-running session
+ * settles at a detection rate the device can sustain instead of running until the system throttles
+ * the CPU.
+ *
+ * <p>The thermal status is only reported on Android 10 and later. On earlier versions the
+ * throttler leaves the scheduler alone.
+ */
+public final class ThermalThrottler {
+
+  private static final String TAG = "ThermalThrottler";
+
+  /** Maps a {@code PowerManager.THERMAL_STATUS_*} value to the slowdown of the scheduler. */
+  public interface Policy {
+    float getSlowdown(int thermalStatus);
+  }
+
+  /**
+   * Backs off gently while the device is merely warm, so it does not get hot in the first place,
+   * and drops to a fraction of the rate once the system reports severe heat.
+   */
+  public static final Policy DEFAULT_POLICY =
+      thermalStatus -> {
+        switch (thermalStatus) {
+          case PowerManager.THERMAL_STATUS_NONE:
+            return 1;
+          case PowerManager.THERMAL_STATUS_LIGHT:
+            return 1.5f;
+          case PowerManager.THERMAL_STATUS_MODERATE:
+            return 2;
+          case PowerManager.THERMAL_STATUS_SEVERE:
+            return 4;
+          default:
+            return 8;
+        }
+      };
+
+  private final PowerManager powerManager;
+  private final FrameScheduler scheduler;
+  private final Policy policy;
+
+  // A PowerManager.OnThermalStatusChangedListener, which older platforms do not have.
+  @Nullable private Object listener;
+
+  public ThermalThrottler(Context context, FrameScheduler scheduler) {
+    this(context, scheduler, DEFAULT_POLICY);
+  }
+
+  public ThermalThrottler(Context context, FrameScheduler scheduler, Policy policy) {
+    this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    this.scheduler = scheduler;
+    this.policy = policy;
+  }
+
+  /** Starts following the thermal status. Call on the main thread. */
+  public void start() {
+    if (listener != null || VERSION.SDK_INT < VERSION_CODES.Q) {
+      return;
+    }
+    ThermalStatusListener statusListener = new ThermalStatusListener();
+    listener = statusListener;
+    powerManager.addThermalStatusListener(statusListener);
+    statusListener.onThermalStatusChanged(powerManager.getCurrentThermalStatus());
+  }
+
+  /** Stops following the thermal status and lifts any slowdown. Call on the main thread. */
+  public void stop() {
+    if (listener == null) {
+      return;
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.Q) {
+      powerManager.removeThermalStatusListener((ThermalStatusListener) listener);
+    }
+    listener = null;
+    scheduler.setSlowdown(1);
+  }
+
+  @RequiresApi(VERSION_CODES.Q)
+  private final class ThermalStatusListener implements PowerManager.OnThermalStatusChangedListener {
+    @Override
+    public void onThermalStatusChanged(int status) {
+      float slowdown = Math.max(1, policy.getSlowdown(status));
+      Log.i(TAG, "Thermal status " + status + ", slowing frame processing by " + slowdown);
+      scheduler.setSlowdown(slowdown);
+    }
+  }
+}
@@ -18,14 +18,65 @@ package com.google.mlkit.vision.demo;
 
 import android.graphics.Bitmap;
 import android.os.Build.VERSION_CODES;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.camera.core.ImageProxy;
 import com.google.mlkit.common.MlKitException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 /** An interface to process the images with different vision detectors and custom image models. */
 public interface VisionImageProcessor {
 
+  /** Notified when a processor has finished warming up and accepts live frames. */
+  interface OnReadyListener {
+    void onReady();
+  }
+
+  /**
+   * Receives the outcome of every image of a batch passed to {@link #processBatch}.
+   *
+   * <p>All calls are made one at a time on a single background thread, in the order the images
+   * finish. The workers wait while results are not taken, so a slow callback slows the batch down
+   * rather than letting results pile up.
+   */
+  interface BatchCallback {
+    /**
+     * Called with the detection results of the image at {@code index}. {@code results} has the type
+     * the processor's detector produces, e.g. {@code List<Face>} for face detection.
+     */
+    void onResult(int index, InputSource source, Object results);
+
+    /** Called when the image at {@code index} could not be loaded or detected in. */
+    void onFailure(int index, InputSource source, Exception e);
+
+    /**
+     * Called once after all other calls. The counts fall short of the number of images if the
+     * batch was cut short by {@link #stop}.
+     */
+    void onBatchFinished(int succeeded, int failed);
+  }
+
+  /**
+   * Runs {@code iterations} synthetic images of the given size through the detector so that the
+   * model is loaded before the first live frame arrives. Live frames are dropped until warm-up
+   * completes.
+   */
+  void warmUp(int width, int height, int iterations, @Nullable OnReadyListener listener);
+
+  /**
+   * Reports the detector latency of every live frame to {@code controller}, which may then change
+   * the camera resolution, or stops reporting if {@code controller} is null.
+   */
+  void setResolutionController(@Nullable ResolutionController controller);
+
+  /**
+   * Appends every frame passed to {@link #processImageProxy} to {@code recorder}, reusing the NV21
+   * conversion the frame gets for detection, or stops recording if {@code recorder} is null. The
+   * caller closes the recorder once it has been replaced.
+   */
+  void setFrameRecorder(@Nullable FrameLogWriter recorder);
+
   /** Processes a bitmap image. */
   void processBitmap(Bitmap bitmap, GraphicOverlay graphicOverlay);
 
@@ -38,6 +89,25 @@ public interface VisionImageProcessor {
   @RequiresApi(VERSION_CODES.KITKAT)
   void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) throws MlKitException;
 
+  /**
+   * Detects in every image of {@code sources} in the background, spread over a worker per CPU
+   * core. Results are not drawn; they are streamed to {@code callback} as the images finish.
+   * Returns straight away.
+   */
+  void processBatch(List<InputSource> sources, BatchCallback callback);
+
+  /**
+   * Like {@link #processBatch(List, BatchCallback)}, with {@code parallelism} workers instead of
+   * one per CPU core.
+   */
+  void processBatch(List<InputSource> sources, int parallelism, BatchCallback callback);
+
+  /**
+   * Appends a compact single-line summary of results passed to {@link BatchCallback#onResult}, such
+   * as the values of the barcodes found, for writing to a results file.
+   */
+  void appendBatchResults(Object results, StringBuilder out);
+
   /** Stops the underlying machine learning model and release resources. */
   void stop();
 }
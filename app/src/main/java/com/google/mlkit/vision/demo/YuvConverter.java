@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts NV21 frames to ARGB_8888 pixels in a single pass, applying the frame rotation while
+ * writing the output. Uses BT.601 video-range coefficients in 10-bit fixed point, so there is no
+ * floating point math and no allocation per frame.
+ */
+public final class YuvConverter {
+
+  // 1.164 * 1024, 1.596 * 1024, 0.813 * 1024, 0.391 * 1024, 2.018 * 1024.
+  private static final int Y_SCALE = 1192;
+  private static final int V_TO_R = 1634;
+  private static final int V_TO_G = 833;
+  private static final int U_TO_G = 400;
+  private static final int U_TO_B = 2066;
+  private static final int MAX_CHANNEL = (1 << 18) - 1;
+
+  // Per-thread copy of a luma and a chroma row, for buffers without an accessible array.
+  private static final ThreadLocal<byte[]> rowScratch = new ThreadLocal<>();
+
+  private YuvConverter() {}
+
+  /** Returns the width of the output image after rotating a {@code width}x{@code height} frame. */
+  public static int getRotatedWidth(int width, int height, int rotationDegrees) {
+    return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+  }
+
+  /** Returns the height of the output image after rotating a {@code width}x{@code height} frame. */
+  public static int getRotatedHeight(int width, int height, int rotationDegrees) {
+    return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+  }
+
+  /**
+   * Converts an NV21 frame to ARGB_8888 pixels, rotated clockwise by {@code rotationDegrees}.
+   *
+   * @param nv21 the source frame
+   * @param offset the index of the first Y sample in {@code nv21}
+   * @param width the width of the source frame
+   * @param height the height of the source frame
+   * @param rotationDegrees one of 0, 90, 180 or 270
+   * @param argb the destination, at least {@code width * height} long. Rows are laid out with a
+   *     stride of {@link #getRotatedWidth}.
+   */
+  public static void nv21ToArgb(
+      byte[] nv21, int offset, int width, int height, int rotationDegrees, int[] argb) {
+    int frameSize = width * height;
+    checkSizes(nv21.length - offset, width, height, argb);
+    // The destination index of source pixel (x, y) is base + x * stepX + y * stepY.
+    int base = getDestinationBase(width, height, rotationDegrees);
+    int stepX = getDestinationStepX(width, height, rotationDegrees);
+    int stepY = getDestinationStepY(width, height, rotationDegrees);
+
+    int chromaStart = offset + frameSize;
+    int chromaStride = (width + 1) & ~1;
+    for (int y = 0; y < height; y++) {
+      convertRow(
+          nv21,
+          offset + y * width,
+          nv21,
+          chromaStart + (y >> 1) * chromaStride,
+          width,
+          argb,
+          base + y * stepY,
+          stepX);
+    }
+  }
+
+  /**
+   * Converts an NV21 frame held in a buffer to ARGB_8888 pixels, rotated clockwise by {@code
+   * rotationDegrees}. Buffers backed by an accessible array are read in place; direct and
+   * read-only buffers are read a row at a time into a per-thread scratch array, so neither needs
+   * a copy of the whole frame.
+   *
+   * @param nv21 the source frame, starting at the buffer's position; the position is moved while
+   *     reading and restored before returning, so the buffer must not be shared with other threads
+   * @see #nv21ToArgb(byte[], int, int, int, int, int[])
+   */
+  public static void nv21ToArgb(
+      ByteBuffer nv21, int width, int height, int rotationDegrees, int[] argb) {
+    int offset = nv21.position();
+    checkSizes(nv21.limit() - offset, width, height, argb);
+    if (nv21.hasArray()) {
+      nv21ToArgb(nv21.array(), nv21.arrayOffset() + offset, width, height, rotationDegrees, argb);
+      return;
+    }
+    int base = getDestinationBase(width, height, rotationDegrees);
+    int stepX = getDestinationStepX(width, height, rotationDegrees);
+    int stepY = getDestinationStepY(width, height, rotationDegrees);
+
+    // Rows are copied out in bulk, a luma row followed by the chroma row it shares with its
+    // neighbour, and converted like array rows.
+    int chromaStart = offset + width * height;
+    int chromaStride = (width + 1) & ~1;
+    byte[] rows = getRowScratch(width + chromaStride);
+    try {
+      for (int y = 0; y < height; y++) {
+        nv21.position(offset + y * width);
+        nv21.get(rows, 0, width);
+        if ((y & 1) == 0) {
+          nv21.position(chromaStart + (y >> 1) * chromaStride);
+          nv21.get(rows, width, chromaStride);
+        }
+        convertRow(rows, 0, rows, width, width, argb, base + y * stepY, stepX);
+      }
+    } finally {
+      nv21.position(offset);
+    }
+  }
+
+  /**
+   * Converts one row of {@code width} pixels, whose luma starts at {@code luma[lumaIndex]} and
+   * whose interleaved V, U pairs start at {@code chroma[chromaIndex]}, writing pixel {@code x} to
+   * {@code argb[dst + x * stepX]}.
+   */
+  private static void convertRow(
+      byte[] luma,
+      int lumaIndex,
+      byte[] chroma,
+      int chromaIndex,
+      int width,
+      int[] argb,
+      int dst,
+      int stepX) {
+    int r0 = 0;
+    int g0 = 0;
+    int b0 = 0;
+    for (int x = 0; x < width; x++) {
+      if ((x & 1) == 0) {
+        // NV21 interleaves chroma as V, U.
+        int v = (chroma[chromaIndex++] & 0xff) - 128;
+        int u = (chroma[chromaIndex++] & 0xff) - 128;
+        r0 = V_TO_R * v;
+        g0 = -V_TO_G * v - U_TO_G * u;
+        b0 = U_TO_B * u;
+      }
+      int y = (luma[lumaIndex + x] & 0xff) - 16;
+      y = Y_SCALE * (y < 0 ? 0 : y);
+      argb[dst] = pack(y + r0, y + g0, y + b0);
+      dst += stepX;
+    }
+  }
+
+  private static byte[] getRowScratch(int size) {
+    byte[] rows = rowScratch.get();
+    if (rows == null || rows.length < size) {
+      rows = new byte[size];
+      rowScratch.set(rows);
+    }
+    return rows;
+  }
+
+  private static void checkSizes(int nv21Size, int width, int height, int[] argb) {
+    if (nv21Size < width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2)) {
+      throw new IllegalArgumentException("NV21 buffer is too small for " + width + "x" + height);
+    }
+    if (argb.length < width * height) {
+      throw new IllegalArgumentException("ARGB buffer is too small for " + width + "x" + height);
+    }
+  }
+
+  private static int getDestinationBase(int width, int height, int rotationDegrees) {
+    switch (rotationDegrees) {
+      case 0:
+        return 0;
+      case 90:
+        return height - 1;
+      case 180:
+        return width * height - 1;
+      case 270:
+        return (width - 1) * height;
+      default:
+        throw new IllegalArgumentException("Unsupported rotation: " + rotationDegrees);
+    }
+  }
+
+  private static int getDestinationStepX(int width, int height, int rotationDegrees) {
+    switch (rotationDegrees) {
+      case 90:
+        return height;
+      case 180:
+        return -1;
+      case 270:
+        return -height;
+      default:
+        return 1;
+    }
+  }
+
+  private static int getDestinationStepY(int width, int height, int rotationDegrees) {
+    switch (rotationDegrees) {
+      case 90:
+        return -1;
+      case 180:
+        return -width;
+      case 270:
+        return 1;
+      default:
+        return width;
+    }
+  }
+
+  private static int pack(int r, int g, int b) {
+    r = r < 0 ? 0 : (r > MAX_CHANNEL ? MAX_CHANNEL : r);
+    g = g < 0 ? 0 : (g > MAX_CHANNEL ? MAX_CHANNEL : g);
+    b = b < 0 ? 0 : (b > MAX_CHANNEL ? MAX_CHANNEL : b);
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies the samples of one YUV_420_888 plane into a packed output array, honoring the plane's
+ * row and pixel strides.
+ *
+ * <p>Rows are read with bulk {@link ByteBuffer#get(byte[], int, int)} calls. When both the plane
+ * and the output are tightly packed the row is copied straight into the output; otherwise it is
+ * staged in a reusable row buffer and interleaved with an unrolled loop. An instance keeps its row
+ * buffer between calls, so it should be reused across frames and not shared between threads.
+ */
+public final class YuvPlaneUnpacker {
+
+  private byte[] rowBuffer = new byte[0];
+
+  /**
+   * Unpacks a plane into {@code out}.
+   *
+   * <p>The number of rows stored in the plane is derived from the buffer size, so the same call
+   * handles the full resolution Y plane and the subsampled U and V planes.
+   *
+   * @param buffer the plane data; its position is left unchanged
+   * @param rowStride the distance in bytes between the starts of two rows of the plane
+   * @param pixelStride the distance in bytes between two samples of a row of the plane
+   * @param width the width of the full resolution image
+   * @param height the height of the full resolution image
+   * @param out the destination array
+   * @param offset the index in {@code out} of the first sample
+   * @param outPixelStride the distance in {@code out} between two consecutive samples
+   */
+  public void unpackPlane(
+      ByteBuffer buffer,
+      int rowStride,
+      int pixelStride,
+      int width,
+      int height,
+      byte[] out,
+      int offset,
+      int outPixelStride) {
+    int limit = buffer.limit();
+    int numRow = (limit + rowStride - 1) / rowStride;
+    if (numRow == 0) {
+      return;
+    }
+    int scaleFactor = height / numRow;
+    int numCol = width / scaleFactor;
+    int originalPosition = buffer.position();
+
+    int outputPos = offset;
+    int rowStart = 0;
+    for (int row = 0; row < numRow; row++) {
+      // The last row of a plane is often not padded out to the full row stride.
+      int rowLength = Math.min((numCol - 1) * pixelStride + 1, limit - rowStart);
+      buffer.position(rowStart);
+      if (pixelStride == 1 && outPixelStride == 1) {
+        buffer.get(out, outputPos, rowLength);
+      } else {
+        byte[] rowData = obtainRowBuffer(rowLength);
+        buffer.get(rowData, 0, rowLength);
+        int count = (rowLength - 1) / pixelStride + 1;
+        interleave(rowData, pixelStride, count, out, outputPos, outPixelStride);
+      }
+      outputPos += numCol * outPixelStride;
+      rowStart += rowStride;
+    }
+
+    buffer.position(originalPosition);
+  }
+
+  private static void interleave(
+      byte[] row, int pixelStride, int count, byte[] out, int outputPos, int outPixelStride) {
+    int col = 0;
+    int unrolledEnd = count & ~3;
+    if (pixelStride == 2 && outPixelStride == 2) {
+      // Semi-planar chroma into NV21: the most common layout on CameraX.
+      for (; col < unrolledEnd; col += 4) {
+        int i = col << 1;
+        out[outputPos + i] = row[i];
+        out[outputPos + i + 2] = row[i + 2];
+        out[outputPos + i + 4] = row[i + 4];
+        out[outputPos + i + 6] = row[i + 6];
+      }
+    } else {
+      for (; col < unrolledEnd; col += 4) {
+        int in = col * pixelStride;
+        int o = outputPos + col * outPixelStride;
+        out[o] = row[in];
+        out[o + outPixelStride] = row[in + pixelStride];
+        out[o + 2 * outPixelStride] = row[in + 2 * pixelStride];
+        out[o + 3 * outPixelStride] = row[in + 3 * pixelStride];
+      }
+    }
+    for (; col < count; col++) {
+      out[outputPos + col * outPixelStride] = row[col * pixelStride];
+    }
+  }
+
+  private byte[] obtainRowBuffer(int size) {
+    if (rowBuffer.length < size) {
+      rowBuffer = new byte[size];
+    }
+    return rowBuffer;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.InputSource;
+import com.google.mlkit.vision.demo.MetricsRegistry;
+import com.google.mlkit.vision.demo.RateMeter;
+import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.VisionImageProcessor.BatchCallback;
+import com.google.mlkit.vision.demo.java.VisionProcessorBase.BatchDetector;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one batch of {@link VisionImageProcessor#processBatch} on a fixed number of worker threads.
+ *
+ * <p>Each worker creates its own detector client, then takes the next image of the batch until
+ * none are left: it loads the image, waits for the detector and hands the outcome to a bounded
+ * queue. A single delivery thread drains the queue into the {@link BatchCallback}. Workers block
+ * when the queue is full, so decoded images and results never pile up ahead of the callback. If no
+ * worker manages to create a detector, the images are reported as failed with the exception. An
+ * empty batch starts no workers and goes straight to {@link BatchCallback#onBatchFinished}.
+ *
+ * @param <T> the type of the detection results
+ */
+final class BatchRunner<T> {
+
+  private static final String TAG = "BatchRunner";
+
+  /** Creates the detector client of a worker, on the worker thread. */
+  interface DetectorFactory<T> {
+    BatchDetector<T> create();
+  }
+
+  /** Notified on the delivery thread once the batch has finished or has been cancelled. */
+  interface OnFinishedListener {
+    void onFinished(BatchRunner<?> runner);
+  }
+
+  // Outcomes waiting for delivery, per worker.
+  private static final int QUEUE_CAPACITY_PER_WORKER = 2;
+
+  private final List<InputSource> sources;
+  private final BatchCallback callback;
+  private final DetectorFactory<T> detectorFactory;
+  private final OnFinishedListener finishedListener;
+  private final RateMeter itemRate =
+      MetricsRegistry.getInstance().getRateMeter(MetricsRegistry.BATCH_ITEMS);
+
+  private final AtomicInteger nextIndex = new AtomicInteger();
+  private final AtomicInteger unfinishedWorkers;
+  @Nullable private volatile RuntimeException detectorFailure;
+  private final BlockingQueue<Outcome> outcomes;
+  private final List<Thread> workers;
+  private final Thread deliveryThread;
+  private volatile boolean isCancelled;
+
+  BatchRunner(
+      String name,
+      List<InputSource> sources,
+      int workerCount,
+      DetectorFactory<T> detectorFactory,
+      BatchCallback callback,
+      OnFinishedListener finishedListener) {
+    this.sources = new ArrayList<>(sources);
+    this.callback = callback;
+    this.detectorFactory = detectorFactory;
+    this.finishedListener = finishedListener;
+    // An empty batch needs no workers, and so no detector; it is only reported as finished.
+    workerCount = sources.isEmpty() ? 0 : Math.max(1, Math.min(workerCount, sources.size()));
+    outcomes = new ArrayBlockingQueue<>(Math.max(1, workerCount * QUEUE_CAPACITY_PER_WORKER));
+    workers = new ArrayList<>(workerCount);
+    unfinishedWorkers = new AtomicInteger(workerCount);
+    for (int i = 0; i < workerCount; i++) {
+      workers.add(new Thread(this::work, name + ":batch-" + i));
+    }
+    int finalWorkerCount = workerCount;
+    deliveryThread = new Thread(() -> deliver(finalWorkerCount), name + ":batch-delivery");
+  }
+
+  /** Starts the workers and the delivery thread. */
+  void start() {
+    deliveryThread.start();
+    for (Thread worker : workers) {
+      worker.start();
+    }
+  }
+
+  /**
+   * Stops the batch. Images being detected are abandoned, and the callback receives no further
+   * results, only {@link BatchCallback#onBatchFinished}.
+   */
+  void cancel() {
+    isCancelled = true;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    deliveryThread.interrupt();
+  }
+
+  private void work() {
+    BatchDetector<T> detector = null;
+    try {
+      try {
+        detector = detectorFactory.create();
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Cannot create batch detector", e);
+        detectorFailure = e;
+      }
+      int index;
+      while (detector != null
+          && !isCancelled
+          && (index = nextIndex.getAndIncrement()) < sources.size()) {
+        outcomes.put(detect(detector, index));
+      }
+      // Images are only left over once the last worker is done if none had a detector.
+      if (unfinishedWorkers.decrementAndGet() == 0) {
+        while (!isCancelled && (index = nextIndex.getAndIncrement()) < sources.size()) {
+          outcomes.put(new Outcome(index, null, detectorFailure));
+        }
+      }
+    } catch (InterruptedException e) {
+      // Cancelled.
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Batch worker failed", e);
+    } finally {
+      if (detector != null) {
+        try {
+          detector.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Exception thrown while trying to close detector", e);
+        }
+      }
+      // Counted by the delivery thread, which finishes once every worker has signed off. A
+      // cancelled batch does not wait for them.
+      if (!isCancelled) {
+        try {
+          outcomes.put(Outcome.WORKER_DONE);
+        } catch (InterruptedException e) {
+          // Cancelled meanwhile.
+        }
+      }
+    }
+  }
+
+  private Outcome detect(BatchDetector<T> detector, int index) throws InterruptedException {
+    InputSource source = sources.get(index);
+    try {
+      Bitmap bitmap = source.load();
+      T results = Tasks.await(detector.detect(InputImage.fromBitmap(bitmap, 0)));
+      return new Outcome(index, results, null);
+    } catch (ExecutionException e) {
+      Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      return new Outcome(index, null, cause);
+    } catch (IOException | RuntimeException e) {
+      return new Outcome(index, null, e);
+    }
+  }
+
+  private void deliver(int workerCount) {
+    int succeeded = 0;
+    int failed = 0;
+    int workersDone = 0;
+    try {
+      while (workersDone < workerCount) {
+        Outcome outcome = outcomes.take();
+        if (outcome == Outcome.WORKER_DONE) {
+          workersDone++;
+          continue;
+        }
+        if (isCancelled) {
+          break;
+        }
+        InputSource source = sources.get(outcome.index);
+        itemRate.mark();
+        try {
+          if (outcome.error == null) {
+            succeeded++;
+            callback.onResult(outcome.index, source, outcome.results);
+          } else {
+            failed++;
+            callback.onFailure(outcome.index, source, outcome.error);
+          }
+        } catch (RuntimeException e) {
+          // Keep draining, or the workers would block on the full queue.
+          Log.e(TAG, "Exception thrown from batch callback.", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Cancelled.
+    } finally {
+      callback.onBatchFinished(succeeded, failed);
+      finishedListener.onFinished(this);
+    }
+  }
+
+  /** The outcome of one image. */
+  private static final class Outcome {
+    // Marks the end of a worker's share of the batch.
+    static final Outcome WORKER_DONE = new Outcome(-1, null, null);
+
+    final int index;
+    @Nullable final Object results;
+    @Nullable final Exception error;
+
+    Outcome(int index, @Nullable Object results, @Nullable Exception error) {
+      this.index = index;
+      this.results = results;
+      this.error = error;
+    }
+  }
+}
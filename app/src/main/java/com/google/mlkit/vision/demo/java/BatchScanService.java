@@ -0,0 +1,371 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import android.app.IntentService;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Intent;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import com.google.mlkit.vision.demo.InputSource;
+import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.ScanResultsFile;
+import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.VisionImageProcessor.BatchCallback;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Scans a directory of images without any UI: every image below the directory is run through one
+ * of the still image detectors, and the results are written to a {@link ScanResultsFile}.
+ *
+ * <p>A scan is started with an intent naming the directory, e.g.
+ *
+ * <pre>
+ * adb shell am start-foreground-service \
+ *     -n com.google.mlkit.vision.demo/.java.BatchScanService \
+ *     --es directory /sdcard/DCIM --es mode "Barcode Scanning" --ei parallelism 4 \
+ *     --es results dcim-barcodes.tsv
+ * </pre>
+ *
+ * <p>The service requires the {@code DUMP} permission, which {@code adb shell} holds but other
+ * apps cannot be granted.
+ *
+ * <p>Images are decoded straight to {@link #EXTRA_MAX_SIZE} instead of at full resolution, and
+ * detected in by {@link #EXTRA_PARALLELISM} workers. The results file doubles as the checkpoint:
+ * starting the same scan again skips the images it already holds. Scans queue up behind each
+ * other, and stopping the service cancels the running one.
+ *
+ * <p>The app needs the storage permission, which it asks for when it is first launched.
+ */
+public class BatchScanService extends IntentService {
+
+  private static final String TAG = "BatchScanService";
+
+  /** Path of the directory to scan. Required. */
+  public static final String EXTRA_DIRECTORY = "directory";
+
+  /** Detector to run, one of the modes of {@link StillImageActivity}. Object detection if unset. */
+  public static final String EXTRA_MODE = "mode";
+
+  /** Number of images detected in at a time. One per CPU core if unset. */
+  public static final String EXTRA_PARALLELISM = "parallelism";
+
+  /**
+   * Largest width and height, in pixels, that images are decoded to. Images are decoded within
+   * twice this size, as described in {@link com.google.mlkit.vision.demo.BitmapUtils}.
+   */
+  public static final String EXTRA_MAX_SIZE = "max_size";
+
+  /**
+   * Name of the results file, kept in the app's external files like the default one. If unset, the
+   * file is named after the directory and the mode, so that a scan started again finds its
+   * checkpoint.
+   */
+  public static final String EXTRA_RESULTS = "results";
+
+  // Matches the "w:1024" size of StillImageActivity.
+  private static final int DEFAULT_MAX_SIZE = 1024;
+
+  private static final Set<String> IMAGE_EXTENSIONS =
+      new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "webp", "bmp", "gif", "heic", "heif"));
+
+  private static final String CHANNEL_ID = "batch_scan";
+  private static final int NOTIFICATION_ID = 1;
+
+  @GuardedBy("this")
+  @Nullable
+  private VisionImageProcessor runningProcessor;
+
+  @GuardedBy("this")
+  private boolean isDestroyed;
+
+  public BatchScanService() {
+    super(TAG);
+  }
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    if (VERSION.SDK_INT >= VERSION_CODES.O) {
+      NotificationChannel channel =
+          new NotificationChannel(
+              CHANNEL_ID,
+              getString(R.string.batch_scan_channel_name),
+              NotificationManager.IMPORTANCE_LOW);
+      getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+    // Right away rather than per scan, as a scan may wait behind another for longer than a
+    // foreground service is given to get to the foreground.
+    startForeground(NOTIFICATION_ID, buildNotification(/* directory= */ null, 0, 0));
+  }
+
+  @Override
+  public void onDestroy() {
+    synchronized (this) {
+      isDestroyed = true;
+    }
+    // Cancels the batch, which lets onHandleIntent return.
+    stopProcessor();
+    super.onDestroy();
+  }
+
+  @Override
+  protected void onHandleIntent(@Nullable Intent intent) {
+    String directoryPath = intent != null ? intent.getStringExtra(EXTRA_DIRECTORY) : null;
+    if (directoryPath == null) {
+      Log.e(TAG, "No directory to scan, set " + EXTRA_DIRECTORY);
+      return;
+    }
+    File directory = new File(directoryPath);
+    String mode = intent.getStringExtra(EXTRA_MODE);
+    if (mode == null) {
+      mode = StillImageProcessors.OBJECT_DETECTION;
+    }
+    int parallelism =
+        intent.getIntExtra(EXTRA_PARALLELISM, Runtime.getRuntime().availableProcessors());
+    int maxSize = intent.getIntExtra(EXTRA_MAX_SIZE, DEFAULT_MAX_SIZE);
+    String resultsName = intent.getStringExtra(EXTRA_RESULTS);
+    if (resultsName == null) {
+      resultsName = getDefaultResultsName(directory, mode);
+    } else if (resultsName.isEmpty()
+        || resultsName.contains(File.separator)
+        || resultsName.equals("..")) {
+      Log.e(TAG, "Not a results file name: " + resultsName);
+      return;
+    }
+    File filesDirectory = getExternalFilesDir(null);
+    File results = new File(filesDirectory != null ? filesDirectory : getFilesDir(), resultsName);
+
+    NotificationManagerCompat.from(this)
+        .notify(NOTIFICATION_ID, buildNotification(directory, 0, 0));
+    try {
+      scan(directory, mode, parallelism, maxSize, results);
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, "Unable to scan " + directory, e);
+    }
+  }
+
+  private void scan(File directory, String mode, int parallelism, int maxSize, File results)
+      throws IOException {
+    List<File> images = new ArrayList<>();
+    findImages(directory, images);
+    Collections.sort(images);
+
+    try (ScanResultsFile resultsFile = new ScanResultsFile(results)) {
+      List<File> pending = new ArrayList<>();
+      List<InputSource> sources = new ArrayList<>();
+      for (File image : images) {
+        if (!resultsFile.isDone(image.getPath())) {
+          pending.add(image);
+          sources.add(InputSource.fromFile(image, maxSize, maxSize));
+        }
+      }
+      Log.i(
+          TAG,
+          String.format(
+              Locale.US,
+              "Scanning %d of %d images in %s for %s, results in %s",
+              pending.size(),
+              images.size(),
+              directory,
+              mode,
+              results));
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      VisionImageProcessor processor = StillImageProcessors.create(this, mode);
+      synchronized (this) {
+        if (isDestroyed) {
+          processor.stop();
+          return;
+        }
+        runningProcessor = processor;
+      }
+      ScanCallback callback =
+          new ScanCallback(processor, resultsFile, directory, pending, images.size());
+      long startMs = SystemClock.elapsedRealtime();
+      processor.processBatch(sources, parallelism, callback);
+      try {
+        callback.awaitFinished();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        stopProcessor();
+      }
+      Log.i(
+          TAG,
+          String.format(
+              Locale.US,
+              "Scanned %d images in %d ms, %d failed",
+              callback.succeeded + callback.failed,
+              SystemClock.elapsedRealtime() - startMs,
+              callback.failed));
+    }
+  }
+
+  private void stopProcessor() {
+    VisionImageProcessor processor;
+    synchronized (this) {
+      processor = runningProcessor;
+      runningProcessor = null;
+    }
+    if (processor != null) {
+      processor.stop();
+    }
+  }
+
+  /** Writes the outcome of every image to the results file, and shows the progress. */
+  private final class ScanCallback implements BatchCallback {
+    private final VisionImageProcessor processor;
+    private final ScanResultsFile resultsFile;
+    private final File directory;
+    private final List<File> pending;
+    private final int total;
+    private final int alreadyDone;
+    private final StringBuilder results = new StringBuilder();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private int succeeded;
+    private int failed;
+
+    ScanCallback(
+        VisionImageProcessor processor,
+        ScanResultsFile resultsFile,
+        File directory,
+        List<File> pending,
+        int total) {
+      this.processor = processor;
+      this.resultsFile = resultsFile;
+      this.directory = directory;
+      this.pending = pending;
+      this.total = total;
+      this.alreadyDone = total - pending.size();
+    }
+
+    @Override
+    public void onResult(int index, InputSource source, Object detected) {
+      results.setLength(0);
+      processor.appendBatchResults(detected, results);
+      try {
+        resultsFile.appendResult(pending.get(index).getPath(), results);
+      } catch (IOException e) {
+        onWriteFailed(e);
+      }
+      onImageDone();
+    }
+
+    @Override
+    public void onFailure(int index, InputSource source, Exception e) {
+      Log.w(TAG, "Unable to scan " + source, e);
+      try {
+        resultsFile.appendError(pending.get(index).getPath(), String.valueOf(e.getMessage()));
+      } catch (IOException writeError) {
+        onWriteFailed(writeError);
+      }
+      onImageDone();
+    }
+
+    @Override
+    public void onBatchFinished(int succeeded, int failed) {
+      this.succeeded = succeeded;
+      this.failed = failed;
+      try {
+        resultsFile.flush();
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to write the scan results.", e);
+      }
+      finished.countDown();
+    }
+
+    void awaitFinished() throws InterruptedException {
+      finished.await();
+    }
+
+    private void onImageDone() {
+      int done = resultsFile.getDoneCount();
+      if ((done - alreadyDone) % ScanResultsFile.FLUSH_INTERVAL == 0) {
+        NotificationManagerCompat.from(BatchScanService.this)
+            .notify(NOTIFICATION_ID, buildNotification(directory, done, total));
+      }
+    }
+
+    private void onWriteFailed(IOException e) {
+      // Results that cannot be kept are not worth detecting; the scan resumes from the file.
+      Log.e(TAG, "Unable to write the scan results, stopping.", e);
+      stopProcessor();
+    }
+  }
+
+  private Notification buildNotification(@Nullable File directory, int done, int total) {
+    return new NotificationCompat.Builder(this, CHANNEL_ID)
+        .setSmallIcon(R.drawable.logo_mlkit)
+        .setContentTitle(
+            directory != null
+                ? getString(R.string.batch_scan_title, directory.getName())
+                : getString(R.string.batch_scan_channel_name))
+        .setContentText(getString(R.string.batch_scan_progress, done, total))
+        .setProgress(total, done, /* indeterminate= */ total == 0)
+        .setOnlyAlertOnce(true)
+        .setOngoing(true)
+        .build();
+  }
+
+  private static String getDefaultResultsName(File directory, String mode) {
+    String modeName = mode.toLowerCase(Locale.US).replaceAll("[^a-z0-9]+", "-");
+    return "scan-" + directory.getName() + "-" + modeName.replaceAll("^-|-$", "") + ".tsv";
+  }
+
+  /** Adds the images below {@code directory} to {@code images}, skipping hidden files. */
+  private static void findImages(File directory, List<File> images) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      Log.w(TAG, "Unable to list " + directory);
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.startsWith(".")) {
+        continue;
+      }
+      if (file.isDirectory()) {
+        findImages(file, images);
+      } else {
+        int dot = name.lastIndexOf('.');
+        if (dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US))) {
+          images.add(file);
+        }
+      }
+    }
+  }
+}
@@ -7,6 +7,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
@@ -18,6 +19,7 @@ import android.util.Log;
 import android.util.Size;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.TextureView;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
@@ -40,8 +42,13 @@ import com.google.android.gms.common.annotation.KeepName;
 import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.CameraXViewModel;
+import com.google.mlkit.vision.demo.FrameLogWriter;
+import com.google.mlkit.vision.demo.FrameScheduler;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.ResolutionController;
+import com.google.mlkit.vision.demo.TextureOverlayRenderer;
+import com.google.mlkit.vision.demo.ThermalThrottler;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
@@ -60,6 +67,8 @@ import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
 import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 @KeepName
@@ -70,6 +79,11 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
         CompoundButton.OnCheckedChangeListener {
   private static final String TAG = "CameraXLivePreview";
   private static final int PERMISSION_REQUESTS = 1;
+  private static final int WARM_UP_ITERATIONS = 2;
+  // Frame rate the adaptive resolution controller keeps detection at.
+  private static final float TARGET_DETECTION_FPS = 15;
+  // The resolution CameraX analyzes at when no target resolution is set.
+  private static final Size DEFAULT_ANALYSIS_RESOLUTION = new Size(640, 480);
 
   private static final String OBJECT_DETECTION = "Object Detection";
   private static final String OBJECT_DETECTION_CUSTOM = "Custom Object Detection (Bird)";
@@ -86,11 +100,16 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
 
   private PreviewView previewView;
   private GraphicOverlay graphicOverlay;
+  @Nullable private TextureOverlayRenderer overlayRenderer;
 
   @Nullable private ProcessCameraProvider cameraProvider;
   @Nullable private Preview previewUseCase;
   @Nullable private ImageAnalysis analysisUseCase;
   @Nullable private VisionImageProcessor imageProcessor;
+  // Decides which frames reach the image processor; every frame does if null.
+  @Nullable private FrameScheduler frameScheduler;
+  @Nullable private ThermalThrottler thermalThrottler;
+  @Nullable private FrameLogWriter frameRecorder;
   private boolean needUpdateGraphicOverlayImageSourceInfo;
 
   private String selectedModel = OBJECT_DETECTION;
@@ -127,6 +146,12 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     if (graphicOverlay == null) {
       Log.d(TAG, "graphicOverlay is null");
     }
+    if (PreferenceUtils.isOverlayRenderThreadEnabled(this)) {
+      TextureView overlayTexture = findViewById(R.id.graphic_overlay_texture);
+      overlayTexture.setVisibility(View.VISIBLE);
+      overlayRenderer = new TextureOverlayRenderer(graphicOverlay, overlayTexture);
+      overlayRenderer.start();
+    }
 
     Spinner spinner = findViewById(R.id.spinner);
     List<String> options = new ArrayList<>();
@@ -249,6 +274,8 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
   @Override
   public void onResume() {
     super.onResume();
+    updateFrameScheduler();
+    startFrameRecording();
     bindAllCameraUseCases();
   }
 
@@ -258,6 +285,8 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
+    stopThermalThrottler();
+    stopFrameRecording();
   }
 
   @Override
@@ -266,6 +295,63 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     if (imageProcessor != null) {
       imageProcessor.stop();
     }
+    if (overlayRenderer != null) {
+      overlayRenderer.stop();
+    }
+  }
+
+  /**
+   * Applies the frame schedule from the settings and, if enabled, slows it down while the device
+   * is hot.
+   */
+  private void updateFrameScheduler() {
+    stopThermalThrottler();
+    frameScheduler = PreferenceUtils.getFrameScheduler(this);
+    if (frameScheduler != null && PreferenceUtils.isThermalThrottlingEnabled(this)) {
+      thermalThrottler = new ThermalThrottler(this, frameScheduler);
+      thermalThrottler.start();
+    }
+  }
+
+  private void stopThermalThrottler() {
+    if (thermalThrottler != null) {
+      thermalThrottler.stop();
+      thermalThrottler = null;
+    }
+  }
+
+  /** Starts recording camera frames to a new log in the app's files, if enabled in the settings. */
+  private void startFrameRecording() {
+    if (!PreferenceUtils.isFrameRecordingEnabled(this)) {
+      return;
+    }
+    File directory = getExternalFilesDir(null);
+    File log =
+        new File(
+            directory != null ? directory : getFilesDir(),
+            "frames-" + System.currentTimeMillis() + ".mlkf");
+    try {
+      frameRecorder = new FrameLogWriter(log);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to record frames to " + log, e);
+      return;
+    }
+    Log.i(TAG, "Recording frames to " + log);
+  }
+
+  private void stopFrameRecording() {
+    if (frameRecorder == null) {
+      return;
+    }
+    if (imageProcessor != null) {
+      imageProcessor.setFrameRecorder(null);
+    }
+    try {
+      frameRecorder.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to finish the frame log.", e);
+    }
+    frameRecorder = null;
   }
 
   private void bindAllCameraUseCases() {
@@ -388,8 +474,42 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
       return;
     }
 
-    ImageAnalysis.Builder builder = new ImageAnalysis.Builder();
     Size targetResolution = PreferenceUtils.getCameraXTargetResolution(this);
+
+    // Load the model before the first live frame arrives instead of stalling that frame.
+    Size warmUpSize = targetResolution != null ? targetResolution : DEFAULT_ANALYSIS_RESOLUTION;
+    // The processor records the frames it converts, so recording adds no conversion of its own.
+    imageProcessor.setFrameRecorder(frameRecorder);
+    String warmedUpModel = selectedModel;
+    imageProcessor.warmUp(
+        warmUpSize.getWidth(),
+        warmUpSize.getHeight(),
+        WARM_UP_ITERATIONS,
+        () -> Log.d(TAG, "Processor ready: " + warmedUpModel));
+
+    if (PreferenceUtils.isAdaptiveResolutionEnabled(this)) {
+      // The controller works with landscape sizes, whatever the orientation of the target size.
+      imageProcessor.setResolutionController(
+          new ResolutionController(
+              Math.max(warmUpSize.getWidth(), warmUpSize.getHeight()),
+              Math.min(warmUpSize.getWidth(), warmUpSize.getHeight()),
+              TARGET_DETECTION_FPS,
+              (width, height) ->
+                  runOnUiThread(() -> bindImageAnalysis(toTargetResolution(width, height)))));
+    }
+    bindImageAnalysis(targetResolution);
+  }
+
+  /** Binds a new analysis use case feeding {@link #imageProcessor}, replacing the current one. */
+  private void bindImageAnalysis(@Nullable Size targetResolution) {
+    if (cameraProvider == null || imageProcessor == null) {
+      return;
+    }
+    if (analysisUseCase != null) {
+      cameraProvider.unbind(analysisUseCase);
+    }
+
+    ImageAnalysis.Builder builder = new ImageAnalysis.Builder();
     if (targetResolution != null) {
       builder.setTargetResolution(targetResolution);
     }
@@ -413,6 +533,12 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
             }
             needUpdateGraphicOverlayImageSourceInfo = false;
           }
+          FrameScheduler scheduler = frameScheduler;
+          if (scheduler != null
+              && !scheduler.shouldProcess(imageProxy.getImageInfo().getTimestamp())) {
+            imageProxy.close();
+            return;
+          }
           try {
             imageProcessor.processImageProxy(imageProxy, graphicOverlay);
           } catch (MlKitException e) {
@@ -425,6 +551,18 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
     cameraProvider.bindToLifecycle(/* lifecycleOwner= */ this, cameraSelector, analysisUseCase);
   }
 
+  /**
+   * Converts a landscape size from the resolution controller to a CameraX target resolution, which
+   * is expressed in the orientation of the display.
+   */
+  private Size toTargetResolution(int width, int height) {
+    Log.i(TAG, "Switching analysis resolution to " + width + "x" + height);
+    if (getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT) {
+      return new Size(height, width);
+    }
+    return new Size(width, height);
+  }
+
   private String[] getRequiredPermissions() {
     try {
       PackageInfo info =
@@ -19,15 +19,23 @@ import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 import android.widget.ToggleButton;
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.ActivityCompat.OnRequestPermissionsResultCallback;
 import androidx.core.content.ContextCompat;
 import com.google.android.gms.common.annotation.KeepName;
+import com.google.android.gms.common.images.Size;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSourcePreview;
+import com.google.mlkit.vision.demo.FrameLogWriter;
+import com.google.mlkit.vision.demo.FrameReplaySource;
+import com.google.mlkit.vision.demo.FrameScheduler;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.ResolutionController;
+import com.google.mlkit.vision.demo.ThermalThrottler;
+import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
 import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
 import com.google.mlkit.vision.demo.java.labeldetector.LabelDetectorProcessor;
@@ -45,6 +53,7 @@ import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
 import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -63,18 +72,38 @@ public final class LivePreviewActivity extends AppCompatActivity
   private static final String AUTOML_LABELING = "AutoML Image Labeling";
   private static final String POSE_DETECTION = "Pose Detection";
 
+  /**
+   * Name of a frame log in the app's files to replay, looping, instead of showing the camera. Logs
+   * are recorded there with frame recording enabled in the settings, or can be pushed there, e.g.
+   *
+   * <pre>
+   * adb shell am start -n com.google.mlkit.vision.demo/.java.LivePreviewActivity \
+   *     --es replay_log frames-1600000000000.mlkf
+   * </pre>
+   */
+  public static final String EXTRA_REPLAY_LOG = "replay_log";
+
   private static final String TAG = "LivePreviewActivity";
   private static final int PERMISSION_REQUESTS = 1;
+  // Frame rate the adaptive resolution controller keeps detection at.
+  private static final float TARGET_DETECTION_FPS = 15;
 
   private CameraSource cameraSource = null;
   private CameraSourcePreview preview;
   private GraphicOverlay graphicOverlay;
   private String selectedModel = OBJECT_DETECTION;
+  @Nullable private ThermalThrottler thermalThrottler;
+  @Nullable private FrameLogWriter frameRecorder;
+  // Set when a frame log is replayed instead of showing the camera.
+  @Nullable private File replayLog;
+  @Nullable private FrameReplaySource frameReplaySource;
+  @Nullable private VisionImageProcessor frameProcessor;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     Log.d(TAG, "onCreate");
+    replayLog = getReplayLog();
 
     setContentView(R.layout.activity_vision_live_preview);
 
@@ -182,6 +211,7 @@ public final class LivePreviewActivity extends AppCompatActivity
     if (cameraSource == null) {
       cameraSource = new CameraSource(this, graphicOverlay);
     }
+    cameraSource.setFramePoolSize(PreferenceUtils.getFramePoolSize(this));
 
     try {
       switch (model) {
@@ -189,8 +219,7 @@ public final class LivePreviewActivity extends AppCompatActivity
           Log.i(TAG, "Using Object Detector Processor");
           ObjectDetectorOptions objectDetectorOptions =
               PreferenceUtils.getObjectDetectorOptionsForLivePreview(this);
-          cameraSource.setMachineLearningFrameProcessor(
-              new ObjectDetectorProcessor(this, objectDetectorOptions));
+          setFrameProcessor(new ObjectDetectorProcessor(this, objectDetectorOptions));
           break;
         case OBJECT_DETECTION_CUSTOM:
           Log.i(TAG, "Using Custom Object Detector Processor");
@@ -200,28 +229,25 @@ public final class LivePreviewActivity extends AppCompatActivity
                   .build();
           CustomObjectDetectorOptions customObjectDetectorOptions =
               PreferenceUtils.getCustomObjectDetectorOptionsForLivePreview(this, localModel);
-          cameraSource.setMachineLearningFrameProcessor(
-              new ObjectDetectorProcessor(this, customObjectDetectorOptions));
+          setFrameProcessor(new ObjectDetectorProcessor(this, customObjectDetectorOptions));
           break;
         case TEXT_RECOGNITION:
           Log.i(TAG, "Using on-device Text recognition Processor");
-          cameraSource.setMachineLearningFrameProcessor(new TextRecognitionProcessor(this));
+          setFrameProcessor(new TextRecognitionProcessor(this));
           break;
         case FACE_DETECTION:
           Log.i(TAG, "Using Face Detector Processor");
           FaceDetectorOptions faceDetectorOptions =
               PreferenceUtils.getFaceDetectorOptionsForLivePreview(this);
-          cameraSource.setMachineLearningFrameProcessor(
-              new FaceDetectorProcessor(this, faceDetectorOptions));
+          setFrameProcessor(new FaceDetectorProcessor(this, faceDetectorOptions));
           break;
         case BARCODE_SCANNING:
           Log.i(TAG, "Using Barcode Detector Processor");
-          cameraSource.setMachineLearningFrameProcessor(new BarcodeScannerProcessor(this));
+          setFrameProcessor(new BarcodeScannerProcessor(this));
           break;
         case IMAGE_LABELING:
           Log.i(TAG, "Using Image Label Detector Processor");
-          cameraSource.setMachineLearningFrameProcessor(
-              new LabelDetectorProcessor(this, ImageLabelerOptions.DEFAULT_OPTIONS));
+          setFrameProcessor(new LabelDetectorProcessor(this, ImageLabelerOptions.DEFAULT_OPTIONS));
           break;
         case IMAGE_LABELING_CUSTOM:
           Log.i(TAG, "Using Custom Image Label Detector Processor");
@@ -231,8 +257,7 @@ public final class LivePreviewActivity extends AppCompatActivity
                   .build();
           CustomImageLabelerOptions customImageLabelerOptions =
               new CustomImageLabelerOptions.Builder(localClassifier).build();
-          cameraSource.setMachineLearningFrameProcessor(
-              new LabelDetectorProcessor(this, customImageLabelerOptions));
+          setFrameProcessor(new LabelDetectorProcessor(this, customImageLabelerOptions));
           break;
         case AUTOML_LABELING:
           Log.i(TAG, "Using AutoML Image Label Detector Processor");
@@ -244,8 +269,7 @@ public final class LivePreviewActivity extends AppCompatActivity
               new AutoMLImageLabelerOptions.Builder(autoMLLocalModel)
                   .setConfidenceThreshold(0)
                   .build();
-          cameraSource.setMachineLearningFrameProcessor(
-              new LabelDetectorProcessor(this, autoMLOptions));
+          setFrameProcessor(new LabelDetectorProcessor(this, autoMLOptions));
           break;
         case POSE_DETECTION:
           PoseDetectorOptionsBase poseDetectorOptions =
@@ -253,7 +277,7 @@ public final class LivePreviewActivity extends AppCompatActivity
           boolean shouldShowInFrameLikelihood =
               PreferenceUtils.shouldShowPoseDetectionInFrameLikelihoodLivePreview(this);
           Log.i(TAG, "Using Pose Detector with options " + poseDetectorOptions);
-          cameraSource.setMachineLearningFrameProcessor(
+          setFrameProcessor(
               new PoseDetectorProcessor(this, poseDetectorOptions, shouldShowInFrameLikelihood));
           break;
         default:
@@ -269,12 +293,148 @@ public final class LivePreviewActivity extends AppCompatActivity
     }
   }
 
+  private void setFrameProcessor(VisionImageProcessor processor) {
+    if (PreferenceUtils.isAdaptiveResolutionEnabled(this)) {
+      // Continues from the size an earlier controller switched to, if the camera has started.
+      Size previewSize = cameraSource.getPreviewSize();
+      processor.setResolutionController(
+          new ResolutionController(
+              previewSize != null
+                  ? previewSize.getWidth()
+                  : CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH,
+              previewSize != null
+                  ? previewSize.getHeight()
+                  : CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT,
+              TARGET_DETECTION_FPS,
+              (width, height) -> runOnUiThread(() -> restartCameraSource(width, height))));
+    }
+    // The replay feeds the processor being replaced, which is stopped below.
+    stopFrameReplay();
+    cameraSource.setMachineLearningFrameProcessor(processor);
+    frameProcessor = processor;
+  }
+
+  private void restartCameraSource(int width, int height) {
+    if (cameraSource == null || replayLog != null) {
+      return;
+    }
+    Log.i(TAG, "Switching preview size to " + width + "x" + height);
+    preview.stop();
+    cameraSource.setRequestedPreviewSize(width, height);
+    startCameraSource();
+  }
+
+  /**
+   * Applies the frame schedule from the settings and, if enabled, slows it down while the device
+   * is hot.
+   */
+  private void updateFrameScheduler() {
+    if (cameraSource == null) {
+      return;
+    }
+    stopThermalThrottler();
+    FrameScheduler scheduler = PreferenceUtils.getFrameScheduler(this);
+    if (scheduler != null && PreferenceUtils.isThermalThrottlingEnabled(this)) {
+      thermalThrottler = new ThermalThrottler(this, scheduler);
+      thermalThrottler.start();
+    }
+    cameraSource.setFrameScheduler(scheduler);
+  }
+
+  private void stopThermalThrottler() {
+    if (thermalThrottler != null) {
+      thermalThrottler.stop();
+      thermalThrottler = null;
+    }
+  }
+
+  /** Starts recording camera frames to a new log in the app's files, if enabled in the settings. */
+  private void startFrameRecording() {
+    if (cameraSource == null || !PreferenceUtils.isFrameRecordingEnabled(this)) {
+      return;
+    }
+    File directory = getExternalFilesDir(null);
+    File log =
+        new File(
+            directory != null ? directory : getFilesDir(),
+            "frames-" + System.currentTimeMillis() + ".mlkf");
+    try {
+      frameRecorder = new FrameLogWriter(log);
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to record frames to " + log, e);
+      return;
+    }
+    Log.i(TAG, "Recording frames to " + log);
+    cameraSource.setFrameRecorder(frameRecorder);
+  }
+
+  private void stopFrameRecording() {
+    if (frameRecorder == null) {
+      return;
+    }
+    if (cameraSource != null) {
+      cameraSource.setFrameRecorder(null);
+    }
+    try {
+      frameRecorder.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to finish the frame log.", e);
+    }
+    frameRecorder = null;
+  }
+
+  /**
+   * Returns the frame log named by {@link #EXTRA_REPLAY_LOG}, or null if there is none. Only names
+   * of files directly in the app's files are accepted, as any app can start this activity.
+   */
+  @Nullable
+  private File getReplayLog() {
+    String name = getIntent().getStringExtra(EXTRA_REPLAY_LOG);
+    if (name == null) {
+      return null;
+    }
+    if (name.isEmpty() || name.contains(File.separator) || name.equals("..")) {
+      Log.e(TAG, "Not a frame log name: " + name);
+      return null;
+    }
+    File directory = getExternalFilesDir(null);
+    return new File(directory != null ? directory : getFilesDir(), name);
+  }
+
+  /** Replays {@link #replayLog} into the current processor, restarting any running replay. */
+  private void startFrameReplay() {
+    stopFrameReplay();
+    if (frameProcessor == null) {
+      return;
+    }
+    Log.i(TAG, "Replaying frames from " + replayLog);
+    frameReplaySource = new FrameReplaySource(replayLog, frameProcessor, graphicOverlay);
+    frameReplaySource.setLooping(true);
+    frameReplaySource.start(
+        (framesReplayed, error) -> {
+          if (error != null) {
+            Log.e(TAG, "Unable to replay " + replayLog, error);
+          }
+        });
+  }
+
+  private void stopFrameReplay() {
+    if (frameReplaySource != null) {
+      frameReplaySource.stop();
+      frameReplaySource = null;
+    }
+  }
+
   /**
    * Starts or restarts the camera source, if it exists. If the camera source doesn't exist yet
    * (e.g., because onResume was called before the camera source was created), this will be called
    * again when the camera source is created.
    */
   private void startCameraSource() {
+    if (replayLog != null) {
+      startFrameReplay();
+      return;
+    }
     if (cameraSource != null) {
       try {
         if (preview == null) {
@@ -297,6 +457,8 @@ public final class LivePreviewActivity extends AppCompatActivity
     super.onResume();
     Log.d(TAG, "onResume");
     createCameraSource(selectedModel);
+    updateFrameScheduler();
+    startFrameRecording();
     startCameraSource();
   }
 
@@ -305,6 +467,9 @@ public final class LivePreviewActivity extends AppCompatActivity
   protected void onPause() {
     super.onPause();
     preview.stop();
+    stopThermalThrottler();
+    stopFrameRecording();
+    stopFrameReplay();
   }
 
   @Override
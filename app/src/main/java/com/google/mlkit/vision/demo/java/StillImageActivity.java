@@ -1,12 +1,15 @@
 package com.google.mlkit.vision.demo.java;
 
+import android.content.ClipData;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.MediaStore;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
 import android.util.Pair;
@@ -23,45 +26,23 @@ import android.widget.PopupMenu;
 import android.widget.Spinner;
 import android.widget.Toast;
 import com.google.android.gms.common.annotation.KeepName;
-import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.BitmapUtils;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.InputSource;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
-import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
-import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
-import com.google.mlkit.vision.demo.java.labeldetector.LabelDetectorProcessor;
-import com.google.mlkit.vision.demo.java.objectdetector.ObjectDetectorProcessor;
-import com.google.mlkit.vision.demo.java.posedetector.PoseDetectorProcessor;
-import com.google.mlkit.vision.demo.java.textdetector.TextRecognitionProcessor;
-import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+import com.google.mlkit.vision.demo.VisionImageProcessor.BatchCallback;
 import com.google.mlkit.vision.demo.preference.SettingsActivity;
 import com.google.mlkit.vision.demo.preference.SettingsActivity.LaunchSource;
-import com.google.mlkit.vision.label.automl.AutoMLImageLabelerLocalModel;
-import com.google.mlkit.vision.label.automl.AutoMLImageLabelerOptions;
-import com.google.mlkit.vision.label.custom.CustomImageLabelerOptions;
-import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
-import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
-import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
-import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 @KeepName
 public final class StillImageActivity extends AppCompatActivity {
 
   private static final String TAG = "StillImageActivity";
 
-  private static final String OBJECT_DETECTION = "Object Detection";
-  private static final String OBJECT_DETECTION_CUSTOM = "Custom Object Detection (Birds)";
-  private static final String FACE_DETECTION = "Face Detection";
-  private static final String BARCODE_SCANNING = "Barcode Scanning";
-  private static final String TEXT_RECOGNITION = "Text Recognition";
-  private static final String IMAGE_LABELING = "Image Labeling";
-  private static final String IMAGE_LABELING_CUSTOM = "Custom Image Labeling (Birds)";
-  private static final String AUTOML_LABELING = "AutoML Labeling";
-  private static final String POSE_DETECTION = "Pose Detection";
-
   private static final String SIZE_SCREEN = "w:screen"; // Match screen width
   private static final String SIZE_1024_768 = "w:1024"; // ~1024*768 in a normal ratio
   private static final String SIZE_640_480 = "w:640"; // ~640*480 in a normal ratio
@@ -71,10 +52,12 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private static final int REQUEST_IMAGE_CAPTURE = 1001;
   private static final int REQUEST_CHOOSE_IMAGE = 1002;
+  // Batch images are decoded to at most about this many pixels on each side.
+  private static final int BATCH_MAX_SIZE = 1024;
 
   private ImageView preview;
   private GraphicOverlay graphicOverlay;
-  private String selectedMode = OBJECT_DETECTION;
+  private String selectedMode = StillImageProcessors.OBJECT_DETECTION;
   private String selectedSize = SIZE_SCREEN;
 
   boolean isLandScape;
@@ -83,6 +66,8 @@ public final class StillImageActivity extends AppCompatActivity {
   private int imageMaxWidth;
   private int imageMaxHeight;
   private VisionImageProcessor imageProcessor;
+  // Images picked together with the shown one, detected in as a batch once the processor is ready.
+  @Nullable private List<Uri> pendingBatchUris;
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -157,6 +142,7 @@ public final class StillImageActivity extends AppCompatActivity {
     Log.d(TAG, "onResume");
     createImageProcessor();
     tryReloadAndDetectInImage();
+    tryDetectInPendingBatch();
   }
 
   @Override
@@ -179,19 +165,8 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private void populateFeatureSelector() {
     Spinner featureSpinner = findViewById(R.id.feature_selector);
-    List<String> options = new ArrayList<>();
-    options.add(OBJECT_DETECTION);
-    options.add(OBJECT_DETECTION_CUSTOM);
-    options.add(FACE_DETECTION);
-    options.add(BARCODE_SCANNING);
-    options.add(TEXT_RECOGNITION);
-    options.add(IMAGE_LABELING);
-    options.add(IMAGE_LABELING_CUSTOM);
-    options.add(AUTOML_LABELING);
-    options.add(POSE_DETECTION);
-
-
-    ArrayAdapter<String> dataAdapter = new ArrayAdapter<>(this, R.layout.spinner_style, options);
+    ArrayAdapter<String> dataAdapter =
+        new ArrayAdapter<>(this, R.layout.spinner_style, StillImageProcessors.MODES);
 
     dataAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
     // attaching data adapter to spinner
@@ -268,6 +243,7 @@ public final class StillImageActivity extends AppCompatActivity {
     Intent intent = new Intent();
     intent.setType("image/*");
     intent.setAction(Intent.ACTION_GET_CONTENT);
+    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
     startActivityForResult(Intent.createChooser(intent, "Select Picture"), REQUEST_CHOOSE_IMAGE);
   }
 
@@ -278,6 +254,15 @@ public final class StillImageActivity extends AppCompatActivity {
     } else if (requestCode == REQUEST_CHOOSE_IMAGE && resultCode == RESULT_OK) {
       // In this case, imageUri is returned by the chooser, save it.
       imageUri = data.getData();
+      ClipData clipData = data.getClipData();
+      if (clipData != null && clipData.getItemCount() > 1) {
+        // Several images were picked: the first one is shown and all of them are detected in.
+        pendingBatchUris = new ArrayList<>(clipData.getItemCount());
+        for (int i = 0; i < clipData.getItemCount(); i++) {
+          pendingBatchUris.add(clipData.getItemAt(i).getUri());
+        }
+        imageUri = pendingBatchUris.get(0);
+      }
       tryReloadAndDetectInImage();
     } else {
       super.onActivityResult(requestCode, resultCode, data);
@@ -335,6 +320,52 @@ public final class StillImageActivity extends AppCompatActivity {
     }
   }
 
+  /**
+   * Detects in all images of the last multiple selection on every core, logging the results and
+   * showing a summary when done.
+   */
+  private void tryDetectInPendingBatch() {
+    if (pendingBatchUris == null || imageProcessor == null) {
+      return;
+    }
+    List<InputSource> sources = new ArrayList<>(pendingBatchUris.size());
+    for (Uri uri : pendingBatchUris) {
+      sources.add(
+          InputSource.fromUri(getContentResolver(), uri, BATCH_MAX_SIZE, BATCH_MAX_SIZE));
+    }
+    pendingBatchUris = null;
+
+    long startMs = SystemClock.elapsedRealtime();
+    imageProcessor.processBatch(
+        sources,
+        new BatchCallback() {
+          @Override
+          public void onResult(int index, InputSource source, Object results) {
+            Log.d(TAG, "Batch image " + index + " (" + source + "): " + results);
+          }
+
+          @Override
+          public void onFailure(int index, InputSource source, Exception e) {
+            Log.e(TAG, "Batch image " + index + " (" + source + ") failed", e);
+          }
+
+          @Override
+          public void onBatchFinished(int succeeded, int failed) {
+            String summary =
+                String.format(
+                    Locale.US,
+                    "Detected in %d of %d images in %d ms",
+                    succeeded,
+                    sources.size(),
+                    SystemClock.elapsedRealtime() - startMs);
+            Log.i(TAG, summary + ", " + failed + " failed");
+            runOnUiThread(
+                () ->
+                    Toast.makeText(getApplicationContext(), summary, Toast.LENGTH_LONG).show());
+          }
+        });
+  }
+
   private Pair<Integer, Integer> getTargetedWidthHeight() {
     int targetWidth;
     int targetHeight;
@@ -361,69 +392,7 @@ public final class StillImageActivity extends AppCompatActivity {
 
   private void createImageProcessor() {
     try {
-      switch (selectedMode) {
-        case OBJECT_DETECTION:
-          Log.i(TAG, "Using Object Detector Processor");
-          ObjectDetectorOptions objectDetectorOptions =
-              PreferenceUtils.getObjectDetectorOptionsForStillImage(this);
-          imageProcessor = new ObjectDetectorProcessor(this, objectDetectorOptions);
-          break;
-        case OBJECT_DETECTION_CUSTOM:
-          Log.i(TAG, "Using Custom Object Detector Processor");
-          LocalModel localModel =
-              new LocalModel.Builder()
-                  .setAssetFilePath("custom_models/bird_classifier.tflite")
-                  .build();
-          CustomObjectDetectorOptions customObjectDetectorOptions =
-              PreferenceUtils.getCustomObjectDetectorOptionsForStillImage(this, localModel);
-          imageProcessor = new ObjectDetectorProcessor(this, customObjectDetectorOptions);
-          break;
-        case FACE_DETECTION:
-          imageProcessor = new FaceDetectorProcessor(this);
-          break;
-        case BARCODE_SCANNING:
-          imageProcessor = new BarcodeScannerProcessor(this);
-          break;
-        case TEXT_RECOGNITION:
-          imageProcessor = new TextRecognitionProcessor(this);
-          break;
-        case IMAGE_LABELING:
-          imageProcessor = new LabelDetectorProcessor(this, ImageLabelerOptions.DEFAULT_OPTIONS);
-          break;
-        case IMAGE_LABELING_CUSTOM:
-          Log.i(TAG, "Using Custom Image Label Detector Processor");
-          LocalModel localClassifier =
-              new LocalModel.Builder()
-                  .setAssetFilePath("custom_models/bird_classifier.tflite")
-                  .build();
-          CustomImageLabelerOptions customImageLabelerOptions =
-              new CustomImageLabelerOptions.Builder(localClassifier).build();
-          imageProcessor = new LabelDetectorProcessor(this, customImageLabelerOptions);
-          break;
-        case AUTOML_LABELING:
-          Log.i(TAG, "Using AutoML Image Label Detector Processor");
-          AutoMLImageLabelerLocalModel autoMLLocalModel =
-              new AutoMLImageLabelerLocalModel.Builder()
-                  .setAssetFilePath("automl/manifest.json")
-                  .build();
-          AutoMLImageLabelerOptions autoMLOptions =
-              new AutoMLImageLabelerOptions.Builder(autoMLLocalModel)
-                  .setConfidenceThreshold(0)
-                  .build();
-          imageProcessor = new LabelDetectorProcessor(this, autoMLOptions);
-          break;
-        case POSE_DETECTION:
-          PoseDetectorOptionsBase poseDetectorOptions =
-              PreferenceUtils.getPoseDetectorOptionsForStillImage(this);
-          boolean shouldShowInFrameLikelihood =
-              PreferenceUtils.shouldShowPoseDetectionInFrameLikelihoodStillImage(this);
-          Log.i(TAG, "Using Pose Detector with options " + poseDetectorOptions);
-          imageProcessor =
-              new PoseDetectorProcessor(this, poseDetectorOptions, shouldShowInFrameLikelihood);
-          break;
-        default:
-          Log.e(TAG, "Unknown selectedMode: " + selectedMode);
-      }
+      imageProcessor = StillImageProcessors.create(this, selectedMode);
     } catch (Exception e) {
       Log.e(TAG, "Can not create image processor: " + selectedMode, e);
       Toast.makeText(
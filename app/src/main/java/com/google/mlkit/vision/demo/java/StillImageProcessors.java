@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java;
+
+import android.content.Context;
+import android.util.Log;
+import com.google.mlkit.common.model.LocalModel;
+import com.google.mlkit.vision.demo.VisionImageProcessor;
+import com.google.mlkit.vision.demo.java.barcodescanner.BarcodeScannerProcessor;
+import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
+import com.google.mlkit.vision.demo.java.labeldetector.LabelDetectorProcessor;
+import com.google.mlkit.vision.demo.java.objectdetector.ObjectDetectorProcessor;
+import com.google.mlkit.vision.demo.java.posedetector.PoseDetectorProcessor;
+import com.google.mlkit.vision.demo.java.textdetector.TextRecognitionProcessor;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+import com.google.mlkit.vision.label.automl.AutoMLImageLabelerLocalModel;
+import com.google.mlkit.vision.label.automl.AutoMLImageLabelerOptions;
+import com.google.mlkit.vision.label.custom.CustomImageLabelerOptions;
+import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
+import com.google.mlkit.vision.objects.custom.CustomObjectDetectorOptions;
+import com.google.mlkit.vision.objects.defaults.ObjectDetectorOptions;
+import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates the processors that still images can be run through, by the name of the mode shown in
+ * {@link StillImageActivity}, with the still image settings.
+ */
+final class StillImageProcessors {
+
+  private static final String TAG = "StillImageProcessors";
+
+  static final String OBJECT_DETECTION = "Object Detection";
+  static final String OBJECT_DETECTION_CUSTOM = "Custom Object Detection (Birds)";
+  static final String FACE_DETECTION = "Face Detection";
+  static final String BARCODE_SCANNING = "Barcode Scanning";
+  static final String TEXT_RECOGNITION = "Text Recognition";
+  static final String IMAGE_LABELING = "Image Labeling";
+  static final String IMAGE_LABELING_CUSTOM = "Custom Image Labeling (Birds)";
+  static final String AUTOML_LABELING = "AutoML Labeling";
+  static final String POSE_DETECTION = "Pose Detection";
+
+  /** All modes, in the order they are offered. */
+  static final List<String> MODES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              OBJECT_DETECTION,
+              OBJECT_DETECTION_CUSTOM,
+              FACE_DETECTION,
+              BARCODE_SCANNING,
+              TEXT_RECOGNITION,
+              IMAGE_LABELING,
+              IMAGE_LABELING_CUSTOM,
+              AUTOML_LABELING,
+              POSE_DETECTION));
+
+  private StillImageProcessors() {}
+
+  /**
+   * Creates the processor for {@code mode}.
+   *
+   * @throws IllegalArgumentException if {@code mode} is not one of {@link #MODES}
+   */
+  static VisionImageProcessor create(Context context, String mode) {
+    switch (mode) {
+      case OBJECT_DETECTION:
+        Log.i(TAG, "Using Object Detector Processor");
+        ObjectDetectorOptions objectDetectorOptions =
+            PreferenceUtils.getObjectDetectorOptionsForStillImage(context);
+        return new ObjectDetectorProcessor(context, objectDetectorOptions);
+      case OBJECT_DETECTION_CUSTOM:
+        Log.i(TAG, "Using Custom Object Detector Processor");
+        LocalModel localModel =
+            new LocalModel.Builder()
+                .setAssetFilePath("custom_models/bird_classifier.tflite")
+                .build();
+        CustomObjectDetectorOptions customObjectDetectorOptions =
+            PreferenceUtils.getCustomObjectDetectorOptionsForStillImage(context, localModel);
+        return new ObjectDetectorProcessor(context, customObjectDetectorOptions);
+      case FACE_DETECTION:
+        return new FaceDetectorProcessor(context);
+      case BARCODE_SCANNING:
+        return new BarcodeScannerProcessor(context);
+      case TEXT_RECOGNITION:
+        return new TextRecognitionProcessor(context);
+      case IMAGE_LABELING:
+        return new LabelDetectorProcessor(context, ImageLabelerOptions.DEFAULT_OPTIONS);
+      case IMAGE_LABELING_CUSTOM:
+        Log.i(TAG, "Using Custom Image Label Detector Processor");
+        LocalModel localClassifier =
+            new LocalModel.Builder()
+                .setAssetFilePath("custom_models/bird_classifier.tflite")
+                .build();
+        CustomImageLabelerOptions customImageLabelerOptions =
+            new CustomImageLabelerOptions.Builder(localClassifier).build();
+        return new LabelDetectorProcessor(context, customImageLabelerOptions);
+      case AUTOML_LABELING:
+        Log.i(TAG, "Using AutoML Image Label Detector Processor");
+        AutoMLImageLabelerLocalModel autoMLLocalModel =
+            new AutoMLImageLabelerLocalModel.Builder()
+                .setAssetFilePath("automl/manifest.json")
+                .build();
+        AutoMLImageLabelerOptions autoMLOptions =
+            new AutoMLImageLabelerOptions.Builder(autoMLLocalModel)
+                .setConfidenceThreshold(0)
+                .build();
+        return new LabelDetectorProcessor(context, autoMLOptions);
+      case POSE_DETECTION:
+        PoseDetectorOptionsBase poseDetectorOptions =
+            PreferenceUtils.getPoseDetectorOptionsForStillImage(context);
+        boolean shouldShowInFrameLikelihood =
+            PreferenceUtils.shouldShowPoseDetectionInFrameLikelihoodStillImage(context);
+        Log.i(TAG, "Using Pose Detector with options " + poseDetectorOptions);
+        return new PoseDetectorProcessor(
+            context, poseDetectorOptions, shouldShowInFrameLikelihood);
+      default:
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+  }
+}
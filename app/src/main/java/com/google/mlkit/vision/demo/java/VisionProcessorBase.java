@@ -6,7 +6,6 @@ import android.app.ActivityManager.MemoryInfo;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Build.VERSION_CODES;
-import android.os.SystemClock;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,61 +16,177 @@ import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskExecutors;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.BitmapPool;
 import com.google.mlkit.vision.demo.BitmapUtils;
 import com.google.mlkit.vision.demo.CameraImageGraphic;
+import com.google.mlkit.vision.demo.FrameBufferPool;
+import com.google.mlkit.vision.demo.FrameLogWriter;
 import com.google.mlkit.vision.demo.FrameMetadata;
+import com.google.mlkit.vision.demo.FramePipeline;
+import com.google.mlkit.vision.demo.FramePipeline.DropPolicy;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.InferenceInfoGraphic;
+import com.google.mlkit.vision.demo.InputSource;
+import com.google.mlkit.vision.demo.LatencyHistogram;
+import com.google.mlkit.vision.demo.MetricsRegistry;
+import com.google.mlkit.vision.demo.MotionGate;
+import com.google.mlkit.vision.demo.RateMeter;
+import com.google.mlkit.vision.demo.RegionOfInterest;
+import com.google.mlkit.vision.demo.ResolutionController;
 import com.google.mlkit.vision.demo.ScopedExecutor;
 import com.google.mlkit.vision.demo.VisionImageProcessor;
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Abstract base class for vision frame processors. Subclasses need to implement {@link
+ * #onSuccess(Object, GraphicOverlay)} to define what they want to do with the detection results
+ * and {@link #detectInImage(InputImage)} to specify the detector object.
+ *
+ * <p>Camera1 frames go through a {@link FramePipeline} that copies each frame's data once, when it
+ * arrives, and only reads views of that copy afterwards. The one exception is a frame cropped to a
+ * {@link RegionOfInterest} while the camera image is shown behind the results: the whole frame is
+ * copied for the background bitmap, and the region is copied out of it for the detector.
+ *
+ * @param <T> The type of the detected feature.
+ */
 public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   protected static final String MANUAL_TESTING_LOG = "LogTagForTest";
   private static final String TAG = "VisionProcessorBase";
 
+  // Stages of the pipeline that byte buffer frames (Camera1 live preview) go through.
+  static final String STAGE_CONVERT = "convert";
+  static final String STAGE_DETECT = "detect";
+  static final String STAGE_POST_PROCESS = "post-process";
+  static final String STAGE_RENDER_PREP = "render-prep";
+
   private final ActivityManager activityManager;
-  private final Timer fpsTimer = new Timer();
   private final ScopedExecutor executor;
 
+  private final MetricsRegistry metrics = MetricsRegistry.getInstance();
+  private final LatencyHistogram detectorLatency =
+      metrics.getHistogram(MetricsRegistry.DETECTOR_INFERENCE);
+  private final RateMeter frameRate = metrics.getRateMeter(MetricsRegistry.FRAMES_PROCESSED);
+  private final RateMeter reusedFrameRate = metrics.getRateMeter(MetricsRegistry.FRAMES_REUSED);
+
   private boolean isShutdown;
-  private int numRuns = 0;
-  private long totalRunMs = 0;
-  private long maxRunMs = 0;
-  private long minRunMs = Long.MAX_VALUE;
-  private int frameProcessedInOneSecondInterval = 0;
-  private int framesPerSecond = 0;
-
-  // To keep the latest images and its metadata.
-  @GuardedBy("this")
-  private ByteBuffer latestImage;
+  // Set while synthetic images are run through the detector; live frames are dropped meanwhile.
+  private volatile boolean isWarmingUp;
+  // Live frames are cropped to this region before detection, if set.
+  @Nullable private volatile RegionOfInterest regionOfInterest;
+  // Fed the latency of every live frame, if set.
+  @Nullable private volatile ResolutionController resolutionController;
+  // Records the CameraX frames passed to processImageProxy, if set.
+  @Nullable private volatile FrameLogWriter frameRecorder;
+  // Lets live frames that barely differ from the last detected one skip detection, if set.
+  @Nullable private volatile MotionGate motionGate;
+  // The results of the latest detected live frame, shown again for frames that skip detection.
+  @Nullable private volatile LiveResults lastResults;
 
   @GuardedBy("this")
-  private FrameMetadata latestImageMetaData;
-  // To keep the images and metadata in process.
+  private long lastLogNanos;
+
+  // Created on the first byte buffer frame, so processors only used for still images or CameraX do
+  // not start the stage threads.
   @GuardedBy("this")
-  private ByteBuffer processingImage;
+  @Nullable
+  private FramePipeline<PipelineFrame> framePipeline;
 
+  // Copies of the camera frames owned by the pipeline, reused once a frame has been detected.
+  private final FrameBufferPool frameBuffers;
+
+  // Batches that are still running, cancelled when the processor stops.
   @GuardedBy("this")
-  private FrameMetadata processingMetaData;
+  private final List<BatchRunner<T>> batchRunners = new ArrayList<>();
 
   protected VisionProcessorBase(Context context) {
     activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
     executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
-    fpsTimer.scheduleAtFixedRate(
-        new TimerTask() {
-          @Override
-          public void run() {
-            framesPerSecond = frameProcessedInOneSecondInterval;
-            frameProcessedInOneSecondInterval = 0;
-          }
-        },
-        /* delay= */ 0,
-        /* period= */ 1000);
+    frameBuffers = new FrameBufferPool(PreferenceUtils.isDirectFrameBuffersEnabled(context));
+    if (PreferenceUtils.isMotionGateEnabled(context)) {
+      motionGate = new MotionGate();
+    }
+  }
+
+  /**
+   * Restricts detection in live frames to a region of the frame, or lifts the restriction if
+   * {@code regionOfInterest} is null. Frames are cropped before they are handed to the detector
+   * and results are shown at their position in the full frame. Still images are always processed
+   * whole.
+   */
+  public void setRegionOfInterest(@Nullable RegionOfInterest regionOfInterest) {
+    this.regionOfInterest = regionOfInterest;
+  }
+
+  /**
+   * Lets live frames that barely differ from the last detected frame reuse its results instead of
+   * being detected in, or detects in every live frame if {@code motionGate} is null.
+   */
+  public void setMotionGate(@Nullable MotionGate motionGate) {
+    this.motionGate = motionGate;
+  }
+
+  @Override
+  public void setResolutionController(@Nullable ResolutionController controller) {
+    this.resolutionController = controller;
+  }
+
+  @Override
+  public void setFrameRecorder(@Nullable FrameLogWriter recorder) {
+    this.frameRecorder = recorder;
+  }
+
+  // -----------------Code for warming up the detector----------------------------------------------
+  @Override
+  public void warmUp(
+      int width, int height, int iterations, @Nullable final OnReadyListener listener) {
+    if (iterations <= 0) {
+      if (listener != null) {
+        listener.onReady();
+      }
+      return;
+    }
+    isWarmingUp = true;
+    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    runWarmUpIteration(InputImage.fromBitmap(bitmap, 0), bitmap, iterations, listener);
+  }
+
+  private void runWarmUpIteration(
+      final InputImage image,
+      final Bitmap bitmap,
+      final int remaining,
+      @Nullable final OnReadyListener listener) {
+    final long startNanos = System.nanoTime();
+    detectInImage(image)
+        .addOnCompleteListener(
+            executor,
+            task -> {
+              LatencyHistogram warmUpLatency = metrics.getHistogram(MetricsRegistry.WARM_UP);
+              warmUpLatency.record(System.nanoTime() - startNanos);
+              // A failing detector will not get better by repeating, so stop early on errors.
+              if (remaining > 1 && task.isSuccessful()) {
+                runWarmUpIteration(image, bitmap, remaining - 1, listener);
+                return;
+              }
+              if (!task.isSuccessful()) {
+                Log.w(TAG, "Warm-up failed", task.getException());
+              }
+              Log.d(TAG, "Warm-up latency: " + warmUpLatency);
+              bitmap.recycle();
+              isWarmingUp = false;
+              if (listener != null) {
+                listener.onReady();
+              }
+            });
   }
 
   // -----------------Code for processing single still image----------------------------------------
@@ -81,128 +196,607 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
         InputImage.fromBitmap(bitmap, 0),
         graphicOverlay,
         /* originalCameraImage= */ null,
+        /* crop= */ null,
         /* shouldShowFps= */ false);
   }
+  // -----------------Code for processing a batch of still images-----------------------------------
+
+  /**
+   * A detector client that a batch worker runs all of its images through.
+   *
+   * @param <T> the type of the detection results
+   */
+  protected interface BatchDetector<T> extends Closeable {
+    Task<T> detect(InputImage image);
+  }
+
+  /** Detects in one image, e.g. a client's {@code process} method. */
+  protected interface DetectFunction<T> {
+    Task<T> detect(InputImage image);
+  }
+
+  /**
+   * Returns a batch detector that runs images through {@code function}, and closes {@code client}
+   * when its worker is done, unless it is null.
+   */
+  protected static <T> BatchDetector<T> newBatchDetector(
+      DetectFunction<T> function, @Nullable Closeable client) {
+    return new BatchDetector<T>() {
+      @Override
+      public Task<T> detect(InputImage image) {
+        return function.detect(image);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (client != null) {
+          client.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates the detector client of one batch worker. Called on the worker thread.
+   *
+   * <p>ML Kit runs the images given to one client one after the other, so processors override this
+   * to give every worker a client of its own. By default the workers share the processor's client.
+   */
+  protected BatchDetector<T> createBatchDetector() {
+    return newBatchDetector(this::detectInImage, /* client= */ null);
+  }
+
+  @Override
+  public void processBatch(List<InputSource> sources, BatchCallback callback) {
+    processBatch(sources, Runtime.getRuntime().availableProcessors(), callback);
+  }
+
+  @Override
+  public void processBatch(List<InputSource> sources, int parallelism, BatchCallback callback) {
+    BatchRunner<T> runner =
+        new BatchRunner<>(
+            TAG,
+            sources,
+            parallelism,
+            this::createBatchDetector,
+            callback,
+            this::onBatchFinished);
+    synchronized (this) {
+      if (!isShutdown) {
+        batchRunners.add(runner);
+        runner.start();
+        return;
+      }
+    }
+    // A stopped processor only reports the batch as finished, from the delivery thread as usual.
+    runner.start();
+    runner.cancel();
+  }
+
+  private synchronized void onBatchFinished(BatchRunner<?> runner) {
+    batchRunners.remove(runner);
+  }
+
   @Override
-  public synchronized void processByteBuffer(
+  @SuppressWarnings("unchecked") // Batch results come from this processor's detector.
+  public final void appendBatchResults(Object results, StringBuilder out) {
+    appendResults((T) results, out);
+  }
+
+  /**
+   * Appends a compact single-line summary of {@code results}. Processors override this with the
+   * essentials of their results, since detector results have no useful {@code toString}.
+   */
+  protected void appendResults(T results, StringBuilder out) {
+    out.append(results);
+  }
+
+  // -----------------Code for processing live preview frame from Camera1 API-----------------------
+  @Override
+  public void processByteBuffer(
       ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
-    latestImage = data;
-    latestImageMetaData = frameMetadata;
-    if (processingImage == null && processingMetaData == null) {
-      processLatestImage(graphicOverlay);
+    if (isWarmingUp) {
+      return;
     }
+    FramePipeline<PipelineFrame> pipeline = getOrCreatePipeline();
+    if (pipeline == null) {
+      return;
+    }
+    // The camera reuses its buffer as soon as this returns, so the pipeline works on its own copy.
+    // Every later stage reads views of it. Unless the camera image is shown, nothing needs more
+    // of the frame than the region of interest, so only the region is copied.
+    long startNanos = System.nanoTime();
+    boolean showCameraImage =
+        !PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext());
+    RegionOfInterest roi = regionOfInterest;
+    RegionOfInterest.Crop crop = null;
+    ByteBuffer copy;
+    if (roi != null && !showCameraImage) {
+      crop =
+          roi.getCrop(
+              frameMetadata.getWidth(), frameMetadata.getHeight(), frameMetadata.getRotation());
+      copy = frameBuffers.acquire(crop.getNv21Size());
+      crop.cropNv21(data, frameMetadata.getWidth(), copy);
+    } else {
+      data.rewind();
+      copy = frameBuffers.acquire(data.remaining());
+      copy.put(data);
+      copy.flip();
+    }
+    metrics.record(MetricsRegistry.FRAME_ACQUISITION, System.nanoTime() - startNanos);
+    PipelineFrame frame = new PipelineFrame(copy, frameMetadata, graphicOverlay);
+    frame.crop = crop;
+    frame.showCameraImage = showCameraImage;
+    frame.copies++;
+    pipeline.submit(frame);
   }
 
-  private synchronized void processLatestImage(final GraphicOverlay graphicOverlay) {
-    processingImage = latestImage;
-    processingMetaData = latestImageMetaData;
-    latestImage = null;
-    latestImageMetaData = null;
-    if (processingImage != null && processingMetaData != null && !isShutdown) {
-      processImage(processingImage, processingMetaData, graphicOverlay);
+  @Nullable
+  private synchronized FramePipeline<PipelineFrame> getOrCreatePipeline() {
+    if (isShutdown) {
+      return null;
+    }
+    if (framePipeline == null) {
+      framePipeline =
+          FramePipeline.<PipelineFrame>newBuilder(TAG)
+              .addStage(STAGE_CONVERT, 1, DropPolicy.DROP_OLDEST, this::convertFrame)
+              .addStage(STAGE_DETECT, 1, DropPolicy.DROP_OLDEST, this::detectFrame)
+              .addStage(STAGE_POST_PROCESS, 2, DropPolicy.DROP_OLDEST, this::postProcessFrame)
+              .addStage(STAGE_RENDER_PREP, 2, DropPolicy.DROP_OLDEST, this::prepareRender)
+              .setDropListener((stageName, frame, cause) -> onFrameDropped((PipelineFrame) frame))
+              .build();
     }
+    return framePipeline;
   }
 
-  private void processImage(
-      ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay) {
-    Bitmap bitmap =
-        PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())
-            ? null
-            : BitmapUtils.getBitmap(data, frameMetadata);
+  private PipelineFrame convertFrame(PipelineFrame frame) {
+    FrameMetadata metadata = frame.metadata;
+    ByteBuffer buffer = viewOf(frame.data);
+    if (frame.showCameraImage) {
+      frame.bitmap = BitmapUtils.getBitmap(buffer, metadata);
+    }
+    // The data holds only the region of interest if the frame was cropped on arrival.
+    int width = frame.crop != null ? frame.crop.width : metadata.getWidth();
+    int height = frame.crop != null ? frame.crop.height : metadata.getHeight();
+    // The luma plane of an NV21 frame comes first, one byte per pixel.
+    frame.reusedResults = getReusableResults(buffer, width, height, width, 1);
+    if (frame.reusedResults != null) {
+      releaseFrameData(frame);
+      return frame;
+    }
+    frame.awaitsDetection = true;
+    RegionOfInterest roi = regionOfInterest;
+    if (frame.crop == null && roi != null) {
+      // The whole frame was kept for the background bitmap, which is made now, so detection only
+      // keeps the crop.
+      RegionOfInterest.Crop crop =
+          roi.getCrop(metadata.getWidth(), metadata.getHeight(), metadata.getRotation());
+      ByteBuffer cropped = cropFrame(frame.data, metadata.getWidth(), crop);
+      frame.copies++;
+      releaseFrameData(frame);
+      frame.data = cropped;
+      frame.crop = crop;
+      buffer = viewOf(cropped);
+      width = crop.width;
+      height = crop.height;
+    }
+    frame.image =
+        InputImage.fromByteBuffer(
+            buffer, width, height, metadata.getRotation(), InputImage.IMAGE_FORMAT_NV21);
+    return frame;
+  }
 
-    requestDetectInImage(
-            InputImage.fromByteBuffer(
-                data,
-                frameMetadata.getWidth(),
-                frameMetadata.getHeight(),
-                frameMetadata.getRotation(),
-                InputImage.IMAGE_FORMAT_NV21),
-            graphicOverlay,
-            bitmap,
-            /* shouldShowFps= */ true)
-        .addOnSuccessListener(executor, results -> processLatestImage(graphicOverlay));
+  private ByteBuffer cropFrame(ByteBuffer nv21, int rowStride, RegionOfInterest.Crop crop) {
+    long startNanos = System.nanoTime();
+    ByteBuffer cropped = frameBuffers.acquire(crop.getNv21Size());
+    crop.cropNv21(nv21, rowStride, cropped);
+    metrics.record(MetricsRegistry.ROI_CROP, System.nanoTime() - startNanos);
+    return cropped;
+  }
+
+  @Nullable
+  private PipelineFrame detectFrame(PipelineFrame frame) throws InterruptedException {
+    if (frame.reusedResults != null) {
+      return frame;
+    }
+    long startNanos = System.nanoTime();
+    try {
+      frame.results = Tasks.await(detectInImage(frame.image));
+    } catch (ExecutionException e) {
+      Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      executor.execute(() -> onDetectionFailure(cause, frame.graphicOverlay));
+      onFrameDropped(frame);
+      return null;
+    }
+    frame.latencyNanos = System.nanoTime() - startNanos;
+    frame.awaitsDetection = false;
+    lastResults =
+        new LiveResults(
+            frame.results, frame.crop, TimeUnit.NANOSECONDS.toMillis(frame.latencyNanos));
+    // The detector is done with the input, so the copy can take the next camera frame.
+    releaseFrameData(frame);
+    return frame;
+  }
+
+  private PipelineFrame postProcessFrame(PipelineFrame frame) {
+    if (frame.reusedResults != null) {
+      reusedFrameRate.mark();
+      return frame;
+    }
+    recordLatency(frame.latencyNanos);
+    reportLiveFrameLatency(frame.latencyNanos);
+    return frame;
+  }
+
+  @Nullable
+  private PipelineFrame prepareRender(PipelineFrame frame) {
+    metrics.getFrameCopies().record(frame.copies);
+    long latencyMs = TimeUnit.NANOSECONDS.toMillis(frame.latencyNanos);
+    int framesPerSecond = getFramesPerSecond();
+    // The overlay takes over the bitmap from here on.
+    Bitmap bitmap = frame.bitmap;
+    frame.bitmap = null;
+    LiveResults reused = frame.reusedResults;
+    if (reused != null) {
+      executor.execute(() -> showReusedResults(reused, frame.graphicOverlay, bitmap));
+      return null;
+    }
+    executor.execute(
+        () ->
+            showResults(
+                frame.results,
+                frame.graphicOverlay,
+                bitmap,
+                frame.crop,
+                latencyMs,
+                framesPerSecond,
+                /* resultsReused= */ false));
+    return null;
   }
+
+  private void onFrameDropped(PipelineFrame frame) {
+    if (frame.awaitsDetection) {
+      // The motion gate took this frame as its reference, but it was never detected in.
+      forgetLastResults();
+    }
+    metrics.getFrameCopies().record(frame.copies);
+    releaseFrameData(frame);
+    if (frame.bitmap != null) {
+      BitmapPool.getDefault().put(frame.bitmap);
+      frame.bitmap = null;
+    }
+  }
+
+  /**
+   * Returns the view of a pooled frame copy that is handed to the converters and the detector.
+   * Direct copies are only shared read-only. Heap copies keep their array accessible, which the
+   * converters and the detector read without a further copy.
+   */
+  private static ByteBuffer viewOf(ByteBuffer data) {
+    return data.isDirect() ? data.asReadOnlyBuffer() : data.duplicate();
+  }
+
+  private void releaseFrameData(PipelineFrame frame) {
+    if (frame.data != null) {
+      frameBuffers.release(frame.data);
+      frame.data = null;
+    }
+  }
+
+  /** A byte buffer frame and everything produced for it on its way through the pipeline. */
+  private final class PipelineFrame {
+    final FrameMetadata metadata;
+    final GraphicOverlay graphicOverlay;
+    // The pipeline's copy of the frame, or of its region of interest, from position 0 to the limit.
+    @Nullable ByteBuffer data;
+    // The number of times frame data was copied for this frame.
+    int copies;
+    // Whether the camera image is shown behind the results, from the bitmap made of the frame.
+    boolean showCameraImage;
+    @Nullable Bitmap bitmap;
+    // Set when only a region of the frame is detected in.
+    @Nullable RegionOfInterest.Crop crop;
+    // Set when the frame skips detection and shows these earlier results instead.
+    @Nullable LiveResults reusedResults;
+    // Set from passing the motion gate until the detector has returned results.
+    boolean awaitsDetection;
+    InputImage image;
+    T results;
+    long latencyNanos;
+
+    PipelineFrame(ByteBuffer data, FrameMetadata metadata, GraphicOverlay graphicOverlay) {
+      this.data = data;
+      this.metadata = metadata;
+      this.graphicOverlay = graphicOverlay;
+    }
+  }
+
+  /** Results of a detected live frame, kept for the static frames that follow it. */
+  private final class LiveResults {
+    final T results;
+    @Nullable final RegionOfInterest.Crop crop;
+    final long latencyMs;
+
+    LiveResults(T results, @Nullable RegionOfInterest.Crop crop, long latencyMs) {
+      this.results = results;
+      this.crop = crop;
+      this.latencyMs = latencyMs;
+    }
+  }
+
+  /**
+   * Returns the results to show for a live frame instead of detecting in it, or null if the frame
+   * has to be detected in.
+   */
+  @Nullable
+  private LiveResults getReusableResults(
+      ByteBuffer luma, int width, int height, int rowStride, int pixelStride) {
+    MotionGate gate = motionGate;
+    LiveResults results = lastResults;
+    if (gate == null || results == null) {
+      return null;
+    }
+    return gate.hasChanged(luma, width, height, rowStride, pixelStride) ? null : results;
+  }
+
+  /**
+   * Stops reusing results after a frame that passed the motion gate was not detected in. The gate
+   * compares later frames with that frame, so they must not be shown the results of an older one.
+   */
+  private void forgetLastResults() {
+    lastResults = null;
+    MotionGate gate = motionGate;
+    if (gate != null) {
+      gate.reset();
+    }
+  }
+
+  private void showReusedResults(
+      LiveResults reused, GraphicOverlay graphicOverlay, @Nullable Bitmap cameraImage) {
+    showResults(
+        reused.results,
+        graphicOverlay,
+        cameraImage,
+        reused.crop,
+        reused.latencyMs,
+        getFramesPerSecond(),
+        /* resultsReused= */ true);
+  }
+
+  // -----------------Code for processing live preview frame from CameraX API-----------------------
   @Override
   @RequiresApi(VERSION_CODES.KITKAT)
   @ExperimentalGetImage
   public void processImageProxy(ImageProxy image, GraphicOverlay graphicOverlay) {
-    if (isShutdown) {
+    if (isShutdown || isWarmingUp) {
       image.close();
       return;
     }
 
-    Bitmap bitmap = null;
-    if (!PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext())) {
-      bitmap = BitmapUtils.getBitmap(image);
+    boolean showCameraImage =
+        !PreferenceUtils.isCameraLiveViewportEnabled(graphicOverlay.getContext());
+    // Converted at most once, for the frame log, the crop and the background bitmap alike.
+    ByteBuffer nv21 = null;
+    FrameLogWriter recorder = frameRecorder;
+    if (recorder != null) {
+      nv21 = BitmapUtils.getNv21(image);
+      recordFrame(recorder, nv21, image);
+    }
+    ImageProxy.PlaneProxy lumaPlane = image.getPlanes()[0];
+    LiveResults reused =
+        getReusableResults(
+            lumaPlane.getBuffer(),
+            image.getWidth(),
+            image.getHeight(),
+            lumaPlane.getRowStride(),
+            lumaPlane.getPixelStride());
+    if (reused != null) {
+      Bitmap bitmap = showCameraImage ? getCameraBitmap(image, nv21) : null;
+      image.close();
+      reusedFrameRate.mark();
+      executor.execute(() -> showReusedResults(reused, graphicOverlay, bitmap));
+      return;
     }
 
+    int rotationDegrees = image.getImageInfo().getRotationDegrees();
+    RegionOfInterest roi = regionOfInterest;
+    if (roi == null) {
+      requestDetectInImage(
+              InputImage.fromMediaImage(image.getImage(), rotationDegrees),
+              graphicOverlay,
+              /* originalCameraImage= */ showCameraImage ? getCameraBitmap(image, nv21) : null,
+              /* crop= */ null,
+              /* shouldShowFps= */ true)
+          .addOnCompleteListener(results -> image.close());
+      return;
+    }
+
+    if (nv21 == null) {
+      nv21 = BitmapUtils.getNv21(image);
+    }
+    RegionOfInterest.Crop crop = roi.getCrop(image.getWidth(), image.getHeight(), rotationDegrees);
+    ByteBuffer cropped = cropFrame(nv21, image.getWidth(), crop);
+    Bitmap bitmap = showCameraImage ? getCameraBitmap(image, nv21) : null;
     requestDetectInImage(
-            InputImage.fromMediaImage(image.getImage(), image.getImageInfo().getRotationDegrees()),
+            InputImage.fromByteBuffer(
+                viewOf(cropped),
+                crop.width,
+                crop.height,
+                rotationDegrees,
+                InputImage.IMAGE_FORMAT_NV21),
             graphicOverlay,
             /* originalCameraImage= */ bitmap,
+            crop,
             /* shouldShowFps= */ true)
-        .addOnCompleteListener(results -> image.close());
+        .addOnCompleteListener(
+            results -> {
+              // Closed only now, so the camera keeps delivering frames at the detector's pace.
+              image.close();
+              frameBuffers.release(cropped);
+            });
   }
+
+  /**
+   * Returns the background bitmap of a CameraX frame, converting it from {@code nv21} if the frame
+   * has already been converted to NV21.
+   */
+  @Nullable
+  @RequiresApi(VERSION_CODES.KITKAT)
+  @ExperimentalGetImage
+  private static Bitmap getCameraBitmap(ImageProxy image, @Nullable ByteBuffer nv21) {
+    if (nv21 == null) {
+      return BitmapUtils.getBitmap(image);
+    }
+    return BitmapUtils.getBitmap(
+        nv21,
+        new FrameMetadata.Builder()
+            .setWidth(image.getWidth())
+            .setHeight(image.getHeight())
+            .setRotation(image.getImageInfo().getRotationDegrees())
+            .build());
+  }
+
+  private void recordFrame(FrameLogWriter recorder, ByteBuffer nv21, ImageProxy image) {
+    try {
+      recorder.append(
+          nv21,
+          image.getWidth(),
+          image.getHeight(),
+          image.getImageInfo().getRotationDegrees(),
+          image.getImageInfo().getTimestamp());
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to record frame, recording stopped.", e);
+      frameRecorder = null;
+    }
+  }
+  // -----------------Common processing logic-------------------------------------------------------
   private Task<T> requestDetectInImage(
       final InputImage image,
       final GraphicOverlay graphicOverlay,
       @Nullable final Bitmap originalCameraImage,
+      @Nullable final RegionOfInterest.Crop crop,
       boolean shouldShowFps) {
-    final long startMs = SystemClock.elapsedRealtime();
+    final long startNanos = System.nanoTime();
     return detectInImage(image)
         .addOnSuccessListener(
             executor,
             results -> {
-              long currentLatencyMs = SystemClock.elapsedRealtime() - startMs;
-              numRuns++;
-              frameProcessedInOneSecondInterval++;
-              totalRunMs += currentLatencyMs;
-              maxRunMs = Math.max(currentLatencyMs, maxRunMs);
-              minRunMs = Math.min(currentLatencyMs, minRunMs);
-              if (frameProcessedInOneSecondInterval == 1) {
-                Log.d(TAG, "Max latency is: " + maxRunMs);
-                Log.d(TAG, "Min latency is: " + minRunMs);
-                Log.d(TAG, "Num of Runs: " + numRuns + ", Avg latency is: " + totalRunMs / numRuns);
-                MemoryInfo mi = new MemoryInfo();
-                activityManager.getMemoryInfo(mi);
-                long availableMegs = mi.availMem / 0x100000L;
-                Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
-              }
-
-              graphicOverlay.clear();
-              if (originalCameraImage != null) {
-                graphicOverlay.add(new CameraImageGraphic(graphicOverlay, originalCameraImage));
+              long currentLatencyNanos = System.nanoTime() - startNanos;
+              long currentLatencyMs = TimeUnit.NANOSECONDS.toMillis(currentLatencyNanos);
+              recordLatency(currentLatencyNanos);
+              if (shouldShowFps) {
+                reportLiveFrameLatency(currentLatencyNanos);
+                lastResults = new LiveResults(results, crop, currentLatencyMs);
               }
-              graphicOverlay.add(
-                  new InferenceInfoGraphic(
-                      graphicOverlay, currentLatencyMs, shouldShowFps ? framesPerSecond : null));
-              VisionProcessorBase.this.onSuccess(results, graphicOverlay);
-              graphicOverlay.postInvalidate();
+              showResults(
+                  results,
+                  graphicOverlay,
+                  originalCameraImage,
+                  crop,
+                  currentLatencyMs,
+                  shouldShowFps ? getFramesPerSecond() : null,
+                  /* resultsReused= */ false);
             })
-        .addOnFailureListener(
-            executor,
-            e -> {
-              graphicOverlay.clear();
-              graphicOverlay.postInvalidate();
-              String error = "Failed to process. Error: " + e.getLocalizedMessage();
-              Toast.makeText(
-                      graphicOverlay.getContext(),
-                      error + "\nCause: " + e.getCause(),
-                      Toast.LENGTH_SHORT)
-                  .show();
-              Log.d(TAG, error);
-              e.printStackTrace();
-              VisionProcessorBase.this.onFailure(e);
-            });
+        .addOnFailureListener(executor, e -> onDetectionFailure(e, graphicOverlay));
+  }
+
+  private void reportLiveFrameLatency(long latencyNanos) {
+    ResolutionController controller = resolutionController;
+    if (controller != null) {
+      controller.recordLatency(latencyNanos);
+    }
+  }
+
+  private int getFramesPerSecond() {
+    return (int) Math.round(frameRate.getRate(1, TimeUnit.SECONDS));
+  }
+
+  private synchronized void recordLatency(long currentLatencyNanos) {
+    frameRate.mark();
+    detectorLatency.record(currentLatencyNanos);
+    long now = System.nanoTime();
+    if (now - lastLogNanos >= TimeUnit.SECONDS.toNanos(1)) {
+      lastLogNanos = now;
+      Log.d(TAG, "Detector latency: " + detectorLatency);
+      Log.d(TAG, "Frames per second: " + frameRate);
+      Log.d(TAG, "Frame copies: " + metrics.getFrameCopies());
+      MemoryInfo mi = new MemoryInfo();
+      activityManager.getMemoryInfo(mi);
+      long availableMegs = mi.availMem / 0x100000L;
+      Log.d(TAG, "Memory available in system: " + availableMegs + " MB");
+    }
+  }
+
+  /**
+   * Updates the overlay with the given results, reusing the graphics retained from the previous
+   * results where possible. Must be called on the main thread.
+   */
+  private void showResults(
+      T results,
+      GraphicOverlay graphicOverlay,
+      @Nullable Bitmap cameraImage,
+      @Nullable RegionOfInterest.Crop crop,
+      long latencyMs,
+      @Nullable Integer framesPerSecond,
+      boolean resultsReused) {
+    long startNanos = System.nanoTime();
+    if (crop != null) {
+      graphicOverlay.setDetectionOffset(crop.offsetX, crop.offsetY);
+    } else {
+      graphicOverlay.setDetectionOffset(0, 0);
+    }
+    graphicOverlay.beginUpdate();
+    try {
+      if (cameraImage != null) {
+        graphicOverlay
+            .obtain(CameraImageGraphic.class, 0, CameraImageGraphic::new)
+            .setBitmap(cameraImage);
+      }
+      graphicOverlay
+          .obtain(InferenceInfoGraphic.class, 0, InferenceInfoGraphic::new)
+          .update(latencyMs, framesPerSecond, resultsReused);
+      VisionProcessorBase.this.onSuccess(results, graphicOverlay);
+    } finally {
+      graphicOverlay.endUpdate();
+    }
+    metrics.record(MetricsRegistry.OVERLAY_BUILD, System.nanoTime() - startNanos);
+  }
+
+  private void onDetectionFailure(Exception e, GraphicOverlay graphicOverlay) {
+    forgetLastResults();
+    graphicOverlay.clear();
+    graphicOverlay.postInvalidate();
+    String error = "Failed to process. Error: " + e.getLocalizedMessage();
+    Toast.makeText(
+            graphicOverlay.getContext(),
+            error + "\nCause: " + e.getCause(),
+            Toast.LENGTH_SHORT)
+        .show();
+    Log.d(TAG, error);
+    e.printStackTrace();
+    VisionProcessorBase.this.onFailure(e);
   }
 
   @Override
   public void stop() {
     executor.shutdown();
-    isShutdown = true;
-    numRuns = 0;
-    totalRunMs = 0;
-    fpsTimer.cancel();
+    synchronized (this) {
+      isShutdown = true;
+      lastResults = null;
+      if (framePipeline != null) {
+        framePipeline.shutdown();
+        framePipeline = null;
+      }
+      for (BatchRunner<T> runner : batchRunners) {
+        runner.cancel();
+      }
+      batchRunners.clear();
+    }
+    // Stage threads may still be finishing a frame, so buffers they release later are dropped too.
+    frameBuffers.close();
+    // The metrics are shared by every processor in the process, so they are dumped rather than
+    // reset. The dump covers the whole session, e.g. for `adb logcat -s VisionProcessorBase`.
+    Log.i(TAG, "Metrics: " + metrics.toJson());
   }
 
   protected abstract Task<T> detectInImage(InputImage image);
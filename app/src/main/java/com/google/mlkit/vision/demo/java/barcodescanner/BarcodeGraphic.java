@@ -7,10 +7,16 @@ import static java.lang.Math.min;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.barcode.Barcode;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+/**
+ * Draws a detected barcode. Instances are retained by the overlay across frames and updated in
+ * place.
+ */
 public class BarcodeGraphic extends Graphic {
 
   private static final int TEXT_COLOR = Color.BLACK;
@@ -18,49 +24,54 @@ public class BarcodeGraphic extends Graphic {
   private static final float TEXT_SIZE = 54.0f;
   private static final float STROKE_WIDTH = 4.0f;
 
-  private final Paint rectPaint;
-  private final Paint barcodePaint;
-  private final Barcode barcode;
-  private final Paint labelPaint;
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint rectPaint = new Paint();
+  private static final Paint barcodePaint = new Paint();
+  private static final Paint labelPaint = new Paint();
 
-  BarcodeGraphic(GraphicOverlay overlay, Barcode barcode) {
-    super(overlay);
-
-    this.barcode = barcode;
-
-    rectPaint = new Paint();
+  static {
     rectPaint.setColor(MARKER_COLOR);
     rectPaint.setStyle(Paint.Style.STROKE);
     rectPaint.setStrokeWidth(STROKE_WIDTH);
 
-    barcodePaint = new Paint();
     barcodePaint.setColor(TEXT_COLOR);
     barcodePaint.setTextSize(TEXT_SIZE);
 
-    labelPaint = new Paint();
     labelPaint.setColor(MARKER_COLOR);
     labelPaint.setStyle(Paint.Style.FILL);
   }
+
+  private final Rect boundingBox = new Rect();
+  private final RectF rect = new RectF();
+  private String rawValue = "";
+  private float textWidth;
+
+  BarcodeGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
+
+  /** Shows {@code barcode}, replacing the previously shown one. */
+  void update(Barcode barcode) {
+    boundingBox.set(barcode.getBoundingBox());
+    rawValue = barcode.getRawValue() != null ? barcode.getRawValue() : "";
+    textWidth = barcodePaint.measureText(rawValue);
+  }
+
   @Override
   public void draw(Canvas canvas) {
-    if (barcode == null) {
-      throw new IllegalStateException("Attempting to draw a null barcode.");
-    }
-
     // Draws the bounding box around the BarcodeBlock.
-    RectF rect = new RectF(barcode.getBoundingBox());
     // If the image is flipped, the left will be translated to right, and the right to left.
-    float x0 = translateX(rect.left);
-    float x1 = translateX(rect.right);
+    float x0 = translateX(boundingBox.left);
+    float x1 = translateX(boundingBox.right);
     rect.left = min(x0, x1);
     rect.right = max(x0, x1);
-    rect.top = translateY(rect.top);
-    rect.bottom = translateY(rect.bottom);
+    rect.top = translateY(boundingBox.top);
+    rect.bottom = translateY(boundingBox.bottom);
     canvas.drawRect(rect, rectPaint);
 
     // Draws other object info.
     float lineHeight = TEXT_SIZE + (2 * STROKE_WIDTH);
-    float textWidth = barcodePaint.measureText(barcode.getRawValue());
     canvas.drawRect(
         rect.left - STROKE_WIDTH,
         rect.top - lineHeight,
@@ -68,6 +79,16 @@ public class BarcodeGraphic extends Graphic {
         rect.top,
         labelPaint);
     // Renders the barcode at the bottom of the box.
-    canvas.drawText(barcode.getRawValue(), rect.left, rect.top - STROKE_WIDTH, barcodePaint);
+    canvas.drawText(rawValue, rect.left, rect.top - STROKE_WIDTH, barcodePaint);
+  }
+
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    BarcodeGraphic copy =
+        recycled != null ? (BarcodeGraphic) recycled : new BarcodeGraphic(getOverlay());
+    copy.boundingBox.set(boundingBox);
+    copy.rawValue = rawValue;
+    copy.textWidth = textWidth;
+    return copy;
   }
 }
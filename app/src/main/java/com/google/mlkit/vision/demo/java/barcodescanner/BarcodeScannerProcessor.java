@@ -4,30 +4,41 @@ package com.google.mlkit.vision.demo.java.barcodescanner;
 import android.content.Context;
 import android.graphics.Point;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.barcode.Barcode;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
+import com.google.mlkit.vision.demo.Diagnostics;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.RegionOfInterest;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import java.util.List;
 public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>> {
 
   private static final String TAG = "BarcodeProcessor";
+  // The default client takes no options, so it is cached under a fixed key.
+  private static final String DETECTOR_KEY = "BarcodeScanning.default";
 
   private final BarcodeScanner barcodeScanner;
 
   public BarcodeScannerProcessor(Context context) {
     super(context);
-    barcodeScanner = BarcodeScanning.getClient();
+    barcodeScanner =
+        DetectorRegistry.getInstance().acquire(DETECTOR_KEY, BarcodeScanning::getClient);
+    if (PreferenceUtils.isRegionOfInterestEnabled(context)) {
+      setRegionOfInterest(RegionOfInterest.CENTER_BAND);
+    }
   }
 
   @Override
   public void stop() {
     super.stop();
-    barcodeScanner.close();
+    DetectorRegistry.getInstance().release(barcodeScanner);
   }
 
   @Override
@@ -35,54 +46,85 @@ public class BarcodeScannerProcessor extends VisionProcessorBase<List<Barcode>>
     return barcodeScanner.process(image);
   }
 
+  @Override
+  protected BatchDetector<List<Barcode>> createBatchDetector() {
+    BarcodeScanner client = BarcodeScanning.getClient();
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(List<Barcode> barcodes, StringBuilder out) {
+    for (int i = 0; i < barcodes.size(); i++) {
+      if (i > 0) {
+        out.append("; ");
+      }
+      out.append(barcodes.get(i).getRawValue());
+    }
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<Barcode> barcodes, @NonNull GraphicOverlay graphicOverlay) {
     if (barcodes.isEmpty()) {
-      Log.v(MANUAL_TESTING_LOG, "No barcode has been detected");
+      Diagnostics.log(Log.VERBOSE, MANUAL_TESTING_LOG, "No barcode has been detected");
     }
     for (int i = 0; i < barcodes.size(); ++i) {
       Barcode barcode = barcodes.get(i);
-      graphicOverlay.add(new BarcodeGraphic(graphicOverlay, barcode));
+      // Barcodes are not tracked, so reuse graphics by position in the results.
+      graphicOverlay.obtain(BarcodeGraphic.class, i, BarcodeGraphic::new).update(barcode);
       logExtrasForTesting(barcode);
     }
   }
 
   private static void logExtrasForTesting(Barcode barcode) {
-    if (barcode != null) {
-      Log.v(
-          MANUAL_TESTING_LOG,
-          String.format(
-              "Detected barcode's bounding box: %s", barcode.getBoundingBox().flattenToString()));
-      Log.v(
-          MANUAL_TESTING_LOG,
-          String.format(
-              "Expected corner point size is 4, get %d", barcode.getCornerPoints().length));
-      for (Point point : barcode.getCornerPoints()) {
-        Log.v(
-            MANUAL_TESTING_LOG,
-            String.format("Corner point is located at: x = %d, y = %d", point.x, point.y));
-      }
-      Log.v(MANUAL_TESTING_LOG, "barcode display value: " + barcode.getDisplayValue());
-      Log.v(MANUAL_TESTING_LOG, "barcode raw value: " + barcode.getRawValue());
-      Barcode.DriverLicense dl = barcode.getDriverLicense();
-      if (dl != null) {
-        Log.v(MANUAL_TESTING_LOG, "driver license city: " + dl.getAddressCity());
-        Log.v(MANUAL_TESTING_LOG, "driver license state: " + dl.getAddressState());
-        Log.v(MANUAL_TESTING_LOG, "driver license street: " + dl.getAddressStreet());
-        Log.v(MANUAL_TESTING_LOG, "driver license zip code: " + dl.getAddressZip());
-        Log.v(MANUAL_TESTING_LOG, "driver license birthday: " + dl.getBirthDate());
-        Log.v(MANUAL_TESTING_LOG, "driver license document type: " + dl.getDocumentType());
-        Log.v(MANUAL_TESTING_LOG, "driver license expiry date: " + dl.getExpiryDate());
-        Log.v(MANUAL_TESTING_LOG, "driver license first name: " + dl.getFirstName());
-        Log.v(MANUAL_TESTING_LOG, "driver license middle name: " + dl.getMiddleName());
-        Log.v(MANUAL_TESTING_LOG, "driver license last name: " + dl.getLastName());
-        Log.v(MANUAL_TESTING_LOG, "driver license gender: " + dl.getGender());
-        Log.v(MANUAL_TESTING_LOG, "driver license issue date: " + dl.getIssueDate());
-        Log.v(MANUAL_TESTING_LOG, "driver license issue country: " + dl.getIssuingCountry());
-        Log.v(MANUAL_TESTING_LOG, "driver license number: " + dl.getLicenseNumber());
+    if (barcode == null) {
+      return;
+    }
+    Diagnostics.Event event =
+        Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected barcode's bounding box: ");
+    if (event != null) {
+      event.append(barcode.getBoundingBox()).commit();
+    }
+    Point[] cornerPoints = barcode.getCornerPoints();
+    event =
+        Diagnostics.obtain(
+            Log.VERBOSE, MANUAL_TESTING_LOG, "Expected corner point size is 4, get ");
+    if (event != null) {
+      event.append(cornerPoints.length).commit();
+    }
+    for (Point point : cornerPoints) {
+      event =
+          Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Corner point is located at: x = ");
+      if (event != null) {
+        event.append(point.x).append(", y = ").append(point.y).commit();
       }
     }
+    logValue("barcode display value: ", barcode.getDisplayValue());
+    logValue("barcode raw value: ", barcode.getRawValue());
+    Barcode.DriverLicense dl = barcode.getDriverLicense();
+    if (dl != null) {
+      logValue("driver license city: ", dl.getAddressCity());
+      logValue("driver license state: ", dl.getAddressState());
+      logValue("driver license street: ", dl.getAddressStreet());
+      logValue("driver license zip code: ", dl.getAddressZip());
+      logValue("driver license birthday: ", dl.getBirthDate());
+      logValue("driver license document type: ", dl.getDocumentType());
+      logValue("driver license expiry date: ", dl.getExpiryDate());
+      logValue("driver license first name: ", dl.getFirstName());
+      logValue("driver license middle name: ", dl.getMiddleName());
+      logValue("driver license last name: ", dl.getLastName());
+      logValue("driver license gender: ", dl.getGender());
+      logValue("driver license issue date: ", dl.getIssueDate());
+      logValue("driver license issue country: ", dl.getIssuingCountry());
+      logValue("driver license number: ", dl.getLicenseNumber());
+    }
+  }
+
+  private static void logValue(String message, @Nullable Object value) {
+    Diagnostics.Event event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, message);
+    if (event != null) {
+      event.append(value).commit();
+    }
   }
 
   @Override
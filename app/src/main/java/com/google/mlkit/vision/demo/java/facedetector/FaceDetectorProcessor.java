@@ -2,11 +2,13 @@
 package com.google.mlkit.vision.demo.java.facedetector;
 
 import android.content.Context;
-import android.graphics.PointF;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
+import com.google.mlkit.vision.demo.Diagnostics;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.face.Face;
@@ -15,11 +17,37 @@ import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.face.FaceLandmark;
 import java.util.List;
-import java.util.Locale;
 public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
 
   private static final String TAG = "FaceDetectorProcessor";
 
+  // Landmarks logged for testing, with their names.
+  private static final int[] LANDMARK_TYPES = {
+    FaceLandmark.MOUTH_BOTTOM,
+    FaceLandmark.MOUTH_RIGHT,
+    FaceLandmark.MOUTH_LEFT,
+    FaceLandmark.RIGHT_EYE,
+    FaceLandmark.LEFT_EYE,
+    FaceLandmark.RIGHT_EAR,
+    FaceLandmark.LEFT_EAR,
+    FaceLandmark.RIGHT_CHEEK,
+    FaceLandmark.LEFT_CHEEK,
+    FaceLandmark.NOSE_BASE
+  };
+  private static final String[] LANDMARK_NAMES = {
+    "MOUTH_BOTTOM",
+    "MOUTH_RIGHT",
+    "MOUTH_LEFT",
+    "RIGHT_EYE",
+    "LEFT_EYE",
+    "RIGHT_EAR",
+    "LEFT_EAR",
+    "RIGHT_CHEEK",
+    "LEFT_CHEEK",
+    "NOSE_BASE"
+  };
+
+  private final FaceDetectorOptions options;
   private final FaceDetector detector;
 
   public FaceDetectorProcessor(Context context) {
@@ -33,14 +61,20 @@ public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
 
   public FaceDetectorProcessor(Context context, FaceDetectorOptions options) {
     super(context);
-    Log.v(MANUAL_TESTING_LOG, "Face detector options: " + options);
-    detector = FaceDetection.getClient(options);
+    this.options = options;
+    Diagnostics.Event event =
+        Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Face detector options: ");
+    if (event != null) {
+      event.append(options).commit();
+    }
+    detector =
+        DetectorRegistry.getInstance().acquire(options, () -> FaceDetection.getClient(options));
   }
 
   @Override
   public void stop() {
     super.stop();
-    detector.close();
+    DetectorRegistry.getInstance().release(detector);
   }
 
   @Override
@@ -48,74 +82,85 @@ public class FaceDetectorProcessor extends VisionProcessorBase<List<Face>> {
     return detector.process(image);
   }
 
+  @Override
+  protected BatchDetector<List<Face>> createBatchDetector() {
+    FaceDetector client = FaceDetection.getClient(options);
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(List<Face> faces, StringBuilder out) {
+    for (int i = 0; i < faces.size(); i++) {
+      if (i > 0) {
+        out.append("; ");
+      }
+      out.append(faces.get(i).getBoundingBox().toShortString());
+    }
+  }
+
   @Override
   protected void onSuccess(@NonNull List<Face> faces, @NonNull GraphicOverlay graphicOverlay) {
-    for (Face face : faces) {
-      graphicOverlay.add(new FaceGraphic(graphicOverlay, face));
+    for (int i = 0; i < faces.size(); i++) {
+      Face face = faces.get(i);
+      // Faces are only tracked when tracking is enabled; otherwise tell them apart by position.
+      long id = face.getTrackingId() != null ? face.getTrackingId() : -1 - i;
+      graphicOverlay.obtain(FaceGraphic.class, id, FaceGraphic::new).update(face);
       logExtrasForTesting(face);
     }
   }
 
   private static void logExtrasForTesting(Face face) {
-    if (face != null) {
-      Log.v(MANUAL_TESTING_LOG, "face bounding box: " + face.getBoundingBox().flattenToString());
-      Log.v(MANUAL_TESTING_LOG, "face Euler Angle X: " + face.getHeadEulerAngleX());
-      Log.v(MANUAL_TESTING_LOG, "face Euler Angle Y: " + face.getHeadEulerAngleY());
-      Log.v(MANUAL_TESTING_LOG, "face Euler Angle Z: " + face.getHeadEulerAngleZ());
-
-      // All landmarks
-      int[] landMarkTypes =
-          new int[] {
-            FaceLandmark.MOUTH_BOTTOM,
-            FaceLandmark.MOUTH_RIGHT,
-            FaceLandmark.MOUTH_LEFT,
-            FaceLandmark.RIGHT_EYE,
-            FaceLandmark.LEFT_EYE,
-            FaceLandmark.RIGHT_EAR,
-            FaceLandmark.LEFT_EAR,
-            FaceLandmark.RIGHT_CHEEK,
-            FaceLandmark.LEFT_CHEEK,
-            FaceLandmark.NOSE_BASE
-          };
-      String[] landMarkTypesStrings =
-          new String[] {
-            "MOUTH_BOTTOM",
-            "MOUTH_RIGHT",
-            "MOUTH_LEFT",
-            "RIGHT_EYE",
-            "LEFT_EYE",
-            "RIGHT_EAR",
-            "LEFT_EAR",
-            "RIGHT_CHEEK",
-            "LEFT_CHEEK",
-            "NOSE_BASE"
-          };
-      for (int i = 0; i < landMarkTypes.length; i++) {
-        FaceLandmark landmark = face.getLandmark(landMarkTypes[i]);
-        if (landmark == null) {
-          Log.v(
-              MANUAL_TESTING_LOG,
-              "No landmark of type: " + landMarkTypesStrings[i] + " has been detected");
-        } else {
-          PointF landmarkPosition = landmark.getPosition();
-          String landmarkPositionStr =
-              String.format(Locale.US, "x: %f , y: %f", landmarkPosition.x, landmarkPosition.y);
-          Log.v(
-              MANUAL_TESTING_LOG,
-              "Position for face landmark: "
-                  + landMarkTypesStrings[i]
-                  + " is :"
-                  + landmarkPositionStr);
+    if (face == null) {
+      return;
+    }
+    Diagnostics.Event event =
+        Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "face bounding box: ");
+    if (event != null) {
+      event.append(face.getBoundingBox()).commit();
+    }
+    logFloat("face Euler Angle X: ", face.getHeadEulerAngleX());
+    logFloat("face Euler Angle Y: ", face.getHeadEulerAngleY());
+    logFloat("face Euler Angle Z: ", face.getHeadEulerAngleZ());
+
+    // All landmarks
+    for (int i = 0; i < LANDMARK_TYPES.length; i++) {
+      FaceLandmark landmark = face.getLandmark(LANDMARK_TYPES[i]);
+      if (landmark == null) {
+        event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "No landmark of type: ");
+        if (event != null) {
+          event.append(LANDMARK_NAMES[i]).append(" has been detected").commit();
+        }
+      } else {
+        event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Position for face landmark: ");
+        if (event != null) {
+          // Six digits, as String.format("%f") gave.
+          event
+              .append(LANDMARK_NAMES[i])
+              .append(" is :x: ")
+              .append(landmark.getPosition().x, 6)
+              .append(" , y: ")
+              .append(landmark.getPosition().y, 6)
+              .commit();
         }
       }
-      Log.v(
-          MANUAL_TESTING_LOG,
-          "face left eye open probability: " + face.getLeftEyeOpenProbability());
-      Log.v(
-          MANUAL_TESTING_LOG,
-          "face right eye open probability: " + face.getRightEyeOpenProbability());
-      Log.v(MANUAL_TESTING_LOG, "face smiling probability: " + face.getSmilingProbability());
-      Log.v(MANUAL_TESTING_LOG, "face tracking id: " + face.getTrackingId());
+    }
+    logValue("face left eye open probability: ", face.getLeftEyeOpenProbability());
+    logValue("face right eye open probability: ", face.getRightEyeOpenProbability());
+    logValue("face smiling probability: ", face.getSmilingProbability());
+    logValue("face tracking id: ", face.getTrackingId());
+  }
+
+  private static void logFloat(String message, float value) {
+    Diagnostics.Event event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, message);
+    if (event != null) {
+      event.append(value).commit();
+    }
+  }
+
+  private static void logValue(String message, @Nullable Object value) {
+    Diagnostics.Event event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, message);
+    if (event != null) {
+      event.append(value).commit();
     }
   }
 
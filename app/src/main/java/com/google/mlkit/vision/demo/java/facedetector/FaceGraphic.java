@@ -4,13 +4,22 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.TextLayoutCache;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceContour;
 import com.google.mlkit.vision.face.FaceLandmark;
 import com.google.mlkit.vision.face.FaceLandmark.LandmarkType;
-import java.util.Locale;
+import java.util.List;
+
+/**
+ * Draws a detected face. Instances are retained by the overlay across frames and updated in place,
+ * so everything {@link #draw} needs is computed in {@link #update}.
+ */
 public class FaceGraphic extends Graphic {
   private static final float FACE_POSITION_RADIUS = 8.0f;
   private static final float ID_TEXT_SIZE = 30.0f;
@@ -32,27 +41,20 @@ public class FaceGraphic extends Graphic {
         {Color.BLACK, Color.GREEN}
       };
 
-  private final Paint facePositionPaint;
-  private final Paint[] idPaints;
-  private final Paint[] boxPaints;
-  private final Paint[] labelPaints;
-
-  private volatile Face face;
-
-  FaceGraphic(GraphicOverlay overlay, Face face) {
-    super(overlay);
+  private static final String LEFT_EYE_TEXT = "Left Eye";
+  private static final String RIGHT_EYE_TEXT = "Right Eye";
 
-    this.face = face;
-    final int selectedColor = Color.WHITE;
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint facePositionPaint = new Paint();
+  private static final Paint[] idPaints = new Paint[NUM_COLORS];
+  private static final Paint[] boxPaints = new Paint[NUM_COLORS];
+  private static final Paint[] labelPaints = new Paint[NUM_COLORS];
 
-    facePositionPaint = new Paint();
-    facePositionPaint.setColor(selectedColor);
+  static {
+    facePositionPaint.setColor(Color.WHITE);
 
-    int numColors = COLORS.length;
-    idPaints = new Paint[numColors];
-    boxPaints = new Paint[numColors];
-    labelPaints = new Paint[numColors];
-    for (int i = 0; i < numColors; i++) {
+    for (int i = 0; i < NUM_COLORS; i++) {
       idPaints[i] = new Paint();
       idPaints[i].setColor(COLORS[i][0] /* text color */);
       idPaints[i].setTextSize(ID_TEXT_SIZE);
@@ -67,149 +69,204 @@ public class FaceGraphic extends Graphic {
       labelPaints[i].setStyle(Paint.Style.FILL);
     }
   }
-  @Override
-  public void draw(Canvas canvas) {
-    Face face = this.face;
-    if (face == null) {
-      return;
+
+  private final Rect boundingBox = new Rect();
+  // Contour points as x, y pairs in image coordinates.
+  private float[] contourPoints = new float[0];
+  private int contourPointCount;
+  // Scratch space for the contour points mapped to view coordinates.
+  private float[] mappedContourPoints = new float[0];
+  @Nullable private PointF leftEye;
+  @Nullable private PointF rightEye;
+  @Nullable private PointF leftCheek;
+  @Nullable private PointF rightCheek;
+  // Label lines, reused across updates and left empty when the value is not available.
+  private final StringBuilder idText = new StringBuilder();
+  private final StringBuilder smilingText = new StringBuilder();
+  private final StringBuilder leftEyeOpenText = new StringBuilder();
+  private final StringBuilder rightEyeOpenText = new StringBuilder();
+  private final StringBuilder[] labelLines = {
+    idText, smilingText, leftEyeOpenText, rightEyeOpenText
+  };
+  private int colorID;
+  private int labelLineCount;
+  private float textWidth;
+
+  FaceGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
+
+  /** Shows {@code face}, replacing the previously shown one. */
+  void update(Face face) {
+    boundingBox.set(face.getBoundingBox());
+    colorID = (face.getTrackingId() == null) ? 0 : Math.abs(face.getTrackingId() % NUM_COLORS);
+    Paint idPaint = idPaints[colorID];
+
+    idText.setLength(0);
+    if (face.getTrackingId() != null) {
+      idText.append("ID: ").append(face.getTrackingId().intValue());
     }
+    setProbabilityText(smilingText, "Smiling: ", face.getSmilingProbability());
+    setProbabilityText(leftEyeOpenText, "Left eye open: ", face.getLeftEyeOpenProbability());
+    setProbabilityText(rightEyeOpenText, "Right eye open: ", face.getRightEyeOpenProbability());
 
-    float x = translateX(face.getBoundingBox().centerX());
-    float y = translateY(face.getBoundingBox().centerY());
-    canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
+    labelLineCount = 0;
+    textWidth = 0;
+    if (idText.length() > 0) {
+      labelLineCount++;
+      textWidth = TextLayoutCache.getInstance().measureText(idPaint, idText);
+    }
+    // Probabilities rarely repeat, so they are measured directly rather than cached.
+    for (int i = 1; i < labelLines.length; i++) {
+      StringBuilder text = labelLines[i];
+      if (text.length() > 0) {
+        labelLineCount++;
+        textWidth = Math.max(textWidth, idPaint.measureText(text, 0, text.length()));
+      }
+    }
 
-    float left = x - scale(face.getBoundingBox().width() / 2.0f);
-    float top = y - scale(face.getBoundingBox().height() / 2.0f);
-    float right = x + scale(face.getBoundingBox().width() / 2.0f);
-    float bottom = y + scale(face.getBoundingBox().height() / 2.0f);
-    float lineHeight = ID_TEXT_SIZE + BOX_STROKE_WIDTH;
-    float yLabelOffset = (face.getTrackingId() == null) ? 0 : -lineHeight;
-    int colorID = (face.getTrackingId() == null) ? 0 : Math.abs(face.getTrackingId() % NUM_COLORS);
-
-    float textWidth = idPaints[colorID].measureText("ID: " + face.getTrackingId());
-    if (face.getSmilingProbability() != null) {
-      yLabelOffset -= lineHeight;
-      textWidth =
-          Math.max(
-              textWidth,
-              idPaints[colorID].measureText(
-                  String.format(Locale.US, "Happiness: %.2f", face.getSmilingProbability())));
+    int pointCount = 0;
+    List<FaceContour> contours = face.getAllContours();
+    for (FaceContour contour : contours) {
+      pointCount += contour.getPoints().size();
+    }
+    if (contourPoints.length < pointCount * 2) {
+      contourPoints = new float[pointCount * 2];
+      mappedContourPoints = new float[pointCount * 2];
     }
-    if (face.getLeftEyeOpenProbability() != null) {
-      yLabelOffset -= lineHeight;
-      textWidth =
-          Math.max(
-              textWidth,
-              idPaints[colorID].measureText(
-                  String.format(
-                      Locale.US, "Left eye open: %.2f", face.getLeftEyeOpenProbability())));
+    int index = 0;
+    for (FaceContour contour : contours) {
+      for (PointF point : contour.getPoints()) {
+        contourPoints[index++] = point.x;
+        contourPoints[index++] = point.y;
+      }
     }
-    if (face.getRightEyeOpenProbability() != null) {
-      yLabelOffset -= lineHeight;
-      textWidth =
-          Math.max(
-              textWidth,
-              idPaints[colorID].measureText(
-                  String.format(
-                      Locale.US, "Right eye open: %.2f", face.getRightEyeOpenProbability())));
+    contourPointCount = pointCount;
+
+    leftEye = getLandmarkPosition(face, FaceLandmark.LEFT_EYE);
+    rightEye = getLandmarkPosition(face, FaceLandmark.RIGHT_EYE);
+    leftCheek = getLandmarkPosition(face, FaceLandmark.LEFT_CHEEK);
+    rightCheek = getLandmarkPosition(face, FaceLandmark.RIGHT_CHEEK);
+  }
+
+  private static void setProbabilityText(
+      StringBuilder text, String prefix, @Nullable Float probability) {
+    text.setLength(0);
+    if (probability != null) {
+      FixedPointFormat.append(text.append(prefix), probability, 2);
     }
+  }
+
+  @Nullable
+  private static PointF getLandmarkPosition(Face face, @LandmarkType int landmarkType) {
+    FaceLandmark landmark = face.getLandmark(landmarkType);
+    return landmark == null ? null : landmark.getPosition();
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    float x = translateX(boundingBox.centerX());
+    float y = translateY(boundingBox.centerY());
+    canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
+
+    float left = x - scale(boundingBox.width() / 2.0f);
+    float top = y - scale(boundingBox.height() / 2.0f);
+    float right = x + scale(boundingBox.width() / 2.0f);
+    float bottom = y + scale(boundingBox.height() / 2.0f);
+    float lineHeight = ID_TEXT_SIZE + BOX_STROKE_WIDTH;
+    float labelTop = top - lineHeight * labelLineCount;
 
     // Draw labels
     canvas.drawRect(
         left - BOX_STROKE_WIDTH,
-        top + yLabelOffset,
+        labelTop,
         left + textWidth + (2 * BOX_STROKE_WIDTH),
         top,
         labelPaints[colorID]);
-    yLabelOffset += ID_TEXT_SIZE;
+    float labelY = labelTop + ID_TEXT_SIZE;
     canvas.drawRect(left, top, right, bottom, boxPaints[colorID]);
-    if (face.getTrackingId() != null) {
-      canvas.drawText("ID: " + face.getTrackingId(), left, top + yLabelOffset, idPaints[colorID]);
-      yLabelOffset += lineHeight;
-    }
+    labelY = drawLabelLine(canvas, idText, left, labelY, lineHeight);
 
     // Draws all face contours.
-    for (FaceContour contour : face.getAllContours()) {
-      for (PointF point : contour.getPoints()) {
-        canvas.drawCircle(
-            translateX(point.x), translateY(point.y), FACE_POSITION_RADIUS, facePositionPaint);
-      }
+    getTransform().mapPoints(contourPoints, 0, mappedContourPoints, 0, contourPointCount);
+    for (int i = 0; i < contourPointCount * 2; i += 2) {
+      canvas.drawCircle(
+          mappedContourPoints[i],
+          mappedContourPoints[i + 1],
+          FACE_POSITION_RADIUS,
+          facePositionPaint);
     }
 
     // Draws smiling and left/right eye open probabilities.
-    if (face.getSmilingProbability() != null) {
-      canvas.drawText(
-          "Smiling: " + String.format(Locale.US, "%.2f", face.getSmilingProbability()),
-          left,
-          top + yLabelOffset,
-          idPaints[colorID]);
-      yLabelOffset += lineHeight;
-    }
+    labelY = drawLabelLine(canvas, smilingText, left, labelY, lineHeight);
+    labelY = drawLabelLine(canvas, leftEyeOpenText, left, labelY, lineHeight);
+    drawEyeLabel(canvas, leftEye, LEFT_EYE_TEXT);
+    drawLabelLine(canvas, rightEyeOpenText, left, labelY, lineHeight);
+    drawEyeLabel(canvas, rightEye, RIGHT_EYE_TEXT);
 
-    FaceLandmark leftEye = face.getLandmark(FaceLandmark.LEFT_EYE);
-    if (face.getLeftEyeOpenProbability() != null) {
-      canvas.drawText(
-          "Left eye open: " + String.format(Locale.US, "%.2f", face.getLeftEyeOpenProbability()),
-          left,
-          top + yLabelOffset,
-          idPaints[colorID]);
-      yLabelOffset += lineHeight;
+    // Draw facial landmarks
+    drawFaceLandmark(canvas, leftEye);
+    drawFaceLandmark(canvas, rightEye);
+    drawFaceLandmark(canvas, leftCheek);
+    drawFaceLandmark(canvas, rightCheek);
+  }
+
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    FaceGraphic copy = recycled != null ? (FaceGraphic) recycled : new FaceGraphic(getOverlay());
+    copy.boundingBox.set(boundingBox);
+    if (copy.contourPoints.length < contourPointCount * 2) {
+      copy.contourPoints = new float[contourPoints.length];
+      copy.mappedContourPoints = new float[contourPoints.length];
     }
-    if (leftEye != null) {
-      float leftEyeLeft =
-          translateX(leftEye.getPosition().x) - idPaints[colorID].measureText("Left Eye") / 2.0f;
-      canvas.drawRect(
-          leftEyeLeft - BOX_STROKE_WIDTH,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
-          leftEyeLeft + idPaints[colorID].measureText("Left Eye") + BOX_STROKE_WIDTH,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
-          labelPaints[colorID]);
-      canvas.drawText(
-          "Left Eye",
-          leftEyeLeft,
-          translateY(leftEye.getPosition().y) + ID_Y_OFFSET,
-          idPaints[colorID]);
+    System.arraycopy(contourPoints, 0, copy.contourPoints, 0, contourPointCount * 2);
+    copy.contourPointCount = contourPointCount;
+    // Landmark positions are never changed by ML Kit, so they can be shared.
+    copy.leftEye = leftEye;
+    copy.rightEye = rightEye;
+    copy.leftCheek = leftCheek;
+    copy.rightCheek = rightCheek;
+    for (int i = 0; i < labelLines.length; i++) {
+      copy.labelLines[i].setLength(0);
+      copy.labelLines[i].append(labelLines[i]);
     }
+    copy.colorID = colorID;
+    copy.labelLineCount = labelLineCount;
+    copy.textWidth = textWidth;
+    return copy;
+  }
 
-    FaceLandmark rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE);
-    if (face.getRightEyeOpenProbability() != null) {
-      canvas.drawText(
-          "Right eye open: " + String.format(Locale.US, "%.2f", face.getRightEyeOpenProbability()),
-          left,
-          top + yLabelOffset,
-          idPaints[colorID]);
-    }
-    if (rightEye != null) {
-      float rightEyeLeft =
-          translateX(rightEye.getPosition().x) - idPaints[colorID].measureText("Right Eye") / 2.0f;
-      canvas.drawRect(
-          rightEyeLeft - BOX_STROKE_WIDTH,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET - ID_TEXT_SIZE,
-          rightEyeLeft + idPaints[colorID].measureText("Right Eye") + BOX_STROKE_WIDTH,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET + BOX_STROKE_WIDTH,
-          labelPaints[colorID]);
-      canvas.drawText(
-          "Right Eye",
-          rightEyeLeft,
-          translateY(rightEye.getPosition().y) + ID_Y_OFFSET,
-          idPaints[colorID]);
+  /** Draws one line of the label box if {@code text} is set, returning the y of the next line. */
+  private float drawLabelLine(
+      Canvas canvas, StringBuilder text, float x, float y, float lineHeight) {
+    if (text.length() == 0) {
+      return y;
     }
+    canvas.drawText(text, 0, text.length(), x, y, idPaints[colorID]);
+    return y + lineHeight;
+  }
 
-    // Draw facial landmarks
-    drawFaceLandmark(canvas, FaceLandmark.LEFT_EYE);
-    drawFaceLandmark(canvas, FaceLandmark.RIGHT_EYE);
-    drawFaceLandmark(canvas, FaceLandmark.LEFT_CHEEK);
-    drawFaceLandmark(canvas, FaceLandmark.RIGHT_CHEEK);
+  private void drawEyeLabel(Canvas canvas, @Nullable PointF eye, String text) {
+    if (eye == null) {
+      return;
+    }
+    Paint idPaint = idPaints[colorID];
+    float eyeTextWidth = TextLayoutCache.getInstance().measureText(idPaint, text);
+    float eyeLeft = translateX(eye.x) - eyeTextWidth / 2.0f;
+    float eyeY = translateY(eye.y);
+    canvas.drawRect(
+        eyeLeft - BOX_STROKE_WIDTH,
+        eyeY + ID_Y_OFFSET - ID_TEXT_SIZE,
+        eyeLeft + eyeTextWidth + BOX_STROKE_WIDTH,
+        eyeY + ID_Y_OFFSET + BOX_STROKE_WIDTH,
+        labelPaints[colorID]);
+    canvas.drawText(text, eyeLeft, eyeY + ID_Y_OFFSET, idPaint);
   }
 
-  private void drawFaceLandmark(Canvas canvas, @LandmarkType int landmarkType) {
-    FaceLandmark faceLandmark = face.getLandmark(landmarkType);
-    if (faceLandmark != null) {
+  private void drawFaceLandmark(Canvas canvas, @Nullable PointF position) {
+    if (position != null) {
       canvas.drawCircle(
-          translateX(faceLandmark.getPosition().x),
-          translateY(faceLandmark.getPosition().y),
-          FACE_POSITION_RADIUS,
-          facePositionPaint);
+          translateX(position.x), translateY(position.y), FACE_POSITION_RADIUS, facePositionPaint);
     }
   }
 }
@@ -5,34 +5,34 @@ import androidx.annotation.NonNull;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.label.ImageLabel;
 import com.google.mlkit.vision.label.ImageLabeler;
 import com.google.mlkit.vision.label.ImageLabelerOptionsBase;
 import com.google.mlkit.vision.label.ImageLabeling;
-import java.io.IOException;
 import java.util.List;
 
 public class LabelDetectorProcessor extends VisionProcessorBase<List<ImageLabel>> {
 
   private static final String TAG = "LabelDetectorProcessor";
 
+  private final ImageLabelerOptionsBase options;
   private final ImageLabeler imageLabeler;
 
   public LabelDetectorProcessor(Context context, ImageLabelerOptionsBase options) {
     super(context);
-    imageLabeler = ImageLabeling.getClient(options);
+    this.options = options;
+    imageLabeler =
+        DetectorRegistry.getInstance().acquire(options, () -> ImageLabeling.getClient(options));
   }
 
   @Override
   public void stop() {
     super.stop();
-    try {
-      imageLabeler.close();
-    } catch (IOException e) {
-      Log.e(TAG, "Exception thrown while trying to close ImageLabelerClient: " + e);
-    }
+    DetectorRegistry.getInstance().release(imageLabeler);
   }
 
   @Override
@@ -40,10 +40,27 @@ public class LabelDetectorProcessor extends VisionProcessorBase<List<ImageLabel>
     return imageLabeler.process(image);
   }
 
+  @Override
+  protected BatchDetector<List<ImageLabel>> createBatchDetector() {
+    ImageLabeler client = ImageLabeling.getClient(options);
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(List<ImageLabel> labels, StringBuilder out) {
+    for (int i = 0; i < labels.size(); i++) {
+      ImageLabel label = labels.get(i);
+      if (i > 0) {
+        out.append("; ");
+      }
+      FixedPointFormat.append(out.append(label.getText()).append(':'), label.getConfidence(), 2);
+    }
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<ImageLabel> labels, @NonNull GraphicOverlay graphicOverlay) {
-    graphicOverlay.add(new LabelGraphic(graphicOverlay, labels));
+    graphicOverlay.obtain(LabelGraphic.class, 0, LabelGraphic::new).update(labels);
     logExtrasForTesting(labels);
   }
 
@@ -3,70 +3,115 @@ package com.google.mlkit.vision.demo.java.labeldetector;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import com.google.common.primitives.Floats;
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.TextLayoutCache;
 import com.google.mlkit.vision.label.ImageLabel;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+/**
+ * Draws the image labels in the center of the overlay. The instance is retained by the overlay
+ * across frames and updated in place, so the label lines are formatted in {@link #update}.
+ */
 public class LabelGraphic extends GraphicOverlay.Graphic {
 
   private static final float TEXT_SIZE = 70.0f;
-  private static final String LABEL_FORMAT = "%.2f%% confidence (index: %d)";
 
-  private final Paint textPaint;
-  private final Paint labelPaint;
-  private final GraphicOverlay overlay;
-
-  private final List<ImageLabel> labels;
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint textPaint = new Paint();
+  private static final Paint labelPaint = new Paint();
 
-  public LabelGraphic(GraphicOverlay overlay, List<ImageLabel> labels) {
-    super(overlay);
-    this.overlay = overlay;
-    this.labels = labels;
-    textPaint = new Paint();
+  static {
     textPaint.setColor(Color.WHITE);
     textPaint.setTextSize(TEXT_SIZE);
 
-    labelPaint = new Paint();
     labelPaint.setColor(Color.BLACK);
     labelPaint.setStyle(Paint.Style.FILL);
     labelPaint.setAlpha(200);
   }
 
-  @Override
-  public synchronized void draw(Canvas canvas) {
-    // First try to find maxWidth and totalHeight in order to draw to the center of the screen.
-    float maxWidth = 0;
-    float totalHeight = labels.size() * 2 * TEXT_SIZE;
-    for (ImageLabel label : labels) {
-      float line1Width = textPaint.measureText(label.getText());
-      float line2Width =
-          textPaint.measureText(
-              String.format(
-                  Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex()));
-      maxWidth = Floats.max(maxWidth, line1Width, line2Width);
+  private final GraphicOverlay overlay;
+  // Alternating label text and confidence lines.
+  private final List<CharSequence> lines = new ArrayList<>();
+  // Reused for the confidence lines, which change every frame.
+  private final List<StringBuilder> confidenceLines = new ArrayList<>();
+  private float maxWidth;
+
+  public LabelGraphic(GraphicOverlay overlay) {
+    super(overlay);
+    this.overlay = overlay;
+  }
+
+  /** Shows {@code labels}, replacing the previously shown ones. */
+  public void update(List<ImageLabel> labels) {
+    lines.clear();
+    maxWidth = 0;
+    TextLayoutCache textLayoutCache = TextLayoutCache.getInstance();
+    for (int i = 0; i < labels.size(); i++) {
+      ImageLabel label = labels.get(i);
+      if (confidenceLines.size() <= i) {
+        confidenceLines.add(new StringBuilder());
+      }
+      StringBuilder confidence = confidenceLines.get(i);
+      confidence.setLength(0);
+      FixedPointFormat.append(confidence, label.getConfidence() * 100, 2)
+          .append("% confidence (index: ")
+          .append(label.getIndex())
+          .append(')');
+      lines.add(label.getText());
+      lines.add(confidence);
+      maxWidth = Math.max(maxWidth, textLayoutCache.measureText(textPaint, label.getText()));
+      // Confidences rarely repeat, so they are measured directly rather than cached.
+      maxWidth = Math.max(maxWidth, textPaint.measureText(confidence, 0, confidence.length()));
     }
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    // Draw to the center of the screen.
+    float totalHeight = lines.size() * TEXT_SIZE;
     float x = Math.max(0, overlay.getWidth() / 2.0f - maxWidth / 2.0f);
     float y = Math.max(200, overlay.getHeight() / 2.0f - totalHeight / 2.0f);
 
-    if (!labels.isEmpty()) {
+    if (!lines.isEmpty()) {
       float padding = 20;
       canvas.drawRect(
           x - padding, y - padding, x + maxWidth + padding, y + totalHeight + padding, labelPaint);
     }
 
-    for (ImageLabel label : labels) {
+    for (int i = 0; i + 1 < lines.size(); i += 2) {
       if (y + TEXT_SIZE * 2 > overlay.getHeight()) {
         break;
       }
-      canvas.drawText(label.getText(), x, y + TEXT_SIZE, textPaint);
+      CharSequence label = lines.get(i);
+      canvas.drawText(label, 0, label.length(), x, y + TEXT_SIZE, textPaint);
       y += TEXT_SIZE;
-      canvas.drawText(
-          String.format(Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex()),
-          x,
-          y + TEXT_SIZE,
-          textPaint);
+      CharSequence confidence = lines.get(i + 1);
+      canvas.drawText(confidence, 0, confidence.length(), x, y + TEXT_SIZE, textPaint);
       y += TEXT_SIZE;
     }
   }
+
+  @Override
+  protected GraphicOverlay.Graphic copyForScene(@Nullable GraphicOverlay.Graphic recycled) {
+    LabelGraphic copy = recycled != null ? (LabelGraphic) recycled : new LabelGraphic(overlay);
+    copy.lines.clear();
+    for (int i = 0; i + 1 < lines.size(); i += 2) {
+      copy.lines.add(lines.get(i));
+      copy.lines.add(copy.copyConfidenceLine(i / 2, lines.get(i + 1)));
+    }
+    copy.maxWidth = maxWidth;
+    return copy;
+  }
+
+  private StringBuilder copyConfidenceLine(int index, CharSequence confidence) {
+    if (confidenceLines.size() <= index) {
+      confidenceLines.add(new StringBuilder());
+    }
+    StringBuilder line = confidenceLines.get(index);
+    line.setLength(0);
+    return line.append(confidence);
+  }
 }
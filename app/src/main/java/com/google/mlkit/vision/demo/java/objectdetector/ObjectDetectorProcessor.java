@@ -6,33 +6,32 @@ import androidx.annotation.NonNull;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.ObjectDetection;
 import com.google.mlkit.vision.objects.ObjectDetector;
 import com.google.mlkit.vision.objects.ObjectDetectorOptionsBase;
-import java.io.IOException;
 import java.util.List;
 public class ObjectDetectorProcessor extends VisionProcessorBase<List<DetectedObject>> {
 
   private static final String TAG = "ObjectDetectorProcessor";
 
+  private final ObjectDetectorOptionsBase options;
   private final ObjectDetector detector;
 
   public ObjectDetectorProcessor(Context context, ObjectDetectorOptionsBase options) {
     super(context);
-    detector = ObjectDetection.getClient(options);
+    this.options = options;
+    detector =
+        DetectorRegistry.getInstance().acquire(options, () -> ObjectDetection.getClient(options));
   }
 
   @Override
   public void stop() {
     super.stop();
-    try {
-      detector.close();
-    } catch (IOException e) {
-      Log.e(TAG, "Exception thrown while trying to close object detector!", e);
-    }
+    DetectorRegistry.getInstance().release(detector);
   }
 
   @Override
@@ -40,11 +39,34 @@ public class ObjectDetectorProcessor extends VisionProcessorBase<List<DetectedOb
     return detector.process(image);
   }
 
+  @Override
+  protected BatchDetector<List<DetectedObject>> createBatchDetector() {
+    ObjectDetector client = ObjectDetection.getClient(options);
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(List<DetectedObject> results, StringBuilder out) {
+    for (int i = 0; i < results.size(); i++) {
+      DetectedObject object = results.get(i);
+      if (i > 0) {
+        out.append("; ");
+      }
+      out.append(object.getBoundingBox().toShortString());
+      for (DetectedObject.Label label : object.getLabels()) {
+        out.append(' ').append(label.getText());
+      }
+    }
+  }
+
   @Override
   protected void onSuccess(
       @NonNull List<DetectedObject> results, @NonNull GraphicOverlay graphicOverlay) {
-    for (DetectedObject object : results) {
-      graphicOverlay.add(new ObjectGraphic(graphicOverlay, object));
+    for (int i = 0; i < results.size(); i++) {
+      DetectedObject object = results.get(i);
+      // Objects are only tracked in stream mode; otherwise tell them apart by position.
+      long id = object.getTrackingId() != null ? object.getTrackingId() : -1 - i;
+      graphicOverlay.obtain(ObjectGraphic.class, id, ObjectGraphic::new).update(object);
     }
   }
 
@@ -4,12 +4,20 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.TextLayoutCache;
 import com.google.mlkit.vision.objects.DetectedObject;
 import com.google.mlkit.vision.objects.DetectedObject.Label;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Draws a detected object. Instances are retained by the overlay across frames and updated in
+ * place, so everything {@link #draw} needs is computed in {@link #update}.
+ */
 public class ObjectGraphic extends Graphic {
 
   private static final float TEXT_SIZE = 54.0f;
@@ -29,23 +37,15 @@ public class ObjectGraphic extends Graphic {
         {Color.WHITE, Color.BLACK},
         {Color.BLACK, Color.GREEN}
       };
-  private static final String LABEL_FORMAT = "%.2f%% confidence (index: %d)";
 
-  private final DetectedObject object;
-  private final Paint[] boxPaints;
-  private final Paint[] textPaints;
-  private final Paint[] labelPaints;
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint[] boxPaints = new Paint[NUM_COLORS];
+  private static final Paint[] textPaints = new Paint[NUM_COLORS];
+  private static final Paint[] labelPaints = new Paint[NUM_COLORS];
 
-  ObjectGraphic(GraphicOverlay overlay, DetectedObject object) {
-    super(overlay);
-
-    this.object = object;
-
-    int numColors = COLORS.length;
-    textPaints = new Paint[numColors];
-    boxPaints = new Paint[numColors];
-    labelPaints = new Paint[numColors];
-    for (int i = 0; i < numColors; i++) {
+  static {
+    for (int i = 0; i < NUM_COLORS; i++) {
       textPaints[i] = new Paint();
       textPaints[i].setColor(COLORS[i][0] /* text color */);
       textPaints[i].setTextSize(TEXT_SIZE);
@@ -61,36 +61,70 @@ public class ObjectGraphic extends Graphic {
     }
   }
 
+  private final RectF imageRect = new RectF();
+  private final RectF rect = new RectF();
+  // Alternating label text and confidence lines.
+  private final List<CharSequence> labelLines = new ArrayList<>();
+  // Reused for the confidence lines, which change every frame.
+  private final List<StringBuilder> confidenceLines = new ArrayList<>();
+  private final StringBuilder trackingIdText = new StringBuilder();
+  private int colorID;
+  private float textWidth;
+
+  ObjectGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
+
+  /** Shows {@code object}, replacing the previously shown one. */
+  void update(DetectedObject object) {
+    // Decide color based on object tracking ID
+    colorID = object.getTrackingId() == null ? 0 : Math.abs(object.getTrackingId() % NUM_COLORS);
+    Paint textPaint = textPaints[colorID];
+    TextLayoutCache textLayoutCache = TextLayoutCache.getInstance();
+    trackingIdText.setLength(0);
+    trackingIdText.append("Tracking ID: ");
+    if (object.getTrackingId() != null) {
+      trackingIdText.append(object.getTrackingId().intValue());
+    } else {
+      trackingIdText.append("null");
+    }
+    textWidth = textLayoutCache.measureText(textPaint, trackingIdText);
+
+    labelLines.clear();
+    List<Label> labels = object.getLabels();
+    for (int i = 0; i < labels.size(); i++) {
+      Label label = labels.get(i);
+      if (confidenceLines.size() <= i) {
+        confidenceLines.add(new StringBuilder());
+      }
+      StringBuilder confidence = confidenceLines.get(i);
+      confidence.setLength(0);
+      FixedPointFormat.append(confidence, label.getConfidence() * 100, 2)
+          .append("% confidence (index: ")
+          .append(label.getIndex())
+          .append(')');
+      labelLines.add(label.getText());
+      labelLines.add(confidence);
+      textWidth = Math.max(textWidth, textLayoutCache.measureText(textPaint, label.getText()));
+      // Confidences rarely repeat, so they are measured directly rather than cached.
+      textWidth = Math.max(textWidth, textPaint.measureText(confidence, 0, confidence.length()));
+    }
+    imageRect.set(object.getBoundingBox());
+  }
+
   @Override
   public void draw(Canvas canvas) {
-    // Decide color based on object tracking ID
-    int colorID =
-        object.getTrackingId() == null ? 0 : Math.abs(object.getTrackingId() % NUM_COLORS);
-    float textWidth = textPaints[colorID].measureText("Tracking ID: " + object.getTrackingId());
     float lineHeight = TEXT_SIZE + STROKE_WIDTH;
-    float yLabelOffset = -lineHeight;
-
-    // Calculate width and height of label box
-    for (Label label : object.getLabels()) {
-      textWidth = Math.max(textWidth, textPaints[colorID].measureText(label.getText()));
-      textWidth =
-          Math.max(
-              textWidth,
-              textPaints[colorID].measureText(
-                  String.format(
-                      Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex())));
-      yLabelOffset -= 2 * lineHeight;
-    }
+    float yLabelOffset = -lineHeight * (labelLines.size() + 1);
 
     // Draws the bounding box.
-    RectF rect = new RectF(object.getBoundingBox());
     // If the image is flipped, the left will be translated to right, and the right to left.
-    float x0 = translateX(rect.left);
-    float x1 = translateX(rect.right);
+    float x0 = translateX(imageRect.left);
+    float x1 = translateX(imageRect.right);
     rect.left = Math.min(x0, x1);
     rect.right = Math.max(x0, x1);
-    rect.top = translateY(rect.top);
-    rect.bottom = translateY(rect.bottom);
+    rect.top = translateY(imageRect.top);
+    rect.bottom = translateY(imageRect.bottom);
     canvas.drawRect(rect, boxPaints[colorID]);
 
     // Draws other object info.
@@ -101,23 +135,42 @@ public class ObjectGraphic extends Graphic {
         rect.top,
         labelPaints[colorID]);
     yLabelOffset += TEXT_SIZE;
-    canvas.drawText(
-        "Tracking ID: " + object.getTrackingId(),
-        rect.left,
-        rect.top + yLabelOffset,
-        textPaints[colorID]);
+    drawLine(canvas, trackingIdText, rect.left, rect.top + yLabelOffset);
     yLabelOffset += lineHeight;
 
-    for (Label label : object.getLabels()) {
-      canvas.drawText(label.getText(), rect.left, rect.top + yLabelOffset, textPaints[colorID]);
+    for (int i = 0; i < labelLines.size(); i++) {
+      drawLine(canvas, labelLines.get(i), rect.left, rect.top + yLabelOffset);
       yLabelOffset += lineHeight;
-      canvas.drawText(
-          String.format(Locale.US, LABEL_FORMAT, label.getConfidence() * 100, label.getIndex()),
-          rect.left,
-          rect.top + yLabelOffset,
-          textPaints[colorID]);
+    }
+  }
 
-      yLabelOffset += lineHeight;
+  private void drawLine(Canvas canvas, CharSequence text, float x, float y) {
+    canvas.drawText(text, 0, text.length(), x, y, textPaints[colorID]);
+  }
+
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    ObjectGraphic copy =
+        recycled != null ? (ObjectGraphic) recycled : new ObjectGraphic(getOverlay());
+    copy.imageRect.set(imageRect);
+    copy.labelLines.clear();
+    for (int i = 0; i + 1 < labelLines.size(); i += 2) {
+      copy.labelLines.add(labelLines.get(i));
+      copy.labelLines.add(copy.copyConfidenceLine(i / 2, labelLines.get(i + 1)));
+    }
+    copy.trackingIdText.setLength(0);
+    copy.trackingIdText.append(trackingIdText);
+    copy.colorID = colorID;
+    copy.textWidth = textWidth;
+    return copy;
+  }
+
+  private StringBuilder copyConfidenceLine(int index, CharSequence confidence) {
+    if (confidenceLines.size() <= index) {
+      confidenceLines.add(new StringBuilder());
     }
+    StringBuilder line = confidenceLines.get(index);
+    line.setLength(0);
+    return line.append(confidence);
   }
 }
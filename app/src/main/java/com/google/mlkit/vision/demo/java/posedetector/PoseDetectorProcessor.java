@@ -2,20 +2,26 @@
 package com.google.mlkit.vision.demo.java.posedetector;
 
 import android.content.Context;
+import android.graphics.PointF;
 import androidx.annotation.NonNull;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
 import com.google.mlkit.vision.pose.Pose;
 import com.google.mlkit.vision.pose.PoseDetection;
 import com.google.mlkit.vision.pose.PoseDetector;
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.List;
 public class PoseDetectorProcessor extends VisionProcessorBase<Pose> {
 
   private static final String TAG = "PoseDetectorProcessor";
 
+  private final PoseDetectorOptionsBase options;
   private final PoseDetector detector;
 
   private final boolean showInFrameLikelihood;
@@ -23,14 +29,16 @@ public class PoseDetectorProcessor extends VisionProcessorBase<Pose> {
   public PoseDetectorProcessor(
       Context context, PoseDetectorOptionsBase options, boolean showInFrameLikelihood) {
     super(context);
+    this.options = options;
     this.showInFrameLikelihood = showInFrameLikelihood;
-    detector = PoseDetection.getClient(options);
+    detector =
+        DetectorRegistry.getInstance().acquire(options, () -> PoseDetection.getClient(options));
   }
 
   @Override
   public void stop() {
     super.stop();
-    detector.close();
+    DetectorRegistry.getInstance().release(detector);
   }
 
   @Override
@@ -38,9 +46,32 @@ public class PoseDetectorProcessor extends VisionProcessorBase<Pose> {
     return detector.process(image);
   }
 
+  @Override
+  protected BatchDetector<Pose> createBatchDetector() {
+    PoseDetector client = PoseDetection.getClient(options);
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(Pose pose, StringBuilder out) {
+    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
+    for (int i = 0; i < landmarks.size(); i++) {
+      PoseLandmark landmark = landmarks.get(i);
+      PointF position = landmark.getPosition();
+      if (i > 0) {
+        out.append("; ");
+      }
+      out.append(landmark.getLandmarkType()).append(':');
+      FixedPointFormat.append(out, position.x, 1).append(',');
+      FixedPointFormat.append(out, position.y, 1);
+    }
+  }
+
   @Override
   protected void onSuccess(@NonNull Pose pose, @NonNull GraphicOverlay graphicOverlay) {
-    graphicOverlay.add(new PoseGraphic(graphicOverlay, pose, showInFrameLikelihood));
+    graphicOverlay
+        .obtain(PoseGraphic.class, 0, PoseGraphic::new)
+        .update(pose, showInFrameLikelihood);
   }
 
   @Override
@@ -4,121 +4,192 @@ package com.google.mlkit.vision.demo.java.posedetector;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
 import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.FixedPointFormat;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
+import com.google.mlkit.vision.demo.OverlayTransform;
 import com.google.mlkit.vision.pose.Pose;
 import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+
+/**
+ * Draws a detected pose. The instance is retained by the overlay across frames and updated in
+ * place.
+ */
 public class PoseGraphic extends Graphic {
 
   private static final float DOT_RADIUS = 8.0f;
   private static final float IN_FRAME_LIKELIHOOD_TEXT_SIZE = 30.0f;
 
-  private final Pose pose;
-  private final boolean showInFrameLikelihood;
-  private final Paint leftPaint;
-  private final Paint rightPaint;
-  private final Paint whitePaint;
-
-  PoseGraphic(GraphicOverlay overlay, Pose pose, boolean showInFrameLikelihood) {
-    super(overlay);
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint leftPaint = new Paint();
+  private static final Paint rightPaint = new Paint();
+  private static final Paint whitePaint = new Paint();
 
-    this.pose = pose;
-    this.showInFrameLikelihood = showInFrameLikelihood;
-
-    whitePaint = new Paint();
+  static {
     whitePaint.setColor(Color.WHITE);
     whitePaint.setTextSize(IN_FRAME_LIKELIHOOD_TEXT_SIZE);
-    leftPaint = new Paint();
     leftPaint.setColor(Color.GREEN);
-    rightPaint = new Paint();
     rightPaint.setColor(Color.YELLOW);
   }
 
+  // Skeleton segments as pairs of landmark types, drawn in the paint of the same index.
+  private static final int[][] SEGMENTS = {
+    {
+      PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER,
+      PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP
+    },
+    // Left body
+    {
+      PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ELBOW,
+      PoseLandmark.LEFT_ELBOW, PoseLandmark.LEFT_WRIST,
+      PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_HIP,
+      PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_KNEE,
+      PoseLandmark.LEFT_KNEE, PoseLandmark.LEFT_ANKLE,
+      PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_THUMB,
+      PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_PINKY,
+      PoseLandmark.LEFT_WRIST, PoseLandmark.LEFT_INDEX,
+      PoseLandmark.LEFT_ANKLE, PoseLandmark.LEFT_HEEL,
+      PoseLandmark.LEFT_HEEL, PoseLandmark.LEFT_FOOT_INDEX
+    },
+    // Right body
+    {
+      PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ELBOW,
+      PoseLandmark.RIGHT_ELBOW, PoseLandmark.RIGHT_WRIST,
+      PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_HIP,
+      PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_KNEE,
+      PoseLandmark.RIGHT_KNEE, PoseLandmark.RIGHT_ANKLE,
+      PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_THUMB,
+      PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_PINKY,
+      PoseLandmark.RIGHT_WRIST, PoseLandmark.RIGHT_INDEX,
+      PoseLandmark.RIGHT_ANKLE, PoseLandmark.RIGHT_HEEL,
+      PoseLandmark.RIGHT_HEEL, PoseLandmark.RIGHT_FOOT_INDEX
+    }
+  };
+  private static final Paint[] SEGMENT_PAINTS = {whitePaint, leftPaint, rightPaint};
+
+  // Landmark positions as x, y pairs in image coordinates.
+  private float[] landmarkPoints = new float[0];
+  private int landmarkCount;
+  // Segment end points as x1, y1, x2, y2 quadruples in image coordinates, one array per group.
+  private final float[][] segmentPoints = new float[SEGMENTS.length][];
+  private final int[] segmentCounts = new int[SEGMENTS.length];
+  // Scratch space for the points mapped to view coordinates.
+  private float[] mappedPoints;
+  // In-frame likelihood of each landmark, formatted for display. Reused across updates; only the
+  // first likelihoodCount are shown.
+  private final List<StringBuilder> likelihoodTexts = new ArrayList<>();
+  private int likelihoodCount;
+
+  PoseGraphic(GraphicOverlay overlay) {
+    super(overlay);
+    int maxPointCount = 0;
+    for (int i = 0; i < SEGMENTS.length; i++) {
+      segmentPoints[i] = new float[SEGMENTS[i].length * 2];
+      maxPointCount = Math.max(maxPointCount, SEGMENTS[i].length);
+    }
+    mappedPoints = new float[maxPointCount * 2];
+  }
+
+  /** Shows {@code pose}, replacing the previously shown one. */
+  void update(Pose pose, boolean showInFrameLikelihood) {
+    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
+    landmarkCount = landmarks.size();
+    if (landmarkPoints.length < landmarkCount * 2) {
+      landmarkPoints = new float[landmarkCount * 2];
+    }
+    if (mappedPoints.length < landmarkCount * 2) {
+      mappedPoints = new float[landmarkCount * 2];
+    }
+    likelihoodCount = 0;
+    for (int i = 0; i < landmarkCount; i++) {
+      PoseLandmark landmark = landmarks.get(i);
+      landmarkPoints[i * 2] = landmark.getPosition().x;
+      landmarkPoints[i * 2 + 1] = landmark.getPosition().y;
+      if (showInFrameLikelihood) {
+        FixedPointFormat.append(obtainLikelihoodText(), landmark.getInFrameLikelihood(), 2);
+      }
+    }
+
+    for (int group = 0; group < SEGMENTS.length; group++) {
+      int[] segments = SEGMENTS[group];
+      float[] points = segmentPoints[group];
+      int count = 0;
+      for (int i = 0; landmarkCount > 0 && i < segments.length; i += 2) {
+        PoseLandmark start = pose.getPoseLandmark(segments[i]);
+        PoseLandmark end = pose.getPoseLandmark(segments[i + 1]);
+        if (start == null || end == null) {
+          continue;
+        }
+        points[count++] = start.getPosition().x;
+        points[count++] = start.getPosition().y;
+        points[count++] = end.getPosition().x;
+        points[count++] = end.getPosition().y;
+      }
+      segmentCounts[group] = count;
+    }
+  }
+
   @Override
   public void draw(Canvas canvas) {
-    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
-    if (landmarks.isEmpty()) {
+    if (landmarkCount == 0) {
       return;
     }
+    OverlayTransform transform = getTransform();
+
     // Draw all the points
-    for (PoseLandmark landmark : landmarks) {
-      drawPoint(canvas, landmark.getPosition(), whitePaint);
-      if (showInFrameLikelihood) {
-        canvas.drawText(
-            String.format(Locale.US, "%.2f", landmark.getInFrameLikelihood()),
-            translateX(landmark.getPosition().x),
-            translateY(landmark.getPosition().y),
-            whitePaint);
+    transform.mapPoints(landmarkPoints, 0, mappedPoints, 0, landmarkCount);
+    for (int i = 0; i < landmarkCount; i++) {
+      float x = mappedPoints[i * 2];
+      float y = mappedPoints[i * 2 + 1];
+      canvas.drawCircle(x, y, DOT_RADIUS, whitePaint);
+      if (i < likelihoodCount) {
+        StringBuilder text = likelihoodTexts.get(i);
+        canvas.drawText(text, 0, text.length(), x, y, whitePaint);
       }
     }
-    PoseLandmark leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER);
-    PoseLandmark rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER);
-    PoseLandmark leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW);
-    PoseLandmark rightElbow = pose.getPoseLandmark(PoseLandmark.RIGHT_ELBOW);
-    PoseLandmark leftWrist = pose.getPoseLandmark(PoseLandmark.LEFT_WRIST);
-    PoseLandmark rightWrist = pose.getPoseLandmark(PoseLandmark.RIGHT_WRIST);
-    PoseLandmark leftHip = pose.getPoseLandmark(PoseLandmark.LEFT_HIP);
-    PoseLandmark rightHip = pose.getPoseLandmark(PoseLandmark.RIGHT_HIP);
-    PoseLandmark leftKnee = pose.getPoseLandmark(PoseLandmark.LEFT_KNEE);
-    PoseLandmark rightKnee = pose.getPoseLandmark(PoseLandmark.RIGHT_KNEE);
-    PoseLandmark leftAnkle = pose.getPoseLandmark(PoseLandmark.LEFT_ANKLE);
-    PoseLandmark rightAnkle = pose.getPoseLandmark(PoseLandmark.RIGHT_ANKLE);
-
-    PoseLandmark leftPinky = pose.getPoseLandmark(PoseLandmark.LEFT_PINKY);
-    PoseLandmark rightPinky = pose.getPoseLandmark(PoseLandmark.RIGHT_PINKY);
-    PoseLandmark leftIndex = pose.getPoseLandmark(PoseLandmark.LEFT_INDEX);
-    PoseLandmark rightIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_INDEX);
-    PoseLandmark leftThumb = pose.getPoseLandmark(PoseLandmark.LEFT_THUMB);
-    PoseLandmark rightThumb = pose.getPoseLandmark(PoseLandmark.RIGHT_THUMB);
-    PoseLandmark leftHeel = pose.getPoseLandmark(PoseLandmark.LEFT_HEEL);
-    PoseLandmark rightHeel = pose.getPoseLandmark(PoseLandmark.RIGHT_HEEL);
-    PoseLandmark leftFootIndex = pose.getPoseLandmark(PoseLandmark.LEFT_FOOT_INDEX);
-    PoseLandmark rightFootIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_FOOT_INDEX);
-
-    drawLine(canvas, leftShoulder.getPosition(), rightShoulder.getPosition(), whitePaint);
-    drawLine(canvas, leftHip.getPosition(), rightHip.getPosition(), whitePaint);
-
-    // Left body
-    drawLine(canvas, leftShoulder.getPosition(), leftElbow.getPosition(), leftPaint);
-    drawLine(canvas, leftElbow.getPosition(), leftWrist.getPosition(), leftPaint);
-    drawLine(canvas, leftShoulder.getPosition(), leftHip.getPosition(), leftPaint);
-    drawLine(canvas, leftHip.getPosition(), leftKnee.getPosition(), leftPaint);
-    drawLine(canvas, leftKnee.getPosition(), leftAnkle.getPosition(), leftPaint);
-    drawLine(canvas, leftWrist.getPosition(), leftThumb.getPosition(), leftPaint);
-    drawLine(canvas, leftWrist.getPosition(), leftPinky.getPosition(), leftPaint);
-    drawLine(canvas, leftWrist.getPosition(), leftIndex.getPosition(), leftPaint);
-    drawLine(canvas, leftAnkle.getPosition(), leftHeel.getPosition(), leftPaint);
-    drawLine(canvas, leftHeel.getPosition(), leftFootIndex.getPosition(), leftPaint);
 
-    // Right body
-    drawLine(canvas, rightShoulder.getPosition(), rightElbow.getPosition(), rightPaint);
-    drawLine(canvas, rightElbow.getPosition(), rightWrist.getPosition(), rightPaint);
-    drawLine(canvas, rightShoulder.getPosition(), rightHip.getPosition(), rightPaint);
-    drawLine(canvas, rightHip.getPosition(), rightKnee.getPosition(), rightPaint);
-    drawLine(canvas, rightKnee.getPosition(), rightAnkle.getPosition(), rightPaint);
-    drawLine(canvas, rightWrist.getPosition(), rightThumb.getPosition(), rightPaint);
-    drawLine(canvas, rightWrist.getPosition(), rightPinky.getPosition(), rightPaint);
-    drawLine(canvas, rightWrist.getPosition(), rightIndex.getPosition(), rightPaint);
-    drawLine(canvas, rightAnkle.getPosition(), rightHeel.getPosition(), rightPaint);
-    drawLine(canvas, rightHeel.getPosition(), rightFootIndex.getPosition(), rightPaint);
+    for (int group = 0; group < SEGMENTS.length; group++) {
+      int count = segmentCounts[group];
+      if (count > 0) {
+        transform.mapPoints(segmentPoints[group], 0, mappedPoints, 0, count / 2);
+        canvas.drawLines(mappedPoints, 0, count, SEGMENT_PAINTS[group]);
+      }
+    }
   }
 
-  void drawPoint(Canvas canvas, @Nullable PointF point, Paint paint) {
-    if (point == null) {
-      return;
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    PoseGraphic copy = recycled != null ? (PoseGraphic) recycled : new PoseGraphic(getOverlay());
+    if (copy.landmarkPoints.length < landmarkCount * 2) {
+      copy.landmarkPoints = new float[landmarkPoints.length];
     }
-    canvas.drawCircle(translateX(point.x), translateY(point.y), DOT_RADIUS, paint);
+    if (copy.mappedPoints.length < landmarkCount * 2) {
+      copy.mappedPoints = new float[mappedPoints.length];
+    }
+    System.arraycopy(landmarkPoints, 0, copy.landmarkPoints, 0, landmarkCount * 2);
+    copy.landmarkCount = landmarkCount;
+    for (int group = 0; group < SEGMENTS.length; group++) {
+      System.arraycopy(segmentPoints[group], 0, copy.segmentPoints[group], 0, segmentCounts[group]);
+      copy.segmentCounts[group] = segmentCounts[group];
+    }
+    copy.likelihoodCount = 0;
+    for (int i = 0; i < likelihoodCount; i++) {
+      copy.obtainLikelihoodText().append(likelihoodTexts.get(i));
+    }
+    return copy;
   }
 
-  void drawLine(Canvas canvas, @Nullable PointF start, @Nullable PointF end, Paint paint) {
-    if (start == null || end == null) {
-      return;
+  /** Returns the next likelihood text, emptied for reuse. */
+  private StringBuilder obtainLikelihoodText() {
+    if (likelihoodTexts.size() <= likelihoodCount) {
+      likelihoodTexts.add(new StringBuilder());
     }
-    canvas.drawLine(
-        translateX(start.x), translateY(start.y), translateX(end.x), translateY(end.y), paint);
+    StringBuilder text = likelihoodTexts.get(likelihoodCount++);
+    text.setLength(0);
+    return text;
   }
 }
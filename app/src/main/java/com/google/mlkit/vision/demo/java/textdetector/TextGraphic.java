@@ -7,91 +7,137 @@ import static java.lang.Math.min;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.util.Log;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
 import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.Text.Element;
 import com.google.mlkit.vision.text.Text.Line;
 import com.google.mlkit.vision.text.Text.TextBlock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+/**
+ * Draws the recognized text lines. The instance is retained by the overlay across frames and
+ * updated in place, so everything {@link #draw} needs is collected in {@link #update}.
+ */
 public class TextGraphic extends Graphic {
 
-  private static final String TAG = "TextGraphic";
-
   private static final int TEXT_COLOR = Color.BLACK;
   private static final int MARKER_COLOR = Color.WHITE;
   private static final float TEXT_SIZE = 54.0f;
   private static final float STROKE_WIDTH = 4.0f;
 
-  private final Paint rectPaint;
-  private final Paint textPaint;
-  private final Paint labelPaint;
-  private final Text text;
-
-  TextGraphic(GraphicOverlay overlay, Text text) {
-    super(overlay);
-
-    this.text = text;
+  // Paints are shared by all instances. They are configured once and only read afterwards, so
+  // graphics can measure text while a render thread draws with them.
+  private static final Paint rectPaint = new Paint();
+  private static final Paint textPaint = new Paint();
+  private static final Paint labelPaint = new Paint();
+  private static final Rect EMPTY_BOX = new Rect();
 
-    rectPaint = new Paint();
+  static {
     rectPaint.setColor(MARKER_COLOR);
     rectPaint.setStyle(Paint.Style.STROKE);
     rectPaint.setStrokeWidth(STROKE_WIDTH);
 
-    textPaint = new Paint();
     textPaint.setColor(TEXT_COLOR);
     textPaint.setTextSize(TEXT_SIZE);
 
-    labelPaint = new Paint();
     labelPaint.setColor(MARKER_COLOR);
     labelPaint.setStyle(Paint.Style.FILL);
-    // Redraw the overlay, as this graphic has been added.
-    postInvalidate();
   }
 
-  @Override
-  public void draw(Canvas canvas) {
-    Log.d(TAG, "Text is: " + text.getText());
-    for (TextBlock textBlock : text.getTextBlocks()) {
-      // Renders the text at the bottom of the box.
-      Log.d(TAG, "TextBlock text is: " + textBlock.getText());
-      Log.d(TAG, "TextBlock boundingbox is: " + textBlock.getBoundingBox());
-      Log.d(TAG, "TextBlock cornerpoint is: " + Arrays.toString(textBlock.getCornerPoints()));
-      for (Line line : textBlock.getLines()) {
-        Log.d(TAG, "Line text is: " + line.getText());
-        Log.d(TAG, "Line boundingbox is: " + line.getBoundingBox());
-        Log.d(TAG, "Line cornerpoint is: " + Arrays.toString(line.getCornerPoints()));
-        // Draws the bounding box around the TextBlock.
-        RectF rect = new RectF(line.getBoundingBox());
-        // If the image is flipped, the left will be translated to right, and the right to left.
-        float x0 = translateX(rect.left);
-        float x1 = translateX(rect.right);
-        rect.left = min(x0, x1);
-        rect.right = max(x0, x1);
-        rect.top = translateY(rect.top);
-        rect.bottom = translateY(rect.bottom);
-        canvas.drawRect(rect, rectPaint);
+  private final RectF rect = new RectF();
+  private final List<String> lineTexts = new ArrayList<>();
+  // Top-left and bottom-right corners of each line's bounding box as x, y pairs in image
+  // coordinates, followed by the same corners mapped to view coordinates while drawing.
+  private float[] lineCorners = new float[0];
+  private float[] mappedLineCorners = new float[0];
+  private float[] lineTextWidths = new float[0];
 
-        float lineHeight = TEXT_SIZE + 2 * STROKE_WIDTH;
-        float textWidth = textPaint.measureText(line.getText());
-        canvas.drawRect(
-            rect.left - STROKE_WIDTH,
-            rect.top - lineHeight,
-            rect.left + textWidth + 2 * STROKE_WIDTH,
-            rect.top,
-            labelPaint);
-        // Renders the text at the bottom of the box.
-        canvas.drawText(line.getText(), rect.left, rect.top - STROKE_WIDTH, textPaint);
+  TextGraphic(GraphicOverlay overlay) {
+    super(overlay);
+  }
 
-        for (Element element : line.getElements()) {
-          Log.d(TAG, "Element text is: " + element.getText());
-          Log.d(TAG, "Element boundingbox is: " + element.getBoundingBox());
-          Log.d(TAG, "Element cornerpoint is: " + Arrays.toString(element.getCornerPoints()));
-          Log.d(TAG, "Element language is: " + element.getRecognizedLanguage());
+  /** Shows {@code text}, replacing the previously shown text. */
+  void update(Text text) {
+    lineTexts.clear();
+    int lineCount = 0;
+    for (TextBlock textBlock : text.getTextBlocks()) {
+      for (Line line : textBlock.getLines()) {
+        lineTexts.add(line.getText());
+        Rect box = line.getBoundingBox();
+        if (box == null) {
+          box = EMPTY_BOX;
+        }
+        if (lineCorners.length < (lineCount + 1) * 4) {
+          lineCorners = Arrays.copyOf(lineCorners, Math.max(16, lineCorners.length * 2));
+          mappedLineCorners = new float[lineCorners.length];
         }
+        int index = lineCount * 4;
+        lineCorners[index] = box.left;
+        lineCorners[index + 1] = box.top;
+        lineCorners[index + 2] = box.right;
+        lineCorners[index + 3] = box.bottom;
+        lineCount++;
       }
     }
+
+    if (lineTextWidths.length < lineCount) {
+      lineTextWidths = new float[lineCount];
+    }
+    for (int i = 0; i < lineCount; i++) {
+      lineTextWidths[i] = textPaint.measureText(lineTexts.get(i));
+    }
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    float lineHeight = TEXT_SIZE + 2 * STROKE_WIDTH;
+    int lineCount = lineTexts.size();
+    getTransform().mapPoints(lineCorners, 0, mappedLineCorners, 0, lineCount * 2);
+    for (int i = 0; i < lineCount; i++) {
+      // Draws the bounding box around the TextBlock.
+      int index = i * 4;
+      // If the image is flipped, the left will be translated to right, and the right to left.
+      float x0 = mappedLineCorners[index];
+      float x1 = mappedLineCorners[index + 2];
+      rect.left = min(x0, x1);
+      rect.right = max(x0, x1);
+      rect.top = mappedLineCorners[index + 1];
+      rect.bottom = mappedLineCorners[index + 3];
+      canvas.drawRect(rect, rectPaint);
+
+      canvas.drawRect(
+          rect.left - STROKE_WIDTH,
+          rect.top - lineHeight,
+          rect.left + lineTextWidths[i] + 2 * STROKE_WIDTH,
+          rect.top,
+          labelPaint);
+      // Renders the text at the bottom of the box.
+      canvas.drawText(lineTexts.get(i), rect.left, rect.top - STROKE_WIDTH, textPaint);
+    }
+  }
+
+  @Override
+  protected Graphic copyForScene(@Nullable Graphic recycled) {
+    TextGraphic copy = recycled != null ? (TextGraphic) recycled : new TextGraphic(getOverlay());
+    int lineCount = lineTexts.size();
+    copy.lineTexts.clear();
+    // Added one by one, as addAll would copy the list into a new array.
+    for (int i = 0; i < lineCount; i++) {
+      copy.lineTexts.add(lineTexts.get(i));
+    }
+    if (copy.lineCorners.length < lineCount * 4) {
+      copy.lineCorners = new float[lineCorners.length];
+      copy.mappedLineCorners = new float[lineCorners.length];
+    }
+    System.arraycopy(lineCorners, 0, copy.lineCorners, 0, lineCount * 4);
+    if (copy.lineTextWidths.length < lineCount) {
+      copy.lineTextWidths = new float[lineTextWidths.length];
+    }
+    System.arraycopy(lineTextWidths, 0, copy.lineTextWidths, 0, lineCount);
+    return copy;
   }
 }
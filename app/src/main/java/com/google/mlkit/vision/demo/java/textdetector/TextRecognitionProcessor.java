@@ -6,9 +6,14 @@ import androidx.annotation.NonNull;
 import android.util.Log;
 import com.google.android.gms.tasks.Task;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.demo.DetectorRegistry;
+import com.google.mlkit.vision.demo.Diagnostics;
 import com.google.mlkit.vision.demo.GraphicOverlay;
+import com.google.mlkit.vision.demo.RegionOfInterest;
 import com.google.mlkit.vision.demo.java.VisionProcessorBase;
+import com.google.mlkit.vision.demo.preference.PreferenceUtils;
 import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.Text.TextBlock;
 import com.google.mlkit.vision.text.Text.Element;
 import com.google.mlkit.vision.text.Text.Line;
 import com.google.mlkit.vision.text.TextRecognition;
@@ -17,18 +22,24 @@ import java.util.List;
 public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
 
   private static final String TAG = "TextRecProcessor";
+  // The default client takes no options, so it is cached under a fixed key.
+  private static final String DETECTOR_KEY = "TextRecognition.default";
 
   private final TextRecognizer textRecognizer;
 
   public TextRecognitionProcessor(Context context) {
     super(context);
-    textRecognizer = TextRecognition.getClient();
+    textRecognizer =
+        DetectorRegistry.getInstance().acquire(DETECTOR_KEY, TextRecognition::getClient);
+    if (PreferenceUtils.isRegionOfInterestEnabled(context)) {
+      setRegionOfInterest(RegionOfInterest.CENTER_BAND);
+    }
   }
 
   @Override
   public void stop() {
     super.stop();
-    textRecognizer.close();
+    DetectorRegistry.getInstance().release(textRecognizer);
   }
 
   @Override
@@ -36,53 +47,88 @@ public class TextRecognitionProcessor extends VisionProcessorBase<Text> {
     return textRecognizer.process(image);
   }
 
+  @Override
+  protected BatchDetector<Text> createBatchDetector() {
+    TextRecognizer client = TextRecognition.getClient();
+    return newBatchDetector(client::process, client);
+  }
+
+  @Override
+  protected void appendResults(Text text, StringBuilder out) {
+    out.append(text.getText());
+  }
+
   @Override
   protected void onSuccess(@NonNull Text text, @NonNull GraphicOverlay graphicOverlay) {
-    Log.d(TAG, "On-device Text detection successful");
+    Diagnostics.log(Log.DEBUG, TAG, "On-device Text detection successful");
     logExtrasForTesting(text);
-    graphicOverlay.add(new TextGraphic(graphicOverlay, text));
+    graphicOverlay.obtain(TextGraphic.class, 0, TextGraphic::new).update(text);
   }
 
   private static void logExtrasForTesting(Text text) {
-    if (text != null) {
-      Log.v(MANUAL_TESTING_LOG, "Detected text has : " + text.getTextBlocks().size() + " blocks");
-      for (int i = 0; i < text.getTextBlocks().size(); ++i) {
-        List<Line> lines = text.getTextBlocks().get(i).getLines();
-        Log.v(
-            MANUAL_TESTING_LOG,
-            String.format("Detected text block %d has %d lines", i, lines.size()));
-        for (int j = 0; j < lines.size(); ++j) {
-          List<Element> elements = lines.get(j).getElements();
-          Log.v(
-              MANUAL_TESTING_LOG,
-              String.format("Detected text line %d has %d elements", j, elements.size()));
-          for (int k = 0; k < elements.size(); ++k) {
-            Element element = elements.get(k);
-            Log.v(
-                MANUAL_TESTING_LOG,
-                String.format("Detected text element %d says: %s", k, element.getText()));
-            Log.v(
-                MANUAL_TESTING_LOG,
-                String.format(
-                    "Detected text element %d has a bounding box: %s",
-                    k, element.getBoundingBox().flattenToString()));
-            Log.v(
-                MANUAL_TESTING_LOG,
-                String.format(
-                    "Expected corner point size is 4, get %d", element.getCornerPoints().length));
-            for (Point point : element.getCornerPoints()) {
-              Log.v(
-                  MANUAL_TESTING_LOG,
-                  String.format(
-                      "Corner point for element %d is located at: x - %d, y = %d",
-                      k, point.x, point.y));
-            }
-          }
+    if (text == null || !Diagnostics.isEnabled(Log.VERBOSE)) {
+      return;
+    }
+    List<TextBlock> blocks = text.getTextBlocks();
+    Diagnostics.Event event =
+        Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected text has : ");
+    if (event != null) {
+      event.append(blocks.size()).append(" blocks").commit();
+    }
+    for (int i = 0; i < blocks.size(); ++i) {
+      List<Line> lines = blocks.get(i).getLines();
+      event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected text block ");
+      if (event != null) {
+        event.append(i).append(" has ").append(lines.size()).append(" lines").commit();
+      }
+      for (int j = 0; j < lines.size(); ++j) {
+        List<Element> elements = lines.get(j).getElements();
+        event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected text line ");
+        if (event != null) {
+          event.append(j).append(" has ").append(elements.size()).append(" elements").commit();
+        }
+        for (int k = 0; k < elements.size(); ++k) {
+          logElement(k, elements.get(k));
         }
       }
     }
   }
 
+  private static void logElement(int index, Element element) {
+    Diagnostics.Event event =
+        Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected text element ");
+    if (event != null) {
+      event.append(index).append(" says: ").append(element.getText()).commit();
+    }
+    event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Detected text element ");
+    if (event != null) {
+      event.append(index).append(" has a bounding box: ").append(element.getBoundingBox()).commit();
+    }
+    Point[] cornerPoints = element.getCornerPoints();
+    event =
+        Diagnostics.obtain(
+            Log.VERBOSE, MANUAL_TESTING_LOG, "Expected corner point size is 4, get ");
+    if (event != null) {
+      event.append(cornerPoints.length).commit();
+    }
+    for (Point point : cornerPoints) {
+      event = Diagnostics.obtain(Log.VERBOSE, MANUAL_TESTING_LOG, "Corner point for element ");
+      if (event != null) {
+        event
+            .append(index)
+            .append(" is located at: x - ")
+            .append(point.x)
+            .append(", y = ")
+            .append(point.y)
+            .commit();
+      }
+    }
+    event = Diagnostics.obtain(Log.DEBUG, TAG, "Element language is: ");
+    if (event != null) {
+      event.append(element.getRecognizedLanguage()).commit();
+    }
+  }
+
   @Override
   protected void onFailure(@NonNull Exception e) {
     Log.w(TAG, "Text detection failed." + e);
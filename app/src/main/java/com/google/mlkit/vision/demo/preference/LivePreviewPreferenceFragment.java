@@ -37,6 +37,8 @@ public class LivePreviewPreferenceFragment extends PreferenceFragment {
           findPreference(getString(R.string.pref_key_rear_camera_preview_size)));
       cameraPreference.removePreference(
           findPreference(getString(R.string.pref_key_front_camera_preview_size)));
+      cameraPreference.removePreference(
+          findPreference(getString(R.string.pref_key_frame_pool_size)));
       setUpCameraXTargetAnalysisSizePreference();
     } else {
       cameraPreference.removePreference(
@@ -13,6 +13,7 @@ import com.google.common.base.Preconditions;
 import com.google.mlkit.common.model.LocalModel;
 import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSource.SizePair;
+import com.google.mlkit.vision.demo.FrameScheduler;
 import com.google.mlkit.vision.demo.R;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.objects.ObjectDetectorOptionsBase.DetectorMode;
@@ -25,6 +26,10 @@ public class PreferenceUtils {
 
   private static final int POSE_DETECTOR_PERFORMANCE_MODE_FAST = 1;
 
+  // Prefixes of the frame schedule entry values, followed by N or the frame rate.
+  private static final String FRAME_SCHEDULE_EVERY_PREFIX = "every_";
+  private static final String FRAME_SCHEDULE_FPS_PREFIX = "fps_";
+
   static void saveString(Context context, @StringRes int prefKeyId, @Nullable String value) {
     PreferenceManager.getDefaultSharedPreferences(context)
         .edit()
@@ -57,6 +62,21 @@ public class PreferenceUtils {
     }
   }
 
+  /** Returns the number of Camera1 preview buffers selected in the settings. */
+  public static int getFramePoolSize(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_frame_pool_size);
+    try {
+      return Math.max(
+          3,
+          Integer.parseInt(
+              sharedPreferences.getString(
+                  prefKey, String.valueOf(CameraSource.DEFAULT_FRAME_POOL_SIZE))));
+    } catch (NumberFormatException e) {
+      return CameraSource.DEFAULT_FRAME_POOL_SIZE;
+    }
+  }
+
   @RequiresApi(VERSION_CODES.LOLLIPOP)
   @Nullable
   public static android.util.Size getCameraXTargetResolution(Context context) {
@@ -259,5 +279,73 @@ public class PreferenceUtils {
     return sharedPreferences.getBoolean(prefKey, false);
   }
 
+  public static boolean isOverlayRenderThreadEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_overlay_render_thread);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isRegionOfInterestEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_region_of_interest);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isAdaptiveResolutionEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_adaptive_resolution);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isMotionGateEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_motion_gate);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isDirectFrameBuffersEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_direct_frame_buffers);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isFrameRecordingEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_record_frames);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  public static boolean isThermalThrottlingEnabled(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_thermal_throttling);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
+  /**
+   * Returns the scheduler for live frames selected in the settings, or null if every frame should
+   * be processed and thermal throttling is off.
+   */
+  @Nullable
+  public static FrameScheduler getFrameScheduler(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_frame_schedule);
+    String schedule = sharedPreferences.getString(prefKey, FRAME_SCHEDULE_EVERY_PREFIX + "1");
+    try {
+      if (schedule.startsWith(FRAME_SCHEDULE_EVERY_PREFIX)) {
+        int n = Integer.parseInt(schedule.substring(FRAME_SCHEDULE_EVERY_PREFIX.length()));
+        if (n > 1) {
+          return FrameScheduler.everyNthFrame(n);
+        }
+      } else if (schedule.startsWith(FRAME_SCHEDULE_FPS_PREFIX)) {
+        return FrameScheduler.targetFps(
+            Float.parseFloat(schedule.substring(FRAME_SCHEDULE_FPS_PREFIX.length())));
+      }
+    } catch (IllegalArgumentException e) {
+      // Falls back to every frame.
+    }
+    // Thermal throttling needs a scheduler to slow down even if every frame is processed.
+    return isThermalThrottlingEnabled(context) ? FrameScheduler.everyFrame() : null;
+  }
+
   private PreferenceUtils() {}
 }
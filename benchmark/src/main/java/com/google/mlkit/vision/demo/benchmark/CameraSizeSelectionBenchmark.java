@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.CameraSizeSelection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The preview size and frame rate selection {@code CameraSource} runs every time the camera is
+ * opened, over the sizes and ranges a typical phone's back camera reports.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CameraSizeSelectionBenchmark {
+
+  private final List<int[]> previewSizes =
+      sizes(
+          1920, 1080, 1440, 1080, 1280, 960, 1280, 720, 1088, 1088, 960, 720, 800, 600, 720, 480,
+          640, 480, 640, 360, 352, 288, 320, 240, 176, 144);
+
+  private final List<int[]> pictureSizes =
+      sizes(
+          4032, 3024, 4032, 2268, 3024, 3024, 3264, 2448, 2560, 1920, 2048, 1536, 1920, 1080, 1600,
+          1200, 1280, 960, 1280, 720, 1024, 768, 800, 600, 640, 480, 320, 240);
+
+  private final List<int[]> fpsRanges =
+      sizes(15000, 15000, 7000, 30000, 15000, 30000, 24000, 24000, 30000, 30000, 10000, 60000);
+
+  @Benchmark
+  public int[] selectSizePair() {
+    // Pair every preview size with a picture size, then pick the preview size closest to the
+    // requested one, like CameraSource.selectSizePair.
+    List<int[]> validPreviewSizes = new ArrayList<>(previewSizes.size());
+    for (int[] previewSize : previewSizes) {
+      if (CameraSizeSelection.findSameAspectRatio(previewSize[0], previewSize[1], pictureSizes)
+          >= 0) {
+        validPreviewSizes.add(previewSize);
+      }
+    }
+    return validPreviewSizes.get(
+        CameraSizeSelection.selectClosestSize(validPreviewSizes, 1280, 720));
+  }
+
+  @Benchmark
+  public int[] selectPreviewFpsRange() {
+    return fpsRanges.get(CameraSizeSelection.selectClosestFpsRange(fpsRanges, 30.0f));
+  }
+
+  private static List<int[]> sizes(int... values) {
+    List<int[]> sizes = new ArrayList<>(values.length / 2);
+    for (int i = 0; i < values.length; i += 2) {
+      sizes.add(Arrays.copyOfRange(values, i, i + 2));
+    }
+    return sizes;
+  }
+}
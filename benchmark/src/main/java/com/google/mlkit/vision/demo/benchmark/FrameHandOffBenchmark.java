@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.FramePipeline;
+import com.google.mlkit.vision.demo.FramePipeline.DropPolicy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing the latest frame to the live pipeline, as {@code VisionProcessorBase} does for every
+ * camera frame. The stages are laid out like the live pipeline's (capacities 1, 1, 2, 2, all
+ * dropping the oldest frame), but do no work, so the score is the cost the camera thread pays per
+ * frame while the stage threads keep draining the queues.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameHandOffBenchmark {
+
+  private static final int FRAME_COUNT = 8;
+
+  /** The number of pipeline stages, from just the hand-off to the full live pipeline. */
+  @Param({"1", "4"})
+  public int stageCount;
+
+  private final Object[] frames = new Object[FRAME_COUNT];
+  private FramePipeline<Object> pipeline;
+  private int nextFrame;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      frames[i] = new byte[16];
+    }
+    int[] capacities = {1, 1, 2, 2};
+    FramePipeline.Builder<Object, Object> builder = FramePipeline.newBuilder("benchmark");
+    for (int i = 0; i < stageCount; i++) {
+      builder =
+          builder.addStage("stage" + i, capacities[i], DropPolicy.DROP_OLDEST, frame -> frame);
+    }
+    pipeline = builder.build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    pipeline.shutdown();
+  }
+
+  @Benchmark
+  public boolean submitLatestFrame() {
+    Object frame = frames[nextFrame];
+    nextFrame = (nextFrame + 1) % FRAME_COUNT;
+    return pipeline.submit(frame);
+  }
+}
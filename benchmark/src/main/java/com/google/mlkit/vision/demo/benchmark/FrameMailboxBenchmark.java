@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.FrameMailbox;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing camera frames to the Camera1 processing thread through {@link FrameMailbox}, against the
+ * monitor with {@code wait}/{@code notifyAll} that {@code CameraSource} used before it.
+ *
+ * <p>The benchmark thread plays the camera and a background thread the processing thread, which
+ * takes frames and does no work on them. {@link #putNewestFrame} is the cost the camera thread
+ * pays per frame while the consumer keeps taking frames; {@link #roundTrip} puts a frame and waits
+ * until the consumer has taken it, so it includes waking a waiting consumer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameMailboxBenchmark {
+
+  private static final int FRAME_COUNT = 8;
+
+  @Param({"mailbox", "monitor"})
+  public String impl;
+
+  private final Object[] frames = new Object[FRAME_COUNT];
+  private HandOff handOff;
+  private Thread consumer;
+  private volatile Object lastTaken;
+  private int nextFrame;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      frames[i] = new byte[16];
+    }
+    handOff = impl.equals("mailbox") ? new MailboxHandOff() : new MonitorHandOff();
+    consumer =
+        new Thread(
+            () -> {
+              Object frame;
+              while ((frame = handOff.take()) != null) {
+                lastTaken = frame;
+              }
+            },
+            "consumer");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    handOff.close();
+    consumer.join();
+  }
+
+  @Benchmark
+  public Object putNewestFrame() {
+    return handOff.put(nextFrame());
+  }
+
+  @Benchmark
+  public Object roundTrip() {
+    Object frame = nextFrame();
+    handOff.put(frame);
+    while (lastTaken != frame) {
+      // Spins, as the camera thread would have moved on to the next frame by now.
+    }
+    return frame;
+  }
+
+  private Object nextFrame() {
+    Object frame = frames[nextFrame];
+    nextFrame = (nextFrame + 1) % FRAME_COUNT;
+    return frame;
+  }
+
+  /** The producer and consumer sides of a single-frame hand-off. */
+  private interface HandOff {
+    /** Returns the superseded frame, if any. */
+    @Nullable
+    Object put(Object frame);
+
+    /** Returns the newest frame, waiting for one, or null once closed. */
+    @Nullable
+    Object take();
+
+    void close();
+  }
+
+  private static final class MailboxHandOff implements HandOff {
+    private final FrameMailbox<Object> mailbox = new FrameMailbox<>();
+
+    @Override
+    public Object put(Object frame) {
+      return mailbox.put(frame);
+    }
+
+    @Override
+    public Object take() {
+      return mailbox.take();
+    }
+
+    @Override
+    public void close() {
+      mailbox.setOpen(false);
+    }
+  }
+
+  /** The hand-off {@code CameraSource} used before {@link FrameMailbox}. */
+  private static final class MonitorHandOff implements HandOff {
+    private final Object lock = new Object();
+    private boolean active = true;
+    @Nullable private Object pendingFrame;
+
+    @Override
+    public Object put(Object frame) {
+      synchronized (lock) {
+        Object superseded = pendingFrame;
+        pendingFrame = frame;
+        lock.notifyAll();
+        return superseded;
+      }
+    }
+
+    @Override
+    public Object take() {
+      synchronized (lock) {
+        while (active && pendingFrame == null) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return null;
+          }
+        }
+        if (!active) {
+          return null;
+        }
+        Object frame = pendingFrame;
+        pendingFrame = null;
+        return frame;
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (lock) {
+        active = false;
+        lock.notifyAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.FrameLogReader;
+import com.google.mlkit.vision.demo.FrameLogWriter;
+import com.google.mlkit.vision.demo.MotionGate;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The static scene check {@code VisionProcessorBase} runs on every live frame, over frames read
+ * back from a frame log, so the log reader's cost of mapping and slicing records is included.
+ *
+ * <p>The log is synthetic: a 640x480 noisy backdrop with a small square moving across it every
+ * other frame, so about half of the frames count as changed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MotionGateBenchmark {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int FRAME_COUNT = 60;
+  private static final int SQUARE_SIZE = 48;
+
+  private File log;
+  private FrameLogReader reader;
+  private MotionGate motionGate;
+
+  @Setup
+  public void setUp() throws IOException {
+    log = File.createTempFile("motion-gate", ".mlkf");
+    byte[] backdrop = new byte[WIDTH * HEIGHT + 2 * (WIDTH * HEIGHT / 4)];
+    Random random = new Random(42);
+    random.nextBytes(backdrop);
+    byte[] frame = new byte[backdrop.length];
+    try (FrameLogWriter writer = new FrameLogWriter(log)) {
+      for (int i = 0; i < FRAME_COUNT; i++) {
+        System.arraycopy(backdrop, 0, frame, 0, backdrop.length);
+        // Sensor noise, well below the gate's threshold.
+        for (int j = 0; j < WIDTH * HEIGHT; j += 7) {
+          frame[j] += (byte) (random.nextInt(7) - 3);
+        }
+        int squareX = (i / 2 * 16) % (WIDTH - SQUARE_SIZE);
+        int squareY = HEIGHT / 2 - SQUARE_SIZE / 2;
+        for (int y = squareY; y < squareY + SQUARE_SIZE; y++) {
+          for (int x = squareX; x < squareX + SQUARE_SIZE; x++) {
+            frame[y * WIDTH + x] = (byte) 0xf0;
+          }
+        }
+        writer.append(ByteBuffer.wrap(frame), WIDTH, HEIGHT, 0, i * 33_333_333L);
+      }
+    }
+    reader = new FrameLogReader(log);
+    motionGate = new MotionGate();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reader.close();
+    if (!log.delete()) {
+      log.deleteOnExit();
+    }
+  }
+
+  @Benchmark
+  public boolean nextFrameHasChanged() throws IOException {
+    if (!reader.next()) {
+      reader.rewind();
+      reader.next();
+    }
+    return motionGate.hasChanged(
+        reader.getData(), reader.getWidth(), reader.getHeight(), reader.getWidth(), 1);
+  }
+}
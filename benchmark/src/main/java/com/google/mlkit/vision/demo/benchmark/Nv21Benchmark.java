@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.YuvConverter;
+import com.google.mlkit.vision.demo.YuvPlaneUnpacker;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packing YUV_420_888 planes into NV21, as {@code BitmapUtils.getNv21} does for CameraX frames,
+ * and converting NV21 to ARGB pixels, as {@code BitmapUtils.getBitmap} does for every frame drawn
+ * behind the overlay, from a heap array or in place from a read-only direct buffer.
+ *
+ * <p>The planes are laid out the way camera HALs commonly deliver them: rows padded to a 64-byte
+ * stride, and chroma planes with a pixel stride of 2 that do not share a buffer.
+ *
+ * <p>{@link #jpegRoundTrip} is the baseline: the path {@code getBitmap} took before converting
+ * directly, which copied the frame out of its buffer, compressed it to a JPEG at quality 80,
+ * decoded the JPEG and rotated the result. The JVM has no {@code YuvImage}, so ImageIO stands in
+ * for libjpeg. Its encoder starts from RGB and converts to YCbCr itself, a step libjpeg skips for
+ * NV21 input, so the baseline is somewhat slower here than on a device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Nv21Benchmark {
+
+  // 480x360 is the default Camera1 preview size of the live preview.
+  @Param({"480x360", "640x480", "1280x720"})
+  public String size;
+
+  @Param({"0", "90"})
+  public int rotation;
+
+  private int width;
+  private int height;
+  private ByteBuffer yPlane;
+  private ByteBuffer uPlane;
+  private ByteBuffer vPlane;
+  private int lumaRowStride;
+  private int chromaRowStride;
+  private YuvPlaneUnpacker unpacker;
+  private byte[] nv21;
+  private ByteBuffer directNv21;
+  private int[] argb;
+  private BufferedImage rgbImage;
+  private ImageWriter jpegWriter;
+  private ImageWriteParam jpegParam;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    width = Integer.parseInt(dimensions[0]);
+    height = Integer.parseInt(dimensions[1]);
+    lumaRowStride = (width + 63) & ~63;
+    chromaRowStride = lumaRowStride;
+
+    Random random = new Random(42);
+    yPlane = randomPlane(random, lumaRowStride * (height - 1) + width);
+    // Each chroma plane holds width / 2 samples per row, two bytes apart.
+    int chromaSize = chromaRowStride * (height / 2 - 1) + width - 1;
+    uPlane = randomPlane(random, chromaSize);
+    vPlane = randomPlane(random, chromaSize);
+
+    unpacker = new YuvPlaneUnpacker();
+    nv21 = new byte[width * height + 2 * (width * height / 4)];
+    argb = new int[width * height];
+    packNv21();
+    ByteBuffer direct = ByteBuffer.allocateDirect(nv21.length);
+    direct.put(nv21);
+    direct.flip();
+    directNv21 = direct.asReadOnlyBuffer();
+
+    YuvConverter.nv21ToArgb(nv21, 0, width, height, 0, argb);
+    rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    rgbImage.setRGB(0, 0, width, height, argb, 0, width);
+    jpegWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+    jpegParam = jpegWriter.getDefaultWriteParam();
+    jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    jpegParam.setCompressionQuality(0.8f);
+  }
+
+  @Benchmark
+  public byte[] packNv21() {
+    int imageSize = width * height;
+    unpacker.unpackPlane(yPlane, lumaRowStride, 1, width, height, nv21, 0, 1);
+    unpacker.unpackPlane(uPlane, chromaRowStride, 2, width, height, nv21, imageSize + 1, 2);
+    unpacker.unpackPlane(vPlane, chromaRowStride, 2, width, height, nv21, imageSize, 2);
+    return nv21;
+  }
+
+  @Benchmark
+  public int[] nv21ToArgb() {
+    YuvConverter.nv21ToArgb(nv21, 0, width, height, rotation, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] nv21ToArgbFromDirectBuffer() {
+    YuvConverter.nv21ToArgb(directNv21, width, height, rotation, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] jpegRoundTrip() throws IOException {
+    // The legacy path copied the frame out of its buffer first.
+    byte[] copy = new byte[nv21.length];
+    System.arraycopy(nv21, 0, copy, 0, nv21.length);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(stream)) {
+      jpegWriter.setOutput(output);
+      jpegWriter.write(null, new IIOImage(rgbImage, null, null), jpegParam);
+    }
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(stream.toByteArray()));
+    int[] pixels = decoded.getRGB(0, 0, width, height, null, 0, width);
+    if (rotation == 0) {
+      return pixels;
+    }
+    // The legacy path rotated the decoded bitmap into a new one.
+    int[] rotated = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        rotated[x * height + (height - 1 - y)] = pixels[y * width + x];
+      }
+    }
+    return rotated;
+  }
+
+  private static ByteBuffer randomPlane(Random random, int size) {
+    byte[] data = new byte[size];
+    random.nextBytes(data);
+    ByteBuffer plane = ByteBuffer.allocateDirect(size);
+    plane.put(data);
+    plane.rewind();
+    return plane;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.OverlayTransform;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The image to view mapping of {@code GraphicOverlay}: fitting a 640x480 camera image into a
+ * portrait 1080x2160 view, and mapping the points of a graphic with it, e.g. the 33 landmarks of a
+ * pose or the 468 points of a face mesh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OverlayTransformBenchmark {
+
+  @Param({"33", "468"})
+  public int pointCount;
+
+  @Param({"false", "true"})
+  public boolean isFlipped;
+
+  private OverlayTransform transform;
+  private float[] points;
+  private float[] mappedPoints;
+
+  @Setup
+  public void setUp() {
+    transform = fitImage();
+    Random random = new Random(42);
+    points = new float[pointCount * 2];
+    for (int i = 0; i < pointCount; i++) {
+      points[2 * i] = random.nextFloat() * 480;
+      points[2 * i + 1] = random.nextFloat() * 640;
+    }
+    mappedPoints = new float[points.length];
+  }
+
+  @Benchmark
+  public OverlayTransform fitImage() {
+    return OverlayTransform.fitImage(480, 640, 1080, 2160, isFlipped, 48, 192);
+  }
+
+  @Benchmark
+  public float[] mapPoints() {
+    transform.mapPoints(points, mappedPoints);
+    return mappedPoints;
+  }
+
+  @Benchmark
+  public float[] mapPointsOneByOne() {
+    float[] src = points;
+    float[] dst = mappedPoints;
+    for (int i = 0; i < src.length; i += 2) {
+      dst[i] = transform.mapX(src[i]);
+      dst[i + 1] = transform.mapY(src[i + 1]);
+    }
+    return dst;
+  }
+}
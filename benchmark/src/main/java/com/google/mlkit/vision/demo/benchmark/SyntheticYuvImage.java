@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.YuvPlaneUnpacker;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A YUV_420_888 image with random samples, laid out the way camera HALs deliver one, for
+ * exercising {@link YuvPlaneUnpacker} without a device.
+ *
+ * <p>Plane buffers end right after their last sample, as on Android, so the last row of a plane
+ * is shorter than the row stride.
+ */
+public final class SyntheticYuvImage {
+
+  /** How the planes of the image are laid out. */
+  public enum Layout {
+    /** Rows padded to a 64-byte stride, chroma planes with a pixel stride of 2 in own buffers. */
+    PADDED,
+    /** Tightly packed rows, U and V planes interleaving samples in one shared VU buffer. */
+    SEMI_PLANAR,
+    /** Tightly packed rows, chroma planes with a pixel stride of 1, as in I420. */
+    PLANAR
+  }
+
+  public final int width;
+  public final int height;
+  public final ByteBuffer yPlane;
+  public final ByteBuffer uPlane;
+  public final ByteBuffer vPlane;
+  public final int lumaRowStride;
+  public final int chromaRowStride;
+  public final int chromaPixelStride;
+
+  public SyntheticYuvImage(Layout layout, int width, int height, Random random) {
+    this.width = width;
+    this.height = height;
+    int chromaWidth = width / 2;
+    int chromaHeight = height / 2;
+    switch (layout) {
+      case PADDED:
+        lumaRowStride = align64(width);
+        chromaRowStride = lumaRowStride;
+        chromaPixelStride = 2;
+        uPlane = randomPlane(random, chromaPlaneSize(chromaWidth, chromaHeight));
+        vPlane = randomPlane(random, chromaPlaneSize(chromaWidth, chromaHeight));
+        break;
+      case SEMI_PLANAR:
+        lumaRowStride = width;
+        chromaRowStride = width;
+        chromaPixelStride = 2;
+        ByteBuffer vu = randomPlane(random, chromaPlaneSize(chromaWidth, chromaHeight) + 1);
+        vPlane = slice(vu, 0, vu.capacity() - 1);
+        uPlane = slice(vu, 1, vu.capacity() - 1);
+        break;
+      case PLANAR:
+        lumaRowStride = width;
+        chromaRowStride = chromaWidth;
+        chromaPixelStride = 1;
+        uPlane = randomPlane(random, chromaPlaneSize(chromaWidth, chromaHeight));
+        vPlane = randomPlane(random, chromaPlaneSize(chromaWidth, chromaHeight));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown layout: " + layout);
+    }
+    yPlane = randomPlane(random, lumaRowStride * (height - 1) + width);
+  }
+
+  /** Returns the size of an NV21 copy of the image. */
+  public int getNv21Size() {
+    return width * height + 2 * (width / 2) * (height / 2);
+  }
+
+  /** Packs the image into {@code nv21} with {@code unpacker}. */
+  public void unpackNv21(YuvPlaneUnpacker unpacker, byte[] nv21) {
+    int imageSize = width * height;
+    unpacker.unpackPlane(yPlane, lumaRowStride, 1, width, height, nv21, 0, 1);
+    unpacker.unpackPlane(
+        uPlane, chromaRowStride, chromaPixelStride, width, height, nv21, imageSize + 1, 2);
+    unpacker.unpackPlane(
+        vPlane, chromaRowStride, chromaPixelStride, width, height, nv21, imageSize, 2);
+  }
+
+  /**
+   * Packs the image into {@code nv21} one sample at a time, the way {@code BitmapUtils} did before
+   * {@link YuvPlaneUnpacker}, as the reference the unpacker is checked and measured against.
+   */
+  public void unpackNv21Reference(byte[] nv21) {
+    int imageSize = width * height;
+    unpackPlaneReference(yPlane, lumaRowStride, 1, nv21, 0, 1);
+    unpackPlaneReference(uPlane, chromaRowStride, chromaPixelStride, nv21, imageSize + 1, 2);
+    unpackPlaneReference(vPlane, chromaRowStride, chromaPixelStride, nv21, imageSize, 2);
+  }
+
+  private void unpackPlaneReference(
+      ByteBuffer buffer, int rowStride, int pixelStride, byte[] out, int offset, int outStride) {
+    int numRow = (buffer.limit() + rowStride - 1) / rowStride;
+    if (numRow == 0) {
+      return;
+    }
+    int scaleFactor = height / numRow;
+    int numCol = width / scaleFactor;
+    int outputPos = offset;
+    int rowStart = 0;
+    for (int row = 0; row < numRow; row++) {
+      int inputPos = rowStart;
+      for (int col = 0; col < numCol; col++) {
+        out[outputPos] = buffer.get(inputPos);
+        outputPos += outStride;
+        inputPos += pixelStride;
+      }
+      rowStart += rowStride;
+    }
+  }
+
+  private int chromaPlaneSize(int chromaWidth, int chromaHeight) {
+    return chromaRowStride * (chromaHeight - 1) + (chromaWidth - 1) * chromaPixelStride + 1;
+  }
+
+  private static int align64(int size) {
+    return (size + 63) & ~63;
+  }
+
+  private static ByteBuffer randomPlane(Random random, int size) {
+    byte[] data = new byte[size];
+    random.nextBytes(data);
+    ByteBuffer plane = ByteBuffer.allocateDirect(size);
+    plane.put(data);
+    plane.rewind();
+    return plane;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.limit(offset + size);
+    return duplicate.slice();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.benchmark;
+
+import com.google.mlkit.vision.demo.YuvPlaneUnpacker;
+import com.google.mlkit.vision.demo.benchmark.SyntheticYuvImage.Layout;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packing a YUV_420_888 frame into NV21 with {@link YuvPlaneUnpacker}, against the per-sample
+ * {@code ByteBuffer.get} loop it replaced, for each of the plane layouts of {@link
+ * SyntheticYuvImage}. {@code YuvPlaneUnpackerTest} checks that both produce the same bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YuvPlaneUnpackerBenchmark {
+
+  @Param({"PADDED", "SEMI_PLANAR", "PLANAR"})
+  public Layout layout;
+
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private SyntheticYuvImage image;
+  private YuvPlaneUnpacker unpacker;
+  private byte[] nv21;
+
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    image =
+        new SyntheticYuvImage(
+            layout,
+            Integer.parseInt(dimensions[0]),
+            Integer.parseInt(dimensions[1]),
+            new Random(42));
+    unpacker = new YuvPlaneUnpacker();
+    nv21 = new byte[image.getNv21Size()];
+  }
+
+  @Benchmark
+  public byte[] unpack() {
+    image.unpackNv21(unpacker, nv21);
+    return nv21;
+  }
+
+  @Benchmark
+  public byte[] unpackPerSample() {
+    image.unpackNv21Reference(nv21);
+    return nv21;
+  }
+}
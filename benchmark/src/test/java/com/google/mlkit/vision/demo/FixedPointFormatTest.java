@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+
+/** Checks {@link FixedPointFormat} against {@link String#format}. */
+public class FixedPointFormatTest {
+
+  @Test
+  public void append_exactHalf_roundsAwayFromZero() {
+    assertEquals("0.13", format(0.125, 2));
+    assertEquals("-0.13", format(-0.125, 2));
+    assertEquals("3", format(2.5, 0));
+    assertEquals("-3", format(-2.5, 0));
+  }
+
+  @Test
+  public void append_roundingCarriesIntoIntegerPart() {
+    assertEquals("10.00", format(9.999, 2));
+    assertEquals("-1.0", format(-0.96, 1));
+  }
+
+  @Test
+  public void append_fractionWithLeadingZeros_keepsThem() {
+    assertEquals("1.05", format(1.05, 2));
+    assertEquals("7.007", format(7.007, 3));
+    assertEquals("0.000001", format(0.000001, 6));
+  }
+
+  @Test
+  public void append_negative_writesMinusSign() {
+    assertEquals("-1.5", format(-1.5, 1));
+    assertEquals("-42", format(-42, 0));
+    assertEquals("-0.01", format(-0.005, 2));
+  }
+
+  @Test
+  public void append_negativeRoundingToZero_writesNoMinusSign() {
+    assertEquals("0.00", format(-0.001, 2));
+    assertEquals("0", format(-0.0, 0));
+  }
+
+  @Test
+  public void append_notFinite_writesLikeDouble() {
+    assertEquals("NaN", format(Double.NaN, 2));
+    assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY, 2));
+  }
+
+  @Test
+  public void append_keepsExistingContent() {
+    StringBuilder out = new StringBuilder("FPS: ");
+
+    FixedPointFormat.append(out, 29.97, 1).append(" fps");
+
+    assertEquals("FPS: 30.0 fps", out.toString());
+  }
+
+  @Test
+  public void append_randomValues_matchesStringFormat() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      double value = (random.nextDouble() - 0.5) * 2_000;
+      int fractionDigits = random.nextInt(4);
+      String expected = String.format(Locale.US, "%." + fractionDigits + "f", value);
+      if (expected.matches("-0\\.?0*")) {
+        // Written without the sign, as documented.
+        expected = expected.substring(1);
+      }
+      assertEquals(value + " with " + fractionDigits, expected, format(value, fractionDigits));
+    }
+  }
+
+  @Test
+  public void append_tooManyFractionDigits_throws() {
+    assertThrows(IllegalArgumentException.class, () -> format(1, 7));
+  }
+
+  private static String format(double value, int fractionDigits) {
+    return FixedPointFormat.append(new StringBuilder(), value, fractionDigits).toString();
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.demo.FramePipeline.DropPolicy;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Throughput of the live pipeline's convert and detect stages against the serial path it
+ * replaced, with a fake detector of controllable latency.
+ *
+ * <p>The serial path kept one latest frame and converted and detected it before taking the next
+ * one, which is a single stage doing both. The pipelined path converts the next frame while the
+ * current one is detected, so its throughput is bounded by the slower stage instead of by the sum
+ * of both. Frames arrive faster than either path can keep up with, as from a camera on a slow
+ * device, and the stages sleep rather than spin, so the results hold on a busy machine.
+ */
+public class FramePipelineThroughputTest {
+
+  private static final long CAMERA_INTERVAL_MS = 1;
+  private static final long RUN_TIME_MS = 1000;
+
+  @Test
+  public void pipelined_detectSlowerThanConvert_outpacesSerial() throws Exception {
+    checkOutpacesSerial(/* convertLatencyMs= */ 4, /* detectLatencyMs= */ 8, /* minSpeedUp= */ 1.2);
+  }
+
+  @Test
+  public void pipelined_detectAsSlowAsConvert_outpacesSerial() throws Exception {
+    checkOutpacesSerial(/* convertLatencyMs= */ 8, /* detectLatencyMs= */ 8, /* minSpeedUp= */ 1.4);
+  }
+
+  @Test
+  public void pipelined_everyFrameProcessedOrDropped() throws Exception {
+    AtomicLong dropped = new AtomicLong();
+    FramePipeline<Object> pipeline =
+        FramePipeline.newBuilder("test")
+            .addStage("convert", 1, DropPolicy.DROP_OLDEST, new FakeStage(2))
+            .addStage("detect", 1, DropPolicy.DROP_OLDEST, new FakeStage(4))
+            .setDropListener((stageName, frame, cause) -> dropped.incrementAndGet())
+            .build();
+    int submitted = 0;
+    for (; submitted < 200; submitted++) {
+      pipeline.submit(new Object());
+      Thread.sleep(CAMERA_INTERVAL_MS);
+    }
+    pipeline.shutdown();
+    // Lets the stage threads finish the frames they are on and drop the queued ones.
+    Thread.sleep(50);
+
+    assertEquals(
+        submitted,
+        pipeline.getProcessedCount("detect")
+            + pipeline.getDroppedCount("convert")
+            + pipeline.getDroppedCount("detect"));
+    assertEquals(
+        pipeline.getDroppedCount("convert") + pipeline.getDroppedCount("detect"), dropped.get());
+  }
+
+  @Test
+  public void submitRacingShutdown_everyFrameProcessedOrDropped() throws Exception {
+    for (int round = 0; round < 50; round++) {
+      AtomicLong dropped = new AtomicLong();
+      AtomicLong processed = new AtomicLong();
+      FramePipeline<Object> pipeline =
+          FramePipeline.newBuilder("test")
+              .addStage(
+                  "detect",
+                  4,
+                  DropPolicy.DROP_OLDEST,
+                  frame -> {
+                    processed.incrementAndGet();
+                    return frame;
+                  })
+              .setDropListener((stageName, frame, cause) -> dropped.incrementAndGet())
+              .build();
+      int frameCount = 1000;
+      Thread camera =
+          new Thread(
+              () -> {
+                for (int i = 0; i < frameCount; i++) {
+                  pipeline.submit(new Object());
+                }
+              });
+      camera.start();
+      Thread.sleep(round % 3);
+      pipeline.shutdown();
+      camera.join();
+      // Lets the stage thread finish the frame it is on and drop the queued ones.
+      Thread.sleep(20);
+
+      assertEquals("Round " + round, frameCount, processed.get() + dropped.get());
+    }
+  }
+
+  private static void checkOutpacesSerial(
+      long convertLatencyMs, long detectLatencyMs, double minSpeedUp) throws Exception {
+    FakeStage convert = new FakeStage(convertLatencyMs);
+    FakeStage detect = new FakeStage(detectLatencyMs);
+    FramePipeline<Object> serial =
+        FramePipeline.newBuilder("serial")
+            .addStage(
+                "detect",
+                1,
+                DropPolicy.DROP_OLDEST,
+                frame -> detect.apply(convert.apply(frame)))
+            .build();
+    FramePipeline<Object> pipelined =
+        FramePipeline.newBuilder("pipelined")
+            .addStage("convert", 1, DropPolicy.DROP_OLDEST, convert)
+            .addStage("detect", 1, DropPolicy.DROP_OLDEST, detect)
+            .build();
+
+    double serialFps = measureThroughput(serial);
+    double pipelinedFps = measureThroughput(pipelined);
+
+    System.out.println(
+        String.format(
+            Locale.US,
+            "convert %d ms, detect %d ms: serial %.1f fps, pipelined %.1f fps (%.2fx)",
+            convertLatencyMs,
+            detectLatencyMs,
+            serialFps,
+            pipelinedFps,
+            pipelinedFps / serialFps));
+    assertTrue(
+        "Pipelined " + pipelinedFps + " fps against serial " + serialFps + " fps",
+        pipelinedFps >= serialFps * minSpeedUp);
+  }
+
+  /** Feeds frames at the camera rate for the run time and returns the detections per second. */
+  private static double measureThroughput(FramePipeline<Object> pipeline) throws Exception {
+    Object frame = new Object();
+    long startNs = System.nanoTime();
+    long endNs = startNs + TimeUnit.MILLISECONDS.toNanos(RUN_TIME_MS);
+    while (System.nanoTime() < endNs) {
+      pipeline.submit(frame);
+      Thread.sleep(CAMERA_INTERVAL_MS);
+    }
+    long detected = pipeline.getProcessedCount("detect");
+    long elapsedNs = System.nanoTime() - startNs;
+    pipeline.shutdown();
+    return detected * 1e9 / elapsedNs;
+  }
+
+  /** A stage that takes a fixed time per frame, without keeping a CPU busy. */
+  private static final class FakeStage implements FramePipeline.StageFunction<Object, Object> {
+    private final long latencyMs;
+
+    FakeStage(long latencyMs) {
+      this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public Object apply(Object frame) throws InterruptedException {
+      Thread.sleep(latencyMs);
+      return frame;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/** Replays logs written by {@link FrameLogWriter} with {@link FrameReplayer}. */
+public class FrameReplayerTest {
+
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+  private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+  private static final long FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(40);
+
+  @Test
+  public void replay_deliversRecordedFrames() throws IOException {
+    File log = writeLog(3);
+    List<byte[]> frames = new ArrayList<>();
+    List<Long> timestamps = new ArrayList<>();
+    FrameReplayer replayer =
+        new FrameReplayer(
+            log,
+            (nv21, width, height, rotation, timestampNanos) -> {
+              assertEquals(WIDTH, width);
+              assertEquals(HEIGHT, height);
+              assertEquals(90, rotation);
+              byte[] data = new byte[nv21.remaining()];
+              nv21.get(data);
+              frames.add(data);
+              timestamps.add(timestampNanos);
+            });
+    replayer.setRealTime(false);
+
+    assertEquals(3, replayer.replay());
+
+    assertEquals(3, frames.size());
+    for (int i = 0; i < 3; i++) {
+      assertArrayEquals(frameData(i), frames.get(i));
+      assertEquals(i * FRAME_INTERVAL_NANOS, (long) timestamps.get(i));
+    }
+  }
+
+  @Test
+  public void replay_realTime_keepsRecordedPace() throws IOException {
+    File log = writeLog(4);
+    FrameReplayer replayer = new FrameReplayer(log, (nv21, width, height, rotation, ts) -> {});
+
+    long startNanos = System.nanoTime();
+    assertEquals(4, replayer.replay());
+    long elapsedNanos = System.nanoTime() - startNanos;
+
+    // The first frame is delivered straight away and the others at their recorded offsets.
+    assertTrue(elapsedNanos >= 3 * FRAME_INTERVAL_NANOS);
+  }
+
+  @Test
+  public void start_looping_replaysUntilStopped() throws Exception {
+    File log = writeLog(3);
+    AtomicInteger delivered = new AtomicInteger();
+    CountDownLatch twoLoops = new CountDownLatch(6);
+    FrameReplayer replayer =
+        new FrameReplayer(
+            log,
+            (nv21, width, height, rotation, ts) -> {
+              delivered.incrementAndGet();
+              twoLoops.countDown();
+            });
+    replayer.setRealTime(false);
+    replayer.setLooping(true);
+    AtomicInteger reported = new AtomicInteger(-1);
+    AtomicReference<IOException> error = new AtomicReference<>();
+    CountDownLatch finished = new CountDownLatch(1);
+
+    replayer.start(
+        (framesReplayed, e) -> {
+          reported.set(framesReplayed);
+          error.set(e);
+          finished.countDown();
+        });
+    assertTrue(twoLoops.await(5, TimeUnit.SECONDS));
+    replayer.stop();
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    assertNull(error.get());
+    assertEquals(delivered.get(), reported.get());
+  }
+
+  @Test
+  public void start_notAFrameLog_reportsError() throws Exception {
+    File log = File.createTempFile("not-a-frame-log", ".mlkf");
+    log.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(log)) {
+      out.write(new byte[16]);
+    }
+    AtomicReference<IOException> error = new AtomicReference<>();
+    CountDownLatch finished = new CountDownLatch(1);
+    FrameReplayer replayer = new FrameReplayer(log, (nv21, width, height, rotation, ts) -> {});
+
+    replayer.start(
+        (framesReplayed, e) -> {
+          error.set(e);
+          finished.countDown();
+        });
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    assertNotNull(error.get());
+  }
+
+  private static File writeLog(int frameCount) throws IOException {
+    File log = File.createTempFile("frames", ".mlkf");
+    log.deleteOnExit();
+    // The temporary file is empty, so the writer starts a new log rather than appending.
+    try (FrameLogWriter writer = new FrameLogWriter(log)) {
+      for (int i = 0; i < frameCount; i++) {
+        writer.append(
+            ByteBuffer.wrap(frameData(i)), WIDTH, HEIGHT, 90, i * FRAME_INTERVAL_NANOS);
+      }
+    }
+    return log;
+  }
+
+  private static byte[] frameData(int index) {
+    byte[] data = new byte[FRAME_SIZE];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (index * 31 + i);
+    }
+    return data;
+  }
+}
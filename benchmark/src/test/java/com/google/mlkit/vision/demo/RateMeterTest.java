@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Checks the windows of {@link RateMeter} against a manually advanced clock. */
+public class RateMeterTest {
+
+  private static final double DELTA = 1e-9;
+
+  private long nowNanos;
+  private final RateMeter meter = new RateMeter(() -> nowNanos);
+
+  @Test
+  public void getRate_eventsInsideWindow_counted() {
+    markEvery(100, 10);
+
+    advanceTo(1000);
+
+    assertEquals(10.0, meter.getRate(1, TimeUnit.SECONDS), DELTA);
+    assertEquals(10.0, meter.getRate(10, TimeUnit.SECONDS), DELTA);
+  }
+
+  @Test
+  public void getRate_eventsOlderThanWindow_expire() {
+    markEvery(100, 10);
+
+    advanceTo(2000);
+
+    assertEquals(0.0, meter.getRate(1, TimeUnit.SECONDS), DELTA);
+    // The longer window still holds them, spread over the two seconds since the meter started.
+    assertEquals(5.0, meter.getRate(10, TimeUnit.SECONDS), DELTA);
+  }
+
+  @Test
+  public void getRate_bucketReusedAfterOneMinute_staleCountDropped() {
+    advanceTo(50);
+    meter.mark();
+
+    // 601 buckets later the ring is back at the bucket of the first event.
+    advanceTo(60_150);
+    assertEquals(0.0, meter.getRate(60, TimeUnit.SECONDS), DELTA);
+    meter.mark();
+
+    // The window reaches back to the slot starting at 59.1 s.
+    assertEquals(1 / 1.05, meter.getRate(1, TimeUnit.SECONDS), DELTA);
+  }
+
+  @Test
+  public void getInstantaneousRate_lastEventOlderThanOneSecond_isZero() {
+    markEvery(250, 2);
+    assertEquals(4.0, meter.getInstantaneousRate(), DELTA);
+
+    advanceTo(1400);
+
+    assertEquals(0.0, meter.getInstantaneousRate(), DELTA);
+  }
+
+  @Test
+  public void reset_forgetsEvents() {
+    markEvery(100, 10);
+
+    meter.reset();
+
+    assertEquals(0.0, meter.getRate(1, TimeUnit.SECONDS), DELTA);
+    assertEquals(0.0, meter.getInstantaneousRate(), DELTA);
+  }
+
+  /** Marks {@code count} events, the first at half an interval and then every interval. */
+  private void markEvery(long intervalMillis, int count) {
+    for (int i = 0; i < count; i++) {
+      advanceTo(intervalMillis / 2 + i * intervalMillis);
+      meter.mark();
+    }
+  }
+
+  private void advanceTo(long millis) {
+    nowNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
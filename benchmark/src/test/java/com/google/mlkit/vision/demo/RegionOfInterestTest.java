@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+/** Checks the crops {@link RegionOfInterest} computes and copies. */
+public class RegionOfInterestTest {
+
+  private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+  @Test
+  public void getCrop_oddEdges_alignedToEvenPixels() {
+    // The edges fall on pixels 25 and 75 horizontally, and 22.5 and 37.5 vertically.
+    RegionOfInterest region = new RegionOfInterest(0.25f, 0.375f, 0.75f, 0.625f);
+
+    RegionOfInterest.Crop crop = region.getCrop(100, 60, 0);
+
+    assertEquals(24, crop.left);
+    assertEquals(22, crop.top);
+    assertEquals(50, crop.width);
+    assertEquals(14, crop.height);
+  }
+
+  @Test
+  public void getCrop_regionNarrowerThanTwoPixels_widenedToTwo() {
+    RegionOfInterest region = new RegionOfInterest(0.5f, 0.5f, 0.505f, 0.505f);
+
+    RegionOfInterest.Crop crop = region.getCrop(100, 100, 0);
+
+    assertEquals(50, crop.left);
+    assertEquals(50, crop.top);
+    assertEquals(2, crop.width);
+    assertEquals(2, crop.height);
+  }
+
+  @Test
+  public void getCrop_narrowRegionAtEdgeOfOddFrame_clampedInsideFrame() {
+    RegionOfInterest region = new RegionOfInterest(0.995f, 0.995f, 1, 1);
+
+    RegionOfInterest.Crop crop = region.getCrop(101, 101, 0);
+
+    assertEquals(98, crop.left);
+    assertEquals(98, crop.top);
+    assertEquals(2, crop.width);
+    assertEquals(2, crop.height);
+  }
+
+  @Test
+  public void getCrop_randomRegions_evenAndInsideFrame() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      float left = random.nextFloat();
+      float top = random.nextFloat();
+      RegionOfInterest region =
+          new RegionOfInterest(
+              left,
+              top,
+              left + (1 - left) * (1 - random.nextFloat()),
+              top + (1 - top) * (1 - random.nextFloat()));
+      int width = 2 + random.nextInt(2000);
+      int height = 2 + random.nextInt(2000);
+      int rotation = ROTATIONS[random.nextInt(ROTATIONS.length)];
+      int uprightWidth = rotation % 180 == 0 ? width : height;
+      int uprightHeight = rotation % 180 == 0 ? height : width;
+
+      RegionOfInterest.Crop crop = region.getCrop(width, height, rotation);
+
+      int uprightCropWidth = rotation % 180 == 0 ? crop.width : crop.height;
+      int uprightCropHeight = rotation % 180 == 0 ? crop.height : crop.width;
+      String message = "crop of " + width + "x" + height + " at " + rotation;
+      assertEquals(message, 0, crop.left % 2);
+      assertEquals(message, 0, crop.top % 2);
+      assertEquals(message, 0, crop.width % 2);
+      assertEquals(message, 0, crop.height % 2);
+      assertTrue(message, crop.width >= 2 && crop.height >= 2);
+      assertTrue(message, crop.left >= 0 && crop.left + crop.width <= width);
+      assertTrue(message, crop.top >= 0 && crop.top + crop.height <= height);
+      assertTrue(message, crop.offsetX >= 0 && crop.offsetY >= 0);
+      assertTrue(message, crop.offsetX + uprightCropWidth <= uprightWidth);
+      assertTrue(message, crop.offsetY + uprightCropHeight <= uprightHeight);
+    }
+  }
+
+  @Test
+  public void getCrop_rotated90_mapsRegionOfUprightFrame() {
+    RegionOfInterest region = new RegionOfInterest(0.25f, 0.125f, 0.75f, 0.5f);
+
+    // The upright frame is 480x640, so the region covers x 120 to 360 and y 80 to 320 of it.
+    RegionOfInterest.Crop crop = region.getCrop(640, 480, 90);
+
+    assertEquals(80, crop.left);
+    assertEquals(120, crop.top);
+    assertEquals(240, crop.width);
+    assertEquals(240, crop.height);
+    assertEquals(120, crop.offsetX);
+    assertEquals(80, crop.offsetY);
+  }
+
+  @Test
+  public void cropNv21_copiesLumaAndChromaRows() {
+    int width = 8;
+    int height = 4;
+    ByteBuffer frame = ByteBuffer.allocate(width * height * 3 / 2);
+    for (int i = 0; i < frame.capacity(); i++) {
+      frame.put(i, (byte) i);
+    }
+    frame.position(3);
+    RegionOfInterest.Crop crop =
+        new RegionOfInterest(0.25f, 0.5f, 0.75f, 1).getCrop(width, height, 0);
+    ByteBuffer out = ByteBuffer.allocate(crop.getNv21Size());
+
+    crop.cropNv21(frame, width, out);
+
+    // Luma rows 2 and 3 from x 2 to 6, then the chroma row shared by them.
+    byte[] expected = {18, 19, 20, 21, 26, 27, 28, 29, 42, 43, 44, 45};
+    assertArrayEquals(expected, out.array());
+    assertEquals(3, frame.position());
+    assertEquals(0, out.position());
+  }
+
+  @Test
+  public void constructor_emptyRegion_throws() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new RegionOfInterest(0.5f, 0.1f, 0.5f, 0.9f));
+  }
+}
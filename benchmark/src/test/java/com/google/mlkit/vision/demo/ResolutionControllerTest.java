@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Checks when {@link ResolutionController} steps through {@link
+ * ResolutionController#DEFAULT_LADDER}, with a manually advanced clock and a 30 fps target, i.e. a
+ * budget of 33.3 ms per frame.
+ */
+public class ResolutionControllerTest {
+
+  private static final float TARGET_FPS = 30;
+
+  private long nowNanos;
+  private final List<String> changes = new ArrayList<>();
+  private final ResolutionController controller =
+      new ResolutionController(
+          ResolutionController.DEFAULT_LADDER,
+          640,
+          480,
+          TARGET_FPS,
+          (width, height) -> changes.add(width + "x" + height),
+          () -> nowNanos);
+
+  @Test
+  public void recordLatency_overBudget_stepsDown() {
+    afterCooldown();
+
+    recordWindow(40);
+
+    assertChanges("480x360");
+    assertEquals(480, controller.getWidth());
+    assertEquals(360, controller.getHeight());
+  }
+
+  @Test
+  public void recordLatency_fastEnoughForLargerResolution_stepsUp() {
+    afterCooldown();
+
+    // 960x720 has 2.25 times the pixels, so 10 ms predicts 22.5 ms, within 80% of the budget.
+    recordWindow(10);
+
+    assertChanges("960x720");
+  }
+
+  @Test
+  public void recordLatency_betweenThresholds_keepsResolution() {
+    afterCooldown();
+
+    // Within budget here, but 20 ms predicts 45 ms at 960x720.
+    recordWindow(20);
+
+    assertChanges();
+    assertEquals(640, controller.getWidth());
+  }
+
+  @Test
+  public void recordLatency_windowNotFull_keepsResolution() {
+    afterCooldown();
+
+    for (int i = 0; i < ResolutionController.WINDOW_SIZE - 1; i++) {
+      controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(40));
+    }
+    assertChanges();
+
+    controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(40));
+    assertChanges("480x360");
+  }
+
+  @Test
+  public void recordLatency_outliersBelowPercentile_keepsResolution() {
+    afterCooldown();
+
+    // Two slow frames out of 30 stay above the 90th percentile.
+    for (int i = 0; i < ResolutionController.WINDOW_SIZE; i++) {
+      controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(i < 2 ? 100 : 20));
+    }
+
+    assertChanges();
+  }
+
+  @Test
+  public void recordLatency_duringCooldown_keepsResolution() {
+    recordWindow(40);
+
+    assertChanges();
+  }
+
+  @Test
+  public void recordLatency_afterChange_needsFreshWindow() {
+    afterCooldown();
+    recordWindow(40);
+    afterCooldown();
+
+    // The samples from before the change are discarded, so a whole new window is needed.
+    for (int i = 0; i < ResolutionController.WINDOW_SIZE - 1; i++) {
+      controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(40));
+    }
+    assertChanges("480x360");
+
+    controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(40));
+    assertChanges("480x360", "320x240");
+  }
+
+  @Test
+  public void recordLatency_afterChange_waitsForCooldown() {
+    afterCooldown();
+    recordWindow(40);
+
+    recordWindow(40);
+
+    assertChanges("480x360");
+  }
+
+  @Test
+  public void recordLatency_smallestResolutionOverBudget_staysAtSmallest() {
+    ResolutionController smallest =
+        new ResolutionController(
+            ResolutionController.DEFAULT_LADDER,
+            320,
+            240,
+            TARGET_FPS,
+            (width, height) -> changes.add(width + "x" + height),
+            () -> nowNanos);
+    afterCooldown();
+
+    for (int i = 0; i < ResolutionController.WINDOW_SIZE; i++) {
+      smallest.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    assertChanges();
+    assertEquals(320, smallest.getWidth());
+  }
+
+  private void afterCooldown() {
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(ResolutionController.COOLDOWN_MS);
+  }
+
+  private void recordWindow(long latencyMillis) {
+    for (int i = 0; i < ResolutionController.WINDOW_SIZE; i++) {
+      controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+  }
+
+  private void assertChanges(String... expected) {
+    assertEquals(Arrays.asList(expected), changes);
+  }
+}
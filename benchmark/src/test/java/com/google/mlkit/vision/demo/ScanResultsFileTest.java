@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/** Checks the lines {@link ScanResultsFile} writes and how it resumes from them. */
+public class ScanResultsFileTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void appendResult_tabsLineBreaksAndBackslashes_escaped() throws IOException {
+    File file = createFile();
+
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      results.appendResult("a.jpg", "one\ttwo\nthree\rfour\\five");
+      results.appendError("b.jpg", "Could not decode\n");
+    }
+
+    assertEquals(
+        Arrays.asList(
+            "a.jpg\tok\tone\\ttwo\\nthree\\rfour\\\\five", "b.jpg\terror\tCould not decode\\n"),
+        readLines(file));
+  }
+
+  @Test
+  public void appendResult_unsupportedPath_throws() throws IOException {
+    try (ScanResultsFile results = new ScanResultsFile(createFile())) {
+      assertThrows(IllegalArgumentException.class, () -> results.appendResult("a\tb.jpg", ""));
+      assertThrows(IllegalArgumentException.class, () -> results.appendResult("a\nb.jpg", ""));
+      assertThrows(IllegalArgumentException.class, () -> results.appendResult("a\rb.jpg", ""));
+      assertEquals(0, results.getDoneCount());
+    }
+  }
+
+  @Test
+  public void appendResult_linesWrittenEveryFlushInterval() throws IOException {
+    File file = createFile();
+
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      for (int i = 0; i < ScanResultsFile.FLUSH_INTERVAL - 1; i++) {
+        results.appendResult(i + ".jpg", "");
+      }
+      assertEquals(0, file.length());
+
+      results.appendResult("last.jpg", "");
+      assertEquals(ScanResultsFile.FLUSH_INTERVAL, readLines(file).size());
+    }
+  }
+
+  @Test
+  public void open_existingFile_resumesFromCheckpoint() throws IOException {
+    File file = createFile();
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      results.appendResult("a.jpg", "cat");
+      results.appendError("b.jpg", "Could not decode");
+    }
+
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      assertEquals(2, results.getDoneCount());
+      assertTrue(results.isDone("a.jpg"));
+      // Failed images are not retried either.
+      assertTrue(results.isDone("b.jpg"));
+      assertFalse(results.isDone("c.jpg"));
+
+      results.appendResult("c.jpg", "dog");
+    }
+
+    assertEquals(
+        Arrays.asList("a.jpg\tok\tcat", "b.jpg\terror\tCould not decode", "c.jpg\tok\tdog"),
+        readLines(file));
+  }
+
+  @Test
+  public void open_tornFinalLine_dropped() throws IOException {
+    File file = createFile();
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      results.appendResult("a.jpg", "cat");
+    }
+    // A scan killed while writing the line of b.jpg.
+    try (FileOutputStream out = new FileOutputStream(file, /* append= */ true)) {
+      out.write("b.jpg\tok\tdo".getBytes(UTF_8));
+    }
+
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      assertEquals(1, results.getDoneCount());
+      assertFalse(results.isDone("b.jpg"));
+
+      results.appendResult("b.jpg", "dog");
+    }
+
+    assertEquals(Arrays.asList("a.jpg\tok\tcat", "b.jpg\tok\tdog"), readLines(file));
+  }
+
+  @Test
+  public void open_onlyTornLine_startsEmpty() throws IOException {
+    File file = createFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("a.jpg\to".getBytes(UTF_8));
+    }
+
+    try (ScanResultsFile results = new ScanResultsFile(file)) {
+      assertEquals(0, results.getDoneCount());
+    }
+
+    assertEquals(0, file.length());
+  }
+
+  private static File createFile() throws IOException {
+    File file = File.createTempFile("scan-results", ".tsv");
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    return Files.readAllLines(file.toPath(), UTF_8);
+  }
+}
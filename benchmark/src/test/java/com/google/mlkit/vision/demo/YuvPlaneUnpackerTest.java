@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.demo.benchmark.SyntheticYuvImage;
+import com.google.mlkit.vision.demo.benchmark.SyntheticYuvImage.Layout;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks {@link YuvPlaneUnpacker} against the per-sample reference of {@link SyntheticYuvImage}.
+ */
+public class YuvPlaneUnpackerTest {
+
+  // Includes widths whose chroma rows are not a multiple of the unrolled loop's four samples.
+  private static final int[][] SIZES = {{640, 480}, {480, 360}, {100, 50}, {36, 20}, {2, 2}};
+
+  @Test
+  public void unpackNv21_paddedRows_matchesReference() {
+    checkAllSizes(Layout.PADDED);
+  }
+
+  @Test
+  public void unpackNv21_semiPlanar_matchesReference() {
+    checkAllSizes(Layout.SEMI_PLANAR);
+  }
+
+  @Test
+  public void unpackNv21_planar_matchesReference() {
+    checkAllSizes(Layout.PLANAR);
+  }
+
+  @Test
+  public void unpackNv21_reusedAcrossSizes_matchesReference() {
+    // The row buffer grows for the large frame and is then reused, partly, for the small one.
+    YuvPlaneUnpacker unpacker = new YuvPlaneUnpacker();
+    Random random = new Random(42);
+    for (int[] size : new int[][] {{36, 20}, {1280, 720}, {100, 50}, {640, 480}}) {
+      for (Layout layout : Layout.values()) {
+        checkUnpack(unpacker, new SyntheticYuvImage(layout, size[0], size[1], random));
+      }
+    }
+  }
+
+  @Test
+  public void unpackPlane_leavesBufferPositionUnchanged() {
+    SyntheticYuvImage image = new SyntheticYuvImage(Layout.PADDED, 64, 48, new Random(42));
+    image.uPlane.position(5);
+
+    image.unpackNv21(new YuvPlaneUnpacker(), new byte[image.getNv21Size()]);
+
+    assertEquals(0, image.yPlane.position());
+    assertEquals(5, image.uPlane.position());
+  }
+
+  private static void checkAllSizes(Layout layout) {
+    Random random = new Random(42);
+    for (int[] size : SIZES) {
+      checkUnpack(new YuvPlaneUnpacker(), new SyntheticYuvImage(layout, size[0], size[1], random));
+    }
+  }
+
+  private static void checkUnpack(YuvPlaneUnpacker unpacker, SyntheticYuvImage image) {
+    byte[] expected = new byte[image.getNv21Size()];
+    image.unpackNv21Reference(expected);
+    // A different fill than the reference's, so that any byte the unpacker skips shows up.
+    byte[] actual = new byte[expected.length];
+    Arrays.fill(actual, (byte) 0x5a);
+
+    image.unpackNv21(unpacker, actual);
+
+    assertArrayEquals(image.width + "x" + image.height, expected, actual);
+  }
+}